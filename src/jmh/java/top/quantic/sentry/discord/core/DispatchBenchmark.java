@@ -0,0 +1,163 @@
+package top.quantic.sentry.discord.core;
+
+import com.google.common.collect.Sets;
+import org.openjdk.jmh.annotations.*;
+import sx.blah.discord.api.IDiscordClient;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the per-message cost of routing a message to a command and splitting its arguments, comparing the
+ * previous linear scans and regex splitting against the prefix trie, name table and single-pass tokenizer. The message
+ * stream is mostly regular chat with a share of commands, some of them with quoted arguments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("[^ \\t\"']+|\"([^\"]*)\"|'([^']*)'");
+    private static final Pattern KEY_VALUE_PATTERN = Pattern.compile("^[\\w]+=[\\w]+$");
+
+    private static final String[] CHAT = {
+        "gg everyone, that was a close one",
+        "anyone up for a pug tonight?",
+        "lol",
+        "can someone check the server in chicago, it keeps lagging",
+        "!", // a lone prefix
+        "https://www.ugcleague.com/team_page.cfm?clan_id=12345"
+    };
+
+    private static final String[] COMMANDS = {
+        "!help",
+        "!status chi1",
+        "!servers expiring",
+        "!rcon chi1 say \"Server will restart in 5 minutes\"",
+        ".delete last 10 from beepboop after \"1 hour ago\"",
+        "!roster 76561197960287930",
+        "!uptime",
+        "!unknown command here"
+    };
+
+    @Param({"0.1", "0.5"})
+    private double commandRate;
+
+    @Param({"40"})
+    private int commandCount;
+
+    private IDiscordClient client;
+    private Set<String> prefixes;
+    private List<Command> commandList;
+    private CommandRegistry registry;
+    private PrefixTrie trie;
+    private String[] messages;
+    private int index;
+
+    @Setup
+    public void setup() {
+        client = (IDiscordClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{IDiscordClient.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+        prefixes = Sets.newHashSet("!", ".", "sentry ");
+        commandList = new ArrayList<>();
+        for (int i = 0; i < commandCount; i++) {
+            commandList.add(CommandBuilder.of("command" + i, "c" + i, "cmd" + i).build());
+        }
+        for (String name : new String[]{"help", "status", "servers", "rcon", "delete", "roster", "uptime"}) {
+            commandList.add(CommandBuilder.of(name, name.substring(0, 2)).build());
+        }
+        registry = new CommandRegistry();
+        registry.addAll(client, commandList);
+        trie = new PrefixTrie(prefixes);
+        Random random = new Random(42);
+        messages = new String[1024];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = random.nextDouble() < commandRate
+                ? COMMANDS[random.nextInt(COMMANDS.length)]
+                : CHAT[random.nextInt(CHAT.length)];
+        }
+    }
+
+    private String nextMessage() {
+        index = (index + 1) & (messages.length - 1);
+        return messages[index];
+    }
+
+    @Benchmark
+    public String[] legacyDispatch() {
+        String content = nextMessage();
+        Optional<String> prefix = prefixes.stream().filter(content::startsWith).findAny();
+        if (prefix.isPresent()) {
+            String name = content.substring(prefix.get().length(), content.contains(" ") ? content.indexOf(" ") : content.length()).toLowerCase();
+            Optional<Command> cmd = commandList.stream()
+                .filter(c -> c.getName().equals(name) || c.getAliases().contains(name))
+                .findAny();
+            if (cmd.isPresent()) {
+                String args = content.substring(content.indexOf(name) + name.length());
+                args = args.startsWith(" ") ? args.split(" ", 2)[1] : null;
+                if (args != null) {
+                    return legacySplit(args, 0, true, cmd.get().getParameterAliases());
+                }
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String[] routedDispatch() {
+        String content = nextMessage();
+        String prefix = trie.match(content);
+        if (prefix != null) {
+            int space = content.indexOf(' ', prefix.length());
+            String name = content.substring(prefix.length(), space < 0 ? content.length() : space).toLowerCase();
+            Optional<Command> cmd = registry.findCommand(client, name);
+            if (cmd.isPresent() && space >= 0) {
+                return CommandTokenizer.split(content.substring(space + 1), 0, true, cmd.get().getParameterAliases());
+            }
+        }
+        return null;
+    }
+
+    private static String[] legacySplit(String args, int limit, boolean unquote, Map<String, String> parameterAliases) {
+        Matcher matcher = QUOTE_PATTERN.matcher(args);
+        List<String> matches = new ArrayList<>();
+        int count = 1;
+        while (matcher.find()) {
+            if (limit > 0 && ++count > limit) {
+                matches.add(args.substring(matcher.start()));
+                break;
+            } else {
+                String group = matcher.group();
+                matches.add(unquote ? group.replaceAll("\"|'", "") : group);
+            }
+        }
+        if (parameterAliases != null && !parameterAliases.isEmpty()) {
+            return matches.stream().map(s -> {
+                if (KEY_VALUE_PATTERN.matcher(s).matches()
+                    && parameterAliases.keySet().stream().anyMatch(s::startsWith)) {
+                    return "--" + s;
+                } else {
+                    return parameterAliases.getOrDefault(s, s);
+                }
+            }).collect(Collectors.toList()).toArray(new String[matches.size()]);
+        } else {
+            return matches.toArray(new String[matches.size()]);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ibasco.agql.protocols.valve.steam.webapi.SteamWebApiClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEventPublisher;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.domain.GameServer;
+import top.quantic.sentry.repository.GameServerRepository;
+import top.quantic.sentry.service.mapper.GameServerMapper;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+import top.quantic.sentry.simulator.SourceServerSimulator;
+import top.quantic.sentry.simulator.VirtualServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures how long a full status sweep takes against simulated servers, for different fleet sizes, sweep
+ * concurrency and server latency. A share of the servers drop every query, so the sweep also pays for its timeouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SweepBenchmark {
+
+    private static final long SWEEP_TIMEOUT = 1000;
+
+    @Param({"100", "300"})
+    private int serverCount;
+
+    @Param({"8", "32"})
+    private int concurrency;
+
+    @Param({"5", "50"})
+    private long latency;
+
+    @Param({"0.0", "0.02"})
+    private double unreachableRate;
+
+    private SourceServerSimulator simulator;
+    private GameQueryService gameQueryService;
+    private GameServerService gameServerService;
+    private List<GameServer> servers;
+
+    @Setup
+    public void setup() throws Exception {
+        simulator = new SourceServerSimulator();
+        servers = new ArrayList<>();
+        int unreachable = (int) Math.round(serverCount * unreachableRate);
+        List<VirtualServer> virtuals = simulator.addAll("Chicago", serverCount);
+        for (int i = 0; i < virtuals.size(); i++) {
+            VirtualServer virtual = virtuals.get(i)
+                .players(i % 25)
+                .latency(latency, latency / 2)
+                .loss(i < unreachable ? 1.0 : 0.0);
+            servers.add(virtual.toGameServer(String.valueOf(1000 + i)));
+        }
+
+        GameServerRepository repository = mock(GameServerRepository.class);
+        when(repository.findAll()).thenReturn(servers);
+        SentryProperties properties = new SentryProperties();
+        properties.getGameQuery().setSweepConcurrency(concurrency);
+        properties.getGameQuery().setSweepTimeout(SWEEP_TIMEOUT);
+        properties.getGameQuery().setPollTick(TimeUnit.HOURS.toMillis(1));
+        gameQueryService = new GameQueryService(new SteamWebApiClient(), mock(SettingService.class), null);
+        gameServerService = new GameServerService(repository, mock(GameServerMapper.class),
+            mock(GameAdminService.class), gameQueryService, mock(ApplicationEventPublisher.class),
+            new TaggedMetricRegistry(new MetricRegistry()), mock(SettingService.class), properties);
+        gameServerService.afterPropertiesSet();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        gameServerService.destroy();
+        gameQueryService.destroy();
+        simulator.close();
+    }
+
+    @Benchmark
+    public List<GameServer> sweep() {
+        return gameServerService.refreshStatus(servers).join();
+    }
+}
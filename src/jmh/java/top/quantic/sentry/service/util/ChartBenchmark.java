@@ -0,0 +1,64 @@
+package top.quantic.sentry.service.util;
+
+import org.openjdk.jmh.annotations.*;
+import top.quantic.sentry.domain.PlayerCount;
+import top.quantic.sentry.web.rest.vm.Series;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the columnar {@link SeriesBuilder} aggregation in {@link ChartUtil} against the original Multimap-based
+ * implementation, charting minute samples of a few regions over a range of days at the resolution the chart
+ * endpoints would use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartBenchmark {
+
+    private static final String[] REGIONS = {"AU", "EU", "US"};
+
+    @Param({"1", "7", "30"})
+    private int days;
+
+    private List<PlayerCount> samples;
+    private int resolution;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ZonedDateTime start = ZonedDateTime.of(2017, 3, 1, 0, 0, 0, 0, ZoneId.systemDefault());
+        samples = new ArrayList<>();
+        for (int minute = 0; minute < days * 1440; minute++) {
+            ZonedDateTime timestamp = start.plusMinutes(minute);
+            for (String region : REGIONS) {
+                samples.add(new PlayerCount().region(region).timestamp(timestamp).value((long) random.nextInt(500)));
+            }
+        }
+        resolution = ChartUtil.getResolution(days * 24L);
+    }
+
+    @Benchmark
+    public List<Series> legacyAggregate() {
+        return LegacyChartUtil.getAggregatedSeriesFromData(samples.stream(), resolution,
+            PlayerCount::getRegion, PlayerCount::getTimestamp, PlayerCount::getValue,
+            entry -> new PlayerCount()
+                .region(entry.getKey().getRight())
+                .timestamp(entry.getKey().getLeft())
+                .value(entry.getValue().average()));
+    }
+
+    @Benchmark
+    public List<Series> columnarAggregate() {
+        return ChartUtil.getAggregatedSeriesFromData(samples.stream(), resolution,
+            PlayerCount::getRegion, PlayerCount::getTimestamp, PlayerCount::getValue);
+    }
+}
@@ -0,0 +1,68 @@
+package top.quantic.sentry.service.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the primitive ring buffer {@link Monitor} against the original queue-backed implementation, feeding both
+ * the same sequence of pings with a configurable share of samples above the threshold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorBenchmark {
+
+    private static final int PING_THRESHOLD = 1000;
+
+    @Param({"4", "16"})
+    private int consecutive;
+
+    @Param({"0.05", "0.5"})
+    private double failureRate;
+
+    private LegacyMonitor<Integer> legacy;
+    private Monitor primitive;
+    private int[] pings;
+    private int index;
+
+    @Setup
+    public void setup() {
+        legacy = new LegacyMonitor<>("legacy", consecutive, consecutive, ping -> ping < PING_THRESHOLD);
+        primitive = new Monitor("primitive", consecutive, consecutive, ping -> ping < PING_THRESHOLD);
+        Random random = new Random(42);
+        pings = new int[1024];
+        for (int i = 0; i < pings.length; i++) {
+            pings[i] = random.nextDouble() < failureRate ? PING_THRESHOLD + random.nextInt(5000) : random.nextInt(PING_THRESHOLD);
+        }
+    }
+
+    private int nextPing() {
+        index = (index + 1) & (pings.length - 1);
+        return pings[index];
+    }
+
+    @Benchmark
+    public Monitor.State legacyCheck() {
+        return legacy.check(nextPing());
+    }
+
+    @Benchmark
+    public Monitor.State primitiveCheck() {
+        return primitive.check(nextPing());
+    }
+
+    @Benchmark
+    public int legacyHealthPercent() {
+        return legacy.getHealthPercent();
+    }
+
+    @Benchmark
+    public int primitiveHealthPercent() {
+        return primitive.getHealthPercent();
+    }
+}
@@ -2,10 +2,6 @@ package top.quantic.sentry.config;
 
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableSet;
 import org.coursera.metrics.datadog.DatadogReporter;
 import org.coursera.metrics.datadog.DefaultMetricNameFormatter;
 import org.coursera.metrics.datadog.transport.HttpTransport;
@@ -17,12 +13,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import top.quantic.sentry.service.util.MetricNameFilter;
 
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -30,8 +26,6 @@ import java.util.stream.Collectors;
 public class DatadogConfiguration {
 
     private static final Logger log = LoggerFactory.getLogger(DatadogConfiguration.class);
-    private static final ContainsMatchingStrategy CONTAINS_STRATEGY = new ContainsMatchingStrategy();
-    private static final RegexMatchingStrategy REGEX_STRATEGY = new RegexMatchingStrategy();
 
     private final SentryProperties sentryProperties;
 
@@ -62,7 +56,7 @@ public class DatadogConfiguration {
             .withExpansions(expansions())
             .withTags(getTags())
             .withPrefix(getPrefix())
-            .filter(getFilter())
+            .filter(getFilter(registry))
             .withMetricNameFormatter(new CustomMetricNameFormatter())
             .build();
         reporter.start(getPeriod(), TimeUnit.SECONDS);
@@ -126,47 +120,10 @@ public class DatadogConfiguration {
         return sentryProperties.getMetrics().getDatadog().getExcludes();
     }
 
-    private MetricFilter getFilter() {
-        StringMatchingStrategy strategy = isUseRegexFilters() ? REGEX_STRATEGY : CONTAINS_STRATEGY;
-        return (name, metric) -> !strategy.containsMatch(ImmutableSet.copyOf(getExcludes()), name) &&
-            (getIncludes().isEmpty() || strategy.containsMatch(ImmutableSet.copyOf(getIncludes()), name));
-    }
-
-    private interface StringMatchingStrategy {
-        boolean containsMatch(ImmutableSet<String> matchExpressions, String metricName);
-    }
-
-    private static class ContainsMatchingStrategy implements StringMatchingStrategy {
-        @Override
-        public boolean containsMatch(ImmutableSet<String> matchExpressions, String metricName) {
-            return matchExpressions.stream().anyMatch(metricName::contains);
-        }
-    }
-
-    private static class RegexMatchingStrategy implements StringMatchingStrategy {
-        private final LoadingCache<String, Pattern> patternCache;
-
-        private RegexMatchingStrategy() {
-            patternCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(1, TimeUnit.HOURS)
-                .build(new CacheLoader<String, Pattern>() {
-                    @Override
-                    public Pattern load(String regex) throws Exception {
-                        return Pattern.compile(regex);
-                    }
-                });
-        }
-
-        @Override
-        public boolean containsMatch(ImmutableSet<String> matchExpressions, String metricName) {
-            for (String regexExpression : matchExpressions) {
-                if (patternCache.getUnchecked(regexExpression).matcher(metricName).matches()) {
-                    // just need to match on a single value - return as soon as we do
-                    return true;
-                }
-            }
-            return false;
-        }
+    private MetricFilter getFilter(MetricRegistry registry) {
+        MetricNameFilter filter = new MetricNameFilter(getIncludes(), getExcludes(), isUseRegexFilters());
+        registry.addListener(filter);
+        return filter;
     }
 
     private static class CustomMetricNameFormatter extends DefaultMetricNameFormatter {
@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -51,6 +52,11 @@ public class MetricsConfiguration extends MetricsConfigurerAdapter {
         return healthCheckRegistry;
     }
 
+    @Bean
+    public TaggedMetricRegistry taggedMetricRegistry() {
+        return new TaggedMetricRegistry(metricRegistry);
+    }
+
     @PostConstruct
     public void init() {
         log.debug("Registering JVM gauges");
@@ -18,6 +18,8 @@ public class SentryProperties {
     private final GameQuery gameQuery = new GameQuery();
     private final Twitch twitch = new Twitch();
     private final Ugc ugc = new Ugc();
+    private final Delivery delivery = new Delivery();
+    private final Retention retention = new Retention();
 
     public Discord getDiscord() {
         return discord;
@@ -47,6 +49,14 @@ public class SentryProperties {
         return ugc;
     }
 
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
     public static class Discord {
 
         private List<String> administrators = new ArrayList<>();
@@ -54,6 +64,12 @@ public class SentryProperties {
         private List<String> supporters = new ArrayList<>();
         private List<String> defaultPrefixes = Lists.newArrayList("!");
         private String cleverBotApiKey = "";
+        private long rolesCacheTtl = 0;
+        private int commandConcurrency = 8;
+        private int commandQueueCapacity = 500;
+        private int commandUserQueueCapacity = 5;
+        private int targetConcurrency = 8;
+        private long targetTimeout = 120000;
 
         public List<String> getAdministrators() {
             return administrators;
@@ -94,6 +110,54 @@ public class SentryProperties {
         public void setCleverBotApiKey(String cleverBotApiKey) {
             this.cleverBotApiKey = cleverBotApiKey;
         }
+
+        public long getRolesCacheTtl() {
+            return rolesCacheTtl;
+        }
+
+        public void setRolesCacheTtl(long rolesCacheTtl) {
+            this.rolesCacheTtl = rolesCacheTtl;
+        }
+
+        public int getCommandConcurrency() {
+            return commandConcurrency;
+        }
+
+        public void setCommandConcurrency(int commandConcurrency) {
+            this.commandConcurrency = commandConcurrency;
+        }
+
+        public int getCommandQueueCapacity() {
+            return commandQueueCapacity;
+        }
+
+        public void setCommandQueueCapacity(int commandQueueCapacity) {
+            this.commandQueueCapacity = commandQueueCapacity;
+        }
+
+        public int getCommandUserQueueCapacity() {
+            return commandUserQueueCapacity;
+        }
+
+        public void setCommandUserQueueCapacity(int commandUserQueueCapacity) {
+            this.commandUserQueueCapacity = commandUserQueueCapacity;
+        }
+
+        public int getTargetConcurrency() {
+            return targetConcurrency;
+        }
+
+        public void setTargetConcurrency(int targetConcurrency) {
+            this.targetConcurrency = targetConcurrency;
+        }
+
+        public long getTargetTimeout() {
+            return targetTimeout;
+        }
+
+        public void setTargetTimeout(long targetTimeout) {
+            this.targetTimeout = targetTimeout;
+        }
     }
 
     public static class Metrics {
@@ -272,6 +336,16 @@ public class SentryProperties {
         private String password;
         private String downloadsDir;
         private String configFile;
+        private String url = "https://my.gameservers.com";
+        private double permitsPerSecond = 0.4;
+        private int sessions = 2;
+        private Ttl ttl = new Ttl();
+        private int downloadConcurrency = 4;
+        private long downloadTimeout = 900000;
+        private long downloadProgressInterval = 2000;
+        private long expiryTick = 1000;
+        private long expiryWarning = 900000;
+        private long expiryClaimWindow = 300000;
 
         public String getUsername() {
             return username;
@@ -304,11 +378,143 @@ public class SentryProperties {
         public void setConfigFile(String configFile) {
             this.configFile = configFile;
         }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public void setPermitsPerSecond(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public Ttl getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Ttl ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getDownloadConcurrency() {
+            return downloadConcurrency;
+        }
+
+        public void setDownloadConcurrency(int downloadConcurrency) {
+            this.downloadConcurrency = downloadConcurrency;
+        }
+
+        public long getDownloadTimeout() {
+            return downloadTimeout;
+        }
+
+        public void setDownloadTimeout(long downloadTimeout) {
+            this.downloadTimeout = downloadTimeout;
+        }
+
+        public long getDownloadProgressInterval() {
+            return downloadProgressInterval;
+        }
+
+        public void setDownloadProgressInterval(long downloadProgressInterval) {
+            this.downloadProgressInterval = downloadProgressInterval;
+        }
+
+        public long getExpiryTick() {
+            return expiryTick;
+        }
+
+        public void setExpiryTick(long expiryTick) {
+            this.expiryTick = expiryTick;
+        }
+
+        public long getExpiryWarning() {
+            return expiryWarning;
+        }
+
+        public void setExpiryWarning(long expiryWarning) {
+            this.expiryWarning = expiryWarning;
+        }
+
+        public long getExpiryClaimWindow() {
+            return expiryClaimWindow;
+        }
+
+        public void setExpiryClaimWindow(long expiryClaimWindow) {
+            this.expiryClaimWindow = expiryClaimWindow;
+        }
+
+        /**
+         * Seconds each scraped panel page is kept per server before it's requested again.
+         */
+        public static class Ttl {
+
+            private long info = 300;
+            private long config = 60;
+            private long mods = 120;
+            private long console = 5;
+
+            public long getInfo() {
+                return info;
+            }
+
+            public void setInfo(long info) {
+                this.info = info;
+            }
+
+            public long getConfig() {
+                return config;
+            }
+
+            public void setConfig(long config) {
+                this.config = config;
+            }
+
+            public long getMods() {
+                return mods;
+            }
+
+            public void setMods(long mods) {
+                this.mods = mods;
+            }
+
+            public long getConsole() {
+                return console;
+            }
+
+            public void setConsole(long console) {
+                this.console = console;
+            }
+        }
     }
 
     public static class GameQuery {
 
         private String steamApiKey;
+        private int sweepConcurrency = 32;
+        private long sweepTimeout = 5000;
+        private long rconSessionIdleTimeout = 600000;
+        private long rconCommandTimeout = 30000;
+        private long pollTick = 5000;
+        private long pollMinInterval = 30000;
+        private long pollActiveInterval = 60000;
+        private long pollMaxInterval = 600000;
+        private int pollBudget = 300;
 
         public String getSteamApiKey() {
             return steamApiKey;
@@ -317,6 +523,78 @@ public class SentryProperties {
         public void setSteamApiKey(String steamApiKey) {
             this.steamApiKey = steamApiKey;
         }
+
+        public int getSweepConcurrency() {
+            return sweepConcurrency;
+        }
+
+        public void setSweepConcurrency(int sweepConcurrency) {
+            this.sweepConcurrency = sweepConcurrency;
+        }
+
+        public long getSweepTimeout() {
+            return sweepTimeout;
+        }
+
+        public void setSweepTimeout(long sweepTimeout) {
+            this.sweepTimeout = sweepTimeout;
+        }
+
+        public long getRconSessionIdleTimeout() {
+            return rconSessionIdleTimeout;
+        }
+
+        public void setRconSessionIdleTimeout(long rconSessionIdleTimeout) {
+            this.rconSessionIdleTimeout = rconSessionIdleTimeout;
+        }
+
+        public long getRconCommandTimeout() {
+            return rconCommandTimeout;
+        }
+
+        public void setRconCommandTimeout(long rconCommandTimeout) {
+            this.rconCommandTimeout = rconCommandTimeout;
+        }
+
+        public long getPollTick() {
+            return pollTick;
+        }
+
+        public void setPollTick(long pollTick) {
+            this.pollTick = pollTick;
+        }
+
+        public long getPollMinInterval() {
+            return pollMinInterval;
+        }
+
+        public void setPollMinInterval(long pollMinInterval) {
+            this.pollMinInterval = pollMinInterval;
+        }
+
+        public long getPollActiveInterval() {
+            return pollActiveInterval;
+        }
+
+        public void setPollActiveInterval(long pollActiveInterval) {
+            this.pollActiveInterval = pollActiveInterval;
+        }
+
+        public long getPollMaxInterval() {
+            return pollMaxInterval;
+        }
+
+        public void setPollMaxInterval(long pollMaxInterval) {
+            this.pollMaxInterval = pollMaxInterval;
+        }
+
+        public int getPollBudget() {
+            return pollBudget;
+        }
+
+        public void setPollBudget(int pollBudget) {
+            this.pollBudget = pollBudget;
+        }
     }
 
     public static class Twitch {
@@ -370,4 +648,165 @@ public class SentryProperties {
         }
     }
 
+    public static class Delivery {
+
+        private int concurrency = 8;
+        private int maxAttempts = 3;
+        private long retryDelay = 2000;
+        private double webhookRate = 1.0;
+        private int webhookBurst = 5;
+        private double channelRate = 1.0;
+        private int channelBurst = 5;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public double getWebhookRate() {
+            return webhookRate;
+        }
+
+        public void setWebhookRate(double webhookRate) {
+            this.webhookRate = webhookRate;
+        }
+
+        public int getWebhookBurst() {
+            return webhookBurst;
+        }
+
+        public void setWebhookBurst(int webhookBurst) {
+            this.webhookBurst = webhookBurst;
+        }
+
+        public double getChannelRate() {
+            return channelRate;
+        }
+
+        public void setChannelRate(double channelRate) {
+            this.channelRate = channelRate;
+        }
+
+        public int getChannelBurst() {
+            return channelBurst;
+        }
+
+        public void setChannelBurst(int channelBurst) {
+            this.channelBurst = channelBurst;
+        }
+    }
+
+    public static class Retention {
+
+        private boolean enabled = false;
+        private int batchSize = 1000;
+        private long batchDelay = 500;
+        private int auditEvents = 365;
+        private final Policy playerCount = new Policy();
+        private final Policy userCount = new Policy();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getBatchDelay() {
+            return batchDelay;
+        }
+
+        public void setBatchDelay(long batchDelay) {
+            this.batchDelay = batchDelay;
+        }
+
+        public int getAuditEvents() {
+            return auditEvents;
+        }
+
+        public void setAuditEvents(int auditEvents) {
+            this.auditEvents = auditEvents;
+        }
+
+        public Policy getPlayerCount() {
+            return playerCount;
+        }
+
+        public Policy getUserCount() {
+            return userCount;
+        }
+
+        /**
+         * Number of days to keep each resolution of a time series, or 0 to keep it forever. Raw samples are compacted
+         * into the rollups before being removed.
+         */
+        public static class Policy {
+
+            private int raw = 30;
+            private int tenMinutes = 365;
+            private int hourly = 0;
+            private int daily = 0;
+
+            public int getRaw() {
+                return raw;
+            }
+
+            public void setRaw(int raw) {
+                this.raw = raw;
+            }
+
+            public int getTenMinutes() {
+                return tenMinutes;
+            }
+
+            public void setTenMinutes(int tenMinutes) {
+                this.tenMinutes = tenMinutes;
+            }
+
+            public int getHourly() {
+                return hourly;
+            }
+
+            public void setHourly(int hourly) {
+                this.hourly = hourly;
+            }
+
+            public int getDaily() {
+                return daily;
+            }
+
+            public void setDaily(int daily) {
+                this.daily = daily;
+            }
+        }
+    }
+
 }
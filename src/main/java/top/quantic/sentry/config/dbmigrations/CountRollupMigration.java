@@ -0,0 +1,153 @@
+package top.quantic.sentry.config.dbmigrations;
+
+import com.github.mongobee.changeset.ChangeLog;
+import com.github.mongobee.changeset.ChangeSet;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Builds the rollup collections of the PlayerCount and UserCount time series from the samples stored before rollups
+ * were maintained, and indexes them by group, series and bucket. The samples are read in a single unsorted pass that
+ * feeds every resolution at once.
+ */
+@ChangeLog(order = "002")
+public class CountRollupMigration {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @ChangeSet(order = "01", author = "initiator", id = "01-backfillCountRollups")
+    public void backfillCountRollups(DB db) {
+        backfill(db, "player_count", sample -> null, sample -> (String) sample.get("region"));
+        backfill(db, "user_count", sample -> sample.get("bot") + ":" + sample.get("guild"),
+            sample -> (String) sample.get("status"));
+    }
+
+    @ChangeSet(order = "02", author = "initiator", id = "02-indexRetainedCollections")
+    public void indexRetainedCollections(DB db) {
+        // retention finds, compacts and deletes by date, which would otherwise scan the whole collection each time
+        db.getCollection("player_count").createIndex(new BasicDBObject("timestamp", 1));
+        db.getCollection("user_count").createIndex(new BasicDBObject("timestamp", 1));
+        db.getCollection("jhi_persistent_audit_event").createIndex(new BasicDBObject("auditEventDate", 1));
+    }
+
+    private void backfill(DB db, String baseCollection, Function<DBObject, String> groupMapper,
+                          Function<DBObject, String> seriesMapper) {
+        DBCollection samples = db.getCollection(baseCollection);
+        // retention and range queries go over the raw samples by timestamp too
+        samples.createIndex(new BasicDBObject("timestamp", 1));
+        Map<RollupResolution, Map<Bucket, DBObject>> bucketsByResolution = new EnumMap<>(RollupResolution.class);
+        Map<RollupResolution, Map<Bucket, Date>> lastByResolution = new EnumMap<>(RollupResolution.class);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            bucketsByResolution.put(resolution, new LinkedHashMap<>());
+            lastByResolution.put(resolution, new HashMap<>());
+        }
+        // a single pass in natural order, so no in-memory sort is needed; the last value of each bucket is picked by
+        // comparing timestamps instead
+        try (DBCursor cursor = samples.find()) {
+            for (DBObject sample : cursor) {
+                Date timestamp = (Date) sample.get("timestamp");
+                Number value = (Number) sample.get("value");
+                if (timestamp == null || value == null) {
+                    continue;
+                }
+                String group = groupMapper.apply(sample);
+                String series = seriesMapper.apply(sample);
+                ZonedDateTime time = ZonedDateTime.ofInstant(timestamp.toInstant(), ZoneId.systemDefault());
+                for (RollupResolution resolution : RollupResolution.values()) {
+                    Bucket key = new Bucket(group, series, Date.from(resolution.truncate(time).toInstant()));
+                    accumulate(bucketsByResolution.get(resolution), lastByResolution.get(resolution), key,
+                        timestamp, value.longValue());
+                }
+            }
+        }
+        for (RollupResolution resolution : RollupResolution.values()) {
+            DBCollection rollupCollection = db.getCollection(resolution.getCollection(baseCollection));
+            rollupCollection.createIndex(BasicDBObjectBuilder.start()
+                    .add("group", 1)
+                    .add("series", 1)
+                    .add("timestamp", 1)
+                    .get(),
+                new BasicDBObject("unique", true));
+            rollupCollection.createIndex(new BasicDBObject("timestamp", 1));
+            List<DBObject> rollups = new ArrayList<>(bucketsByResolution.get(resolution).values());
+            for (int i = 0; i < rollups.size(); i += BATCH_SIZE) {
+                rollupCollection.insert(rollups.subList(i, Math.min(i + BATCH_SIZE, rollups.size())));
+            }
+        }
+    }
+
+    private void accumulate(Map<Bucket, DBObject> buckets, Map<Bucket, Date> lastDates, Bucket key, Date timestamp,
+                            long current) {
+        DBObject rollup = buckets.get(key);
+        if (rollup == null) {
+            buckets.put(key, BasicDBObjectBuilder.start()
+                .add("group", key.group)
+                .add("series", key.series)
+                .add("timestamp", key.timestamp)
+                .add("min", current)
+                .add("max", current)
+                .add("sum", current)
+                .add("count", 1L)
+                .add("last", current)
+                .get());
+            lastDates.put(key, timestamp);
+        } else {
+            rollup.put("min", Math.min((Long) rollup.get("min"), current));
+            rollup.put("max", Math.max((Long) rollup.get("max"), current));
+            rollup.put("sum", (Long) rollup.get("sum") + current);
+            rollup.put("count", (Long) rollup.get("count") + 1);
+            if (!timestamp.before(lastDates.get(key))) {
+                rollup.put("last", current);
+                lastDates.put(key, timestamp);
+            }
+        }
+    }
+
+    private static class Bucket {
+        private final String group;
+        private final String series;
+        private final Date timestamp;
+
+        private Bucket(String group, String series, Date timestamp) {
+            this.group = group;
+            this.series = series;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Bucket bucket = (Bucket) o;
+            return Objects.equals(group, bucket.group)
+                && Objects.equals(series, bucket.series)
+                && Objects.equals(timestamp, bucket.timestamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(group, series, timestamp);
+        }
+    }
+}
@@ -20,13 +20,11 @@ import top.quantic.sentry.discord.core.Command;
 import top.quantic.sentry.discord.core.CommandBuilder;
 import top.quantic.sentry.discord.module.CommandSupplier;
 import top.quantic.sentry.domain.GameServer;
+import top.quantic.sentry.service.DownloadManager;
 import top.quantic.sentry.service.GameServerService;
 import top.quantic.sentry.service.SettingService;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -34,8 +32,6 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
@@ -51,12 +47,15 @@ public class GameFiles implements CommandSupplier {
     private final GameServerService gameServerService;
     private final SentryProperties sentryProperties;
     private final SettingService settingService;
+    private final DownloadManager downloadManager;
 
     @Autowired
-    public GameFiles(GameServerService gameServerService, SentryProperties sentryProperties, SettingService settingService) {
+    public GameFiles(GameServerService gameServerService, SentryProperties sentryProperties, SettingService settingService,
+                     DownloadManager downloadManager) {
         this.gameServerService = gameServerService;
         this.sentryProperties = sentryProperties;
         this.settingService = settingService;
+        this.downloadManager = downloadManager;
     }
 
     @Override
@@ -74,7 +73,7 @@ public class GameFiles implements CommandSupplier {
             "Download only files with size in specified range").withRequiredArg().describedAs("range");
         OptionSpec<Void> dryRunSpec = parser.acceptsAll(asList("preview", "test"), "Only prints, no files downloaded");
         OptionSpec<String> nonOptSpec = parser.nonOptions("Expects at least 2 arguments: " +
-            "(1) One of the keywords 'logs' or 'stv', (2) A list of GameServers (IP address, name or region), " +
+            "(1) One of the keywords 'logs', 'stv' or 'cancel', (2) A list of GameServers (IP address, name or region), " +
             "separated by commas. The following argument is an optional glob pattern and is used to only include files matching it");
         return CommandBuilder.of("get")
             .describedAs("Get SourceTV demos or log files from GameServers")
@@ -87,6 +86,10 @@ public class GameFiles implements CommandSupplier {
                 IChannel replyChannel = getTrustedChannel(settingService, message);
                 OptionSet o = context.getOptionSet();
                 List<String> nonOptions = o.valuesOf(nonOptSpec);
+                if (!nonOptions.isEmpty() && "cancel".equalsIgnoreCase(nonOptions.get(0))) {
+                    cancel(replyChannel, nonOptions.size() > 1 ? nonOptions.get(1) : null);
+                    return;
+                }
                 if (nonOptions.size() < 2) {
                     answerToChannel(replyChannel, "Please specify at least 2 non-option arguments: logs/stv and server");
                     return;
@@ -138,105 +141,81 @@ public class GameFiles implements CommandSupplier {
                     return;
                 }
                 String job = RandomStringUtils.randomAlphanumeric(16);
-                long start = System.currentTimeMillis();
-                int code = 0;
-                RequestBuffer.RequestFuture<IMessage> header = answerToChannel(replyChannel, "Retrieving files, please wait...");
-                RequestBuffer.RequestFuture<IMessage> status = answerToChannel(replyChannel, "...");
-                Map<String, List<String>> files = new LinkedHashMap<>();
+                boolean dryRun = o.has(dryRunSpec);
+                Map<String, List<String>> commands = new LinkedHashMap<>();
                 for (GameServer target : targets) {
-                    String key = target.getShortName();
-                    List<String> commands = new ArrayList<>(command);
-                    String targetMirror = mirror + " " + job + "/" + key + ";bye${out}";
+                    List<String> commandLine = new ArrayList<>(command);
+                    String targetMirror = mirror + " " + job + "/" + target.getShortName() + ";bye${out}";
                     targetMirror = targetMirror.replace("${out}", SystemUtils.IS_OS_WINDOWS ? "\"" : "")
                         .replace("${in}", SystemUtils.IS_OS_WINDOWS ? "'" : "\"");
-                    commands.add(targetMirror);
-                    commands.add(getIPAddress(target.getAddress()));
-                    log.debug("Retrieving files from {} server using: {}", target.getShortName(), commands.stream()
+                    commandLine.add(targetMirror);
+                    commandLine.add(getIPAddress(target.getAddress()));
+                    log.debug("Retrieving files from {} server using: {}", target.getShortName(), commandLine.stream()
                         .filter(this::containsPublicInfo)
                         .collect(Collectors.joining(" ")));
-                    updateMessage(header, "Retrieving files from **" + target.getShortName() + "** (" + target.getAddress() + ") ...");
-                    Process process = null;
-                    try {
-                        process = new ProcessBuilder(commands)
-                            .directory(local.toFile())
-                            .start();
-                        startErrorReader(process, target);
-                        try (BufferedReader input = newProcessInputReader(process)) {
-                            String line;
-                            while ((line = input.readLine()) != null) {
-                                if (containsPublicInfo(line)) {
-                                    log.debug("[" + target + "] " + line);
-                                    if (line.startsWith("Transferring file")) {
-                                        String filename = line.replaceAll("^.*`(.+)'$", "$1");
-                                        files.computeIfAbsent(key, k -> new ArrayList<>()).add(filename);
-                                        refreshFiles(status, files);
-                                    }
-                                }
-                            }
+                    commands.put(target.getShortName(), commandLine);
+                }
+                RequestBuffer.RequestFuture<IMessage> header = answerToChannel(replyChannel, "Retrieving files from "
+                    + inflect(targets.size(), "server") + ", please wait... (use `get cancel " + job + "` to stop)");
+                RequestBuffer.RequestFuture<IMessage> status = answerToChannel(replyChannel, "...");
+                downloadManager.submit(job, local, commands, progress -> updateMessage(status, formatProgress(progress)))
+                    .getFuture()
+                    .thenAccept(completed -> {
+                        if (completed.isCancelled()) {
+                            answerToChannel(replyChannel, "Download " + job + " was cancelled");
+                        } else if (!dryRun) {
+                            answerToChannel(replyChannel, "Your requested files are available under https://quantic.top/files/" + job);
+                        } else {
+                            answerToChannel(replyChannel, "Operation completed " + (completed.getFailed() > 0 ? "with errors" : "successfully"));
                         }
-                        process.waitFor(5, TimeUnit.MINUTES);
-                        code += process.exitValue();
-                        log.debug("Process completed with exit code: {}", process.exitValue());
-                    } catch (IOException e) {
-                        log.warn("Could not execute process", e);
-                        answerToChannel(replyChannel, "Could not execute process");
-                        return;
-                    } catch (InterruptedException e) {
-                        log.warn("Process was interrupted", e);
-                        answerToChannel(replyChannel, "Process was interrupted");
-                        return;
-                    } finally {
-                        if (process != null && process.isAlive()) {
-                            process.destroyForcibly();
+                        long millis = System.currentTimeMillis() - completed.getStart();
+                        Path dir = local.resolve(job);
+                        if (Files.exists(dir)) {
+                            String size = humanizeBytes(FileUtils.sizeOf(dir.toFile()));
+                            updateMessage(header, "Got " + size + " in " + humanizeShort(Duration.ofMillis(millis)));
+                        } else {
+                            updateMessage(header, "Completed in " + humanizeShort(Duration.ofMillis(millis)));
                         }
-                    }
-                }
-                if (!o.has(dryRunSpec)) {
-                    answerToChannel(replyChannel, "Your requested files are available under https://quantic.top/files/" + job);
-                } else {
-                    answerToChannel(replyChannel, "Operation completed " + (code > 0 ? "with errors" : "successfully"));
-                }
-                long millis = System.currentTimeMillis() - start;
-                Path dir = local.resolve(job);
-                if (Files.exists(dir)) {
-                    String size = humanizeBytes(FileUtils.sizeOf(dir.toFile()));
-                    updateMessage(header, "Got " + size + " in " + humanizeShort(Duration.ofMillis(millis)));
-                } else {
-                    updateMessage(header, "Completed in " + humanizeShort(Duration.ofMillis(millis)));
-                }
+                    });
             })
             .onAuthorDenied(CommandBuilder.noPermission())
             .build();
 
     }
 
-    private CompletableFuture<RequestBuffer.RequestFuture<IMessage>> refreshFiles(RequestBuffer.RequestFuture<IMessage> message, Map<String, List<String>> files) {
-        return updateMessage(message, files.entrySet().stream()
-            .map(entry -> "• **" + entry.getKey() + "**: " + entry.getValue().stream().collect(Collectors.joining(", ")))
-            .collect(Collectors.joining("\n")));
-    }
-
-    private void startErrorReader(Process process, GameServer target) {
-        CompletableFuture.runAsync(() -> {
-            try (BufferedReader input = newProcessErrorReader(process)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    if (containsPublicInfo(line)) {
-                        log.warn("[" + target + "] " + line);
-                    }
-                }
-            } catch (IOException e) {
-                log.warn("Could not read error stream", e);
+    private void cancel(IChannel replyChannel, String job) {
+        if (job == null) {
+            List<DownloadManager.Job> jobs = downloadManager.getJobs();
+            if (jobs.isEmpty()) {
+                answerToChannel(replyChannel, "No downloads in progress");
+            } else {
+                answerToChannel(replyChannel, "Downloads in progress: " + jobs.stream()
+                    .map(DownloadManager.Job::getId)
+                    .collect(Collectors.joining(", ")) + " - use `get cancel <id>` to stop one");
             }
-        });
+        } else if (downloadManager.cancel(job)) {
+            answerToChannel(replyChannel, "Cancelling download " + job + "...");
+        } else {
+            answerToChannel(replyChannel, "No download in progress with id " + job);
+        }
     }
 
-    private BufferedReader newProcessInputReader(Process p) {
-        return new BufferedReader(new InputStreamReader(p.getInputStream(), Charset.forName("UTF-8")));
+    private String formatProgress(DownloadManager.Job job) {
+        return job.getTargets().stream()
+            .map(this::formatTarget)
+            .collect(Collectors.joining("\n"));
     }
 
-    private BufferedReader newProcessErrorReader(Process p) {
-        return new BufferedReader(new InputStreamReader(p.getErrorStream(), Charset.forName("UTF-8")));
+    private String formatTarget(DownloadManager.Target target) {
+        List<String> files = target.getFiles();
+        String status = "• **" + target.getName() + "**: " + target.getState().toString().toLowerCase().replace('_', ' ');
+        if (!files.isEmpty()) {
+            status += " - " + inflect(files.size(), "file") + ", last: " + files.get(files.size() - 1);
+        }
+        if (target.getState() == DownloadManager.State.FAILED && target.getError() != null) {
+            status += " (" + target.getError() + ")";
+        }
+        return status;
     }
 
     private String sanitizeRange(String range) {
@@ -278,12 +257,13 @@ public class GameFiles implements CommandSupplier {
     }
 
     private String getExamples() {
-        return "Usage: **get** <**logs**|**stv**> <__server__> [__file-glob__] [**after** __timex__] [**before** __timex__] [**size** __range__] [**test**]\n\n" +
+        return "Usage: **get** <**logs**|**stv**> <__server__> [__file-glob__] [**after** __timex__] [**before** __timex__] [**size** __range__] [**test**]\n" +
+            "Or: **get cancel** [__id__]\n\n" +
             "Many options come with defaults so there is no need to configure each one, for example:\n" +
             "Command ``get stv chi4`` will download all SourceTV demos since 2 days ago from chi4 server.\n" +
             "Command ``get logs chi`` will download all Log files since 2 days ago from all Chicago servers.\n\n" +
             "Further parameter information:\n" +
-            "- The first parameter determines what files are retrieved: .log files for **logs** and .dem files for **stv**\n" +
+            "- The first parameter determines what files are retrieved: .log files for **logs** and .dem files for **stv**. Servers are mirrored in parallel and the status of each one is updated as files arrive. Use ``get cancel <id>`` with the id given when starting to stop a download.\n" +
             "- The second parameter determines the servers from where files will be retrieved. This is a list of GameServers (IP address, name or region), separated by commas.\n" +
             "- The third parameter is optional, and represents a glob of files to filter by name. For example using 'pl_upward' as parameter when using the 'stv' mode, will only download demos matching pl_upward in their names.\n" +
             "- A series of optional arguments can be included to filter the downloaded files, for example:\n" +
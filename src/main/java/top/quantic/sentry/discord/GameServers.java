@@ -4,21 +4,23 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import sx.blah.discord.handle.impl.obj.Message;
 import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.util.EmbedBuilder;
-import sx.blah.discord.util.RequestBuffer;
 import top.quantic.sentry.config.Constants;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.discord.core.Command;
 import top.quantic.sentry.discord.core.CommandBuilder;
 import top.quantic.sentry.discord.module.CommandSupplier;
+import top.quantic.sentry.discord.util.SummaryMessage;
 import top.quantic.sentry.domain.GameServer;
 import top.quantic.sentry.domain.Setting;
 import top.quantic.sentry.service.GameServerService;
 import top.quantic.sentry.service.SettingService;
+import top.quantic.sentry.service.util.FanOut;
 import top.quantic.sentry.service.util.Monitor;
 import top.quantic.sentry.service.util.Result;
 
@@ -28,6 +30,10 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -40,17 +46,31 @@ import static top.quantic.sentry.service.util.MiscUtil.getIPAddress;
 import static top.quantic.sentry.service.util.MiscUtil.inflect;
 
 @Component
-public class GameServers implements CommandSupplier {
+public class GameServers implements CommandSupplier, DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(GameServers.class);
+    private static final int INLINE_RESPONSE_LIMIT = 200;
 
     private final GameServerService gameServerService;
     private final SettingService settingService;
+    private final SentryProperties sentryProperties;
+    private final FanOut fanOut;
+    private final ExecutorService summaryExecutor;
 
     @Autowired
-    public GameServers(GameServerService gameServerService, SettingService settingService) {
+    public GameServers(GameServerService gameServerService, SettingService settingService,
+                       SentryProperties sentryProperties) {
         this.gameServerService = gameServerService;
         this.settingService = settingService;
+        this.sentryProperties = sentryProperties;
+        SentryProperties.Discord discord = sentryProperties.getDiscord();
+        this.fanOut = new FanOut("game-servers", Math.max(1, discord.getTargetConcurrency()), discord.getTargetTimeout());
+        AtomicInteger count = new AtomicInteger(0);
+        this.summaryExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "game-servers-summary-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -79,30 +99,19 @@ public class GameServers implements CommandSupplier {
                 String targetList = targets.stream()
                     .map(GameServer::getShortNameAndAddress)
                     .collect(Collectors.joining(", "));
+                if (targets.isEmpty()) {
+                    answer(message, "Could not find any server given your query");
+                    return;
+                }
                 if ("restart".equals(action)) {
-                    answerToChannel(channel, "Restarting " + inflect(targets.size(), "server") + ": " + targetList);
-                    int processed = process(targets, gameServerService::tryRestart, channel);
-                    if (processed - targets.size() > 0) {
-                        answerToChannel(channel, "Completed: " + (processed - targets.size()) + " out of " + inflect(targets.size(), "server") + " processed with errors.");
-                    } else {
-                        answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
-                    }
+                    answerToChannel(channel, "Restarting " + inflect(targets.size(), "server") + ": " + targetList + queueNote());
+                    process(targets, gameServerService::tryRestart, channel);
                 } else if ("stop".equals(action)) {
-                    answerToChannel(channel, "Stopping " + inflect(targets.size(), "server") + ": " + targetList);
-                    int processed = process(targets, gameServerService::tryStop, channel);
-                    if (processed - targets.size() > 0) {
-                        answerToChannel(channel, "Completed: " + (processed - targets.size()) + " out of " + inflect(targets.size(), "server") + " processed with errors.");
-                    } else {
-                        answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
-                    }
+                    answerToChannel(channel, "Stopping " + inflect(targets.size(), "server") + ": " + targetList + queueNote());
+                    process(targets, gameServerService::tryStop, channel);
                 } else if ("update".equals(action)) {
-                    answerToChannel(channel, "Updating game version on servers matching " + serverQuery);
-                    int processed = process(targets, gameServerService::tryUpdate, channel);
-                    if (processed - targets.size() > 0) {
-                        answerToChannel(channel, "Completed: " + (processed - targets.size()) + " out of " + inflect(targets.size(), "server") + " processed with errors.");
-                    } else {
-                        answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
-                    }
+                    answerToChannel(channel, "Updating game version on servers matching " + serverQuery + queueNote());
+                    process(targets, gameServerService::tryUpdate, channel);
                 } else if ("install-mod".equals(action)) {
                     if (args.length < 3) {
                         answer(message, "You must add an extra argument with the mod ID or name");
@@ -111,13 +120,8 @@ public class GameServers implements CommandSupplier {
                     String mod = args[2];
                     Optional<Setting> setting = settingService.findMostRecentByGuildAndKey(Constants.ANY, mod);
                     String modName = setting.map(Setting::getValue).orElse(mod);
-                    answerToChannel(channel, "Installing mod " + modName + " on servers matching " + serverQuery);
-                    int processed = process(targets, target -> gameServerService.tryModInstall(target, modName), channel);
-                    if (processed - targets.size() > 0) {
-                        answerToChannel(channel, "Completed: " + (processed - targets.size()) + " out of " + inflect(targets.size(), "server") + " processed with errors.");
-                    } else {
-                        answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
-                    }
+                    answerToChannel(channel, "Installing mod " + modName + " on servers matching " + serverQuery + queueNote());
+                    process(targets, target -> gameServerService.tryModInstall(target, modName), channel);
                 } else if ("status".equals(action)) {
                     answerPrivately(message, "Retrieving status for servers matching " + serverQuery);
                     int latest = gameServerService.getLatestVersion();
@@ -185,24 +189,16 @@ public class GameServers implements CommandSupplier {
                         }
                     }
                 } else if ("console".equals(action)) {
-                    answerToChannel(channel, "Retrieving console for servers matching " + serverQuery);
-                    int errors = 0;
-                    for (GameServer target : targets) {
-                        Result<String> result = gameServerService.tryGetConsole(target);
-                        String response;
-                        if (result.isSuccessful()) {
-                            response = "• [**" + target.getShortName() + "**] (" + target.getAddress() + ")\n" + result.getContent() + "\n";
-                        } else {
-                            errors++;
-                            response = resultLine(target, result);
+                    answerToChannel(channel, "Retrieving console for servers matching " + serverQuery + queueNote());
+                    process(targets, gameServerService::tryGetConsole, channel).thenAccept(results -> {
+                        for (int i = 0; i < targets.size(); i++) {
+                            GameServer target = targets.get(i);
+                            Result<?> result = results.get(i);
+                            if (result.isSuccessful()) {
+                                answerToChannel(channel, "• [**" + target.getShortName() + "**] (" + target.getAddress() + ")\n" + result.getContent() + "\n");
+                            }
                         }
-                        answerToChannel(channel, response);
-                    }
-                    if (errors > 0) {
-                        answerToChannel(channel, "Completed: " + errors + " out of " + inflect(targets.size(), "server") + " processed with errors.");
-                    } else {
-                        answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
-                    }
+                    });
                 } else {
                     answer(message, "Invalid action, must be one of: restart, stop, update, install-mod, status or console.");
                 }
@@ -211,31 +207,52 @@ public class GameServers implements CommandSupplier {
             .build();
     }
 
-    private int process(List<GameServer> servers, Function<GameServer, Result<?>> action, IChannel channel) {
-        RequestBuffer.RequestFuture<IMessage> status = null;
-        int processed = 0;
-        StringBuilder builder = new StringBuilder();
-        for (GameServer target : servers) {
-            Result<?> result = action.apply(target);
-            if (result.isSuccessful()) {
-                processed++;
-            }
-            String toAppend = resultLine(target, result);
-            if (status == null || builder.length() + toAppend.length() > Message.MAX_MESSAGE_LENGTH) {
-                status = answerToChannel(channel, toAppend);
-                builder.setLength(0);
-                builder.append(toAppend);
-            } else {
-                IMessage newStatus = status.get();
-                builder.append(toAppend);
-                status = RequestBuffer.request(() -> (IMessage) newStatus.edit(builder.toString()));
-            }
+    /**
+     * Run an action on every target, at most a configured number at a time, collecting each result into a single summary
+     * message as it arrives. A completion note follows the summary once every target is processed.
+     *
+     * @return a future completed with the results in the order of the targets, once the completion note is sent
+     */
+    private <T> CompletableFuture<List<Result<T>>> process(List<GameServer> targets, Function<GameServer, Result<T>> action, IChannel channel) {
+        SummaryMessage summary = new SummaryMessage(channel, summaryExecutor, targets.stream()
+            .map(target -> summaryLine(target, "Pending"))
+            .collect(Collectors.toList()));
+        return fanOut.run(targets, action, this::failure, (index, result) -> summary.set(index, resultLine(targets.get(index), result)))
+            .thenCompose(results -> summary.flushed().thenApply(v -> results))
+            .whenComplete((results, error) -> {
+                if (error != null) {
+                    log.warn("Could not process {}", inflect(targets.size(), "server"), error);
+                    return;
+                }
+                long errors = results.stream().filter(result -> !result.isSuccessful()).count();
+                if (errors > 0) {
+                    answerToChannel(channel, "Completed: " + errors + " out of " + inflect(targets.size(), "server") + " processed with errors.");
+                } else {
+                    answerToChannel(channel, "Completed: " + inflect(targets.size(), "server") + " successfully processed.");
+                }
+            });
+    }
+
+    private <T> Result<T> failure(GameServer target, Throwable error) {
+        if (error instanceof TimeoutException) {
+            log.warn("[{}] Operation timed out", target);
+            return Result.error("Timed out after " + humanizeShort(Duration.ofMillis(sentryProperties.getDiscord().getTargetTimeout())), error);
         }
-        return processed;
+        log.warn("[{}] Operation failed", target, error);
+        return Result.error("Failed: " + getRootCause(error).getClass().getSimpleName(), error);
+    }
+
+    private String queueNote() {
+        int ahead = gameServerService.getPanelQueuedAhead();
+        return ahead > 0 ? " (queued, " + ahead + " ahead)" : "";
     }
 
     private String resultLine(GameServer server, Result<?> result) {
-        return "• [**" + server.getShortName() + "**] (" + server.getAddress() + ") " + result.getMessage() + "\n";
+        return summaryLine(server, result.getMessage());
+    }
+
+    private String summaryLine(GameServer server, String line) {
+        return "• [**" + server.getShortName() + "**] (" + server.getAddress() + ") " + line;
     }
 
     private Command servers() {
@@ -297,39 +314,104 @@ public class GameServers implements CommandSupplier {
                 }
                 answer(message, "Connecting to " + inflect(targets.size(), "server") + ": "
                     + targets.stream().map(GameServer::getShortNameAndAddress).collect(Collectors.joining(", ")));
-                CompletableFuture.runAsync(() -> {
-                    for (GameServer target : targets) {
-                        long start = System.currentTimeMillis();
-                        Result<String> response = gameServerService.tryRcon(target, command);
-                        if (response.isSuccessful() && response.getContent().length() > EmbedBuilder.FIELD_CONTENT_LIMIT) {
-                            answer(message, "**" + target.getShortNameAndAddress() + "**\n```\n" +
-                                response.getContent() + "\n```");
-                        } else {
-                            EmbedBuilder builder = new EmbedBuilder()
-                                .setLenient(true)
-                                .withTitle("RCON to " + target.getShortNameAndAddress())
-                                .appendField("Command", "`" + command + "`", false);
-                            if (response.isSuccessful()) {
-                                log.debug("RCON response from {} for command {} is: {}", target, command, response.getContent());
-                                Duration millis = Duration.ofMillis(System.currentTimeMillis() - start);
-                                String result = quiet ? "Executed in " + humanizeShort(millis) : "```\n" + response.getContent() + "\n```";
-                                builder.appendField("Response", result, false)
-                                    .withColor(new Color(0x00aa00));
-                            } else {
-                                log.debug("Unsuccessful response from {} for command {}: {}", target, command, response.getContent());
-                                builder.appendField("Response", response.getMessage() +
-                                    (response.getError() != null ? "(" + response.getError().getMessage() + ")" : ""), false)
-                                    .withColor(new Color(0xaa0000));
+                if (targets.size() == 1) {
+                    fanOut.run(targets, target -> rcon(target, command), (target, error) -> new RconReply(failure(target, error), 0),
+                        (index, reply) -> rconEmbed(message, targets.get(index), command, quiet, reply));
+                    return;
+                }
+                SummaryMessage summary = new SummaryMessage(message.getChannel(), summaryExecutor, targets.stream()
+                    .map(target -> summaryLine(target, "Pending"))
+                    .collect(Collectors.toList()));
+                fanOut.run(targets, target -> rcon(target, command), (target, error) -> new RconReply(failure(target, error), 0),
+                    (index, reply) -> summary.set(index, rconLine(targets.get(index), quiet, reply)))
+                    .thenCompose(replies -> summary.flushed().thenApply(v -> replies))
+                    .thenAccept(replies -> {
+                        // responses too long for the summary follow it, in the order of the targets
+                        for (int i = 0; i < targets.size(); i++) {
+                            RconReply reply = replies.get(i);
+                            if (!quiet && reply.result.isSuccessful() && !isInline(reply.result.getContent())) {
+                                answer(message, "**" + targets.get(i).getShortNameAndAddress() + "**\n```\n" +
+                                    reply.result.getContent() + "\n```");
                             }
-                            sendMessage(message.getChannel(), builder.build());
                         }
-                    }
-                });
+                    });
             })
             .onAuthorDenied(CommandBuilder.noPermission())
             .build();
     }
 
+    private RconReply rcon(GameServer target, String command) {
+        long start = System.currentTimeMillis();
+        Result<String> response = gameServerService.tryRcon(target, command);
+        if (response.isSuccessful()) {
+            log.debug("RCON response from {} for command {} is: {}", target, command, response.getContent());
+        } else {
+            log.debug("Unsuccessful response from {} for command {}: {}", target, command, response.getContent());
+        }
+        return new RconReply(response, System.currentTimeMillis() - start);
+    }
+
+    private void rconEmbed(IMessage message, GameServer target, String command, boolean quiet, RconReply reply) {
+        Result<String> response = reply.result;
+        if (response.isSuccessful() && response.getContent().length() > EmbedBuilder.FIELD_CONTENT_LIMIT) {
+            answer(message, "**" + target.getShortNameAndAddress() + "**\n```\n" +
+                response.getContent() + "\n```");
+            return;
+        }
+        EmbedBuilder builder = new EmbedBuilder()
+            .setLenient(true)
+            .withTitle("RCON to " + target.getShortNameAndAddress())
+            .appendField("Command", "`" + command + "`", false);
+        if (response.isSuccessful()) {
+            String result = quiet ? "Executed in " + humanizeShort(Duration.ofMillis(reply.elapsed)) :
+                "```\n" + response.getContent() + "\n```";
+            builder.appendField("Response", result, false)
+                .withColor(new Color(0x00aa00));
+        } else {
+            builder.appendField("Response", response.getMessage() +
+                (response.getError() != null ? "(" + response.getError().getMessage() + ")" : ""), false)
+                .withColor(new Color(0xaa0000));
+        }
+        sendMessage(message.getChannel(), builder.build());
+    }
+
+    private String rconLine(GameServer target, boolean quiet, RconReply reply) {
+        Result<String> response = reply.result;
+        if (!response.isSuccessful()) {
+            return summaryLine(target, response.getMessage() +
+                (response.getError() != null ? " (" + response.getError().getMessage() + ")" : ""));
+        }
+        String content = response.getContent() == null ? "" : response.getContent().trim();
+        if (quiet || content.isEmpty()) {
+            return summaryLine(target, "Executed in " + humanizeShort(Duration.ofMillis(reply.elapsed)));
+        } else if (isInline(content)) {
+            return summaryLine(target, "`" + content + "`");
+        } else {
+            return summaryLine(target, "Response below");
+        }
+    }
+
+    private boolean isInline(String content) {
+        String trimmed = content == null ? "" : content.trim();
+        return trimmed.length() <= INLINE_RESPONSE_LIMIT && !trimmed.contains("\n") && !trimmed.contains("`");
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        fanOut.shutdown();
+        summaryExecutor.shutdownNow();
+    }
+
+    private static class RconReply {
+        private final Result<String> result;
+        private final long elapsed;
+
+        private RconReply(Result<String> result, long elapsed) {
+            this.result = result;
+            this.elapsed = elapsed;
+        }
+    }
+
     private String rconExamples() {
         return "Usage: **rcon** <__servers__> <__command__>\n" +
             "Where **servers** is a list of targeted GameServers (IP address, name, region), separated by commas.\n" +
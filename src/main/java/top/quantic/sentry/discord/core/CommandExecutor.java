@@ -0,0 +1,201 @@
+package top.quantic.sentry.discord.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs Discord commands on a dedicated pool of workers, separate from the shared task executor. Pending commands are
+ * queued per guild and per user, and workers take them round-robin across guilds and then across the users of each
+ * guild, so a single busy guild or user cannot starve the rest. The total number of pending commands and the number
+ * of pending commands per user are bounded, and commands over those limits are rejected.
+ */
+@Component
+public class CommandExecutor implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandExecutor.class);
+
+    private final TaggedMetricRegistry taggedMetricRegistry;
+    private final int queueCapacity;
+    private final int userQueueCapacity;
+    private final ExecutorService workers;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<String, GuildQueue> guilds = new HashMap<>();
+    private final Deque<GuildQueue> readyGuilds = new ArrayDeque<>();
+    private int queued = 0;
+
+    @Autowired
+    public CommandExecutor(SentryProperties sentryProperties, TaggedMetricRegistry taggedMetricRegistry) {
+        this.taggedMetricRegistry = taggedMetricRegistry;
+        this.queueCapacity = sentryProperties.getDiscord().getCommandQueueCapacity();
+        this.userQueueCapacity = sentryProperties.getDiscord().getCommandUserQueueCapacity();
+        int concurrency = Math.max(1, sentryProperties.getDiscord().getCommandConcurrency());
+        AtomicInteger count = new AtomicInteger(0);
+        this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "command-executor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(this::work);
+        }
+        initMetrics();
+    }
+
+    private void initMetrics() {
+        taggedMetricRegistry.register(MetricKey.of("discord.command.queued"), (Gauge<Integer>) this::getQueued);
+    }
+
+    /**
+     * Queue a command for execution.
+     *
+     * @param guild       the guild the command was issued in, or a placeholder for private channels
+     * @param user        the user that issued the command
+     * @param commandName the name of the command, used to tag its metrics
+     * @param task        the command execution
+     * @return <code>true</code> if the command was queued, or <code>false</code> if it was rejected due to overload
+     */
+    public boolean submit(String guild, String user, String commandName, Runnable task) {
+        lock.lock();
+        try {
+            GuildQueue guildQueue = guilds.computeIfAbsent(guild, GuildQueue::new);
+            UserQueue userQueue = guildQueue.users.computeIfAbsent(user, UserQueue::new);
+            if (queued >= queueCapacity || userQueue.tasks.size() >= userQueueCapacity) {
+                if (userQueue.tasks.isEmpty()) {
+                    guildQueue.users.remove(user);
+                }
+                if (guildQueue.users.isEmpty()) {
+                    guilds.remove(guild);
+                }
+                taggedMetricRegistry.meter(MetricKey.of("discord.command.rejected")).mark();
+                log.debug("Rejecting command {} from {} in {}: {} commands queued", commandName, user, guild, queued);
+                return false;
+            }
+            if (guildQueue.readyUsers.isEmpty()) {
+                readyGuilds.add(guildQueue);
+            }
+            if (userQueue.tasks.isEmpty()) {
+                guildQueue.readyUsers.add(userQueue);
+            }
+            userQueue.tasks.add(new Task(commandName, task));
+            queued++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (readyGuilds.isEmpty()) {
+                notEmpty.await();
+            }
+            GuildQueue guildQueue = readyGuilds.poll();
+            UserQueue userQueue = guildQueue.readyUsers.poll();
+            Task task = userQueue.tasks.poll();
+            if (userQueue.tasks.isEmpty()) {
+                guildQueue.users.remove(userQueue.id);
+            } else {
+                guildQueue.readyUsers.add(userQueue);
+            }
+            if (guildQueue.readyUsers.isEmpty()) {
+                guilds.remove(guildQueue.id);
+            } else {
+                readyGuilds.add(guildQueue);
+            }
+            queued--;
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            taggedMetricRegistry.timer(MetricKey.of("discord.command.queue_wait", "command", task.commandName))
+                .update(System.nanoTime() - task.queuedAt, TimeUnit.NANOSECONDS);
+            Timer.Context context = taggedMetricRegistry
+                .timer(MetricKey.of("discord.command.execution", "command", task.commandName)).time();
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                log.warn("Command {} terminated exceptionally", task.commandName, e);
+            } finally {
+                context.stop();
+            }
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        workers.shutdownNow();
+    }
+
+    private static class GuildQueue {
+        private final String id;
+        private final Map<String, UserQueue> users = new HashMap<>();
+        private final Deque<UserQueue> readyUsers = new ArrayDeque<>();
+
+        private GuildQueue(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class UserQueue {
+        private final String id;
+        private final Deque<Task> tasks = new ArrayDeque<>();
+
+        private UserQueue(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class Task {
+        private final String commandName;
+        private final Runnable runnable;
+        private final long queuedAt = System.nanoTime();
+
+        private Task(String commandName, Runnable runnable) {
+            this.commandName = commandName;
+            this.runnable = runnable;
+        }
+    }
+}
@@ -3,26 +3,57 @@ package top.quantic.sentry.discord.core;
 import org.springframework.stereotype.Component;
 import sx.blah.discord.api.IDiscordClient;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Component
 public class CommandRegistry {
 
-    private Map<IDiscordClient, List<Command>> commandsMap = new ConcurrentHashMap<>();
+    private Map<IDiscordClient, RoutingTable> commandsMap = new ConcurrentHashMap<>();
 
     public List<Command> getCommands(IDiscordClient client) {
-        return commandsMap.computeIfAbsent(client, k -> new ArrayList<>());
+        return getRoutingTable(client).commands;
+    }
+
+    /**
+     * Find the command registered for a client under the given name or alias. If more than one command claims the
+     * same name, the one registered first wins.
+     *
+     * @param client the client the command was registered with
+     * @param name   the name or alias of the command
+     * @return the command, or an empty Optional if none matches
+     */
+    public Optional<Command> findCommand(IDiscordClient client, String name) {
+        RoutingTable table = commandsMap.get(client);
+        return table == null ? Optional.empty() : Optional.ofNullable(table.byName.get(name));
     }
 
     public void addAll(IDiscordClient client, Collection<Command> commands) {
-        getCommands(client).addAll(commands);
+        getRoutingTable(client).addAll(commands);
     }
 
     public List<Command> remove(IDiscordClient client) {
-        return commandsMap.remove(client);
+        RoutingTable table = commandsMap.remove(client);
+        return table == null ? null : table.commands;
+    }
+
+    private RoutingTable getRoutingTable(IDiscordClient client) {
+        return commandsMap.computeIfAbsent(client, k -> new RoutingTable());
+    }
+
+    private static class RoutingTable {
+        private final List<Command> commands = new CopyOnWriteArrayList<>();
+        private volatile Map<String, Command> byName = Collections.emptyMap();
+
+        private synchronized void addAll(Collection<Command> added) {
+            commands.addAll(added);
+            Map<String, Command> map = new HashMap<>();
+            for (Command command : commands) {
+                map.putIfAbsent(command.getName(), command);
+                command.getAliases().forEach(alias -> map.putIfAbsent(alias, command));
+            }
+            byName = map;
+        }
     }
 }
@@ -0,0 +1,115 @@
+package top.quantic.sentry.discord.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits command arguments in a single pass. Tokens are separated by spaces or tabs, and text wrapped within double
+ * or single quotes is kept as one token, while an unmatched quote is skipped. Quote characters are removed from
+ * tokens when unquoting, and once the argument limit is reached the rest of the input is returned as-is as the last
+ * token.
+ */
+public final class CommandTokenizer {
+
+    private CommandTokenizer() {
+    }
+
+    /**
+     * Split the arguments of a command.
+     *
+     * @param args             the raw arguments
+     * @param limit            the maximum number of tokens, or 0 for no limit
+     * @param unquote          whether to remove quote characters from tokens
+     * @param parameterAliases aliases to replace tokens with. A "key=value" token whose key starts with an alias
+     *                         is turned into "--key=value".
+     * @return the tokens
+     */
+    public static String[] split(String args, int limit, boolean unquote, Map<String, String> parameterAliases) {
+        List<String> tokens = new ArrayList<>();
+        int length = args.length();
+        int count = 1;
+        int i = 0;
+        while (i < length) {
+            char c = args.charAt(i);
+            int end;
+            if (c == ' ' || c == '\t') {
+                i++;
+                continue;
+            } else if (c == '"' || c == '\'') {
+                int close = args.indexOf(c, i + 1);
+                if (close < 0) {
+                    i++;
+                    continue;
+                }
+                end = close + 1;
+            } else {
+                end = i + 1;
+                while (end < length && !isDelimiter(args.charAt(end))) {
+                    end++;
+                }
+            }
+            if (limit > 0 && ++count > limit) {
+                tokens.add(args.substring(i));
+                break;
+            }
+            tokens.add(unquote && end - i > 1 && isQuote(c) ? removeQuotes(args, i, end) : args.substring(i, end));
+            i = end;
+        }
+        String[] result = new String[tokens.size()];
+        boolean hasAliases = parameterAliases != null && !parameterAliases.isEmpty();
+        for (int j = 0; j < result.length; j++) {
+            String token = tokens.get(j);
+            result[j] = hasAliases ? convert(token, parameterAliases) : token;
+        }
+        return result;
+    }
+
+    private static String convert(String token, Map<String, String> parameterAliases) {
+        // if this token is in the form key=value and starts with a key present, prepend "--" to it
+        if (isKeyValue(token)) {
+            for (String key : parameterAliases.keySet()) {
+                if (token.startsWith(key)) {
+                    return "--" + token;
+                }
+            }
+        }
+        return parameterAliases.getOrDefault(token, token);
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ' ' || c == '\t' || isQuote(c);
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+    private static String removeQuotes(String args, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = args.charAt(i);
+            if (!isQuote(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isKeyValue(String token) {
+        int separator = token.indexOf('=');
+        if (separator <= 0 || separator == token.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (i != separator && !isWordCharacter(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
@@ -1,5 +1,7 @@
 package top.quantic.sentry.discord.core;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import org.slf4j.Logger;
@@ -21,35 +23,36 @@ import top.quantic.sentry.service.PermissionService;
 import top.quantic.sentry.service.SettingService;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static top.quantic.sentry.discord.util.DiscordUtil.answerPrivately;
 import static top.quantic.sentry.discord.util.DiscordUtil.humanize;
 
 @Component
 public class Dispatcher implements ListenerSupplier, IListener<MessageReceivedEvent> {
 
     private static final Logger log = LoggerFactory.getLogger(Dispatcher.class);
-    private static final Pattern QUOTE_PATTERN = Pattern.compile("[^ \\t\"']+|\"([^\"]*)\"|'([^']*)'");
-    private static final Pattern KEY_VALUE_PATTERN = Pattern.compile("^[\\w]+=[\\w]+$");
 
     private final CommandRegistry commandRegistry;
     private final SettingService settingService;
     private final PermissionService permissionService;
     private final Help help;
-    private final Executor taskExecutor;
+    private final CommandExecutor commandExecutor;
+    // prefix sets are cached by SettingService until they change, so tries are kept by identity of their set
+    private final Cache<Set<String>, PrefixTrie> prefixTries = CacheBuilder.newBuilder().weakKeys().build();
+    private final Cache<String, Boolean> overloadReplies = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .build();
 
     @Autowired
     public Dispatcher(CommandRegistry commandRegistry, SettingService settingService,
-                      PermissionService permissionService, Help help, Executor taskExecutor) {
+                      PermissionService permissionService, Help help, CommandExecutor commandExecutor) {
         this.commandRegistry = commandRegistry;
         this.settingService = settingService;
         this.permissionService = permissionService;
         this.help = help;
-        this.taskExecutor = taskExecutor;
+        this.commandExecutor = commandExecutor;
     }
 
     @Override
@@ -59,142 +62,125 @@ public class Dispatcher implements ListenerSupplier, IListener<MessageReceivedEv
 
     @Override
     public void handle(MessageReceivedEvent event) {
-        CompletableFuture.runAsync(() -> execute(event), taskExecutor)
-            .exceptionally(t -> {
-                log.warn("Command executor terminated exceptionally", t);
-                return null;
-            });
-    }
-
-    private void execute(MessageReceivedEvent event) {
+        // route on the event thread so that messages without a command are never queued
         IMessage message = event.getMessage();
         String content = message.getContent();
         String guild = message.getChannel().isPrivate() ? Constants.ANY : message.getChannel().getGuild().getStringID();
-        Set<String> prefixes = settingService.getPrefixes(guild);
-        Optional<String> prefix = prefixes.stream().filter(content::startsWith).findAny();
-        if (prefix.isPresent()) {
-            List<Command> commands = commandRegistry.getCommands(event.getClient());
-            String name = content.substring(prefix.get().length(), content.contains(" ") ? content.indexOf(" ") : content.length()).toLowerCase();
-            Optional<Command> cmd = commands.stream()
-                .filter(c -> c.getName().equals(name) || c.getAliases().contains(name))
-                .findAny();
+        String prefix = getPrefixTrie(settingService.getPrefixes(guild)).match(content);
+        if (prefix != null) {
+            int space = content.indexOf(' ', prefix.length());
+            int nameEnd = space < 0 ? content.length() : space;
+            String name = content.substring(prefix.length(), nameEnd).toLowerCase();
+            Optional<Command> cmd = commandRegistry.findCommand(event.getClient(), name);
             if (cmd.isPresent()) {
-                Command command = cmd.get();
-                CommandContext context = new CommandContext();
-                context.setMessage(message);
-                context.setCommand(command);
-                context.setCommandName(name);
-                context.setPrefix(prefix.get());
+                String user = message.getAuthor() == null ? "" : message.getAuthor().getStringID();
+                if (!commandExecutor.submit(guild, user, cmd.get().getName(),
+                    () -> execute(event, prefix, name, space, cmd.get()))) {
+                    log.info("[{}] Too many pending commands, rejecting {} from {}",
+                        message.getClient().getOurUser().getName(), name, humanize(message.getAuthor()));
+                    // only warn once in a while so a flood does not turn into a flood of replies
+                    if (overloadReplies.asMap().putIfAbsent(user, Boolean.TRUE) == null) {
+                        answerPrivately(message, "I'm handling too many commands right now, please try again in a moment");
+                    }
+                }
+            }
+        }
+    }
+
+    private void execute(MessageReceivedEvent event, String prefix, String name, int space, Command command) {
+        IMessage message = event.getMessage();
+        String content = message.getContent();
+        CommandContext context = new CommandContext();
+        context.setMessage(message);
+        context.setCommand(command);
+        context.setCommandName(name);
+        context.setPrefix(prefix);
 
-                // check permissions to execute the command
-                // will check for "execute" permission on "command" and "command category" resources
-                Set<PermissionType> perms = permissionService.check(message, Operations.EXECUTE, command, true);
-                boolean isAllowed = perms.contains(PermissionType.ALLOW);
-                boolean isDenied = perms.contains(PermissionType.DENY);
-                boolean isSecured = command.isSecured();
-                boolean hasPermission = message.getChannel().getModifiedPermissions(message.getAuthor())
-                    .containsAll(command.getRequiredPermissions());
-                boolean canExecute = (isSecured && isAllowed && !isDenied) || (!isSecured && !isDenied);
-                if (canExecute && hasPermission) {
-                    // clean up and parse arguments
-                    String args = content.substring(content.indexOf(name) + name.length());
-                    args = args.startsWith(" ") ? args.split(" ", 2)[1] : null; // nullify if ran with no args
-                    OptionParser parser = command.getParser();
-                    boolean parseError = false;
-                    boolean forHelp = false;
-                    if (parser == null || parser.recognizedOptions().isEmpty()) {
-                        if (args != null) {
-                            // commands without parser but with args present, will delegate to onExecute
-                            // args will be retrievable from context.getArgs()[0]
-                            String[] array = {args};
-                            context.setArgs(array);
-                        }
+        // check permissions to execute the command
+        // will check for "execute" permission on "command" and "command category" resources
+        Set<PermissionType> perms = permissionService.check(message, Operations.EXECUTE, command, true);
+        boolean isAllowed = perms.contains(PermissionType.ALLOW);
+        boolean isDenied = perms.contains(PermissionType.DENY);
+        boolean isSecured = command.isSecured();
+        boolean hasPermission = message.getChannel().getModifiedPermissions(message.getAuthor())
+            .containsAll(command.getRequiredPermissions());
+        boolean canExecute = (isSecured && isAllowed && !isDenied) || (!isSecured && !isDenied);
+        if (canExecute && hasPermission) {
+            // clean up and parse arguments
+            String args = space < 0 ? null : content.substring(space + 1); // nullify if ran with no args
+            OptionParser parser = command.getParser();
+            boolean parseError = false;
+            boolean forHelp = false;
+            if (parser == null || parser.recognizedOptions().isEmpty()) {
+                if (args != null) {
+                    // commands without parser but with args present, will delegate to onExecute
+                    // args will be retrievable from context.getArgs()[0]
+                    String[] array = {args};
+                    context.setArgs(array);
+                }
+            } else {
+                try {
+                    if (args != null) {
+                        int limit = command.getArgumentLimit();
+                        boolean unquote = !command.isPreserveQuotes();
+                        Map<String, String> aliases = command.getParameterAliases();
+                        String[] splitArgs = CommandTokenizer.split(args, limit, unquote, aliases);
+                        context.setArgs(splitArgs);
+                        context.setOptionSet(parser.parse(splitArgs));
                     } else {
-                        try {
-                            if (args != null) {
-                                int limit = command.getArgumentLimit();
-                                boolean unquote = !command.isPreserveQuotes();
-                                Map<String, String> aliases = command.getParameterAliases();
-                                String[] splitArgs = splitAndConvert(args, limit, unquote, aliases);
-                                context.setArgs(splitArgs);
-                                context.setOptionSet(parser.parse(splitArgs));
-                            } else {
-                                context.setOptionSet(parser.parse());
-                            }
-                            forHelp = context.getOptionSet().has("help");
-                        } catch (OptionException e) {
-                            log.info("[{}] User {} executing command {}{} failed parsing: {}",
-                                message.getClient().getOurUser().getName(),
-                                humanize(message.getAuthor()), name,
-                                args == null ? "" : " with args: " + args, e.toString());
-                            help.replyWithHelp(command, context, e.getMessage());
-                            parseError = true;
-                        }
+                        context.setOptionSet(parser.parse());
                     }
+                    forHelp = context.getOptionSet().has("help");
+                } catch (OptionException e) {
+                    log.info("[{}] User {} executing command {}{} failed parsing: {}",
+                        message.getClient().getOurUser().getName(),
+                        humanize(message.getAuthor()), name,
+                        args == null ? "" : " with args: " + args, e.toString());
+                    help.replyWithHelp(command, context, e.getMessage());
+                    parseError = true;
+                }
+            }
 
-                    // finally, execute the command
-                    log.info("[{}] User {} executing command {}{}", message.getClient().getOurUser().getName(),
-                        humanize(message.getAuthor()), name, args == null ? "" : " with args: " + args);
+            // finally, execute the command
+            log.info("[{}] User {} executing command {}{}", message.getClient().getOurUser().getName(),
+                humanize(message.getAuthor()), name, args == null ? "" : " with args: " + args);
 
-                    // intercept with help if parse failed or was explicitly requested
-                    if (forHelp) {
-                        help.replyWithHelp(command, context);
-                    } else if (!parseError) {
-                        command.onExecute().accept(context);
-                    }
-                    if (command.isDeleteRequest()) {
-                        RequestBuffer.request(() -> {
-                            try {
-                                message.delete();
-                            } catch (MissingPermissionsException e) {
-                                log.warn("[{}] Missing permissions in {}: {}",
-                                    event.getClient().getOurUser().getName(),
-                                    humanize(message.getChannel()), e.getErrorMessage());
-                                command.onBotDenied().accept(context);
-                            } catch (DiscordException e) {
-                                log.warn("[{}] Failed to delete message in {}: {}",
-                                    event.getClient().getOurUser().getName(),
-                                    humanize(message.getChannel()), e.getErrorMessage());
-                            }
-                        });
+            // intercept with help if parse failed or was explicitly requested
+            if (forHelp) {
+                help.replyWithHelp(command, context);
+            } else if (!parseError) {
+                command.onExecute().accept(context);
+            }
+            if (command.isDeleteRequest()) {
+                RequestBuffer.request(() -> {
+                    try {
+                        message.delete();
+                    } catch (MissingPermissionsException e) {
+                        log.warn("[{}] Missing permissions in {}: {}",
+                            event.getClient().getOurUser().getName(),
+                            humanize(message.getChannel()), e.getErrorMessage());
+                        command.onBotDenied().accept(context);
+                    } catch (DiscordException e) {
+                        log.warn("[{}] Failed to delete message in {}: {}",
+                            event.getClient().getOurUser().getName(),
+                            humanize(message.getChannel()), e.getErrorMessage());
                     }
-                    log.info("[{}] User {} completed execution of command {}{}", message.getClient().getOurUser().getName(),
-                        humanize(message.getAuthor()), name, args == null ? "" : " with args: " + args);
-                } else {
-                    log.info("[{}] User {} was denied command execution: {}", message.getClient().getOurUser().getName(),
-                        humanize(message.getAuthor()), name);
-                    command.onAuthorDenied().accept(context);
-                }
+                });
             }
+            log.info("[{}] User {} completed execution of command {}{}", message.getClient().getOurUser().getName(),
+                humanize(message.getAuthor()), name, args == null ? "" : " with args: " + args);
+        } else {
+            log.info("[{}] User {} was denied command execution: {}", message.getClient().getOurUser().getName(),
+                humanize(message.getAuthor()), name);
+            command.onAuthorDenied().accept(context);
         }
     }
 
-    private String[] splitAndConvert(String args, int limit, boolean unquote, Map<String, String> parameterAliases) {
-        Matcher matcher = QUOTE_PATTERN.matcher(args);
-        List<String> matches = new ArrayList<>();
-        int count = 1;
-        while (matcher.find()) {
-            if (limit > 0 && ++count > limit) {
-                String group = args.substring(matcher.start());
-                matches.add(group);
-                break;
-            } else {
-                String group = matcher.group();
-                matches.add(unquote ? group.replaceAll("\"|'", "") : group);
-            }
-        }
-        if (parameterAliases != null && !parameterAliases.isEmpty()) {
-            return matches.stream().map(s -> {
-                // if this match is in the form key=value and starts with a key present, prepend "--" to it
-                if (KEY_VALUE_PATTERN.matcher(s).matches()
-                    && parameterAliases.keySet().stream().anyMatch(s::startsWith)) {
-                    return "--" + s;
-                } else {
-                    return parameterAliases.getOrDefault(s, s);
-                }
-            }).collect(Collectors.toList()).toArray(new String[matches.size()]);
-        } else {
-            return matches.toArray(new String[matches.size()]);
+    private PrefixTrie getPrefixTrie(Set<String> prefixes) {
+        try {
+            return prefixTries.get(prefixes, () -> new PrefixTrie(prefixes));
+        } catch (ExecutionException e) {
+            return new PrefixTrie(prefixes);
         }
     }
 }
@@ -0,0 +1,52 @@
+package top.quantic.sentry.discord.core;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable character trie over a set of command prefixes, matching the start of a message in a single pass.
+ */
+public class PrefixTrie {
+
+    private final Node root = new Node();
+
+    public PrefixTrie(Collection<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (prefix == null || prefix.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            node.prefix = prefix;
+        }
+    }
+
+    /**
+     * Find the longest prefix the given content starts with.
+     *
+     * @param content the message content
+     * @return the longest matching prefix, or <code>null</code> if none matches
+     */
+    public String match(String content) {
+        String longest = null;
+        Node node = root;
+        for (int i = 0; i < content.length(); i++) {
+            node = node.children.get(content.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.prefix != null) {
+                longest = node.prefix;
+            }
+        }
+        return longest;
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private String prefix;
+    }
+}
@@ -72,7 +72,7 @@ public class DiscordUtil {
         }
     }
 
-    private static Set<String> getRolesWithGuild(IUser user, IGuild guild) {
+    public static Set<String> getRolesWithGuild(IUser user, IGuild guild) {
         if (user == null) {
             return Sets.newHashSet();
         } else if (guild == null) {
@@ -0,0 +1,92 @@
+package top.quantic.sentry.discord.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sx.blah.discord.handle.impl.obj.Message;
+import sx.blah.discord.handle.obj.IChannel;
+import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.util.RequestBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static top.quantic.sentry.discord.util.DiscordUtil.answerToChannel;
+
+/**
+ * A message made of a fixed number of lines that are filled in as results arrive, in any order. The message is edited
+ * in place, coalescing the changes made while a previous edit was in flight, and overflows into extra messages once it
+ * goes over the Discord length limit.
+ * <p>
+ * Edits never overlap, so any executor can be shared between many summaries.
+ */
+public class SummaryMessage {
+
+    private static final Logger log = LoggerFactory.getLogger(SummaryMessage.class);
+
+    private final IChannel channel;
+    private final Executor executor;
+    private final String[] lines;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final List<IMessage> messages = new ArrayList<>();
+    private final List<String> contents = new ArrayList<>();
+
+    /**
+     * @param channel  the channel to post to
+     * @param executor runs the edits
+     * @param initial  the initial content of each line
+     */
+    public SummaryMessage(IChannel channel, Executor executor, List<String> initial) {
+        this.channel = channel;
+        this.executor = executor;
+        this.lines = initial.toArray(new String[initial.size()]);
+        schedule();
+    }
+
+    public void set(int index, String line) {
+        synchronized (lines) {
+            lines[index] = line;
+        }
+        schedule();
+    }
+
+    /**
+     * @return a future completed once every change made so far is visible
+     */
+    public CompletableFuture<Void> flushed() {
+        return CompletableFuture.runAsync(this::flush, executor);
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    private synchronized void flush() {
+        scheduled.set(false);
+        String content;
+        synchronized (lines) {
+            content = String.join("\n", Arrays.asList(lines));
+        }
+        List<String> pages = new MessageSplitter(content).split(Message.MAX_MESSAGE_LENGTH);
+        try {
+            for (int i = 0; i < pages.size(); i++) {
+                String page = pages.get(i);
+                if (i >= messages.size()) {
+                    messages.add(answerToChannel(channel, page).get());
+                    contents.add(page);
+                } else if (!page.equals(contents.get(i))) {
+                    IMessage message = messages.get(i);
+                    RequestBuffer.request(() -> (IMessage) message.edit(page)).get();
+                    contents.set(i, page);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not update summary message", e);
+        }
+    }
+}
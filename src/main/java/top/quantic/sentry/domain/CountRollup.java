@@ -0,0 +1,155 @@
+package top.quantic.sentry.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A CountRollup: the minimum, maximum, sum, count and last value of the samples of one series within a time bucket.
+ * Rollups of each time series and resolution are kept in their own collection.
+ */
+public class CountRollup implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String id;
+
+    @Field("group")
+    private String group;
+
+    @Field("series")
+    private String series;
+
+    @Field("timestamp")
+    private ZonedDateTime timestamp;
+
+    @Field("min")
+    private Long min;
+
+    @Field("max")
+    private Long max;
+
+    @Field("sum")
+    private Long sum;
+
+    @Field("count")
+    private Long count;
+
+    @Field("last")
+    private Long last;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public String getSeries() {
+        return series;
+    }
+
+    public void setSeries(String series) {
+        this.series = series;
+    }
+
+    public ZonedDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(ZonedDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public Long getMin() {
+        return min;
+    }
+
+    public void setMin(Long min) {
+        this.min = min;
+    }
+
+    public Long getMax() {
+        return max;
+    }
+
+    public void setMax(Long max) {
+        this.max = max;
+    }
+
+    public Long getSum() {
+        return sum;
+    }
+
+    public void setSum(Long sum) {
+        this.sum = sum;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    public Long getLast() {
+        return last;
+    }
+
+    public void setLast(Long last) {
+        this.last = last;
+    }
+
+    public Long getAverage() {
+        return count == null || count == 0 ? 0L : sum / count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CountRollup countRollup = (CountRollup) o;
+        if (countRollup.id == null || id == null) {
+            return false;
+        }
+        return Objects.equals(id, countRollup.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "CountRollup{" +
+            "id=" + id +
+            ", group='" + group + "'" +
+            ", series='" + series + "'" +
+            ", timestamp='" + timestamp + "'" +
+            ", min='" + min + "'" +
+            ", max='" + max + "'" +
+            ", sum='" + sum + "'" +
+            ", count='" + count + "'" +
+            ", last='" + last + "'" +
+            '}';
+    }
+}
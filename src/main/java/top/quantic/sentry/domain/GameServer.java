@@ -1,12 +1,16 @@
 package top.quantic.sentry.domain;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 import static java.lang.Integer.toHexString;
@@ -91,6 +95,9 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     @Field("last_rcon_announce")
     private ZonedDateTime lastRconAnnounce;
 
+    @Transient
+    private transient Map<String, Object> changes;
+
     public String getId() {
         return id;
     }
@@ -109,6 +116,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setAddress(String address) {
+        markChanged("address", this.address, address);
         this.address = address;
     }
 
@@ -122,6 +130,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setName(String name) {
+        markChanged("name", this.name, name);
         this.name = name;
     }
 
@@ -135,6 +144,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setPing(Integer ping) {
+        markChanged("ping", this.ping, ping);
         this.ping = ping;
     }
 
@@ -148,6 +158,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setPlayers(Integer players) {
+        markChanged("players", this.players, players);
         this.players = players;
     }
 
@@ -161,6 +172,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setMaxPlayers(Integer maxPlayers) {
+        markChanged("max_players", this.maxPlayers, maxPlayers);
         this.maxPlayers = maxPlayers;
     }
 
@@ -174,6 +186,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setMap(String map) {
+        markChanged("map", this.map, map);
         this.map = map;
     }
 
@@ -187,6 +200,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setVersion(Integer version) {
+        markChanged("version", this.version, version);
         this.version = version;
     }
 
@@ -200,6 +214,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setRconPassword(String rconPassword) {
+        markChanged("rcon_password", this.rconPassword, rconPassword);
         this.rconPassword = rconPassword;
     }
 
@@ -213,6 +228,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setSvPassword(String svPassword) {
+        markChanged("sv_password", this.svPassword, svPassword);
         this.svPassword = svPassword;
     }
 
@@ -226,6 +242,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setTvPort(Integer tvPort) {
+        markChanged("tv_port", this.tvPort, tvPort);
         this.tvPort = tvPort;
     }
 
@@ -239,6 +256,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setExpires(Boolean expires) {
+        markChanged("expires", this.expires, expires);
         this.expires = expires;
     }
 
@@ -252,6 +270,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setExpirationDate(ZonedDateTime expirationDate) {
+        markChanged("expiration_date", this.expirationDate, expirationDate);
         this.expirationDate = expirationDate;
     }
 
@@ -265,6 +284,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setExpirationCheckDate(ZonedDateTime expirationCheckDate) {
+        markChanged("expiration_check_date", this.expirationCheckDate, expirationCheckDate);
         this.expirationCheckDate = expirationCheckDate;
     }
 
@@ -278,6 +298,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setStatusCheckDate(ZonedDateTime statusCheckDate) {
+        markChanged("status_check_date", this.statusCheckDate, statusCheckDate);
         this.statusCheckDate = statusCheckDate;
     }
 
@@ -291,6 +312,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setLastValidPing(ZonedDateTime lastValidPing) {
+        markChanged("last_valid_ping", this.lastValidPing, lastValidPing);
         this.lastValidPing = lastValidPing;
     }
 
@@ -304,6 +326,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setLastRconDate(ZonedDateTime lastRconDate) {
+        markChanged("last_rcon_date", this.lastRconDate, lastRconDate);
         this.lastRconDate = lastRconDate;
     }
 
@@ -317,6 +340,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setLastGameUpdate(ZonedDateTime lastGameUpdate) {
+        markChanged("last_game_update", this.lastGameUpdate, lastGameUpdate);
         this.lastGameUpdate = lastGameUpdate;
     }
 
@@ -330,6 +354,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setUpdating(Boolean updating) {
+        markChanged("updating", this.updating, updating);
         this.updating = updating;
     }
 
@@ -343,6 +368,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setUpdateAttempts(Integer updateAttempts) {
+        markChanged("update_attempts", this.updateAttempts, updateAttempts);
         this.updateAttempts = updateAttempts;
     }
 
@@ -356,6 +382,7 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setLastUpdateStart(ZonedDateTime lastUpdateStart) {
+        markChanged("last_update_start", this.lastUpdateStart, lastUpdateStart);
         this.lastUpdateStart = lastUpdateStart;
     }
 
@@ -369,9 +396,53 @@ public class GameServer extends AbstractAuditingEntity implements Serializable {
     }
 
     public void setLastRconAnnounce(ZonedDateTime lastRconAnnounce) {
+        markChanged("last_rcon_announce", this.lastRconAnnounce, lastRconAnnounce);
         this.lastRconAnnounce = lastRconAnnounce;
     }
 
+    private synchronized void markChanged(String field, Object previous, Object value) {
+        if (!Objects.equals(previous, value)) {
+            if (changes == null) {
+                changes = new LinkedHashMap<>();
+            }
+            changes.put(field, value);
+        }
+    }
+
+    /**
+     * Return the fields modified through setters since the last poll, keyed by their document field name, and start
+     * tracking again from scratch.
+     *
+     * @return a map of modified document fields to their new values
+     */
+    public synchronized Map<String, Object> pollChanges() {
+        if (changes == null || changes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> polled = changes;
+        changes = null;
+        return polled;
+    }
+
+    /**
+     * Mark the given fields as modified again unless they were modified after being polled, for example to retry a
+     * failed partial update.
+     *
+     * @param polled fields previously returned by {@link #pollChanges()}
+     */
+    public synchronized void restoreChanges(Map<String, Object> polled) {
+        if (!polled.isEmpty()) {
+            if (changes == null) {
+                changes = new LinkedHashMap<>();
+            }
+            polled.forEach(changes::putIfAbsent);
+        }
+    }
+
+    public synchronized boolean hasChanges() {
+        return changes != null && !changes.isEmpty();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,73 @@
+package top.quantic.sentry.domain.enumeration;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+import static java.time.temporal.ChronoUnit.HOURS;
+import static java.time.temporal.ChronoUnit.MINUTES;
+
+/**
+ * The resolutions at which time series are pre-aggregated, each stored in its own collection. Buckets are aligned to
+ * the system time zone, like the timestamps read back from the database.
+ */
+public enum RollupResolution {
+    TEN_MINUTES(10, "10m"), HOURLY(60, "1h"), DAILY(1440, "1d");
+
+    private final int minutes;
+    private final String suffix;
+
+    RollupResolution(int minutes, String suffix) {
+        this.minutes = minutes;
+        this.suffix = suffix;
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    /**
+     * Get the name of the collection holding the rollups of a time series at this resolution.
+     *
+     * @param baseCollection the collection of the raw time series
+     * @return the rollup collection name
+     */
+    public String getCollection(String baseCollection) {
+        return baseCollection + "_" + suffix;
+    }
+
+    /**
+     * Get the start of the bucket containing the given instant.
+     *
+     * @param timestamp the instant to truncate
+     * @return the start of its bucket
+     */
+    public ZonedDateTime truncate(ZonedDateTime timestamp) {
+        ZonedDateTime local = timestamp.withZoneSameInstant(ZoneId.systemDefault());
+        switch (this) {
+            case TEN_MINUTES:
+                local = local.truncatedTo(MINUTES);
+                return local.withMinute(local.getMinute() / minutes * minutes);
+            case HOURLY:
+                return local.truncatedTo(HOURS);
+            default:
+                return local.truncatedTo(DAYS);
+        }
+    }
+
+    /**
+     * Find the coarsest rollup whose buckets can be combined into points of the given chart resolution.
+     *
+     * @param resolution the chart resolution in minutes
+     * @return the rollup to read from, or <code>null</code> if only the raw series is fine-grained enough
+     */
+    public static RollupResolution forResolution(int resolution) {
+        RollupResolution[] values = values();
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (resolution >= values[i].minutes && resolution % values[i].minutes == 0) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+package top.quantic.sentry.event;
+
+import sx.blah.discord.api.internal.json.objects.EmbedObject;
+import sx.blah.discord.util.EmbedBuilder;
+import top.quantic.sentry.domain.GameServer;
+
+import java.awt.*;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static top.quantic.sentry.service.util.DateUtil.formatRelative;
+
+public class GameServerExpiryEvent extends SentryEvent {
+
+    private final Kind kind;
+    private final ZonedDateTime expirationDate;
+
+    public GameServerExpiryEvent(GameServer server, Kind kind, ZonedDateTime expirationDate) {
+        super(server);
+        this.kind = kind;
+        this.expirationDate = expirationDate;
+    }
+
+    @Override
+    public GameServer getSource() {
+        return (GameServer) super.getSource();
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public ZonedDateTime getExpirationDate() {
+        return expirationDate;
+    }
+
+    @Override
+    public String getContentId() {
+        return getClass().getSimpleName() + "-" + getSource().getShortName() + "-" + kind + "-" +
+            expirationDate.toInstant().toEpochMilli();
+    }
+
+    @Override
+    public String asContent(Map<String, Object> dataMap) {
+        return getSource().toString() + " " + description();
+    }
+
+    @Override
+    public Map<String, Object> asMap(Map<String, Object> dataMap) {
+        GameServer server = getSource();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("title", server.getShortNameAndAddress() + " " + description());
+        map.put("text", "Expiration date: " + expirationDate);
+        map.put("tags", Arrays.asList("region:" + server.getShortRegion(), "game:" + server.getShortName()));
+        map.put("alert_type", kind == Kind.WARNING ? "warning" : "info");
+        map.put("aggregation_key", "game_expiry");
+        map.put("name", server.getShortName());
+        map.put("address", server.getAddress());
+        map.put("kind", kind.name());
+        return map;
+    }
+
+    @Override
+    public EmbedObject asEmbed(Map<String, Object> dataMap) {
+        return new EmbedBuilder()
+            .withTitle(getSource().getShortNameAndAddress())
+            .withDescription(description())
+            .appendField("Expiration", formatRelative(expirationDate), true)
+            .withColor(kind == Kind.WARNING ? new Color(0xaaaa00) : new Color(0x0000aa))
+            .build();
+    }
+
+    private String description() {
+        switch (kind) {
+            case WARNING:
+                return "will expire " + formatRelative(expirationDate);
+            case EXPIRED:
+                return "has expired";
+            case CLAIM_WINDOW_CLOSED:
+                return "is still unclaimed since it expired " + formatRelative(expirationDate);
+            default:
+                return kind.name();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getContentId();
+    }
+
+    public enum Kind {
+        /**
+         * The server expires soon.
+         */
+        WARNING,
+        /**
+         * The server has just expired.
+         */
+        EXPIRED,
+        /**
+         * The server expired a while ago and nobody claimed it since.
+         */
+        CLAIM_WINDOW_CLOSED
+    }
+}
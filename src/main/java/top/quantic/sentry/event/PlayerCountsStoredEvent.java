@@ -0,0 +1,22 @@
+package top.quantic.sentry.event;
+
+import org.springframework.context.ApplicationEvent;
+import top.quantic.sentry.domain.PlayerCount;
+
+import java.util.List;
+
+/**
+ * Published after each batch of player count samples is stored, so live charts can be given the new points.
+ */
+public class PlayerCountsStoredEvent extends ApplicationEvent {
+
+    public PlayerCountsStoredEvent(List<PlayerCount> samples) {
+        super(samples);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PlayerCount> getSource() {
+        return (List<PlayerCount>) super.getSource();
+    }
+}
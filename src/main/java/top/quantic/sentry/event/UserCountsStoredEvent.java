@@ -0,0 +1,22 @@
+package top.quantic.sentry.event;
+
+import org.springframework.context.ApplicationEvent;
+import top.quantic.sentry.domain.UserCount;
+
+import java.util.List;
+
+/**
+ * Published after each batch of user count samples is stored, so live charts can be given the new points.
+ */
+public class UserCountsStoredEvent extends ApplicationEvent {
+
+    public UserCountsStoredEvent(List<UserCount> samples) {
+        super(samples);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<UserCount> getSource() {
+        return (List<UserCount>) super.getSource();
+    }
+}
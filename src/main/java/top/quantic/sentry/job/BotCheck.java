@@ -2,7 +2,6 @@ package top.quantic.sentry.job;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
-import com.codahale.metrics.MetricRegistry;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -16,6 +15,8 @@ import sx.blah.discord.handle.obj.IGuild;
 import sx.blah.discord.handle.obj.StatusType;
 import top.quantic.sentry.discord.core.ClientRegistry;
 import top.quantic.sentry.domain.Bot;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -28,7 +29,7 @@ public class BotCheck implements Job {
     private ClientRegistry clientRegistry;
 
     @Autowired
-    private MetricRegistry metricRegistry;
+    private TaggedMetricRegistry taggedMetricRegistry;
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
@@ -38,15 +39,15 @@ public class BotCheck implements Job {
         for (Map.Entry<Bot, IDiscordClient> entry : clientRegistry.getClients().entrySet()) {
             IDiscordClient client = entry.getValue();
             if (client.isReady()) {
-                String botTag = "bot:" + entry.getKey().getName();
+                String bot = entry.getKey().getName();
                 for (IShard shard : client.getShards()) {
-                    String shardTag = "shard:" + shard.getInfo()[0];
+                    String shardId = String.valueOf(shard.getInfo()[0]);
                     long millis = shard.getResponseTime();
-                    metricRegistry.timer("discord.ws.response[" + botTag + "," + shardTag + "]")
+                    taggedMetricRegistry.timer(MetricKey.of("discord.ws.response", "bot", bot, "shard", shardId))
                         .update(millis, TimeUnit.MILLISECONDS);
                 }
                 for (IGuild guild : client.getGuilds()) {
-                    String guildTag = "guild:" + guild.getStringID();
+                    String guildId = guild.getStringID();
                     long online = guild.getUsers().stream()
                         .filter(user -> user.getPresence().getStatus() == StatusType.ONLINE)
                         .count();
@@ -54,12 +55,9 @@ public class BotCheck implements Job {
                         .filter(user -> user.getPresence().getStatus() != StatusType.OFFLINE)
                         .count();
                     long joined = guild.getUsers().size();
-                    String onlineMetric = "discord.ws.users[" + botTag + "," + guildTag + "," + "status:online]";
-                    String connectedMetric = "discord.ws.users[" + botTag + "," + guildTag + "," + "status:connected]";
-                    String joinedMetric = "discord.ws.users[" + botTag + "," + guildTag + "," + "status:joined]";
-                    metricRegistry.histogram(onlineMetric).update(online);
-                    metricRegistry.histogram(connectedMetric).update(connected);
-                    metricRegistry.histogram(joinedMetric).update(joined);
+                    taggedMetricRegistry.histogram(getUsersKey(bot, guildId, "online")).update(online);
+                    taggedMetricRegistry.histogram(getUsersKey(bot, guildId, "connected")).update(connected);
+                    taggedMetricRegistry.histogram(getUsersKey(bot, guildId, "joined")).update(joined);
                 }
 
 	            LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
@@ -70,4 +68,8 @@ public class BotCheck implements Job {
             }
         }
     }
+
+    private static MetricKey getUsersKey(String bot, String guild, String status) {
+        return MetricKey.of("discord.ws.users", "bot", bot, "guild", guild, "status", status);
+    }
 }
@@ -1,7 +1,6 @@
 package top.quantic.sentry.job;
 
 import com.codahale.metrics.Gauge;
-import com.codahale.metrics.MetricRegistry;
 import com.ibasco.agql.protocols.valve.steam.webapi.pojos.SteamPlayerProfile;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
@@ -11,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import top.quantic.sentry.service.GameQueryService;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -19,11 +20,15 @@ public class SteamProfilePoller implements Job {
 
     private static final Logger log = LoggerFactory.getLogger(SteamProfilePoller.class);
 
+    private static final String STATUS = "steam.profile.status";
+    private static final String LAST_LOG_OFF = "steam.profile.lastLogOff";
+    private static final String STEAM_ID = "steamId";
+
     @Autowired
     private GameQueryService gameQueryService;
 
     @Autowired
-    private MetricRegistry metricRegistry;
+    private TaggedMetricRegistry taggedMetricRegistry;
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
@@ -47,20 +52,17 @@ public class SteamProfilePoller implements Job {
         }
 
         // clean up removed ids
-        metricRegistry.removeMatching((name, metric) -> name.startsWith("steam.profile") && !checked.contains(extractId(name)));
-    }
-
-    private Long extractId(String name) {
-        return Long.valueOf(name.replaceAll("^steam\\.profile\\..+\\[steamId:([0-9]+)]$", "$1"));
+        for (String name : new String[]{STATUS, LAST_LOG_OFF}) {
+            taggedMetricRegistry.removeMatching(name, key -> !checked.contains(Long.valueOf(key.getTag(STEAM_ID))));
+        }
     }
 
     private void report(Long id, SteamPlayerProfile profile) {
-        String statusKey = "steam.profile.status[steamId:" + id + "]";
-        String lastLogOffKey = "steam.profile.lastLogOff[steamId:" + id + "]";
-        metricRegistry.remove(statusKey);
-        metricRegistry.register(statusKey, (Gauge<Integer>) profile::getPersonaState);
-        metricRegistry.remove(lastLogOffKey);
-        metricRegistry.register(lastLogOffKey, (Gauge<Long>) profile::getLastLogOff);
+        String steamId = String.valueOf(id);
+        taggedMetricRegistry.register(MetricKey.of(STATUS, STEAM_ID, steamId),
+            (Gauge<Integer>) profile::getPersonaState);
+        taggedMetricRegistry.register(MetricKey.of(LAST_LOG_OFF, STEAM_ID, steamId),
+            (Gauge<Long>) profile::getLastLogOff);
     }
 
     private SteamPlayerProfile getPlayerProfile(Long id) {
@@ -0,0 +1,127 @@
+package top.quantic.sentry.repository;
+
+import com.mongodb.DBObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.StreamUtils;
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+import top.quantic.sentry.domain.util.JSR310DateConverters.ZonedDateTimeToDateConverter;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Maintains and reads the rollups of a time series, one collection per {@link RollupResolution}. Each sample is
+ * folded into the bucket containing it with a single upsert per resolution, so rollups stay current without ever
+ * reading the raw series back, and old samples can be removed in batches without touching them. Bulk operations are
+ * not mapped against the entity, so raw field names and values must be used.
+ *
+ * @param <T> the type of the samples
+ */
+class CountRollupOperations<T> implements RetentionOperations {
+
+    private static final Logger log = LoggerFactory.getLogger(CountRollupOperations.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final Class<T> type;
+    private final String baseCollection;
+    private final Function<T, String> groupMapper;
+    private final Function<T, String> seriesMapper;
+    private final Function<T, ZonedDateTime> timeMapper;
+    private final Function<T, Long> valueMapper;
+
+    CountRollupOperations(MongoTemplate mongoTemplate, Class<T> type, String baseCollection,
+                          Function<T, String> groupMapper,
+                          Function<T, String> seriesMapper,
+                          Function<T, ZonedDateTime> timeMapper,
+                          Function<T, Long> valueMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.type = type;
+        this.baseCollection = baseCollection;
+        this.groupMapper = groupMapper;
+        this.seriesMapper = seriesMapper;
+        this.timeMapper = timeMapper;
+        this.valueMapper = valueMapper;
+    }
+
+    void record(Collection<T> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        for (RollupResolution resolution : RollupResolution.values()) {
+            // ordered so the last value of each bucket is the one of its latest sample
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED,
+                resolution.getCollection(baseCollection));
+            for (T sample : samples) {
+                long value = valueMapper.apply(sample);
+                bulk.upsert(bucketQuery(groupMapper.apply(sample), seriesMapper.apply(sample),
+                    resolution.truncate(timeMapper.apply(sample))), new Update()
+                    .min("min", value)
+                    .max("max", value)
+                    .inc("sum", value)
+                    .inc("count", 1L)
+                    .set("last", value));
+            }
+            bulk.execute();
+        }
+        log.debug("Rolled up {} samples of {}", samples.size(), baseCollection);
+    }
+
+    Stream<CountRollup> find(RollupResolution resolution, String group, ZonedDateTime from, ZonedDateTime to) {
+        // include the bucket that contains the start of the range
+        Query query = Query.query(where("group").is(group)
+            .and("timestamp").gte(toDate(resolution.truncate(from))).lte(toDate(to)));
+        return StreamUtils.createStreamFromIterator(
+            mongoTemplate.stream(query, CountRollup.class, resolution.getCollection(baseCollection)));
+    }
+
+    @Override
+    public String getName() {
+        return baseCollection;
+    }
+
+    @Override
+    public int deleteSamplesBefore(ZonedDateTime before, int limit) {
+        return deleteBatch(mongoTemplate.getCollectionName(type), where("timestamp").lt(toDate(before)), limit);
+    }
+
+    @Override
+    public int deleteRollupsBefore(RollupResolution resolution, ZonedDateTime before, int limit) {
+        return deleteBatch(resolution.getCollection(baseCollection), where("timestamp").lt(toDate(before)), limit);
+    }
+
+    private int deleteBatch(String collection, Criteria criteria, int limit) {
+        // remove cannot be limited, so find the ids of one batch first
+        Query query = Query.query(criteria).limit(limit);
+        query.fields().include("_id");
+        List<Object> ids = mongoTemplate.find(query, DBObject.class, collection).stream()
+            .map(object -> object.get("_id"))
+            .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return mongoTemplate.remove(Query.query(where("_id").in(ids)), collection).getN();
+    }
+
+    private static Query bucketQuery(String group, String series, ZonedDateTime bucket) {
+        return Query.query(where("group").is(group)
+            .and("series").is(series)
+            .and("timestamp").is(toDate(bucket)));
+    }
+
+    private static Object toDate(ZonedDateTime dateTime) {
+        return ZonedDateTimeToDateConverter.INSTANCE.convert(dateTime);
+    }
+}
@@ -14,7 +14,7 @@ import java.util.stream.Stream;
  * Spring Data MongoDB repository for the GameServer entity.
  */
 @SuppressWarnings("unused")
-public interface GameServerRepository extends MongoRepository<GameServer, String> {
+public interface GameServerRepository extends MongoRepository<GameServer, String>, GameServerRepositoryCustom {
 
     Optional<GameServer> findById(String id);
 
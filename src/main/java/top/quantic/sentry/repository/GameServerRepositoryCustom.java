@@ -0,0 +1,21 @@
+package top.quantic.sentry.repository;
+
+import top.quantic.sentry.domain.GameServer;
+
+import java.util.Collection;
+
+/**
+ * Custom operations for the GameServer repository that are not covered by Spring Data derived queries.
+ */
+public interface GameServerRepositoryCustom {
+
+    /**
+     * Persist only the fields modified since the last write of each of the given servers, issuing a single unordered
+     * bulk write with one <code>$set</code> per changed document. Servers without changes are skipped, and if the
+     * write fails the changes are kept so they can be retried.
+     *
+     * @param servers the servers to update
+     * @return the number of documents that were modified
+     */
+    int saveChanges(Collection<GameServer> servers);
+}
@@ -0,0 +1,74 @@
+package top.quantic.sentry.repository;
+
+import com.mongodb.BulkWriteResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import top.quantic.sentry.domain.GameServer;
+import top.quantic.sentry.domain.util.JSR310DateConverters.ZonedDateTimeToDateConverter;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Implementation of the custom GameServer repository operations. Bulk operations are not mapped against the entity,
+ * so raw field names and values must be used.
+ */
+public class GameServerRepositoryImpl implements GameServerRepositoryCustom {
+
+    private static final Logger log = LoggerFactory.getLogger(GameServerRepositoryImpl.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public GameServerRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int saveChanges(Collection<GameServer> servers) {
+        Map<GameServer, Map<String, Object>> pending = new LinkedHashMap<>();
+        for (GameServer server : servers) {
+            if (server.getId() != null) {
+                Map<String, Object> changes = server.pollChanges();
+                if (!changes.isEmpty()) {
+                    pending.put(server, changes);
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GameServer.class);
+        Object now = toMongoValue(ZonedDateTime.now());
+        pending.forEach((server, changes) -> {
+            Update update = new Update();
+            changes.forEach((field, value) -> update.set(field, toMongoValue(value)));
+            update.set("last_modified_date", now);
+            bulk.updateOne(Query.query(where("_id").is(server.getId())), update);
+        });
+        try {
+            BulkWriteResult result = bulk.execute();
+            log.debug("Saved changes of {} game servers ({} modified)", pending.size(), result.getModifiedCount());
+            return result.getModifiedCount();
+        } catch (RuntimeException e) {
+            pending.forEach(GameServer::restoreChanges);
+            throw e;
+        }
+    }
+
+    private static Object toMongoValue(Object value) {
+        if (value instanceof ZonedDateTime) {
+            return ZonedDateTimeToDateConverter.INSTANCE.convert((ZonedDateTime) value);
+        }
+        return value;
+    }
+}
@@ -22,5 +22,7 @@ public interface PersistenceAuditEventRepository extends MongoRepository<Persist
 
     List<PersistentAuditEvent> findByPrincipalAndAuditEventDateAfterAndAuditEventType(String principle, LocalDateTime after, String type);
 
+    List<PersistentAuditEvent> findByAuditEventDateBefore(LocalDateTime before, Pageable pageable);
+
     Page<PersistentAuditEvent> findAllByAuditEventDateBetween(LocalDateTime fromDate, LocalDateTime toDate, Pageable pageable);
 }
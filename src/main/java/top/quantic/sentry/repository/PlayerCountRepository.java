@@ -11,12 +11,10 @@ import java.util.stream.Stream;
  * Spring Data MongoDB repository for the PlayerCount entity.
  */
 @SuppressWarnings("unused")
-public interface PlayerCountRepository extends MongoRepository<PlayerCount, String> {
+public interface PlayerCountRepository extends MongoRepository<PlayerCount, String>, PlayerCountRepositoryCustom {
 
     Stream<PlayerCount> findByTimestampAfter(ZonedDateTime dateTime);
 
     @Query("{ 'timestamp' : {'$gte': ?0, '$lte': ?1 } }")
     Stream<PlayerCount> findByTimestampBetween(ZonedDateTime from, ZonedDateTime to);
-
-    Long countByRegionAndValueAndTimestamp(String region, Long value, ZonedDateTime timestamp);
 }
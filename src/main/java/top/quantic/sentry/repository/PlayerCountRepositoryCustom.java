@@ -0,0 +1,32 @@
+package top.quantic.sentry.repository;
+
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.domain.PlayerCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Custom operations for the PlayerCount repository that are not covered by Spring Data derived queries.
+ */
+public interface PlayerCountRepositoryCustom extends RetentionOperations {
+
+    /**
+     * Fold the given samples into the rollups of every resolution, keyed by region.
+     *
+     * @param playerCounts the samples, in chronological order
+     */
+    void saveRollups(Collection<PlayerCount> playerCounts);
+
+    /**
+     * Stream the rollups of all regions whose buckets overlap the given range.
+     *
+     * @param resolution the rollup resolution to read
+     * @param from       the start of the range
+     * @param to         the end of the range
+     * @return a stream of rollups that must be closed after use
+     */
+    Stream<CountRollup> findRollupsBetween(RollupResolution resolution, ZonedDateTime from, ZonedDateTime to);
+}
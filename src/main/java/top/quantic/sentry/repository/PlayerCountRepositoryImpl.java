@@ -0,0 +1,50 @@
+package top.quantic.sentry.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.domain.PlayerCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the custom PlayerCount repository operations.
+ */
+public class PlayerCountRepositoryImpl implements PlayerCountRepositoryCustom {
+
+    private final CountRollupOperations<PlayerCount> rollups;
+
+    @Autowired
+    public PlayerCountRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.rollups = new CountRollupOperations<>(mongoTemplate, PlayerCount.class, "player_count",
+            count -> null, PlayerCount::getRegion, PlayerCount::getTimestamp, PlayerCount::getValue);
+    }
+
+    @Override
+    public void saveRollups(Collection<PlayerCount> playerCounts) {
+        rollups.record(playerCounts);
+    }
+
+    @Override
+    public Stream<CountRollup> findRollupsBetween(RollupResolution resolution, ZonedDateTime from, ZonedDateTime to) {
+        return rollups.find(resolution, null, from, to);
+    }
+
+    @Override
+    public String getName() {
+        return rollups.getName();
+    }
+
+    @Override
+    public int deleteSamplesBefore(ZonedDateTime before, int limit) {
+        return rollups.deleteSamplesBefore(before, limit);
+    }
+
+    @Override
+    public int deleteRollupsBefore(RollupResolution resolution, ZonedDateTime before, int limit) {
+        return rollups.deleteRollupsBefore(resolution, before, limit);
+    }
+}
@@ -0,0 +1,38 @@
+package top.quantic.sentry.repository;
+
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Operations used to enforce the retention policy of a time series that is rolled up into lower resolutions.
+ */
+public interface RetentionOperations {
+
+    /**
+     * Get the name of the time series, used to identify it in logs and metrics.
+     *
+     * @return the base collection name
+     */
+    String getName();
+
+    /**
+     * Delete at most the given number of raw samples taken before a given time. The rollups are kept current as samples
+     * are recorded, so they are left untouched.
+     *
+     * @param before the end of the range, exclusive
+     * @param limit  the maximum number of samples to delete
+     * @return the number of samples deleted
+     */
+    int deleteSamplesBefore(ZonedDateTime before, int limit);
+
+    /**
+     * Delete at most the given number of rollup buckets starting before a given time.
+     *
+     * @param resolution the resolution of the rollups
+     * @param before     the end of the range, exclusive
+     * @param limit      the maximum number of buckets to delete
+     * @return the number of buckets deleted
+     */
+    int deleteRollupsBefore(RollupResolution resolution, ZonedDateTime before, int limit);
+}
@@ -11,7 +11,7 @@ import java.util.stream.Stream;
  * Spring Data MongoDB repository for the UserCount entity.
  */
 @SuppressWarnings("unused")
-public interface UserCountRepository extends MongoRepository<UserCount, String> {
+public interface UserCountRepository extends MongoRepository<UserCount, String>, UserCountRepositoryCustom {
 
     Stream<UserCount> findByBotAndGuildAndTimestampAfter(String bot, String guild, ZonedDateTime dateTime);
 
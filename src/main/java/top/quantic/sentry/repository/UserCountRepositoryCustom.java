@@ -0,0 +1,35 @@
+package top.quantic.sentry.repository;
+
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.domain.UserCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Custom operations for the UserCount repository that are not covered by Spring Data derived queries.
+ */
+public interface UserCountRepositoryCustom extends RetentionOperations {
+
+    /**
+     * Fold the given samples into the rollups of every resolution, keyed by bot, guild and status.
+     *
+     * @param userCounts the samples, in chronological order
+     */
+    void saveRollups(Collection<UserCount> userCounts);
+
+    /**
+     * Stream the rollups of every status of a bot and guild whose buckets overlap the given range.
+     *
+     * @param resolution the rollup resolution to read
+     * @param bot        the bot of the series
+     * @param guild      the guild of the series
+     * @param from       the start of the range
+     * @param to         the end of the range
+     * @return a stream of rollups that must be closed after use
+     */
+    Stream<CountRollup> findRollupsBetween(RollupResolution resolution, String bot, String guild,
+                                           ZonedDateTime from, ZonedDateTime to);
+}
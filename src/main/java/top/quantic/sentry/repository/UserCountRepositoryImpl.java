@@ -0,0 +1,56 @@
+package top.quantic.sentry.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.domain.UserCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of the custom UserCount repository operations.
+ */
+public class UserCountRepositoryImpl implements UserCountRepositoryCustom {
+
+    private final CountRollupOperations<UserCount> rollups;
+
+    @Autowired
+    public UserCountRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.rollups = new CountRollupOperations<>(mongoTemplate, UserCount.class, "user_count",
+            count -> getGroup(count.getBot(), count.getGuild()),
+            UserCount::getStatus, UserCount::getTimestamp, UserCount::getValue);
+    }
+
+    @Override
+    public void saveRollups(Collection<UserCount> userCounts) {
+        rollups.record(userCounts);
+    }
+
+    @Override
+    public Stream<CountRollup> findRollupsBetween(RollupResolution resolution, String bot, String guild,
+                                                  ZonedDateTime from, ZonedDateTime to) {
+        return rollups.find(resolution, getGroup(bot, guild), from, to);
+    }
+
+    @Override
+    public String getName() {
+        return rollups.getName();
+    }
+
+    @Override
+    public int deleteSamplesBefore(ZonedDateTime before, int limit) {
+        return rollups.deleteSamplesBefore(before, limit);
+    }
+
+    @Override
+    public int deleteRollupsBefore(RollupResolution resolution, ZonedDateTime before, int limit) {
+        return rollups.deleteRollupsBefore(resolution, before, limit);
+    }
+
+    private static String getGroup(String bot, String guild) {
+        return bot + ":" + guild;
+    }
+}
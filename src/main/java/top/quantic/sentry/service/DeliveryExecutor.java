@@ -0,0 +1,168 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+import top.quantic.sentry.service.util.TokenBucket;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking deliveries to external destinations on a bounded pool of workers. Each destination, like a webhook URL
+ * or a Discord channel, is throttled by its own token bucket so that a slow or busy destination does not hold back the
+ * others. Deliveries failing with a retryable error are attempted again with exponential backoff, and their latency,
+ * retries and failures are recorded per destination type.
+ */
+public class DeliveryExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryExecutor.class);
+
+    private final TaggedMetricRegistry metricRegistry;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final Predicate<Throwable> retryable;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+
+    public DeliveryExecutor(TaggedMetricRegistry metricRegistry, int concurrency, int maxAttempts, long retryDelayMillis,
+                            Predicate<Throwable> retryable) {
+        this.metricRegistry = metricRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = retryDelayMillis;
+        this.retryable = retryable;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency), daemonThreadFactory("delivery"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("delivery-scheduler"));
+        initMetrics();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void initMetrics() {
+        metricRegistry.register(MetricKey.of("sentry.delivery.pending"), (Gauge<Integer>) pending::get);
+    }
+
+    /**
+     * Throttle every destination of the given type to a rate. Types without a limit are delivered as soon as a worker
+     * is available.
+     *
+     * @param type             the destination type, like "webhook" or "channel"
+     * @param permitsPerSecond the sustained number of deliveries per second to each destination
+     * @param burst            the number of deliveries that can be made at once to an idle destination
+     */
+    public void setLimit(String type, double permitsPerSecond, int burst) {
+        limits.put(type, new Limit(permitsPerSecond, burst));
+    }
+
+    /**
+     * Run a task on the workers without throttling or retries, like the preparation of a delivery.
+     *
+     * @param task the task to run
+     * @param <T>  the type of the result
+     * @return a future completed with the result of the task
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, workers);
+    }
+
+    /**
+     * Queue a delivery to a destination.
+     *
+     * @param type        the destination type, used to select its rate limit and to tag metrics
+     * @param destination the destination key, like a URL or a channel id
+     * @param delivery    the blocking delivery
+     * @param <T>         the type of the delivery response
+     * @return a future completed with the response of the first successful attempt, or exceptionally after the last
+     */
+    public <T> CompletableFuture<T> submit(String type, String destination, Callable<T> delivery) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        pending.incrementAndGet();
+        result.whenComplete((response, error) -> {
+            pending.decrementAndGet();
+            metricRegistry.timer(MetricKey.of("sentry.delivery.latency", "type", type))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (error != null) {
+                metricRegistry.meter(MetricKey.of("sentry.delivery.failures", "type", type)).mark();
+            }
+        });
+        attempt(type, destination, delivery, result, 1);
+        return result;
+    }
+
+    private <T> void attempt(String type, String destination, Callable<T> delivery, CompletableFuture<T> result, int attempt) {
+        Runnable task = () -> {
+            try {
+                result.complete(delivery.call());
+            } catch (Exception e) {
+                if (attempt < maxAttempts && retryable.test(e)) {
+                    long delay = retryDelayMillis << (attempt - 1);
+                    log.debug("Delivery to {} failed on attempt {}, retrying in {}ms: {}", destination, attempt, delay, e.toString());
+                    metricRegistry.meter(MetricKey.of("sentry.delivery.retries", "type", type)).mark();
+                    schedule(() -> attempt(type, destination, delivery, result, attempt + 1),
+                        TimeUnit.MILLISECONDS.toNanos(delay));
+                } else {
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        Limit limit = limits.get(type);
+        long wait = limit == null ? 0 : buckets.computeIfAbsent(type + ":" + destination,
+            k -> new TokenBucket(limit.permitsPerSecond, limit.burst)).reserve();
+        schedule(() -> execute(task, result), wait);
+    }
+
+    private void schedule(Runnable runnable, long delayNanos) {
+        try {
+            if (delayNanos <= 0) {
+                runnable.run();
+            } else {
+                scheduler.schedule(runnable, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            log.debug("Delivery discarded after shutdown");
+        }
+    }
+
+    private void execute(Runnable task, CompletableFuture<?> result) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private static class Limit {
+        private final double permitsPerSecond;
+        private final int burst;
+
+        private Limit(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package top.quantic.sentry.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.service.util.CommandRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Runs <code>lftp</code> mirror processes for many servers at once, keeping at most a fixed number of processes alive
+ * across every job. The output of each process is parsed as it arrives, so a job can report the files retrieved from
+ * each server while it's still running. Each process is killed once it goes over the configured timeout, and a job can
+ * be cancelled at any time.
+ */
+@Service
+public class DownloadManager implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(DownloadManager.class);
+    private static final Pattern TRANSFERRING = Pattern.compile("^Transferring file `(.+)'$");
+
+    private final CommandRunner commandRunner;
+    private final SentryProperties.GameAdmin settings;
+    private final ExecutorService processPool;
+    private final ExecutorService errorReaders;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DownloadManager(SentryProperties sentryProperties) {
+        this(CommandRunner.local(), sentryProperties);
+    }
+
+    public DownloadManager(CommandRunner commandRunner, SentryProperties sentryProperties) {
+        this.commandRunner = commandRunner;
+        this.settings = sentryProperties.getGameAdmin();
+        this.processPool = Executors.newFixedThreadPool(Math.max(1, settings.getDownloadConcurrency()),
+            daemonThreadFactory("download"));
+        this.errorReaders = Executors.newCachedThreadPool(daemonThreadFactory("download-errors"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("download-scheduler"));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Start a download job, running one process per target as slots in the process pool become available.
+     *
+     * @param id        the job identifier, also the name of the job directory
+     * @param directory the working directory of every process
+     * @param commands  the command to run for each target, keyed by target name and in the order they should start
+     * @param listener  called with the job at most once per configured interval while it changes, and once it's done
+     * @return the new job
+     */
+    public Job submit(String id, Path directory, Map<String, List<String>> commands, Consumer<Job> listener) {
+        Job job = new Job(id, directory, commands, listener);
+        if (jobs.putIfAbsent(id, job) != null) {
+            throw new IllegalArgumentException("A job with id " + id + " is already running");
+        }
+        long interval = Math.max(100, settings.getDownloadProgressInterval());
+        job.progress = scheduler.scheduleWithFixedDelay(() -> job.publish(false), interval, interval, TimeUnit.MILLISECONDS);
+        for (Target target : job.targets) {
+            processPool.execute(() -> run(job, target));
+        }
+        if (job.targets.isEmpty()) {
+            complete(job);
+        }
+        return job;
+    }
+
+    /**
+     * Cancel a running job, killing its processes and discarding its queued targets.
+     *
+     * @param id the job identifier
+     * @return <code>true</code> if the job was running
+     */
+    public boolean cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        return true;
+    }
+
+    public Optional<Job> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<Job> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    private void run(Job job, Target target) {
+        if (!target.begin()) {
+            finish(job);
+            return;
+        }
+        job.changed();
+        Process process;
+        try {
+            process = commandRunner.start(target.command, job.directory.toFile());
+        } catch (IOException e) {
+            log.warn("[{}] Could not execute process: {}", target.name, e.toString());
+            target.error = e.getMessage();
+            target.end(State.FAILED);
+            finish(job);
+            return;
+        }
+        target.process = process;
+        if (job.cancelled) {
+            // cancelled while the process was starting
+            process.destroyForcibly();
+        }
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            log.warn("[{}] Download timed out after {} ms", target.name, settings.getDownloadTimeout());
+            target.timedOut = true;
+            process.destroyForcibly();
+        }, settings.getDownloadTimeout(), TimeUnit.MILLISECONDS);
+        Future<?> errors = errorReaders.submit(() -> readErrors(job, target, process.getErrorStream()));
+        try (BufferedReader input = newReader(process.getInputStream())) {
+            String line;
+            while ((line = input.readLine()) != null) {
+                onOutput(job, target, line);
+            }
+        } catch (IOException e) {
+            // the stream is closed under us when the process is killed
+            log.debug("[{}] Output closed: {}", target.name, e.toString());
+        }
+        try {
+            if (!process.waitFor(settings.getDownloadTimeout(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+        timeout.cancel(false);
+        try {
+            // the last error line can still be on its way once the process is gone
+            errors.get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.debug("[{}] Error stream not drained: {}", target.name, e.toString());
+        }
+        if (target.timedOut) {
+            target.end(State.TIMED_OUT);
+        } else if (job.cancelled) {
+            target.end(State.CANCELLED);
+        } else if (process.isAlive()) {
+            target.end(State.FAILED);
+        } else {
+            target.exitCode = process.exitValue();
+            log.debug("[{}] Process completed with exit code: {}", target.name, target.exitCode);
+            target.end(target.exitCode == 0 ? State.DONE : State.FAILED);
+        }
+        finish(job);
+    }
+
+    private void onOutput(Job job, Target target, String line) {
+        String redacted = redact(line);
+        log.debug("[{}] {}", target.name, redacted);
+        Matcher matcher = TRANSFERRING.matcher(redacted);
+        if (matcher.matches()) {
+            target.files.add(matcher.group(1));
+            job.changed();
+        }
+    }
+
+    private void readErrors(Job job, Target target, InputStream stream) {
+        try (BufferedReader input = newReader(stream)) {
+            String line;
+            while ((line = input.readLine()) != null) {
+                String redacted = redact(line);
+                log.warn("[{}] {}", target.name, redacted);
+                target.error = redacted;
+                job.changed();
+            }
+        } catch (IOException e) {
+            log.debug("[{}] Error stream closed: {}", target.name, e.toString());
+        }
+    }
+
+    private BufferedReader newReader(InputStream stream) {
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    private String redact(String line) {
+        String result = line;
+        for (String secret : Arrays.asList(settings.getUsername(), settings.getPassword())) {
+            if (secret != null && !secret.isEmpty()) {
+                result = result.replace(secret, "****");
+            }
+        }
+        return result;
+    }
+
+    private void finish(Job job) {
+        if (job.remaining.decrementAndGet() == 0) {
+            complete(job);
+        }
+    }
+
+    private void complete(Job job) {
+        if (job.progress != null) {
+            job.progress.cancel(false);
+        }
+        jobs.remove(job.id);
+        job.publish(true);
+        job.future.complete(job);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        jobs.values().forEach(Job::cancel);
+        processPool.shutdownNow();
+        errorReaders.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, TIMED_OUT, CANCELLED
+    }
+
+    public static class Job {
+        private final String id;
+        private final Path directory;
+        private final List<Target> targets;
+        private final Consumer<Job> listener;
+        private final AtomicInteger remaining;
+        private final AtomicBoolean dirty = new AtomicBoolean(true);
+        private final CompletableFuture<Job> future = new CompletableFuture<>();
+        private final long start = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> progress;
+        private volatile boolean cancelled = false;
+
+        private Job(String id, Path directory, Map<String, List<String>> commands, Consumer<Job> listener) {
+            this.id = id;
+            this.directory = directory;
+            this.targets = commands.entrySet().stream()
+                .map(entry -> new Target(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+            this.listener = listener;
+            this.remaining = new AtomicInteger(targets.size());
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<Target> getTargets() {
+            return Collections.unmodifiableList(targets);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return a future completed once every target has ended
+         */
+        public CompletableFuture<Job> getFuture() {
+            return future;
+        }
+
+        /**
+         * @return the number of targets that ended without completing successfully
+         */
+        public int getFailed() {
+            return (int) targets.stream()
+                .filter(target -> target.getState() != State.DONE && target.getState().ordinal() > State.RUNNING.ordinal())
+                .count();
+        }
+
+        private void changed() {
+            dirty.set(true);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            for (Target target : targets) {
+                target.cancel();
+            }
+            changed();
+        }
+
+        private void publish(boolean force) {
+            if (dirty.getAndSet(false) || force) {
+                try {
+                    listener.accept(this);
+                } catch (Exception e) {
+                    log.warn("Could not publish progress of job {}", id, e);
+                }
+            }
+        }
+    }
+
+    public static class Target {
+        private final String name;
+        private final List<String> command;
+        private final List<String> files = new CopyOnWriteArrayList<>();
+        private State state = State.QUEUED;
+        private volatile Process process;
+        private volatile boolean timedOut = false;
+        private volatile String error;
+        private volatile int exitCode = -1;
+
+        private Target(String name, List<String> command) {
+            this.name = name;
+            this.command = command;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public List<String> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        /**
+         * @return the last line written to the error stream, if any
+         */
+        public String getError() {
+            return error;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        private synchronized boolean begin() {
+            if (state != State.QUEUED) {
+                return false;
+            }
+            state = State.RUNNING;
+            return true;
+        }
+
+        private synchronized void end(State ended) {
+            state = ended;
+        }
+
+        private synchronized void cancel() {
+            if (state == State.QUEUED) {
+                state = State.CANCELLED;
+            } else if (state == State.RUNNING && process != null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
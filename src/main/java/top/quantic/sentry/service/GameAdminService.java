@@ -1,5 +1,8 @@
 package top.quantic.sentry.service;
 
+import com.codahale.metrics.Gauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.commons.lang3.text.WordUtils;
 import org.jsoup.Connection;
@@ -10,6 +13,7 @@ import org.jsoup.safety.Whitelist;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.retry.annotation.Backoff;
@@ -17,50 +21,157 @@ import org.springframework.retry.annotation.Retryable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.RequestScheduler;
+import top.quantic.sentry.service.util.RequestScheduler.Priority;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 
 import java.io.IOException;
 import java.net.URL;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static top.quantic.sentry.config.Constants.USER_AGENT;
 
 /**
  * Parser for common server operations inside a GameServers web panel.
+ * <p>
+ * Every request to the panel goes through a scheduler that runs them by priority, so interactive operations are never
+ * stuck behind bulk background work, and concurrent requests for the same page or action are merged into one. Scraped
+ * pages are cached per server for the TTL configured for their type, and the cached pages of a server are dropped after
+ * any action that changes it.
+ * <p>
+ * Requests run concurrently over a small pool of independently authenticated sessions, all sharing the rate limit the
+ * panel requires. A session that expires is logged in again on its own, and once the lifetime of sessions is learned
+ * from being sent back to the login page, sessions are renewed before they reach it.
  */
 @Service
-public class GameAdminService implements InitializingBean {
+public class GameAdminService implements InitializingBean, DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(GameAdminService.class);
 
-    private static final String DOMAIN = "my.gameservers.com";
-    private static final String LOGIN_URL = "https://" + DOMAIN;
-    private static final String HOME_URL = LOGIN_URL + "/home";
-    private static final String PANEL_URL = HOME_URL + "/subscription_info.php";
-
     private static final int TIMEOUT = 60000;
-
-    private final Map<String, String> session = new ConcurrentHashMap<>();
-    private final RateLimiter rateLimiter = RateLimiter.create(0.4); // required to operate GameServers panel
+    private static final int PAGE_LOAD_SECONDS = 5;
+    private static final int MAX_SESSION_FAILURES = 3;
+    private static final long MIN_SESSION_LIFETIME = 600000;
+    private static final long MAX_SESSION_LIFETIME = 86400000;
+
+    private final String loginUrl;
+    private final String homeUrl;
+    private final String panelUrl;
+    private final RateLimiter rateLimiter; // required to operate GameServers panel
+    private final List<PanelSession> sessions = new ArrayList<>();
+    private final BlockingDeque<PanelSession> idleSessions = new LinkedBlockingDeque<>();
+    private final AtomicLong sessionLifetime = new AtomicLong(0);
 
     private final SentryProperties sentryProperties;
 
     private boolean enabled = true;
 
-    private final AtomicReference<Instant> lastServerModsCheck = new AtomicReference<>(Instant.EPOCH);
-    private final Map<String, String> lastServerMods = new ConcurrentHashMap<>();
-    private final Object lock = new Object();
+    private final Cache<String, Map<String, String>> infoCache;
+    private final Cache<String, Map<String, String>> configCache;
+    private final Cache<String, Map<String, String>> modsCache;
+    private final Cache<String, String> consoleCache;
+    private final RequestScheduler scheduler;
 
     @Autowired
-    public GameAdminService(SentryProperties sentryProperties) {
+    public GameAdminService(SentryProperties sentryProperties, TaggedMetricRegistry taggedMetricRegistry) {
         this.sentryProperties = sentryProperties;
+        SentryProperties.GameAdmin gameAdmin = sentryProperties.getGameAdmin();
+        this.loginUrl = gameAdmin.getUrl();
+        this.homeUrl = loginUrl + "/home";
+        this.panelUrl = homeUrl + "/subscription_info.php";
+        this.rateLimiter = RateLimiter.create(gameAdmin.getPermitsPerSecond());
+        int poolSize = getPoolSize(gameAdmin.getSessions(), gameAdmin.getPermitsPerSecond());
+        for (int i = 0; i < poolSize; i++) {
+            PanelSession session = new PanelSession(i);
+            sessions.add(session);
+            idleSessions.add(session);
+        }
+        this.scheduler = new RequestScheduler("game-admin", poolSize);
+        SentryProperties.GameAdmin.Ttl ttl = gameAdmin.getTtl();
+        this.infoCache = buildCache(ttl.getInfo());
+        this.configCache = buildCache(ttl.getConfig());
+        this.modsCache = buildCache(ttl.getMods());
+        this.consoleCache = buildCache(ttl.getConsole());
+        for (Priority priority : Priority.values()) {
+            taggedMetricRegistry.register(MetricKey.of("sentry.panel.queued", "priority", priority.name().toLowerCase()),
+                (Gauge<Integer>) () -> scheduler.getQueued(priority));
+        }
+        taggedMetricRegistry.register(MetricKey.of("sentry.panel.sessions.healthy"),
+            (Gauge<Long>) () -> sessions.stream().filter(PanelSession::isHealthy).count());
+        taggedMetricRegistry.register(MetricKey.of("sentry.panel.sessions.lifetime"),
+            (Gauge<Long>) () -> sessionLifetime.get() / 1000);
+    }
+
+    /**
+     * Get the number of sessions to keep, bounded by the rate limit: a page takes seconds to load, so sessions beyond
+     * the requests the limiter lets through in the meantime would only wait on it.
+     *
+     * @param sessions         the configured number of sessions
+     * @param permitsPerSecond the rate limit of the panel
+     * @return the number of sessions to keep
+     */
+    static int getPoolSize(int sessions, double permitsPerSecond) {
+        int bound = (int) Math.max(1, Math.ceil(permitsPerSecond * PAGE_LOAD_SECONDS));
+        return Math.max(1, Math.min(sessions, bound));
+    }
+
+    private static <V> Cache<String, V> buildCache(long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(0, ttlSeconds), TimeUnit.SECONDS)
+            .build();
+    }
+
+    private static <V> V getPage(Cache<String, V> cache, String subId, PageLoader<V> loader) throws IOException {
+        V page = cache.getIfPresent(subId);
+        if (page == null) {
+            // concurrent loads of the same page are merged by the scheduler
+            page = loadPage(cache, subId, loader);
+        }
+        return page;
+    }
+
+    private static <V> V loadPage(Cache<String, V> cache, String subId, PageLoader<V> loader) throws IOException {
+        V page = loader.load();
+        if (page instanceof Map && ((Map<?, ?>) page).containsKey("error")) {
+            // an offline server or a panel outage is retried on the next request instead of being kept for the TTL
+            cache.invalidate(subId);
+        } else {
+            cache.put(subId, page);
+        }
+        return page;
+    }
+
+    /**
+     * Drop every cached page of a server, so the next requests retrieve them from the panel.
+     *
+     * @param subId the internal id GameServers uses for its servers
+     */
+    public void invalidate(String subId) {
+        infoCache.invalidate(subId);
+        configCache.invalidate(subId);
+        modsCache.invalidate(subId);
+        consoleCache.invalidate(subId);
+    }
+
+    /**
+     * Get the number of panel requests a new request of the given priority would have to wait for.
+     *
+     * @param priority the priority of the request
+     * @return the number of requests ahead, including the one in flight
+     */
+    public int getQueuedAhead(Priority priority) {
+        return scheduler.getAhead(priority);
     }
 
     @Override
@@ -70,19 +181,24 @@ public class GameAdminService implements InitializingBean {
         }
     }
 
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdown();
+    }
+
     private Parameters getHome() {
-        return new Parameters(HOME_URL);
+        return new Parameters(homeUrl);
     }
 
     private Parameters getPanelView(String subId, String view) {
-        Parameters parameters = new Parameters(PANEL_URL);
+        Parameters parameters = new Parameters(panelUrl);
         parameters.getVariables().put("SUBID", subId);
         parameters.getVariables().put("view", view);
         return parameters;
     }
 
     private Parameters getPanelFunction(String subId, String function) {
-        Parameters parameters = new Parameters(PANEL_URL);
+        Parameters parameters = new Parameters(panelUrl);
         parameters.getVariables().put("SUBID", subId);
         parameters.getVariables().put("function", function);
         return parameters;
@@ -95,12 +211,12 @@ public class GameAdminService implements InitializingBean {
         return parameters;
     }
 
-    private synchronized boolean login() throws IOException {
-        log.info("Authenticating to GS admin panel");
+    private boolean login(PanelSession session) throws IOException {
+        log.info("Authenticating to GS admin panel (session {})", session.id);
         String username = getUsername();
         String password = getPassword();
         rateLimiter.acquire(2);
-        Connection.Response loginForm = Jsoup.connect(LOGIN_URL)
+        Connection.Response loginForm = Jsoup.connect(loginUrl)
             .method(Connection.Method.GET)
             .userAgent(USER_AGENT)
             .execute();
@@ -109,7 +225,7 @@ public class GameAdminService implements InitializingBean {
             enabled = false;
         }
         rateLimiter.acquire(2);
-        Document document = Jsoup.connect(LOGIN_URL)
+        Document document = Jsoup.connect(loginUrl)
             .userAgent(USER_AGENT)
             .data("logout", "1")
             .data("username", username)
@@ -117,35 +233,111 @@ public class GameAdminService implements InitializingBean {
             .data("query_string", "")
             .cookies(loginForm.cookies())
             .post();
-        session.clear();
-        session.putAll(loginForm.cookies());
-        return !isLoginPage(document);
+        if (isLoginPage(document)) {
+            session.reset();
+            return false;
+        }
+        session.loggedIn(loginForm.cookies());
+        return true;
+    }
+
+    private <T> T request(Parameters parameters, Priority priority, DocumentParser<T> parser) throws IOException {
+        RequestScheduler.Ticket<T> ticket = scheduler.submit(priority, parameters.getKey(),
+            () -> parser.parse(validate(parameters)));
+        int position = ticket.getPosition();
+        if (position > 0) {
+            log.debug("Queued {} request with {} ahead: {}", priority, position, parameters.getKey());
+        }
+        try {
+            return ticket.getFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the panel", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
-    @Retryable(include = {IOException.class}, backoff = @Backoff(2000L))
     private Document validate(Parameters parameters) throws IOException {
         if (!enabled) {
             return new Document("");
         }
-        if (session.isEmpty()) {
-            if (!login()) {
-                // failed login at this point most likely means incorrect credentials
-                throw new IOException("Login could not be completed");
-            }
+        PanelSession session;
+        try {
+            // most recently used first, so extra sessions are only logged in when requests overlap
+            session = idleSessions.takeFirst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a panel session", e);
         }
-        // our session might have expired
-        rateLimiter.acquire();
-        Document document = Jsoup.connect(parameters.getUrl())
-            .userAgent(USER_AGENT)
-            .timeout(TIMEOUT)
-            .data(parameters.getVariables())
-            .cookies(session)
-            .get();
-        if (isLoginPage(document)) {
-            session.clear();
-            throw new IOException("Remote session has expired"); // but will retry
+        try {
+            for (int attempt = 0; ; attempt++) {
+                long lifetime = sessionLifetime.get();
+                if (session.outlived(lifetime)) {
+                    // renewed without being logged out, so sessions might last longer than estimated
+                    sessionLifetime.compareAndSet(lifetime, extendLifetime(lifetime));
+                }
+                if (session.needsLogin(sessionLifetime.get()) && !login(session)) {
+                    // failed login at this point most likely means incorrect credentials
+                    throw new IOException("Login could not be completed");
+                }
+                rateLimiter.acquire();
+                Document document;
+                try {
+                    document = Jsoup.connect(parameters.getUrl())
+                        .userAgent(USER_AGENT)
+                        .timeout(TIMEOUT)
+                        .data(parameters.getVariables())
+                        .cookies(session.cookies)
+                        .get();
+                } catch (IOException e) {
+                    session.failed();
+                    throw e;
+                }
+                if (!isLoginPage(document)) {
+                    session.succeeded();
+                    return document;
+                }
+                // sent back to the login page, so our session has expired
+                long age = session.expire();
+                sessionLifetime.accumulateAndGet(age, GameAdminService::shortenLifetime);
+                if (attempt > 0) {
+                    throw new IOException("Remote session has expired");
+                }
+            }
+        } finally {
+            idleSessions.addFirst(session);
         }
-        return document;
+    }
+
+    /**
+     * Move the session lifetime estimate halfway towards the age of a session that was logged out, so a single early
+     * logout doesn't pin the renewal interval for good.
+     *
+     * @param estimate the current estimate in milliseconds, or 0 if there is none yet
+     * @param age      the age of the logged out session in milliseconds
+     * @return the new estimate
+     */
+    static long shortenLifetime(long estimate, long age) {
+        long observed = Math.max(MIN_SESSION_LIFETIME, Math.min(MAX_SESSION_LIFETIME, age));
+        return estimate == 0 ? observed : Math.max(MIN_SESSION_LIFETIME, (estimate + observed) / 2);
+    }
+
+    /**
+     * Grow the session lifetime estimate after a session was renewed without being logged out, so the estimate
+     * recovers once logouts stop.
+     *
+     * @param estimate the current estimate in milliseconds, or 0 if there is none yet
+     * @return the new estimate
+     */
+    static long extendLifetime(long estimate) {
+        return estimate == 0 ? 0 : Math.min(MAX_SESSION_LIFETIME, estimate + estimate / 4);
     }
 
     private boolean isLoginPage(Document document) {
@@ -160,8 +352,10 @@ public class GameAdminService implements InitializingBean {
      */
     @Retryable(backoff = @Backoff(2000L))
     public Map<String, Map<String, String>> getServerDetails() throws IOException {
-        rateLimiter.acquire();
-        Document document = validate(getHome());
+        return request(getHome(), Priority.BACKGROUND, this::parseServerDetails);
+    }
+
+    private Map<String, Map<String, String>> parseServerDetails(Document document) {
         Map<String, Map<String, String>> latest = new LinkedHashMap<>();
         // parse GameServers panel and cache available game servers
         for (Element server : document.select("td.section_notabs").select("tr")) {
@@ -202,8 +396,12 @@ public class GameAdminService implements InitializingBean {
      */
     @Retryable(backoff = @Backoff(2000L))
     public Map<String, String> getServerInfo(String subId) throws IOException {
+        return getPage(infoCache, subId,
+            () -> request(getPanelView(subId, "server_information"), Priority.BACKGROUND, this::parseServerInfo));
+    }
+
+    private Map<String, String> parseServerInfo(Document document) throws IOException {
         Map<String, String> map = new HashMap<>();
-        Document document = validate(getPanelView(subId, "server_information"));
         Result result = extractResult(document.select("td.content_main").text());
         if (result != Result.OTHER) {
             map.put("error", result.toString());
@@ -219,19 +417,48 @@ public class GameAdminService implements InitializingBean {
                 map.put("ftp-password", userInfo[1]);
             }
         }
-        return map;
+        return Collections.unmodifiableMap(map);
     }
 
     @Retryable(backoff = @Backoff(2000L))
     public String getServerConsole(String subId) throws IOException {
-        String bodyHtml = validate(getPanelView(subId, "console_log")).body().toString();
+        return getPage(consoleCache, subId,
+            () -> request(getPanelView(subId, "console_log"), Priority.INTERACTIVE, this::parseServerConsole));
+    }
+
+    private String parseServerConsole(Document document) {
+        String bodyHtml = document.body().toString();
         return Jsoup.clean(bodyHtml, "", Whitelist.none(), new Document.OutputSettings().prettyPrint(false));
     }
 
     @Retryable(backoff = @Backoff(2000L))
-    public synchronized Map<String, String> getServerConfig(String subId) throws IOException {
+    public Map<String, String> getServerConfig(String subId) throws IOException {
+        return getServerConfig(subId, Priority.BACKGROUND);
+    }
+
+    @Retryable(backoff = @Backoff(2000L))
+    public Map<String, String> getServerConfig(String subId, Priority priority) throws IOException {
+        return getPage(configCache, subId,
+            () -> request(getPanelView(subId, "server_configuration"), priority, this::parseServerConfig));
+    }
+
+    /**
+     * Retrieve the configuration page of a server from the panel, skipping the cache. Used when the cached data is known
+     * to be stale, like an RCON password that was just rejected.
+     *
+     * @param subId    the internal id GameServers uses for its servers
+     * @param priority the priority of the request
+     * @return the server configuration
+     * @throws IOException if the page could not be retrieved
+     */
+    @Retryable(backoff = @Backoff(2000L))
+    public Map<String, String> refreshServerConfig(String subId, Priority priority) throws IOException {
+        return loadPage(configCache, subId,
+            () -> request(getPanelView(subId, "server_configuration"), priority, this::parseServerConfig));
+    }
+
+    private Map<String, String> parseServerConfig(Document document) {
         Map<String, String> map = new HashMap<>();
-        Document document = validate(getPanelView(subId, "server_configuration"));
         Result result = extractResult(document.select("td.content_main").text());
         if (result != Result.OTHER) {
             map.put("error", result.name());
@@ -240,7 +467,7 @@ public class GameAdminService implements InitializingBean {
         for (Element el : elements) {
             map.put(el.attr("name"), el.attr("value"));
         }
-        return map;
+        return Collections.unmodifiableMap(map);
     }
 
     /**
@@ -253,38 +480,34 @@ public class GameAdminService implements InitializingBean {
      */
     @Retryable(backoff = @Backoff(2000L))
     public Map<String, String> getServerMods(String subId) throws IOException {
-        synchronized (lock) {
-            Instant now = Instant.now();
-            if (lastServerMods.isEmpty() || lastServerModsCheck.get().plusSeconds(120).isBefore(now)) {
-                Map<String, String> map = new HashMap<>();
-                Document document = validate(getPanelView(subId, "server_mods"));
-                Elements mods = document.select("td.section_tabs table[style=\"margin-top: 10px;\"] tr");
-                mods.stream().skip(1).filter(el -> {
-                    Elements cols = el.children();
-                    return cols.size() == 3 && "Server Update".equals(cols.get(0).text());
-                }).forEach(el -> map.put("latest-update", extractDate(el.children().get(1).text())));
-                log.debug("Latest available update: {}", map.getOrDefault("latest-update", "Not found!"));
-                Elements history = document.select("span.page_subtitle + table tr");
-                history.stream().skip(1).findFirst().ifPresent(el -> {
-                    Elements cols = el.children();
-                    if (cols.size() == 3) {
-                        String date = cols.get(0).text();
-                        String author = cols.get(1).text();
-                        String mod = cols.get(2).text();
-                        map.put("last-mod-date", date);
-                        map.put("last-mod-by", author);
-                        map.put("last-mod-type", mod);
-                        log.debug("Most recent update: {} @ {} by {}", mod, date, author);
-                        lastServerMods.clear();
-                        lastServerMods.putAll(map);
-                        lastServerModsCheck.set(now);
-                    } else {
-                        log.warn("Invalid mod history row, must be size 3 (found {})", cols.size());
-                    }
-                });
+        return getPage(modsCache, subId,
+            () -> request(getPanelView(subId, "server_mods"), Priority.UPDATE, this::parseServerMods));
+    }
+
+    private Map<String, String> parseServerMods(Document document) {
+        Map<String, String> map = new HashMap<>();
+        Elements mods = document.select("td.section_tabs table[style=\"margin-top: 10px;\"] tr");
+        mods.stream().skip(1).filter(el -> {
+            Elements cols = el.children();
+            return cols.size() == 3 && "Server Update".equals(cols.get(0).text());
+        }).forEach(el -> map.put("latest-update", extractDate(el.children().get(1).text())));
+        log.debug("Latest available update: {}", map.getOrDefault("latest-update", "Not found!"));
+        Elements history = document.select("span.page_subtitle + table tr");
+        history.stream().skip(1).findFirst().ifPresent(el -> {
+            Elements cols = el.children();
+            if (cols.size() == 3) {
+                String date = cols.get(0).text();
+                String author = cols.get(1).text();
+                String mod = cols.get(2).text();
+                map.put("last-mod-date", date);
+                map.put("last-mod-by", author);
+                map.put("last-mod-type", mod);
+                log.debug("Most recent update: {} @ {} by {}", mod, date, author);
+            } else {
+                log.warn("Invalid mod history row, must be size 3 (found {})", cols.size());
             }
-        }
-        return lastServerMods;
+        });
+        return Collections.unmodifiableMap(map);
     }
 
     public ZonedDateTime getLastAvailableUpdate(String subId) {
@@ -311,8 +534,9 @@ public class GameAdminService implements InitializingBean {
      * @throws IOException if the web operation could not be completed
      */
     public Result restart(String subId) throws IOException {
-        Document document = validate(getPanelFunction(subId, "restart"));
-        Result result = extractResult(document.text());
+        Result result = request(getPanelFunction(subId, "restart"), Priority.INTERACTIVE,
+            document -> extractResult(document.text()));
+        invalidate(subId);
         if (result == Result.RESTARTED) {
             log.info("*** Server RESTART in progress: {} --", subId);
             //log.debug("Response: {}", document.select("table.global").text());
@@ -331,8 +555,9 @@ public class GameAdminService implements InitializingBean {
      * @throws IOException if the web operation could not be completed
      */
     public Result stop(String subId) throws IOException {
-        Document document = validate(getPanelFunction(subId, "stop"));
-        Result result = extractResult(document.text());
+        Result result = request(getPanelFunction(subId, "stop"), Priority.INTERACTIVE,
+            document -> extractResult(document.text()));
+        invalidate(subId);
         if (result == Result.STOPPED) {
             log.info("*** Server STOP in progress: {} ***", subId);
             //log.debug("Response: {}", document.select("table.global").text());
@@ -351,9 +576,22 @@ public class GameAdminService implements InitializingBean {
      * @throws IOException if the web operation could not be completed
      */
     public Result upgrade(String subId) throws IOException {
-        Document document = validate(getPanelModInstall(subId, "addmod", "730"));
-        String response = document.select("td.content_main").text();
-        Result result = extractResult(response);
+        return upgrade(subId, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Instructs the server to retrieve the latest game update.
+     *
+     * @param subId    the internal id GameServers uses for its servers
+     * @param priority the priority of the request to the panel
+     * @return <code>true</code> if the instruction was sent, <code>false</code> otherwise, regardless of the upgrade being
+     * successful or not.
+     * @throws IOException if the web operation could not be completed
+     */
+    public Result upgrade(String subId, Priority priority) throws IOException {
+        Result result = request(getPanelModInstall(subId, "addmod", "730"), priority,
+            document -> extractResult(document.select("td.content_main").text()));
+        invalidate(subId);
         if (result == Result.INSTALLING) {
             log.info("*** Server UPGRADE in progress: {} ***", subId);
             //log.debug("Response: {}", response);
@@ -364,9 +602,9 @@ public class GameAdminService implements InitializingBean {
     }
 
     public Result installMod(String subId, String modId) throws IOException {
-        Document document = validate(getPanelModInstall(subId, "addmod2", modId));
-        String response = document.select("td.content_main").text();
-        Result result = extractResult(response);
+        Result result = request(getPanelModInstall(subId, "addmod2", modId), Priority.INTERACTIVE,
+            document -> extractResult(document.select("td.content_main").text()));
+        invalidate(subId);
         if (result == Result.INSTALLING) {
             log.info("*** Server MOD {} INSTALL in progress: {} ***", modId, subId);
             //log.debug("Response: {}", document.select("td.content_main").text());
@@ -432,6 +670,16 @@ public class GameAdminService implements InitializingBean {
         }
     }
 
+    @FunctionalInterface
+    private interface PageLoader<V> {
+        V load() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface DocumentParser<T> {
+        T parse(Document document) throws IOException;
+    }
+
     public enum Result {
         INSTALLING, RESTARTED, STOPPED, SERVER_OFFLINE, OUTAGE_DETECTED, TOO_MANY_INSTALLS, NO_RESPONSE,
         COULD_NOT_START, OTHER;
@@ -442,6 +690,60 @@ public class GameAdminService implements InitializingBean {
         }
     }
 
+    /**
+     * An authenticated panel session. Only used by one request at a time, taken from the idle sessions.
+     */
+    private static class PanelSession {
+        private final int id;
+        private final Map<String, String> cookies = new HashMap<>();
+        private volatile long loginTime;
+        private volatile int failures;
+
+        PanelSession(int id) {
+            this.id = id;
+        }
+
+        boolean needsLogin(long lifetime) {
+            // renew before reaching the lifetime, since the expiry is only noticed after it happened
+            return cookies.isEmpty() || failures >= MAX_SESSION_FAILURES
+                || (lifetime > 0 && System.currentTimeMillis() - loginTime > lifetime * 4 / 5);
+        }
+
+        boolean outlived(long lifetime) {
+            return !cookies.isEmpty() && lifetime > 0 && System.currentTimeMillis() - loginTime > lifetime * 4 / 5;
+        }
+
+        boolean isHealthy() {
+            return loginTime > 0 && failures < MAX_SESSION_FAILURES;
+        }
+
+        void loggedIn(Map<String, String> newCookies) {
+            cookies.clear();
+            cookies.putAll(newCookies);
+            loginTime = System.currentTimeMillis();
+            failures = 0;
+        }
+
+        void succeeded() {
+            failures = 0;
+        }
+
+        void failed() {
+            failures++;
+        }
+
+        long expire() {
+            long age = System.currentTimeMillis() - loginTime;
+            reset();
+            return age;
+        }
+
+        void reset() {
+            cookies.clear();
+            loginTime = 0;
+        }
+    }
+
     private static class Parameters {
         final String url;
         final Map<String, String> variables;
@@ -462,6 +764,10 @@ public class GameAdminService implements InitializingBean {
         public Map<String, String> getVariables() {
             return variables;
         }
+
+        public String getKey() {
+            return url + variables;
+        }
     }
 
 }
@@ -6,23 +6,28 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.ibasco.agql.core.exceptions.ConnectException;
 import com.ibasco.agql.core.exceptions.ReadTimeoutException;
-import com.ibasco.agql.protocols.valve.source.query.SourceRconAuthStatus;
 import com.ibasco.agql.protocols.valve.source.query.pojos.SourceServer;
 import com.ibasco.agql.protocols.valve.steam.webapi.pojos.ServerUpdateStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.domain.GameServer;
 import top.quantic.sentry.domain.Setting;
+import top.quantic.sentry.event.GameServerExpiryEvent;
 import top.quantic.sentry.event.RconRefreshFailedEvent;
 import top.quantic.sentry.event.UpdateCompletedEvent;
 import top.quantic.sentry.event.UpdateDelayedEvent;
@@ -30,6 +35,7 @@ import top.quantic.sentry.repository.GameServerRepository;
 import top.quantic.sentry.service.dto.GameServerDTO;
 import top.quantic.sentry.service.mapper.GameServerMapper;
 import top.quantic.sentry.service.util.*;
+import top.quantic.sentry.service.util.RequestScheduler.Priority;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -37,25 +43,36 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
 
-import static org.apache.commons.lang3.StringUtils.truncate;
 import static top.quantic.sentry.service.util.DateUtil.formatRelative;
 import static top.quantic.sentry.service.util.DateUtil.humanizeShort;
 import static top.quantic.sentry.service.util.MiscUtil.inflect;
+import static top.quantic.sentry.service.util.MongoEventUtil.getDeletedId;
 
 /**
  * Service Implementation for managing GameServer.
  */
 @Service
-public class GameServerService implements InitializingBean {
+public class GameServerService implements InitializingBean, DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(GameServerService.class);
 
@@ -65,11 +82,24 @@ public class GameServerService implements InitializingBean {
     private final GameQueryService gameQueryService;
     private final ApplicationEventPublisher publisher;
     private final MetricRegistry metricRegistry;
+    private final TaggedMetricRegistry taggedMetricRegistry;
     private final SettingService settingService;
-
-    private final Map<GameServer, Monitor<Integer>> serverStatusMap = new ConcurrentHashMap<>();
+    private final AsyncLimiter statusLimiter;
+    private final PollScheduler<String> pollScheduler;
+    private final ScheduledExecutorService pollExecutor;
+    private final SentryProperties.GameQuery gameQueryProperties;
+    private final RconSessionManager rconSessionManager;
+    private final GameServerIndex gameServerIndex = new GameServerIndex();
+    private final SentryProperties.GameAdmin gameAdminProperties;
+    private final TimerWheel<ExpiryTimer> expiryWheel;
+    private final ScheduledExecutorService expiryExecutor;
+    private final Map<String, Long> expiryDates = new ConcurrentHashMap<>();
+
+    private final Map<GameServer, Monitor> serverStatusMap = new ConcurrentHashMap<>();
     private final Map<GameServer, Integer> playerCountMap = new ConcurrentHashMap<>();
+    private final RegionCounter regionPlayerCounts = new RegionCounter();
     private final LoggingMonitorListener monitorListener = new LoggingMonitorListener();
+    private final Map<String, Instant> restartDates = new ConcurrentHashMap<>();
 
     private long lastSettingsCheck = -1L;
     private int rconSayIntervalMinutes = Key.RCON_SAY_INTERVAL_MINUTES.getDefaultValue();
@@ -78,24 +108,60 @@ public class GameServerService implements InitializingBean {
     private int pingThreshold = Key.PING_ALERT_THRESHOLD.getDefaultValue();
     private int consecutiveFailuresToTrigger = Key.CONSECUTIVE_FAILURES_TO_TRIGGER.getDefaultValue();
     private int consecutiveSuccessesToRecover = Key.CONSECUTIVE_SUCCESSES_TO_RECOVER.getDefaultValue();
+    private volatile int lastLatestVersion = 0;
 
     @Autowired
     public GameServerService(GameServerRepository gameServerRepository, GameServerMapper gameServerMapper,
                              GameAdminService gameAdminService, GameQueryService gameQueryService,
-                             ApplicationEventPublisher publisher, MetricRegistry metricRegistry,
-                             SettingService settingService) {
+                             ApplicationEventPublisher publisher, TaggedMetricRegistry taggedMetricRegistry,
+                             SettingService settingService, SentryProperties sentryProperties) {
         this.gameServerRepository = gameServerRepository;
         this.gameServerMapper = gameServerMapper;
         this.gameAdminService = gameAdminService;
         this.gameQueryService = gameQueryService;
         this.publisher = publisher;
-        this.metricRegistry = metricRegistry;
+        this.metricRegistry = taggedMetricRegistry.getRegistry();
+        this.taggedMetricRegistry = taggedMetricRegistry;
         this.settingService = settingService;
+        this.statusLimiter = new AsyncLimiter("status-sweep",
+            sentryProperties.getGameQuery().getSweepConcurrency(),
+            sentryProperties.getGameQuery().getSweepTimeout());
+        this.gameQueryProperties = sentryProperties.getGameQuery();
+        this.pollScheduler = new PollScheduler<>(gameQueryProperties.getPollBudget());
+        this.pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rconSessionManager = new RconSessionManager(gameQueryService, metricRegistry, new RconCredentials(),
+            sentryProperties.getGameQuery().getRconSessionIdleTimeout(),
+            sentryProperties.getGameQuery().getRconCommandTimeout());
+        this.gameAdminProperties = sentryProperties.getGameAdmin();
+        this.expiryWheel = new TimerWheel<>(Math.max(100, gameAdminProperties.getExpiryTick()), 4, System.currentTimeMillis());
+        this.expiryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-timers");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public void afterPropertiesSet() throws Exception {
-        gameServerRepository.findAll().forEach(this::initServerMetrics);
+        reloadIndex();
+        gameServerIndex.findAll().forEach(this::initServerMetrics);
+        initSweepMetrics();
+        long tick = Math.max(1000, gameQueryProperties.getPollTick());
+        pollExecutor.scheduleWithFixedDelay(this::dispatchPolls, tick, tick, TimeUnit.MILLISECONDS);
+        long expiryTick = Math.max(100, gameAdminProperties.getExpiryTick());
+        expiryExecutor.scheduleWithFixedDelay(this::fireExpiryTimers, expiryTick, expiryTick, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        pollExecutor.shutdownNow();
+        expiryExecutor.shutdownNow();
+        statusLimiter.shutdown();
+        rconSessionManager.shutdown();
     }
 
     //////////
@@ -111,7 +177,7 @@ public class GameServerService implements InitializingBean {
     public GameServerDTO save(GameServerDTO gameServerDTO) {
         log.debug("Request to save GameServer : {}", gameServerDTO);
         GameServer gameServer = gameServerMapper.gameServerDTOToGameServer(gameServerDTO);
-        gameServer = gameServerRepository.save(gameServer);
+        gameServer = save(gameServer);
         initServerMetrics(gameServer);
         GameServerDTO result = gameServerMapper.gameServerToGameServerDTO(gameServer);
         return result;
@@ -137,7 +203,7 @@ public class GameServerService implements InitializingBean {
      */
     public GameServerDTO findOne(String id) {
         log.debug("Request to get GameServer : {}", id);
-        GameServer gameServer = gameServerRepository.findOne(id);
+        GameServer gameServer = gameServerIndex.get(id).orElse(null);
         GameServerDTO gameServerDTO = gameServerMapper.gameServerToGameServerDTO(gameServer);
         return gameServerDTO;
     }
@@ -150,6 +216,77 @@ public class GameServerService implements InitializingBean {
     public void delete(String id) {
         log.debug("Request to delete GameServer : {}", id);
         gameServerRepository.delete(id);
+        unindex(id);
+    }
+
+    private GameServer save(GameServer server) {
+        GameServer saved = gameServerRepository.save(server);
+        // the whole document was written, so pending changes are no longer relevant
+        saved.pollChanges();
+        scheduleExpiry(saved);
+        return gameServerIndex.put(saved);
+    }
+
+    /**
+     * Persist only the modified fields of the given servers in a single bulk write and refresh their index entries.
+     * Servers that were never persisted are saved as a whole.
+     *
+     * @param servers the servers to save
+     * @return the number of modified documents
+     */
+    private int saveChanges(Collection<GameServer> servers) {
+        List<GameServer> transientServers = servers.stream()
+            .filter(server -> server.getId() == null)
+            .collect(Collectors.toList());
+        transientServers.forEach(this::save);
+        int modified = gameServerRepository.saveChanges(servers);
+        servers.forEach(server -> {
+            gameServerIndex.put(server);
+            scheduleExpiry(server);
+        });
+        return modified + transientServers.size();
+    }
+
+    /**
+     * Discard the in-memory server index and load it again from the repository. Only required if the collection was
+     * modified outside of this application.
+     */
+    public void reloadIndex() {
+        gameServerIndex.load(gameServerRepository.findAll());
+        expiryWheel.clear();
+        expiryDates.clear();
+        gameServerIndex.findAll().forEach(this::scheduleExpiry);
+        log.debug("Indexed {} with {}", inflect(gameServerIndex.size(), "game server"),
+            inflect(expiryWheel.size(), "expiry timer"));
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof GameServer) {
+            // servers saved straight to the repository must be visible to the index too
+            GameServer server = (GameServer) event.getSource();
+            gameServerIndex.put(server);
+            scheduleExpiry(server);
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        if (event.getType() == GameServer.class) {
+            String id = getDeletedId(event.getSource());
+            if (id == null) {
+                // not a delete by id, like deleteAll
+                reloadIndex();
+            } else {
+                unindex(id);
+            }
+        }
+    }
+
+    private void unindex(String id) {
+        gameServerIndex.remove(id);
+        cancelExpiry(id);
+        regionPlayerCounts.remove(id);
     }
 
     /////////////////////////////////
@@ -167,7 +304,8 @@ public class GameServerService implements InitializingBean {
         String subId = data.get("SUBID");
         String name = data.get("name");
 
-        GameServer server = gameServerRepository.findByAddress(address).orElseGet(this::newGameServer);
+        GameServer server = gameServerIndex.findByAddress(address).orElseGet(this::newGameServer);
+        String previousId = server.getId();
 
         boolean changed = !server.getId().equals(subId)
             || !server.getName().equals(name)
@@ -177,7 +315,12 @@ public class GameServerService implements InitializingBean {
         server.setAddress(address);
         server.setName(name);
         try {
-            server = gameServerRepository.save(server);
+            if (previousId != null && !previousId.equals(subId)) {
+                // the instance is re-keyed in place, so the entry under the old id must go
+                gameServerIndex.remove(previousId);
+                cancelExpiry(previousId);
+            }
+            server = save(server);
             if (changed) {
                 initServerMetrics(server);
             }
@@ -208,10 +351,13 @@ public class GameServerService implements InitializingBean {
     @Async
     public void refreshRconPasswords() {
         // refreshing passwords of expired servers since they auto restart and change password
-        long count = gameServerRepository.findMissingOrExpiredRcon().parallelStream()
-            .map(this::refreshRconPassword)
+        List<GameServer> refreshed = gameServerIndex.findAll().parallelStream()
+            .filter(this::isMissingOrExpiredRcon)
+            .map(server -> updateRconData(server, Priority.BACKGROUND))
             .filter(Objects::nonNull)
-            .count();
+            .collect(Collectors.toList());
+        saveChanges(refreshed);
+        long count = refreshed.size();
         if (count == 0) {
             log.info("All RCON passwords are up-to-date");
         } else {
@@ -226,11 +372,20 @@ public class GameServerService implements InitializingBean {
      * @return the updated GameServer, or <code>null</code> if the updated rcon_password could not be retrieved
      */
     public GameServer refreshRconPassword(GameServer server) {
+        GameServer updated = updateRconData(server, Priority.INTERACTIVE);
+        if (updated != null) {
+            saveChanges(Collections.singletonList(updated));
+        }
+        return updated;
+    }
+
+    private GameServer updateRconData(GameServer server, Priority priority) {
         if (server == null) {
             return null;
         }
         try {
-            Map<String, String> result = gameAdminService.getServerConfig(server.getId());
+            // the cached page can hold the password that just stopped working
+            Map<String, String> result = gameAdminService.refreshServerConfig(server.getId(), priority);
             log.debug("Refreshing RCON data: {}", server);
             server.setRconPassword(result.get("rcon_password")); // can be null if the server is bugged
             server.setSvPassword(result.get("sv_password")); // can be null if the server is bugged
@@ -241,38 +396,98 @@ public class GameServerService implements InitializingBean {
                 publisher.publishEvent(new RconRefreshFailedEvent(server, "Response: " + result.get("error")));
             }
             server.setLastRconDate(ZonedDateTime.now());
-            return gameServerRepository.save(server);
+            return server;
         } catch (IOException e) {
             log.warn("Could not refresh RCON data for {}: {}", server.getShortNameAndAddress(), e.toString());
         }
         return null;
     }
 
+    /**
+     * Store the remaining time until each server expires, as reported by the admin panel. Saving the new dates moves
+     * the expiry timers of each server, which then announce and publish the expiry of each server on time.
+     *
+     * @param expirationSeconds the seconds until expiration, keyed by server id
+     * @return the number of refreshed servers
+     */
     public long refreshExpirationDates(Map<String, Integer> expirationSeconds) {
         ZonedDateTime now = ZonedDateTime.now();
-        return gameServerRepository.findByIdIn(expirationSeconds.keySet()).parallelStream()
+        List<GameServer> refreshed = gameServerIndex.findByIds(expirationSeconds.keySet()).stream()
             .map(server -> {
                 int seconds = expirationSeconds.get(server.getId());
                 if (seconds != 0) {
                     server.setExpirationDate(now.plusSeconds(seconds));
-                    if (server.getPlayers() > 0 && seconds < 60 * 15) {
-                        ZonedDateTime lastRconAnnounce = Optional.ofNullable(server.getLastRconAnnounce())
-                            .orElse(Instant.EPOCH.atZone(ZoneId.systemDefault()));
-                        // announce only once per interval to avoid spamming
-                        if (lastRconAnnounce.plusMinutes(getRconSayIntervalMinutes()).isBefore(ZonedDateTime.now())) {
-                            Result<String> result = tryRcon(server,
-                                "say [GameServers] Server will expire in " + humanizeShort(Duration.ofSeconds(seconds)));
-                            if (result.isSuccessful()) {
-                                server.setLastRconAnnounce(ZonedDateTime.now());
-                            }
-                        }
-                    }
                 }
                 server.setExpirationCheckDate(now);
                 return server;
             })
-            .map(gameServerRepository::save)
-            .count();
+            .collect(Collectors.toList());
+        saveChanges(refreshed);
+        return refreshed.size();
+    }
+
+    /**
+     * Place the expiry timers of a server according to its expiration date, replacing the previous ones. Timers whose
+     * time has already passed are dropped, so restarting doesn't repeat the events of servers that expired before.
+     *
+     * @param server the server to schedule
+     */
+    private void scheduleExpiry(GameServer server) {
+        if (server.getId() == null || server.getExpirationDate() == null) {
+            return;
+        }
+        long expiration = server.getExpirationDate().toInstant().toEpochMilli();
+        Long previous = expiryDates.put(server.getId(), expiration);
+        if (previous != null && previous == expiration) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        scheduleExpiry(server.getId(), GameServerExpiryEvent.Kind.WARNING, expiration - gameAdminProperties.getExpiryWarning(), now);
+        scheduleExpiry(server.getId(), GameServerExpiryEvent.Kind.EXPIRED, expiration, now);
+        scheduleExpiry(server.getId(), GameServerExpiryEvent.Kind.CLAIM_WINDOW_CLOSED, expiration + gameAdminProperties.getExpiryClaimWindow(), now);
+    }
+
+    private void scheduleExpiry(String id, GameServerExpiryEvent.Kind kind, long deadline, long now) {
+        ExpiryTimer timer = new ExpiryTimer(id, kind);
+        if (deadline > now) {
+            expiryWheel.schedule(timer, deadline);
+        } else {
+            expiryWheel.cancel(timer);
+        }
+    }
+
+    private void cancelExpiry(String id) {
+        expiryDates.remove(id);
+        for (GameServerExpiryEvent.Kind kind : GameServerExpiryEvent.Kind.values()) {
+            expiryWheel.cancel(new ExpiryTimer(id, kind));
+        }
+    }
+
+    private void fireExpiryTimers() {
+        try {
+            for (ExpiryTimer timer : expiryWheel.advance(System.currentTimeMillis())) {
+                // the due timers are already out of the wheel, so a failing one must not drop the rest
+                try {
+                    gameServerIndex.get(timer.id).ifPresent(server -> onExpiryTimer(server, timer.kind));
+                } catch (Exception e) {
+                    log.warn("Could not fire {} expiry timer of server {}", timer.kind, timer.id, e);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not fire expiry timers", e);
+        }
+    }
+
+    private void onExpiryTimer(GameServer server, GameServerExpiryEvent.Kind kind) {
+        ZonedDateTime expirationDate = server.getExpirationDate();
+        log.debug("[{}] Expiry timer {} fired for {}", server, kind, expirationDate);
+        if (kind == GameServerExpiryEvent.Kind.WARNING
+            && server.getPlayers() != null && server.getPlayers() > 0) {
+            Duration remaining = Duration.between(ZonedDateTime.now(), expirationDate);
+            announce(server, "Server will expire in " + humanizeShort(remaining))
+                .thenRun(() -> saveChanges(Collections.singletonList(server)));
+        }
+        publisher.publishEvent(new GameServerExpiryEvent(server, kind, expirationDate));
     }
 
     public boolean isMissingOrExpiredRcon(GameServer server) {
@@ -282,35 +497,47 @@ public class GameServerService implements InitializingBean {
 
     @Retryable(include = {IOException.class, ConnectException.class}, backoff = @Backoff(2000L))
     public String rcon(GameServer gameServer, String cmd) throws IOException {
-        GameServer server = gameServerRepository.findOne(gameServer.getId());
-        InetSocketAddress address = getInetSocketAddress(server);
-        boolean needsRconRefresh = isMissingOrExpiredRcon(server);
-        String password = needsRconRefresh ? refreshPasswordAndGet(server) : server.getRconPassword();
-        String command = cleanCommand(cmd);
-
-        if (!gameQueryService.isAuthenticated(address) || needsRconRefresh) {
-            log.debug("[{}] Authenticating to RCON", server.getShortNameAndAddress());
-            SourceRconAuthStatus authStatus = gameQueryService.authenticate(address, password).join();
-            if (!authStatus.isAuthenticated()) {
-                log.warn("[{}] Refreshing RCON after auth failing", server.getShortNameAndAddress());
-                authStatus = gameQueryService.authenticate(address, refreshPasswordAndGet(server)).join();
-                if (!authStatus.isAuthenticated()) {
-                    log.warn("[{}] Could not re-authenticate: {}", server.getShortNameAndAddress(), authStatus.getReason());
-                    throw new IOException("Could not re-authenticate");
-                }
+        GameServer server = gameServerIndex.get(gameServer.getId()).orElse(gameServer);
+        try {
+            return rconSessionManager.execute(server, cleanCommand(cmd)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (cause instanceof IOException) {
+                // Expire rcon then retry
+                server.setLastRconDate(null);
+                saveChanges(Collections.singletonList(server));
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw e;
         }
+    }
 
-        log.debug("[{}] rcon {}", server.getShortNameAndAddress(), command);
-        String response = gameQueryService.execute(address, command).join();
-        log.debug("[{}] {}", server.getShortNameAndAddress(), truncate(response, 100));
-        if (response == null || response.equals("Unable to re-authenticate from server")) {
-            // Expire rcon then retry
-            server.setLastRconDate(null);
-            gameServerRepository.save(server);
-            throw new IOException("Could not authenticate to server");
+    /**
+     * Broadcast a message to the players of a server, at most once per configured interval to avoid spamming.
+     *
+     * @param server  the server to announce to
+     * @param message the message to display
+     * @return a future completed once the announcement was sent or discarded
+     */
+    private CompletableFuture<Void> announce(GameServer server, String message) {
+        ZonedDateTime lastRconAnnounce = Optional.ofNullable(server.getLastRconAnnounce())
+            .orElse(Instant.EPOCH.atZone(ZoneId.systemDefault()));
+        if (!lastRconAnnounce.plusMinutes(getRconSayIntervalMinutes()).isBefore(ZonedDateTime.now())) {
+            return CompletableFuture.completedFuture(null);
         }
-        return response;
+        return rconSessionManager.announce(server, "say [GameServers] " + message)
+            .handle((response, error) -> {
+                if (error == null) {
+                    server.setLastRconAnnounce(ZonedDateTime.now());
+                } else {
+                    log.warn("[{}] Could not announce '{}': {}", server, message, error.toString());
+                }
+                return null;
+            });
     }
 
     public Result<String> tryRcon(GameServer server, String command) {
@@ -358,40 +585,49 @@ public class GameServerService implements InitializingBean {
     }
 
     public List<GameServer> findOutdatedServers() {
-        return gameServerRepository.findByVersionLessThan(getLatestVersion());
+        int latestVersion = getLatestVersion();
+        return gameServerIndex.findAll().stream()
+            .filter(server -> server.getVersion() != null && server.getVersion() < latestVersion)
+            .collect(Collectors.toList());
     }
 
     @Async
     public void updateGameServers() {
-        // check for availability of game update from GS side
-        long refreshed = gameServerRepository.findAll().parallelStream()
-            .map(this::refreshStatus)
-            .map(gameServerRepository::save)
-            .count();
+        // status is polled on its own cadence, but a new game version makes every server due now
+        int latestVersion = getLatestVersion();
+        if (lastLatestVersion != 0 && latestVersion > lastLatestVersion) {
+            log.info("New game version {} found, polling all servers", latestVersion);
+            pollScheduler.scheduleAllNow(System.currentTimeMillis());
+        }
+        lastLatestVersion = latestVersion;
         List<GameServer> outdated = findOutdatedServers();
         if (!outdated.isEmpty()) {
             refreshSettings();
         }
-        outdated.parallelStream()
-            .map(this::executeGameUpdate)
-            .forEach(gameServerRepository::save);
+        List<CompletableFuture<Void>> announcements = new CopyOnWriteArrayList<>();
+        List<GameServer> updating = outdated.parallelStream()
+            .map(server -> executeGameUpdate(server, announcements))
+            .collect(Collectors.toList());
+        CompletableFuture.allOf(announcements.toArray(new CompletableFuture[announcements.size()])).join();
+        saveChanges(updating);
         if (outdated.isEmpty()) {
             log.debug("All servers up-to-date");
             // reset updating flag
-            long upToDate = gameServerRepository.findAll().stream()
+            List<GameServer> updated = gameServerIndex.findAll().stream()
                 .filter(GameServer::isUpdating)
-                .map(server -> {
-                    server.setUpdating(false);
-                    server.setUpdateAttempts(0);
-                    return gameServerRepository.save(server);
-                })
-                .count();
+                .collect(Collectors.toList());
+            updated.forEach(server -> {
+                server.setUpdating(false);
+                server.setUpdateAttempts(0);
+            });
+            saveChanges(updated);
+            long upToDate = updated.size();
             if (upToDate > 0) {
                 log.debug("Reset update status on {}", inflect(upToDate, "server"));
                 publisher.publishEvent(new UpdateCompletedEvent(getLatestVersion()));
             }
         } else {
-            List<GameServer> delaying = gameServerRepository.findAll().stream()
+            List<GameServer> delaying = gameServerIndex.findAll().stream()
                 .filter(server -> server.isUpdating() && server.getUpdateAttempts() > getUpdateAttemptsThreshold())
                 .collect(Collectors.toList());
             log.info("Update is pending on {}: {}", inflect(outdated.size(), "server"),
@@ -400,22 +636,145 @@ public class GameServerService implements InitializingBean {
         }
 
         int unresponsive = findUnresponsiveServers().size();
-        log.debug("{} had their status refreshed{}", inflect(refreshed, "server"),
-            unresponsive == 0 ? "" : " (" + unresponsive + " currently unreachable)");
+        if (unresponsive > 0) {
+            log.debug("{} currently unreachable", inflect(unresponsive, "server"));
+        }
+    }
+
+    /**
+     * Poll the servers that are due, as long as the query budget allows it, and schedule their next poll once done.
+     */
+    private void dispatchPolls() {
+        try {
+            long now = System.currentTimeMillis();
+            syncPollSchedule(now);
+            pollScheduler.setBudgetPerMinute(gameQueryProperties.getPollBudget());
+            List<GameServer> due = pollScheduler.takeDue(now).stream()
+                .map(id -> gameServerIndex.get(id).orElse(null))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+            if (due.isEmpty()) {
+                return;
+            }
+            refreshStatus(due).whenComplete((refreshed, error) -> {
+                long done = System.currentTimeMillis();
+                for (GameServer server : due) {
+                    String id = server.getId();
+                    // a restart or a request to poll everything came in while this poll was running
+                    long interval = pollScheduler.isExpedited(id) ? gameQueryProperties.getPollMinInterval() :
+                        getNextPollInterval(server, pollScheduler.getInterval(id));
+                    pollScheduler.schedule(id, done, interval);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Could not dispatch status polls", e);
+        }
+    }
+
+    private void syncPollSchedule(long now) {
+        Set<String> scheduled = pollScheduler.getItems();
+        for (GameServer server : gameServerIndex.findAll()) {
+            if (server.getId() != null && !scheduled.remove(server.getId())) {
+                // new servers are polled right away
+                pollScheduler.schedule(server.getId(), now, 0);
+            }
+        }
+        scheduled.forEach(pollScheduler::remove);
+    }
+
+    /**
+     * Get the time until the next status poll of a server. Servers that are unhealthy, updating or were recently
+     * restarted are polled the fastest, servers with players at the active interval, and healthy empty servers back off
+     * from there, doubling the interval on each poll up to the maximum.
+     *
+     * @param server   the polled server
+     * @param previous the previous interval in milliseconds
+     * @return the next interval in milliseconds
+     */
+    private long getNextPollInterval(GameServer server, long previous) {
+        long min = gameQueryProperties.getPollMinInterval();
+        long active = Math.max(min, gameQueryProperties.getPollActiveInterval());
+        long max = Math.max(active, gameQueryProperties.getPollMaxInterval());
+        if (getStatusMonitor(server).getState() != Monitor.State.GOOD
+            || (server.getPing() != null && server.getPing() > getPingThreshold())
+            || server.isUpdating() || isRecentlyRestarted(server)) {
+            return min;
+        } else if (server.getPlayers() != null && server.getPlayers() > 0) {
+            return active;
+        } else {
+            return Math.min(max, Math.max(active, previous * 2));
+        }
+    }
+
+    private boolean isRecentlyRestarted(GameServer server) {
+        Instant restarted = restartDates.get(server.getId());
+        if (restarted == null) {
+            return false;
+        } else if (restarted.plus(Duration.ofMinutes(10)).isBefore(Instant.now())) {
+            restartDates.remove(server.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private void markRestarted(GameServer server) {
+        restartDates.put(server.getId(), Instant.now());
+        // follow the server closely while it comes back
+        pollScheduler.expedite(server.getId(), System.currentTimeMillis(), gameQueryProperties.getPollMinInterval());
+    }
+
+    /**
+     * Query the status of all the given servers concurrently, bounded by the configured sweep concurrency, and persist
+     * the results in a single bulk write once every query has completed or timed out.
+     *
+     * @param servers the servers to refresh
+     * @return a future completed with the refreshed servers
+     */
+    public CompletableFuture<List<GameServer>> refreshStatus(List<GameServer> servers) {
+        Timer.Context context = metricRegistry.timer("UGC.GameServer.sweep.duration").time();
+        statusLimiter.resetPeakInFlight();
+        List<CompletableFuture<GameServer>> futures = servers.stream()
+            .map(server -> refreshStatusAsync(server)
+                .exceptionally(t -> {
+                    log.warn("[{}] Could not process status: {}", server, t.toString());
+                    return null;
+                }))
+            .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+            .thenApply(v -> {
+                List<GameServer> refreshed = futures.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+                int modified = saveChanges(refreshed);
+                metricRegistry.histogram("UGC.GameServer.sweep.concurrency").update(statusLimiter.resetPeakInFlight());
+                long elapsed = nanosToMillis(context.stop());
+                log.debug("Status sweep of {} took {} ms ({} modified)", inflect(refreshed.size(), "server"), elapsed, modified);
+                return refreshed;
+            });
     }
 
     public GameServer refreshStatus(GameServer server) {
         if (server == null) {
             return null;
         }
+        return refreshStatusAsync(server).join();
+    }
 
+    private CompletableFuture<GameServer> refreshStatusAsync(GameServer server) {
         Timer timer = getDelayTimer(server);
-        Timer.Context context = timer.time();
-        int delay;
-        try {
-            SourceServer source = gameQueryService.getServerInfo(getInetSocketAddress(server)).join();
-            delay = Long.valueOf(nanosToMillis(context.stop())).intValue();
-
+        AtomicReference<Timer.Context> context = new AtomicReference<>();
+        return statusLimiter.submit(() -> {
+            context.set(timer.time());
+            return gameQueryService.getServerInfo(getInetSocketAddress(server));
+        }).handle((source, error) -> {
+            int delay = Long.valueOf(nanosToMillis(context.get().stop())).intValue();
+            return applyStatus(server, source, error, delay);
+        });
+    }
+
+    private GameServer applyStatus(GameServer server, SourceServer source, Throwable error, int delay) {
+        if (error == null) {
             String mapName = source.getMapName();
             int players = source.getNumOfPlayers();
             int max = source.getMaxPlayers();
@@ -433,13 +792,15 @@ public class GameServerService implements InitializingBean {
             server.setTvPort(tvPort);
 
             playerCountMap.put(server, players);
-        } catch (Exception e) {
-            if (e.getCause() instanceof ReadTimeoutException) {
+            regionPlayerCounts.set(server.getId(), server.getShortRegion(), players);
+        } else {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof ReadTimeoutException || cause instanceof TimeoutException) {
                 log.info("[{}] Status check timed out", server);
+                metricRegistry.meter("UGC.GameServer.sweep.timeouts").mark();
             } else {
-                log.warn("[{}] Failed to refresh status: {}", server, e.toString());
+                log.warn("[{}] Failed to refresh status: {}", server, cause.toString());
             }
-            delay = Long.valueOf(nanosToMillis(context.stop())).intValue();
         }
 
         server.setPing(delay);
@@ -461,7 +822,7 @@ public class GameServerService implements InitializingBean {
         return MiscUtil.getSourceServerAddress(server.getAddress());
     }
 
-    private GameServer executeGameUpdate(GameServer server) {
+    private GameServer executeGameUpdate(GameServer server, List<CompletableFuture<Void>> announcements) {
         if (!server.isUpdating()) {
             server.setUpdating(true);
             server.setUpdateAttempts(1);
@@ -487,16 +848,7 @@ public class GameServerService implements InitializingBean {
         if (players > 0) {
             // never upgrade a server with players
             log.info("[{}] Server update is on hold. Players connected: {}", server, server.getPlayers());
-            ZonedDateTime lastRconAnnounce = Optional.ofNullable(server.getLastRconAnnounce())
-                .orElse(Instant.EPOCH.atZone(ZoneId.systemDefault()));
-            // announce only once per interval to avoid spamming
-            if (lastRconAnnounce.plusMinutes(getRconSayIntervalMinutes()).isBefore(ZonedDateTime.now())) {
-                Result<String> result = tryRcon(server,
-                    "say [GameServers] Game update on hold until all players leave the server");
-                if (result.isSuccessful()) {
-                    server.setLastRconAnnounce(ZonedDateTime.now());
-                }
-            }
+            announcements.add(announce(server, "Game update on hold until all players leave the server"));
         } else if (getStatusMonitor(server).getState() != Monitor.State.GOOD) {
             // hold servers that are offline - install in progress or a dead server?
             // TODO: consider upgrading anyway after a certain attempt # threshold
@@ -504,8 +856,9 @@ public class GameServerService implements InitializingBean {
         } else {
             log.debug("[{}] Starting update attempt {}", server, server.getUpdateAttempts() + 1);
             try {
-                if (gameAdminService.upgrade(server.getId()) == GameAdminService.Result.INSTALLING) {
+                if (gameAdminService.upgrade(server.getId(), Priority.UPDATE) == GameAdminService.Result.INSTALLING) {
                     server.setLastGameUpdate(ZonedDateTime.now());
+                    markRestarted(server);
                 }
             } catch (IOException e) {
                 log.warn("[{}] Could not perform game update: {}", server, e.toString());
@@ -521,21 +874,26 @@ public class GameServerService implements InitializingBean {
     //////////////////////////////////
 
     public List<GameServer> findUnresponsiveServers() {
-        return gameServerRepository.findByPingGreaterThan(getPingThreshold());
+        int threshold = getPingThreshold();
+        return gameServerIndex.findAll().stream()
+            .filter(server -> server.getPing() != null && server.getPing() > threshold)
+            .collect(Collectors.toList());
     }
 
     public List<GameServer> findUnhealthyServers() {
-        return gameServerRepository.findAll().parallelStream()
+        return gameServerIndex.findAll().stream()
             .filter(server -> getStatusMonitor(server).getState() != Monitor.State.GOOD)
             .collect(Collectors.toList());
     }
 
     public List<GameServer> findServersWithoutRcon() {
-        return gameServerRepository.findByRconPasswordIsNull();
+        return gameServerIndex.findAll().stream()
+            .filter(server -> server.getRconPassword() == null)
+            .collect(Collectors.toList());
     }
 
     public Map<String, String> getSummary() {
-        return gameServerRepository.findAll().stream()
+        return gameServerIndex.findAll().stream()
             .collect(Collectors.toMap(GameServer::getShortName, GameServer::getSummary));
     }
 
@@ -543,20 +901,41 @@ public class GameServerService implements InitializingBean {
         return getStatusMonitor(server).getState();
     }
 
+    /**
+     * Get the number of players connected to the servers of each region, as of their last status check.
+     *
+     * @return a map of short region names to player counts
+     */
+    public Map<String, Long> getPlayerCountsByRegion() {
+        return regionPlayerCounts.snapshot();
+    }
+
     /////////////////////////////////
     // Metric collection utilities //
     /////////////////////////////////
 
-    private String getTags(GameServer server) {
-        return "[region:" + server.getShortRegion() + ",game:" + server.getShortName() + "]";
+    private MetricKey getKey(String name, GameServer server) {
+        return MetricKey.of(name, "region", server.getShortRegion(), "game", server.getShortName());
     }
 
     private Timer getDelayTimer(GameServer server) {
-        return metricRegistry.timer("UGC.GameServer.delay" + getTags(server));
+        return taggedMetricRegistry.timer(getKey("UGC.GameServer.delay", server));
     }
 
     private Histogram getPlayerHistogram(GameServer server) {
-        return metricRegistry.histogram("UGC.GameServer.players" + getTags(server));
+        return taggedMetricRegistry.histogram(getKey("UGC.GameServer.players", server));
+    }
+
+    private void initSweepMetrics() {
+        metricRegistry.remove("UGC.GameServer.sweep.in_flight");
+        metricRegistry.register("UGC.GameServer.sweep.in_flight", (Gauge<Integer>) statusLimiter::getInFlight);
+        metricRegistry.remove("UGC.GameServer.sweep.queued");
+        metricRegistry.register("UGC.GameServer.sweep.queued", (Gauge<Integer>) statusLimiter::getQueued);
+        metricRegistry.remove("UGC.GameServer.poll.scheduled");
+        metricRegistry.register("UGC.GameServer.poll.scheduled", (Gauge<Integer>) pollScheduler::size);
+        metricRegistry.remove("UGC.GameServer.poll.overdue");
+        metricRegistry.register("UGC.GameServer.poll.overdue",
+            (Gauge<Integer>) () -> pollScheduler.getOverdue(System.currentTimeMillis()));
     }
 
     private void initServerMetrics(GameServer server) {
@@ -565,28 +944,26 @@ public class GameServerService implements InitializingBean {
     }
 
     private void registerStatusGauge(GameServer server) {
-        String key = "UGC.GameServer.status" + getTags(server);
-        metricRegistry.remove(key);
-        metricRegistry.register(key, (Gauge<Integer>) () -> getStatusMonitor(server).getHealthPercent());
+        taggedMetricRegistry.register(getKey("UGC.GameServer.status", server),
+            (Gauge<Integer>) () -> getStatusMonitor(server).getHealthPercent());
     }
 
     private void registerPlayerCountGauge(GameServer server) {
-        String key = "UGC.GameServer.player_count" + getTags(server);
-        metricRegistry.remove(key);
-        metricRegistry.register(key, (Gauge<Integer>) () -> playerCountMap.getOrDefault(server, 0));
+        taggedMetricRegistry.register(getKey("UGC.GameServer.player_count", server),
+            (Gauge<Integer>) () -> playerCountMap.getOrDefault(server, 0));
     }
 
-    private Monitor<Integer> getStatusMonitor(GameServer server) {
+    private Monitor getStatusMonitor(GameServer server) {
         return serverStatusMap.computeIfAbsent(server,
             key -> {
-                Monitor<Integer> monitor = new Monitor<>(key.getShortNameAndAddress(),
+                Monitor monitor = new Monitor(key.getShortNameAndAddress(),
                     consecutiveFailuresToTrigger, consecutiveSuccessesToRecover, getStatusCheckFunction());
                 monitor.addListener(monitorListener);
                 return monitor;
             });
     }
 
-    private Function<Integer, Boolean> getStatusCheckFunction() {
+    private LongPredicate getStatusCheckFunction() {
         return ping -> ping < getPingThreshold();
     }
 
@@ -595,87 +972,34 @@ public class GameServerService implements InitializingBean {
     /////////////////////////////////
 
     public List<GameServer> findServers() {
-        return gameServerRepository.findAll();
+        return gameServerIndex.findAll();
     }
 
     public List<GameServer> findServers(String k) {
-        String key = k.trim().toLowerCase();
-        return gameServerRepository.findAll().stream()
-            .filter(s -> isClaimedCase(s, key) || isUnclaimedCase(s, key)
-                || containsName(s, key) || isShortName(s, key) || hasAddressLike(s, key))
-            .collect(Collectors.toList());
+        return gameServerIndex.search(Collections.singletonList(k.trim().toLowerCase()));
     }
 
     public List<GameServer> findServersMultiple(List<String> input) {
-        List<String> keys = input.stream().map(k -> k.trim().toLowerCase()).collect(Collectors.toList());
-        return gameServerRepository.findAll().stream()
-            .filter(s -> isClaimedCase(s, keys) || isUnclaimedCase(s, keys)
-                || containsName(s, keys) || isShortName(s, keys) || hasAddressLike(s, keys))
-            .collect(Collectors.toList());
-    }
-
-    private boolean isUnclaimedCase(GameServer s, List<String> keys) {
-        if (s.getExpirationDate() == null) {
-            return false;
-        }
-        ZonedDateTime now = ZonedDateTime.now();
-        return keys.stream().anyMatch("unclaimed"::equals)
-            && now.isAfter(s.getExpirationDate());
-    }
-
-    private boolean isClaimedCase(GameServer s, List<String> keys) {
-        if (s.getExpirationDate() == null) {
-            return false;
-        }
-        ZonedDateTime now = ZonedDateTime.now();
-        return keys.stream().anyMatch("claimed"::equals)
-            && now.isBefore(s.getExpirationDate());
-    }
-
-    private boolean isUnclaimedCase(GameServer s, String key) {
-        if (s.getExpirationDate() == null) {
-            return false;
-        }
-        ZonedDateTime now = ZonedDateTime.now();
-        return "unclaimed".equals(key) && now.isAfter(s.getExpirationDate());
+        return gameServerIndex.search(input.stream().map(k -> k.trim().toLowerCase()).collect(Collectors.toList()));
     }
 
-    private boolean isClaimedCase(GameServer s, String key) {
-        if (s.getExpirationDate() == null) {
-            return false;
-        }
-        ZonedDateTime now = ZonedDateTime.now();
-        return "claimed".equals(key) && now.isBefore(s.getExpirationDate());
-    }
-
-    private boolean containsName(GameServer server, List<String> keys) {
-        return keys.stream().anyMatch(k -> containsName(server, k));
-    }
-
-    private boolean isShortName(GameServer server, List<String> keys) {
-        return keys.stream().anyMatch(k -> isShortName(server, k));
-    }
-
-    private boolean hasAddressLike(GameServer server, List<String> keys) {
-        return keys.stream().anyMatch(k -> hasAddressLike(server, k));
-    }
-
-    private boolean containsName(GameServer server, String key) {
-        return server.getName().trim().toLowerCase().contains(key);
-    }
-
-    private boolean isShortName(GameServer server, String key) {
-        return key.equals(server.getShortName());
-    }
-
-    private boolean hasAddressLike(GameServer server, String key) {
-        return server.getAddress().startsWith(key);
+    public List<GameServer> findServersByRegion(String shortRegion) {
+        return gameServerIndex.findByShortRegion(shortRegion.trim().toLowerCase());
     }
 
     ////////////////////////////////////////
     // Wrappers for game admin operations //
     ////////////////////////////////////////
 
+    /**
+     * Get the number of requests to the admin panel an operator's request would wait for.
+     *
+     * @return the number of requests ahead
+     */
+    public int getPanelQueuedAhead() {
+        return gameAdminService.getQueuedAhead(Priority.INTERACTIVE);
+    }
+
     public String getServerConsole(GameServer server) throws IOException {
         return gameAdminService.getServerConsole(server.getId());
     }
@@ -698,6 +1022,7 @@ public class GameServerService implements InitializingBean {
             try {
                 GameAdminService.Result response = gameAdminService.restart(server.getId());
                 if (response == GameAdminService.Result.RESTARTED) {
+                    markRestarted(server);
                     return Result.empty("Server is restarting...");
                 } else {
                     return Result.error("Error: " + response);
@@ -738,6 +1063,7 @@ public class GameServerService implements InitializingBean {
             try {
                 GameAdminService.Result response = gameAdminService.upgrade(server.getId());
                 if (response == GameAdminService.Result.INSTALLING) {
+                    markRestarted(server);
                     return Result.empty("Server is updating game version...");
                 } else {
                     return Result.error("Could not update game version: " + response);
@@ -763,6 +1089,7 @@ public class GameServerService implements InitializingBean {
             try {
                 GameAdminService.Result response = gameAdminService.installMod(server.getId(), setting.getValue());
                 if (response == GameAdminService.Result.INSTALLING) {
+                    markRestarted(server);
                     return Result.empty("Server is installing mod...");
                 } else {
                     return Result.error("Could not install mod: " + response);
@@ -794,7 +1121,7 @@ public class GameServerService implements InitializingBean {
                 || oldSuccessesToRecover != consecutiveSuccessesToRecover) {
                 log.debug("Monitor parameters were changed, resetting all monitors");
                 serverStatusMap.clear();
-                gameServerRepository.findAll().forEach(this::registerStatusGauge);
+                gameServerIndex.findAll().forEach(this::registerStatusGauge);
             }
 
             int oldPingThreshold = pingThreshold;
@@ -858,4 +1185,44 @@ public class GameServerService implements InitializingBean {
         server = refreshStatus(server);
         return server.getPlayers() == 0;
     }
+
+    private class RconCredentials implements RconSessionManager.CredentialProvider {
+
+        @Override
+        public String getPassword(GameServer server, boolean refresh) {
+            return refresh || isMissingOrExpiredRcon(server) ? refreshPasswordAndGet(server) : server.getRconPassword();
+        }
+
+        @Override
+        public boolean isExpired(GameServer server) {
+            return isMissingOrExpiredRcon(server);
+        }
+    }
+
+    private static class ExpiryTimer {
+        private final String id;
+        private final GameServerExpiryEvent.Kind kind;
+
+        private ExpiryTimer(String id, GameServerExpiryEvent.Kind kind) {
+            this.id = id;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ExpiryTimer that = (ExpiryTimer) o;
+            return id.equals(that.id) && kind == that.kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, kind);
+        }
+    }
 }
@@ -1,51 +1,141 @@
 package top.quantic.sentry.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.stereotype.Service;
+import sx.blah.discord.handle.obj.IChannel;
 import sx.blah.discord.handle.obj.IMessage;
+import sx.blah.discord.handle.obj.IUser;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.discord.core.Command;
 import top.quantic.sentry.domain.Permission;
 import top.quantic.sentry.domain.Privilege;
 import top.quantic.sentry.domain.enumeration.PermissionType;
 import top.quantic.sentry.repository.PermissionRepository;
 import top.quantic.sentry.repository.PrivilegeRepository;
+import top.quantic.sentry.service.util.PermissionIndex;
 
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static top.quantic.sentry.discord.util.DiscordUtil.getResourcesFromCommand;
 import static top.quantic.sentry.discord.util.DiscordUtil.getRolesFromMessage;
+import static top.quantic.sentry.discord.util.DiscordUtil.getRolesWithGuild;
+import static top.quantic.sentry.service.util.MongoEventUtil.getDeletedId;
 
 /**
  * Service Implementation for managing Permission.
+ * <p>
+ * Permission checks are resolved against an in-memory {@link PermissionIndex} kept in sync with every Permission and
+ * Privilege write through the mapping events published by Spring Data MongoDB. The roles of a Discord user within a
+ * guild are memoized for a short time, since resolving them for private channels means walking every guild.
  */
 @Service
-public class PermissionService {
+public class PermissionService implements InitializingBean {
 
     private final Logger log = LoggerFactory.getLogger(PermissionService.class);
 
     private final PermissionRepository permissionRepository;
     private final PrivilegeRepository privilegeRepository;
+    private final PermissionIndex permissionIndex = new PermissionIndex();
+    private final Cache<String, Set<String>> rolesCache;
 
     @Autowired
-    public PermissionService(PermissionRepository permissionRepository, PrivilegeRepository privilegeRepository) {
+    public PermissionService(PermissionRepository permissionRepository, PrivilegeRepository privilegeRepository,
+                             SentryProperties sentryProperties) {
         this.permissionRepository = permissionRepository;
         this.privilegeRepository = privilegeRepository;
+        long rolesCacheTtl = sentryProperties.getDiscord().getRolesCacheTtl();
+        this.rolesCache = rolesCacheTtl > 0 ? CacheBuilder.newBuilder()
+            .expireAfterWrite(rolesCacheTtl, TimeUnit.MILLISECONDS)
+            .maximumSize(10000)
+            .build() : null;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        reloadIndex();
+    }
+
+    /**
+     * Rebuild the permission index from the database.
+     */
+    public void reloadIndex() {
+        permissionIndex.load(permissionRepository.findAll(), privilegeRepository.findAll());
+        log.debug("Loaded {} permissions and {} privileges",
+            permissionIndex.getPermissionCount(), permissionIndex.getPrivilegeCount());
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        Object source = event.getSource();
+        if (source instanceof Permission) {
+            permissionIndex.put((Permission) source);
+        } else if (source instanceof Privilege) {
+            permissionIndex.put((Privilege) source);
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        Class<?> type = event.getType();
+        if (type != Permission.class && type != Privilege.class) {
+            return;
+        }
+        String id = getDeletedId(event.getSource());
+        if (id == null) {
+            // not a delete by id, like deleteAll
+            reloadIndex();
+        } else if (type == Permission.class) {
+            permissionIndex.removePermission(id);
+        } else {
+            permissionIndex.removePrivilege(id);
+        }
+    }
+
+    private Set<String> getRoles(IMessage message, boolean deep) {
+        IUser user = message.getAuthor();
+        IChannel channel = message.getChannel();
+        if (rolesCache == null || user == null) {
+            return getRolesFromMessage(message, deep);
+        }
+        try {
+            if (channel == null || channel.isPrivate()) {
+                if (!deep) {
+                    return getRolesFromMessage(message, false);
+                }
+                return rolesCache.get(user.getStringID() + ":*", () -> getRolesFromMessage(message, true));
+            } else {
+                Set<String> roleSet = new HashSet<>(rolesCache.get(user.getStringID() + ":" + channel.getGuild().getStringID(),
+                    () -> getRolesWithGuild(user, channel.getGuild())));
+                roleSet.add(channel.getStringID());
+                return roleSet;
+            }
+        } catch (ExecutionException e) {
+            log.warn("Could not resolve roles of {}", user, e.getCause());
+            return getRolesFromMessage(message, deep);
+        }
     }
 
     public boolean hasPermission(IMessage message, String operation, Command command, boolean deep) {
-        return hasPermission(getRolesFromMessage(message, deep), operation, getResourcesFromCommand(command));
+        return hasPermission(getRoles(message, deep), operation, getResourcesFromCommand(command));
     }
 
     public boolean hasPermission(IMessage message, String operation, String resource, boolean deep) {
-        return hasPermission(getRolesFromMessage(message, deep), operation, resource);
+        return hasPermission(getRoles(message, deep), operation, resource);
     }
 
     public boolean hasPermission(Set<String> roles, String operation, String resource) {
@@ -75,7 +165,7 @@ public class PermissionService {
      * @return a Set of types of Permission, like ALLOW or DENY. Can also contain both or none.
      */
     public Set<PermissionType> check(IMessage message, String operation, Command command, boolean deep) {
-        return checkPermissions(getRolesFromMessage(message, deep), operation, getResourcesFromCommand(command));
+        return checkPermissions(getRoles(message, deep), operation, getResourcesFromCommand(command));
     }
 
     public Set<PermissionType> check(String role, String operation, String resource) {
@@ -87,21 +177,8 @@ public class PermissionService {
     }
 
     private Set<PermissionType> checkPermissions(Set<String> roles, String operation, Set<String> resources) {
-        if (resources.isEmpty()) {
-            return Collections.emptySet();
-        } else {
-            Set<String> translated = roles.stream()
-                .map(privilegeRepository::findByKey)
-                .flatMap(List::stream)
-                .map(Privilege::getRole)
-                .collect(Collectors.toSet());
-            roles.addAll(translated);
-            log.trace("Checking '{}' on {} for {}", operation, resources, roles);
-            return permissionRepository.findByRoleInAndOperationAndResourceIn(roles, operation, resources)
-                .stream()
-                .map(Permission::getType)
-                .collect(Collectors.toSet());
-        }
+        log.trace("Checking '{}' on {} for {}", operation, resources, roles);
+        return permissionIndex.check(roles, operation, resources);
     }
 
     /**
@@ -1,32 +1,32 @@
 package top.quantic.sentry.service;
 
-import com.codahale.metrics.MetricRegistry;
-import com.google.common.collect.MultimapBuilder;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.domain.PlayerCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+import top.quantic.sentry.event.PlayerCountsStoredEvent;
 import top.quantic.sentry.repository.PlayerCountRepository;
-import top.quantic.sentry.service.util.Adder;
 import top.quantic.sentry.web.rest.vm.Series;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.google.common.collect.Multimaps.toMultimap;
 import static java.time.temporal.ChronoUnit.MINUTES;
+import static top.quantic.sentry.service.RetentionService.selectRollup;
 import static top.quantic.sentry.service.util.ChartUtil.*;
 
 /**
@@ -38,72 +38,64 @@ public class PlayerCountService {
     private static final Logger log = LoggerFactory.getLogger(PlayerCountService.class);
 
     private final PlayerCountRepository playerCountRepository;
-    private final MetricRegistry metricRegistry;
+    private final GameServerService gameServerService;
+    private final SentryProperties sentryProperties;
+    private final ApplicationEventPublisher publisher;
 
     private final Map<String, Long> lastValueMap = new ConcurrentHashMap<>();
 
     private final Function<PlayerCount, String> seriesMapper = PlayerCount::getRegion;
     private final Function<PlayerCount, ZonedDateTime> timeMapper = PlayerCount::getTimestamp;
     private final Function<PlayerCount, Long> valueMapper = PlayerCount::getValue;
-    private final Function<Map.Entry<Pair<ZonedDateTime, String>, Adder>, PlayerCount> objectMapper =
-        entry -> new PlayerCount()
-            .region(entry.getKey().getRight())
-            .timestamp(entry.getKey().getLeft())
-            .value(entry.getValue().average());
 
     @Autowired
-    public PlayerCountService(PlayerCountRepository playerCountRepository, MetricRegistry metricRegistry) {
+    public PlayerCountService(PlayerCountRepository playerCountRepository, GameServerService gameServerService,
+                              SentryProperties sentryProperties, ApplicationEventPublisher publisher) {
         this.playerCountRepository = playerCountRepository;
-        this.metricRegistry = metricRegistry;
+        this.gameServerService = gameServerService;
+        this.sentryProperties = sentryProperties;
+        this.publisher = publisher;
     }
 
     @Scheduled(cron = "10 * * * * ?")
     void storePlayerCountMetrics() {
         ZonedDateTime timestamp = ZonedDateTime.now().truncatedTo(MINUTES);
 
-        Map<String, AtomicLong> aggregations = new ConcurrentHashMap<>();
-
-        metricRegistry.getGauges((name, metric) -> name.startsWith("UGC.GameServer.player_count"))
-            .entrySet().stream()
-            // all servers -> group into regions
-            .collect(toMultimap(
-                entry -> extractRegion(entry.getKey()),
-                Map.Entry::getValue,
-                MultimapBuilder.treeKeys().arrayListValues()::build))
-            .entries()
-            .forEach(entry -> aggregations.computeIfAbsent(entry.getKey(), k -> new AtomicLong())
-                .addAndGet((Integer) entry.getValue().getValue()));
-
-        aggregations.entrySet().stream()
-            .filter(entry -> entry.getValue().get() > 0 || lastValueMap.getOrDefault(entry.getKey(), 0L) != 0)
-            .forEach(entry -> {
-                String region = entry.getKey();
-                Long value = entry.getValue().get();
-                if (lastValueMap.getOrDefault(entry.getKey(), 0L) == 0) {
-                    if (playerCountRepository.countByRegionAndValueAndTimestamp(region, value, timestamp) == 0) {
-                        // add a 0 to the previous minute
-                        playerCountRepository.save(new PlayerCount()
-                            .timestamp(timestamp.minusMinutes(1))
-                            .region(region)
-                            .value(0L));
-                    }
+        List<PlayerCount> samples = new ArrayList<>();
+        gameServerService.getPlayerCountsByRegion().forEach((region, value) -> {
+            long lastValue = lastValueMap.getOrDefault(region, 0L);
+            if (value > 0 || lastValue != 0) {
+                if (lastValue == 0) {
+                    // add a 0 to the previous minute
+                    samples.add(new PlayerCount()
+                        .timestamp(timestamp.minusMinutes(1))
+                        .region(region)
+                        .value(0L));
                 }
-                playerCountRepository.save(new PlayerCount()
+                samples.add(new PlayerCount()
                     .timestamp(timestamp)
                     .region(region)
                     .value(value));
                 lastValueMap.put(region, value);
-            });
-    }
-
-    private String extractRegion(String key) {
-        return key.replaceAll("^.*\\[region:(\\w+),game:(\\w+)]$", "$1");
+            }
+        });
+        if (!samples.isEmpty()) {
+            playerCountRepository.save(samples);
+            playerCountRepository.saveRollups(samples);
+            publisher.publishEvent(new PlayerCountsStoredEvent(samples));
+        }
     }
 
     public List<Series> getGroupedPointsBetween(ZonedDateTime from, ZonedDateTime to) {
-        return getAggregatedSeriesFromData(playerCountRepository.findByTimestampBetween(from, to),
-            getResolution(Duration.between(from, to).toHours()),
-            seriesMapper, timeMapper, valueMapper, objectMapper);
+        int resolution = getResolution(Duration.between(from, to).toHours());
+        SentryProperties.Retention retention = sentryProperties.getRetention();
+        RollupResolution rollup = selectRollup(retention, retention.getPlayerCount(), resolution, from);
+        if (rollup == null) {
+            return getAggregatedSeriesFromData(playerCountRepository.findByTimestampBetween(from, to), resolution,
+                seriesMapper, timeMapper, valueMapper);
+        }
+        // read pre-aggregated buckets instead of every minute sample
+        return getAggregatedSeriesFromRollups(playerCountRepository.findRollupsBetween(rollup, from, to), resolution);
     }
 
     public List<Series> getMostRecentPoint() {
@@ -0,0 +1,351 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.quantic.sentry.domain.GameServer;
+import top.quantic.sentry.service.util.MiscUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.truncate;
+
+/**
+ * Keeps an authenticated RCON session per server address. Commands sent to the same server are queued and executed
+ * in order without blocking the caller, and consecutive announcements waiting in a queue are sent together as a
+ * single command line. Authentication is only performed when a session is new, when its credentials have expired or
+ * when the server rejects a command, in which case the password is refreshed and the command retried once. Sessions
+ * idle for longer than the configured timeout are evicted.
+ */
+public class RconSessionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(RconSessionManager.class);
+    private static final String REAUTH_FAILED = "Unable to re-authenticate from server";
+    private static final int MAX_BATCH_SIZE = 8;
+
+    private final GameQueryService gameQueryService;
+    private final MetricRegistry metricRegistry;
+    private final CredentialProvider credentialProvider;
+    private final long idleTimeoutMillis;
+    private final long commandTimeoutMillis;
+    private final Map<InetSocketAddress, Session> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService authExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    public RconSessionManager(GameQueryService gameQueryService, MetricRegistry metricRegistry,
+                              CredentialProvider credentialProvider, long idleTimeoutMillis, long commandTimeoutMillis) {
+        this.gameQueryService = gameQueryService;
+        this.metricRegistry = metricRegistry;
+        this.credentialProvider = credentialProvider;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.commandTimeoutMillis = commandTimeoutMillis;
+        this.authExecutor = Executors.newCachedThreadPool(daemonThreadFactory("rcon-auth"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("rcon-scheduler"));
+        this.scheduler.scheduleWithFixedDelay(this::evictIdleSessions, 1, 1, TimeUnit.MINUTES);
+        initMetrics();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void initMetrics() {
+        metricRegistry.remove("UGC.GameServer.rcon.sessions");
+        metricRegistry.register("UGC.GameServer.rcon.sessions", (Gauge<Integer>) sessions::size);
+        metricRegistry.remove("UGC.GameServer.rcon.queued");
+        metricRegistry.register("UGC.GameServer.rcon.queued", (Gauge<Integer>) this::getQueuedCount);
+    }
+
+    /**
+     * Queue a command for execution on the given server.
+     *
+     * @param server  the target server
+     * @param command the command to execute
+     * @return a future completed with the server response, or exceptionally if the command could not be executed
+     */
+    public CompletableFuture<String> execute(GameServer server, String command) {
+        return enqueue(server, command, false);
+    }
+
+    /**
+     * Queue a command whose response is not relevant, like <code>say</code>, allowing it to be sent together with
+     * other such commands already waiting for the same server.
+     *
+     * @param server  the target server
+     * @param command the command to execute
+     * @return a future completed with the server response to the (possibly combined) command
+     */
+    public CompletableFuture<String> announce(GameServer server, String command) {
+        return enqueue(server, command, true);
+    }
+
+    private CompletableFuture<String> enqueue(GameServer server, String command, boolean coalesce) {
+        InetSocketAddress address = MiscUtil.getSourceServerAddress(server.getAddress());
+        Request request = new Request(command, coalesce);
+        while (true) {
+            Session session = sessions.computeIfAbsent(address, Session::new);
+            synchronized (session) {
+                if (session.evicted) {
+                    // evicted after it was looked up, so get the one that replaces it
+                    continue;
+                }
+                session.server = server;
+                session.lastUsed = System.currentTimeMillis();
+                session.queue.add(request);
+                metricRegistry.histogram("UGC.GameServer.rcon.queue_depth").update(session.queue.size());
+            }
+            drain(session);
+            return request.future;
+        }
+    }
+
+    private void drain(Session session) {
+        // a command completing synchronously calls back into drain from within send, so only one caller runs the loop
+        // and the others leave the next batch to it instead of recursing once per queued command
+        do {
+            synchronized (session) {
+                if (session.draining) {
+                    return;
+                }
+                session.draining = true;
+            }
+            try {
+                List<Request> batch;
+                while ((batch = nextBatch(session)) != null) {
+                    send(session, batch);
+                }
+            } finally {
+                synchronized (session) {
+                    session.draining = false;
+                }
+            }
+            // a command may have been queued or completed after the last batch was taken and before the flag was cleared
+        } while (isReady(session));
+    }
+
+    private List<Request> nextBatch(Session session) {
+        synchronized (session) {
+            if (session.running || session.queue.isEmpty()) {
+                return null;
+            }
+            List<Request> batch = new ArrayList<>();
+            Request first = session.queue.poll();
+            batch.add(first);
+            while (first.coalesce && batch.size() < MAX_BATCH_SIZE
+                && session.queue.peek() != null && session.queue.peek().coalesce) {
+                batch.add(session.queue.poll());
+            }
+            session.running = true;
+            return batch;
+        }
+    }
+
+    private boolean isReady(Session session) {
+        synchronized (session) {
+            return !session.running && !session.queue.isEmpty();
+        }
+    }
+
+    private void send(Session session, List<Request> batch) {
+        GameServer server;
+        synchronized (session) {
+            server = session.server;
+        }
+        String command = batch.stream().map(r -> r.command).collect(Collectors.joining("; "));
+        Timer.Context context = metricRegistry.timer("UGC.GameServer.rcon.latency").time();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // a server that never answers must not hold the rest of its queue forever
+        ScheduledFuture<?> timeout = scheduler.schedule(() ->
+                result.completeExceptionally(new TimeoutException("RCON command timed out after " + commandTimeoutMillis + "ms")),
+            commandTimeoutMillis, TimeUnit.MILLISECONDS);
+        run(session, server, command, false)
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(response);
+                }
+            });
+        result.whenComplete((response, error) -> {
+            timeout.cancel(false);
+            context.stop();
+            batch.forEach(request -> {
+                if (error != null) {
+                    request.future.completeExceptionally(error);
+                } else {
+                    request.future.complete(response);
+                }
+            });
+            synchronized (session) {
+                if (error instanceof TimeoutException) {
+                    // the command is still outstanding, so authenticate again before sending the next one to keep its
+                    // late reply from being taken for the answer to another command
+                    session.authenticated = false;
+                }
+                session.lastUsed = System.currentTimeMillis();
+                session.running = false;
+            }
+            drain(session);
+        });
+    }
+
+    private CompletableFuture<String> run(Session session, GameServer server, String command, boolean retry) {
+        return authenticate(session, server, retry)
+            .thenCompose(v -> {
+                log.debug("[{}] rcon {}", server.getShortNameAndAddress(), command);
+                return gameQueryService.execute(session.address, command);
+            })
+            .thenCompose(response -> {
+                if (response == null || response.equals(REAUTH_FAILED)) {
+                    session.authenticated = false;
+                    if (retry) {
+                        return failed(new IOException("Could not authenticate to server"));
+                    }
+                    log.debug("[{}] Command rejected, re-authenticating", server.getShortNameAndAddress());
+                    return run(session, server, command, true);
+                }
+                log.debug("[{}] {}", server.getShortNameAndAddress(), truncate(response, 100));
+                return CompletableFuture.completedFuture(response);
+            });
+    }
+
+    private CompletableFuture<Void> authenticate(Session session, GameServer server, boolean refresh) {
+        if (!refresh && session.authenticated && gameQueryService.isAuthenticated(session.address)
+            && !credentialProvider.isExpired(server)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        metricRegistry.meter("UGC.GameServer.rcon.authentications").mark();
+        // obtaining a password might require scraping the provider panel, so keep it off the caller thread
+        return CompletableFuture.supplyAsync(() -> credentialProvider.getPassword(server, refresh), authExecutor)
+            .thenCompose(password -> {
+                log.debug("[{}] Authenticating to RCON", server.getShortNameAndAddress());
+                return gameQueryService.authenticate(session.address, password);
+            })
+            .thenCompose(status -> {
+                if (status.isAuthenticated()) {
+                    session.authenticated = true;
+                    return CompletableFuture.completedFuture(null);
+                } else if (!refresh) {
+                    log.warn("[{}] Refreshing RCON after auth failing", server.getShortNameAndAddress());
+                    return authenticate(session, server, true);
+                } else {
+                    log.warn("[{}] Could not re-authenticate: {}", server.getShortNameAndAddress(), status.getReason());
+                    return failed(new IOException("Could not re-authenticate"));
+                }
+            });
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private void evictIdleSessions() {
+        long threshold = System.currentTimeMillis() - idleTimeoutMillis;
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                if (!session.running && !session.draining && session.queue.isEmpty() && session.lastUsed < threshold) {
+                    log.debug("Evicting idle RCON session to {}", session.address);
+                    // flagged and removed while locked, so a command is never queued to an evicted session
+                    session.evicted = true;
+                    sessions.remove(session.address, session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the session of a server so the next command authenticates again.
+     *
+     * @param server the server to invalidate
+     */
+    public void invalidate(GameServer server) {
+        Session session = sessions.get(MiscUtil.getSourceServerAddress(server.getAddress()));
+        if (session != null) {
+            session.authenticated = false;
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public int getQueuedCount() {
+        return sessions.values().stream().mapToInt(session -> {
+            synchronized (session) {
+                return session.queue.size();
+            }
+        }).sum();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        authExecutor.shutdownNow();
+    }
+
+    /**
+     * Supplies RCON credentials for a server.
+     */
+    public interface CredentialProvider {
+
+        /**
+         * Return the RCON password of a server. Might block while retrieving it from a remote source.
+         *
+         * @param server  the server to retrieve the password for
+         * @param refresh <code>true</code> if the current password was rejected and must be retrieved again
+         * @return the RCON password
+         */
+        String getPassword(GameServer server, boolean refresh);
+
+        /**
+         * Check whether the credentials of a server are known to be missing or outdated.
+         *
+         * @param server the server to check
+         * @return <code>true</code> if a new password must be retrieved before authenticating
+         */
+        boolean isExpired(GameServer server);
+    }
+
+    private static class Session {
+        private final InetSocketAddress address;
+        private final Deque<Request> queue = new ArrayDeque<>();
+        private GameServer server;
+        private boolean running = false;
+        private boolean draining = false;
+        private boolean evicted = false;
+        private volatile boolean authenticated = false;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Session(InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    private static class Request {
+        private final String command;
+        private final boolean coalesce;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Request(String command, boolean coalesce) {
+            this.command = command;
+            this.coalesce = coalesce;
+        }
+    }
+}
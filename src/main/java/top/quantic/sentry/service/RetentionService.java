@@ -0,0 +1,190 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.domain.PersistentAuditEvent;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+import top.quantic.sentry.repository.PersistenceAuditEventRepository;
+import top.quantic.sentry.repository.PlayerCountRepository;
+import top.quantic.sentry.repository.RetentionOperations;
+import top.quantic.sentry.repository.UserCountRepository;
+import top.quantic.sentry.service.util.MetricKey;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+
+/**
+ * Enforces the retention policy of the time series collections. Raw samples past their retention are deleted, and
+ * charts of old ranges are drawn from the rollups that every sample was folded into as it was recorded. Rollups and
+ * audit events past their own retention are deleted as well. Deletes are done in small batches spaced apart and
+ * kept away from the minute writers, so the database is never busy for long.
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+
+    private final SentryProperties sentryProperties;
+    private final PlayerCountRepository playerCountRepository;
+    private final UserCountRepository userCountRepository;
+    private final PersistenceAuditEventRepository persistenceAuditEventRepository;
+    private final TaggedMetricRegistry taggedMetricRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Autowired
+    public RetentionService(SentryProperties sentryProperties, PlayerCountRepository playerCountRepository,
+                            UserCountRepository userCountRepository,
+                            PersistenceAuditEventRepository persistenceAuditEventRepository,
+                            TaggedMetricRegistry taggedMetricRegistry) {
+        this.sentryProperties = sentryProperties;
+        this.playerCountRepository = playerCountRepository;
+        this.userCountRepository = userCountRepository;
+        this.persistenceAuditEventRepository = persistenceAuditEventRepository;
+        this.taggedMetricRegistry = taggedMetricRegistry;
+    }
+
+    @Async
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void enforceRetention() {
+        SentryProperties.Retention retention = sentryProperties.getRetention();
+        if (!retention.isEnabled()) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Retention is still being enforced from a previous run");
+            return;
+        }
+        try {
+            enforce(playerCountRepository, retention.getPlayerCount());
+            enforce(userCountRepository, retention.getUserCount());
+            deleteAuditEvents(retention.getAuditEvents());
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while enforcing retention");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Could not enforce retention", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    void enforce(RetentionOperations operations, SentryProperties.Retention.Policy policy)
+        throws InterruptedException {
+
+        String name = operations.getName();
+        if (policy.getRaw() > 0) {
+            // the rollups already hold every sample, so the raw ones can go without compacting them first
+            ZonedDateTime before = RollupResolution.DAILY.truncate(ZonedDateTime.now().minusDays(policy.getRaw()));
+            deleteInBatches(name, () -> operations.deleteSamplesBefore(before, getBatchSize()));
+        }
+        for (RollupResolution resolution : RollupResolution.values()) {
+            int days = getDays(policy, resolution);
+            if (days > 0) {
+                ZonedDateTime before = resolution.truncate(ZonedDateTime.now().minusDays(days));
+                deleteInBatches(resolution.getCollection(name),
+                    () -> operations.deleteRollupsBefore(resolution, before, getBatchSize()));
+            }
+        }
+    }
+
+    private void deleteAuditEvents(int days) throws InterruptedException {
+        if (days <= 0) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusDays(days);
+        deleteInBatches("persistent_audit_event", () -> {
+            List<PersistentAuditEvent> events = persistenceAuditEventRepository.findByAuditEventDateBefore(before,
+                new PageRequest(0, getBatchSize(), new Sort(Sort.Direction.ASC, "auditEventDate")));
+            persistenceAuditEventRepository.delete(events);
+            return events.size();
+        });
+    }
+
+    private void deleteInBatches(String collection, IntSupplier batch) throws InterruptedException {
+        Timer timer = taggedMetricRegistry.timer(MetricKey.of("sentry.retention.batch"));
+        long total = 0;
+        int deleted;
+        do {
+            awaitQuietPeriod();
+            try (Timer.Context ignored = timer.time()) {
+                deleted = batch.getAsInt();
+            }
+            taggedMetricRegistry.meter(MetricKey.of("sentry.retention.deleted", "collection", collection)).mark(deleted);
+            total += deleted;
+        } while (deleted >= getBatchSize());
+        if (total > 0) {
+            log.info("Deleted {} documents from {}", total, collection);
+        }
+    }
+
+    void awaitQuietPeriod() throws InterruptedException {
+        Thread.sleep(Math.max(0, sentryProperties.getRetention().getBatchDelay()));
+        // the count samples are written at second 10 of every minute, so stay clear of it
+        int second = ZonedDateTime.now().getSecond();
+        if (second >= 5 && second < 25) {
+            Thread.sleep((25 - second) * 1000L);
+        }
+    }
+
+    private int getBatchSize() {
+        return Math.max(1, sentryProperties.getRetention().getBatchSize());
+    }
+
+    /**
+     * Pick the collection to chart a range from, so that ranges older than the raw samples kept are still drawn
+     * from the rollups that cover them.
+     *
+     * @param retention  the retention settings
+     * @param policy     the retention policy of the time series
+     * @param resolution the chart resolution in minutes
+     * @param from       the start of the range
+     * @return the rollup to read from, or <code>null</code> to read the raw samples
+     */
+    public static RollupResolution selectRollup(SentryProperties.Retention retention,
+                                                SentryProperties.Retention.Policy policy,
+                                                int resolution, ZonedDateTime from) {
+        RollupResolution rollup = RollupResolution.forResolution(resolution);
+        if (!retention.isEnabled()) {
+            return rollup;
+        }
+        if (rollup == null && isExpired(policy.getRaw(), from)) {
+            rollup = RollupResolution.TEN_MINUTES;
+        }
+        while (rollup != null && isExpired(getDays(policy, rollup), from)
+            && rollup.ordinal() < RollupResolution.values().length - 1) {
+            rollup = RollupResolution.values()[rollup.ordinal() + 1];
+        }
+        return rollup;
+    }
+
+    private static boolean isExpired(int days, ZonedDateTime from) {
+        return days > 0 && from.isBefore(ZonedDateTime.now(ZoneId.systemDefault()).truncatedTo(DAYS).minusDays(days));
+    }
+
+    private static int getDays(SentryProperties.Retention.Policy policy, RollupResolution resolution) {
+        switch (resolution) {
+            case TEN_MINUTES:
+                return policy.getTenMinutes();
+            case HOURLY:
+                return policy.getHourly();
+            default:
+                return policy.getDaily();
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package top.quantic.sentry.service;
 
-import org.ocpsoft.prettytime.shade.edu.emory.mathcs.backport.java.util.Collections;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.stereotype.Service;
 import sx.blah.discord.handle.obj.IMessage;
 import top.quantic.sentry.config.SentryProperties;
@@ -17,31 +23,137 @@ import top.quantic.sentry.service.mapper.SettingMapper;
 import top.quantic.sentry.service.util.Key;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static top.quantic.sentry.config.Constants.ANY;
 import static top.quantic.sentry.config.Constants.KEY_PREFIX;
+import static top.quantic.sentry.service.util.MongoEventUtil.getDeletedId;
 
 /**
  * Service Implementation for managing Setting.
+ * <p>
+ * Lookups by guild and key are served from a near-cache of the setting collection, and the resolved command prefixes
+ * of each guild are cached separately so that every incoming message only needs a single map lookup. Entries are
+ * invalidated from the mapping events published by Spring Data MongoDB after each save or delete, so every mutation
+ * path is covered, including writes made directly through the repository. Cached entities are copied on the way out,
+ * so a caller modifying one before saving it never changes what other readers see.
  */
 @Service
 public class SettingService {
 
+    private static final int MAX_CACHED_KEYS = 10000;
+
     private final Logger log = LoggerFactory.getLogger(SettingService.class);
 
     private final SettingRepository settingRepository;
     private final SettingMapper settingMapper;
     private final SentryProperties sentryProperties;
+    private final MetricRegistry metricRegistry;
+
+    private final Cache<CacheKey, List<Setting>> settingCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_KEYS)
+        .build();
+    private final Map<String, CacheKey> cachedKeysById = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> prefixCache = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(0);
 
-    private long lastUpdate = 0L;
+    private volatile long lastUpdate = 0L;
 
     @Autowired
     public SettingService(SettingRepository settingRepository, SettingMapper settingMapper,
-                          SentryProperties sentryProperties) {
+                          SentryProperties sentryProperties, MetricRegistry metricRegistry) {
         this.settingRepository = settingRepository;
         this.settingMapper = settingMapper;
         this.sentryProperties = sentryProperties;
+        this.metricRegistry = metricRegistry;
+        initMetrics();
+    }
+
+    private void initMetrics() {
+        metricRegistry.remove("sentry.settings.cache.size");
+        metricRegistry.register("sentry.settings.cache.size", (Gauge<Long>) settingCache::size);
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof Setting) {
+            Setting setting = (Setting) event.getSource();
+            invalidate(new CacheKey(setting.getGuild(), setting.getKey()));
+            if (setting.getId() != null) {
+                // the guild or key might have changed
+                invalidate(cachedKeysById.remove(setting.getId()));
+            }
+            lastUpdate = System.currentTimeMillis();
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        if (event.getType() == Setting.class) {
+            String id = getDeletedId(event.getSource());
+            if (id == null) {
+                // not a delete by id, like deleteAll
+                invalidateAll();
+            } else {
+                invalidate(cachedKeysById.remove(id));
+            }
+            lastUpdate = System.currentTimeMillis();
+        }
+    }
+
+    private void invalidate(CacheKey cacheKey) {
+        if (cacheKey == null) {
+            return;
+        }
+        version.incrementAndGet();
+        settingCache.invalidate(cacheKey);
+        if (KEY_PREFIX.equals(cacheKey.key)) {
+            if (ANY.equals(cacheKey.guild)) {
+                // global prefixes are the fallback of every guild
+                prefixCache.clear();
+            } else if (cacheKey.guild != null) {
+                prefixCache.remove(cacheKey.guild);
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        version.incrementAndGet();
+        settingCache.invalidateAll();
+        cachedKeysById.clear();
+        prefixCache.clear();
+    }
+
+    /**
+     * Get the settings of a guild and key, shared with every other reader. Callers must copy the entities before
+     * handing them out, so changes made to them before they are saved stay invisible to the cache.
+     *
+     * @param guild the guild of the settings
+     * @param key   the key of the settings
+     * @return the unmodifiable cached list of settings
+     */
+    private List<Setting> getCached(String guild, String key) {
+        if (guild == null || key == null) {
+            return settingRepository.findByGuildAndKey(guild, key);
+        }
+        CacheKey cacheKey = new CacheKey(guild, key);
+        List<Setting> cached = settingCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            metricRegistry.meter("sentry.settings.cache.hits").mark();
+            return cached;
+        }
+        metricRegistry.meter("sentry.settings.cache.misses").mark();
+        long current = version.get();
+        List<Setting> loaded = Collections.unmodifiableList(settingRepository.findByGuildAndKey(guild, key));
+        loaded.forEach(setting -> cachedKeysById.put(setting.getId(), cacheKey));
+        settingCache.put(cacheKey, loaded);
+        if (version.get() != current) {
+            // a concurrent write might have been missed by the entry just loaded
+            settingCache.invalidate(cacheKey);
+        }
+        return loaded;
     }
 
     public boolean isInvalidated(long lastCheck) {
@@ -58,7 +170,8 @@ public class SettingService {
     }
 
     public <T> T getValueFromKey(Key<T> key) {
-        return findOneByGuildAndKey(key.getGroup(), key.getName())
+        return getCached(key.getGroup(), key.getName()).stream()
+            .findAny()
             .map(key::fromSetting)
             .orElse(key.getDefaultValue());
     }
@@ -72,15 +185,32 @@ public class SettingService {
     }
 
     public Set<String> getPrefixes(String guild) {
-        List<Setting> settings = (guild == null ? Collections.emptyList() :
-            settingRepository.findByGuildAndKey(guild, KEY_PREFIX));
+        if (guild == null) {
+            return resolvePrefixes(null);
+        }
+        Set<String> prefixes = prefixCache.get(guild);
+        if (prefixes != null) {
+            metricRegistry.meter("sentry.settings.cache.hits").mark();
+            return prefixes;
+        }
+        long current = version.get();
+        prefixes = resolvePrefixes(guild);
+        prefixCache.put(guild, prefixes);
+        if (version.get() != current) {
+            prefixCache.remove(guild);
+        }
+        return prefixes;
+    }
+
+    private Set<String> resolvePrefixes(String guild) {
+        List<Setting> settings = (guild == null ? Collections.emptyList() : getCached(guild, KEY_PREFIX));
         if (settings.isEmpty()) {
-            settings = settingRepository.findByGuildAndKey(ANY, KEY_PREFIX);
+            settings = getCached(ANY, KEY_PREFIX);
             if (settings.isEmpty()) {
-                return new HashSet<>(sentryProperties.getDiscord().getDefaultPrefixes());
+                return Collections.unmodifiableSet(new HashSet<>(sentryProperties.getDiscord().getDefaultPrefixes()));
             }
         }
-        return extractValues(settings);
+        return Collections.unmodifiableSet(extractValues(settings));
     }
 
     public void setPrefixes(IMessage message, Set<String> prefixes, boolean append) {
@@ -126,11 +256,16 @@ public class SettingService {
     }
 
     public List<Setting> findByGuildAndKey(String guild, String key) {
-        return settingRepository.findByGuildAndKey(guild, key);
+        return getCached(guild, key).stream()
+            .map(SettingService::copy)
+            .collect(Collectors.toList());
     }
 
     public List<Setting> findSetting(String guild, String key, String value) {
-        return settingRepository.findByGuildAndKeyAndValue(guild, key, value);
+        return getCached(guild, key).stream()
+            .filter(setting -> Objects.equals(setting.getValue(), value))
+            .map(SettingService::copy)
+            .collect(Collectors.toList());
     }
 
     public List<Setting> findByGuildAndKeyStartingWith(String guild, String key) {
@@ -138,28 +273,29 @@ public class SettingService {
     }
 
     public List<Setting> findByGlobalKey(String key) {
-        return settingRepository.findByGuildAndKey(ANY, key);
+        return findByGuildAndKey(ANY, key);
     }
 
     public Optional<Setting> findOneByGuildAndKey(String guild, String key) {
-        return settingRepository.findByGuildAndKey(guild, key).stream().findAny();
+        return getCached(guild, key).stream().findAny().map(SettingService::copy);
     }
 
     public SettingDTO mappedFindOneByGuildAndKey(String guild, String key) {
         return settingMapper.settingToSettingDTO(
-            settingRepository.findByGuildAndKey(guild, key).stream()
+            getCached(guild, key).stream()
                 .findAny()
                 .orElse(null));
     }
 
     public Optional<Setting> findMostRecentByGuildAndKey(String guild, String key) {
-        return settingRepository.findByGuildAndKey(guild, key).stream()
-            .sorted(Comparator.comparing(AbstractAuditingEntity::getLastModifiedDate).reversed())
-            .findFirst();
+        return getCached(guild, key).stream()
+            .max(Comparator.comparing(AbstractAuditingEntity::getLastModifiedDate,
+                Comparator.nullsFirst(Comparator.naturalOrder())))
+            .map(SettingService::copy);
     }
 
     public Optional<Setting> findOneByGlobalKey(String key) {
-        return settingRepository.findByGuildAndKey(ANY, key).stream().findAny();
+        return getCached(ANY, key).stream().findAny().map(SettingService::copy);
     }
 
     public List<Setting> findByKeyStartingWith(String key) {
@@ -176,7 +312,6 @@ public class SettingService {
         log.debug("Request to save Setting : {}", settingDTO);
         Setting setting = settingMapper.settingDTOToSetting(settingDTO);
         setting = settingRepository.save(setting);
-        lastUpdate = System.currentTimeMillis();
         SettingDTO result = settingMapper.settingToSettingDTO(setting);
         return result;
     }
@@ -226,18 +361,57 @@ public class SettingService {
         setting.setKey(key);
         setting.setValue(value);
         settingRepository.save(setting);
-        lastUpdate = System.currentTimeMillis();
     }
 
     public void updateValue(Setting setting, String value) {
         log.debug("Request to update Setting : {} with value: {}", setting, value);
         setting.setValue(value);
         settingRepository.save(setting);
-        lastUpdate = System.currentTimeMillis();
     }
 
     public void createSetting(String group, String key, String value) {
         log.debug("Request to create Setting with ({}, {}, {})", group, key, value);
         updateSetting(new Setting(), group, key, value);
     }
+
+    private static Setting copy(Setting setting) {
+        Setting copy = new Setting();
+        copy.setId(setting.getId());
+        copy.setGuild(setting.getGuild());
+        copy.setKey(setting.getKey());
+        copy.setValue(setting.getValue());
+        copy.setType(setting.getType());
+        copy.setCreatedBy(setting.getCreatedBy());
+        copy.setCreatedDate(setting.getCreatedDate());
+        copy.setLastModifiedBy(setting.getLastModifiedBy());
+        copy.setLastModifiedDate(setting.getLastModifiedDate());
+        return copy;
+    }
+
+    private static class CacheKey {
+        private final String guild;
+        private final String key;
+
+        private CacheKey(String guild, String key) {
+            this.guild = guild;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey cacheKey = (CacheKey) o;
+            return Objects.equals(guild, cacheKey.guild) && Objects.equals(key, cacheKey.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(guild, key);
+        }
+    }
 }
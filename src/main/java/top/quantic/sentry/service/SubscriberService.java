@@ -2,18 +2,21 @@ package top.quantic.sentry.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.internal.json.objects.EmbedObject;
 import sx.blah.discord.handle.impl.obj.Message;
 import sx.blah.discord.handle.obj.IChannel;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.discord.core.ClientRegistry;
 import top.quantic.sentry.domain.AbstractAuditingEntity;
 import top.quantic.sentry.domain.Bot;
@@ -22,28 +25,34 @@ import top.quantic.sentry.domain.Subscriber;
 import top.quantic.sentry.repository.SubscriberRepository;
 import top.quantic.sentry.service.dto.SubscriberDTO;
 import top.quantic.sentry.service.mapper.SubscriberMapper;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 import top.quantic.sentry.web.rest.vm.DatadogDowntime;
 import top.quantic.sentry.web.rest.vm.DatadogEvent;
 import top.quantic.sentry.web.rest.vm.DiscordWebhook;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.util.Comparator.comparing;
 import static java.util.Comparator.nullsLast;
-import static top.quantic.sentry.discord.util.DiscordLimiter.acquireWebhook;
 import static top.quantic.sentry.discord.util.DiscordUtil.answerToChannel;
 import static top.quantic.sentry.discord.util.DiscordUtil.sendMessage;
 import static top.quantic.sentry.discord.util.DiscordUtil.snowflake;
 
 /**
- * Service Implementation for managing Subscriber.
+ * Service Implementation for managing Subscriber. Messages are published to subscribers concurrently, with
+ * deliveries throttled per webhook URL and per Discord channel.
  */
 @Service
-public class SubscriberService {
+public class SubscriberService implements DisposableBean {
 
     private static final Logger log = LoggerFactory.getLogger(SubscriberService.class);
+    private static final String WEBHOOK = "webhook";
+    private static final String CHANNEL = "channel";
+    private static final String DATADOG = "datadog";
 
     private final SubscriberRepository subscriberRepository;
     private final SubscriberMapper subscriberMapper;
@@ -51,52 +60,104 @@ public class SubscriberService {
     private final ClientRegistry clientRegistry;
     private final SettingService settingService;
     private final RestTemplate restTemplate;
+    private final DeliveryExecutor deliveryExecutor;
 
     @Autowired
     public SubscriberService(SubscriberRepository subscriberRepository, SubscriberMapper subscriberMapper,
                              TimeFrameService timeFrameService, ClientRegistry clientRegistry,
-                             SettingService settingService, RestTemplate restTemplate) {
+                             SettingService settingService, RestTemplate restTemplate,
+                             SentryProperties sentryProperties, TaggedMetricRegistry taggedMetricRegistry) {
         this.subscriberRepository = subscriberRepository;
         this.subscriberMapper = subscriberMapper;
         this.timeFrameService = timeFrameService;
         this.clientRegistry = clientRegistry;
         this.settingService = settingService;
         this.restTemplate = restTemplate;
+        SentryProperties.Delivery delivery = sentryProperties.getDelivery();
+        this.deliveryExecutor = new DeliveryExecutor(taggedMetricRegistry, delivery.getConcurrency(),
+            delivery.getMaxAttempts(), delivery.getRetryDelay(), SubscriberService::isRetryable);
+        this.deliveryExecutor.setLimit(WEBHOOK, delivery.getWebhookRate(), delivery.getWebhookBurst());
+        this.deliveryExecutor.setLimit(CHANNEL, delivery.getChannelRate(), delivery.getChannelBurst());
     }
 
-    public void publish(String outputChannel, String id, DiscordWebhook message) {
+    private static boolean isRetryable(Throwable t) {
+        if (t instanceof HttpStatusCodeException) {
+            HttpStatus status = ((HttpStatusCodeException) t).getStatusCode();
+            return status == HttpStatus.TOO_MANY_REQUESTS || status.is5xxServerError();
+        }
+        return t instanceof ResourceAccessException;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        deliveryExecutor.shutdown();
+    }
+
+    /**
+     * Deliver a message to every subscriber of an output channel concurrently. Each subscriber is first checked
+     * against its time frames, the readiness of its target clients if any, and the last message it received, then
+     * the delivery is queued to its destination.
+     *
+     * @param outputChannel the output channel
+     * @param type          the type of subscribers to deliver to
+     * @param id            the id of the message, used to skip duplicates
+     * @param discord       <code>true</code> if the subscribers deliver through a Discord client
+     * @param delivery      queues the delivery to a subscriber
+     * @return a future completed when all deliveries have completed, successfully or not
+     */
+    private CompletableFuture<Void> fanOut(String outputChannel, String type, String id, boolean discord,
+                                           Function<Subscriber, CompletableFuture<?>> delivery) {
+        CompletableFuture<?>[] futures = subscriberRepository.findByChannelAndType(outputChannel, type).stream()
+            .map(sub -> deliveryExecutor.supply(() -> isIncluded(sub, id, discord))
+                .thenCompose(included -> included ? delivery.apply(sub) : CompletableFuture.completedFuture(null))
+                .exceptionally(t -> {
+                    log.warn("Could not publish {} to {}", id, sub, t);
+                    return null;
+                }))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    private boolean isIncluded(Subscriber sub, String id, boolean discord) {
+        // only include if the subscriber has allowed this time
+        return timeFrameService.included(sub.getId())
+            // abort if one of the target clients is not ready
+            && (!discord || isClientReady((String) sub.getVariables().get("client")))
+            // check for duplicated messages to avoid spam
+            && checkDuplicate(sub, id);
+    }
+
+    public CompletableFuture<Void> publish(String outputChannel, String id, DiscordWebhook message) {
         log.debug("Publishing a webhook message ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DiscordWebhook").stream()
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String url = (String) sub.getVariables().get("url");
-                if (url == null) {
-                    log.warn("Subscriber did not define a target URL: {}", sub);
-                } else {
-                    String username = (String) sub.getVariables().get("username");
-                    String avatarUrl = (String) sub.getVariables().get("avatarUrl");
-                    if (username != null) {
-                        message.setUsername(username);
-                    }
-                    if (avatarUrl != null) {
-                        message.setAvatarUrl(avatarUrl);
-                    }
-                    try {
-                        ResponseEntity<Map<String, ?>> responseEntity = execute(message, url);
-                        log.debug("[{}] Response: {}", outputChannel, responseEntity);
-                    } catch (RestClientException e) {
-                        log.warn("Could not execute webhook", e);
-                    }
-                }
-            });
+        return fanOut(outputChannel, "DiscordWebhook", id, false, sub -> {
+            String url = (String) sub.getVariables().get("url");
+            if (url == null) {
+                log.warn("Subscriber did not define a target URL: {}", sub);
+                return CompletableFuture.completedFuture(null);
+            }
+            // each subscriber can override the author, so work on a copy
+            DiscordWebhook webhook = new DiscordWebhook();
+            webhook.setContent(message.getContent());
+            webhook.setUsername(message.getUsername());
+            webhook.setAvatarUrl(message.getAvatarUrl());
+            webhook.setTts(message.isTts());
+            String username = (String) sub.getVariables().get("username");
+            String avatarUrl = (String) sub.getVariables().get("avatarUrl");
+            if (username != null) {
+                webhook.setUsername(username);
+            }
+            if (avatarUrl != null) {
+                webhook.setAvatarUrl(avatarUrl);
+            }
+            return deliveryExecutor.submit(WEBHOOK, url, () -> execute(webhook, url))
+                .thenAccept(responseEntity -> log.debug("[{}] Response: {}", outputChannel, responseEntity));
+        });
     }
 
     private ResponseEntity<Map<String, ?>> execute(DiscordWebhook webhook, String webhookUrl) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
         headers.add("User-Agent", "curl"); // cloudflare!
-        acquireWebhook();
         return restTemplate.exchange(webhookUrl,
             HttpMethod.POST,
             new HttpEntity<>(webhook, headers),
@@ -104,64 +165,22 @@ public class SubscriberService {
             });
     }
 
-    public void publish(String outputChannel, String id, String content, EmbedObject embedObject) {
+    public CompletableFuture<Void> publish(String outputChannel, String id, String content, EmbedObject embedObject) {
         log.debug("Publishing a discord message and embed ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DiscordMessageEmbed").stream()
-            // only include if the subscriber has allowed this time
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            // abort if one of the target clients is not ready
-            .filter(sub -> isClientReady((String) sub.getVariables().get("client")))
-            // check for duplicated messages to avoid spam
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String channelId = (String) sub.getVariables().get("channel");
-                String clientId = (String) sub.getVariables().get("client");
-                if (channelId == null) {
-                    log.warn("Subscriber did not define a target channel: {}", sub);
-                } else {
-                    executeMessage(clientId, channelId, content, embedObject);
-                }
-            });
+        return fanOut(outputChannel, "DiscordMessageEmbed", id, true,
+            sub -> executeMessage(sub, content, embedObject));
     }
 
-    public void publish(String outputChannel, String id, EmbedObject embedObject) {
+    public CompletableFuture<Void> publish(String outputChannel, String id, EmbedObject embedObject) {
         log.debug("Publishing a discord embed ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DiscordEmbed").stream()
-            // only include if the subscriber has allowed this time
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            // abort if one of the target clients is not ready
-            .filter(sub -> isClientReady((String) sub.getVariables().get("client")))
-            // check for duplicated messages to avoid spam
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String channelId = (String) sub.getVariables().get("channel");
-                String clientId = (String) sub.getVariables().get("client");
-                if (channelId == null) {
-                    log.warn("Subscriber did not define a target channel: {}", sub);
-                } else {
-                    executeMessage(clientId, channelId, null, embedObject);
-                }
-            });
+        return fanOut(outputChannel, "DiscordEmbed", id, true,
+            sub -> executeMessage(sub, null, embedObject));
     }
 
-    public void publish(String outputChannel, String id, String message) {
+    public CompletableFuture<Void> publish(String outputChannel, String id, String message) {
         log.debug("Publishing a discord message ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DiscordMessage").stream()
-            // only include if the subscriber has allowed this time
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            // abort if one of the target clients is not ready
-            .filter(sub -> isClientReady((String) sub.getVariables().get("client")))
-            // check for duplicated messages to avoid spam
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String channelId = (String) sub.getVariables().get("channel");
-                String clientId = (String) sub.getVariables().get("client");
-                if (channelId == null) {
-                    log.warn("Subscriber did not define a target channel: {}", sub);
-                } else {
-                    executeMessage(clientId, channelId, message, null);
-                }
-            });
+        return fanOut(outputChannel, "DiscordMessage", id, true,
+            sub -> executeMessage(sub, message, null));
     }
 
     private boolean isClientReady(String clientId) {
@@ -174,24 +193,35 @@ public class SubscriberService {
         return ready;
     }
 
-    private void executeMessage(String clientId, String channelId, String content, EmbedObject embedObject) {
-        clientRegistry.getClients().entrySet().stream()
+    private CompletableFuture<?> executeMessage(Subscriber sub, String content, EmbedObject embedObject) {
+        String channelId = (String) sub.getVariables().get("channel");
+        String clientId = (String) sub.getVariables().get("client");
+        if (channelId == null) {
+            log.warn("Subscriber did not define a target channel: {}", sub);
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<?>[] futures = clientRegistry.getClients().entrySet().stream()
             .filter(entry -> matchesClient(clientId, entry))
-            .forEach(entry -> {
+            .map(entry -> {
                 IChannel channel = entry.getValue().getChannelByID(snowflake(channelId));
-                if (channel != null) {
+                if (channel == null) {
+                    log.warn("Did not found a channel with id {} in bot {}", channelId, clientId);
+                    return CompletableFuture.completedFuture(null);
+                }
+                return deliveryExecutor.submit(CHANNEL, channelId, () -> {
                     if (content != null && content.length() > Message.MAX_MESSAGE_LENGTH) {
                         answerToChannel(channel, content, false).get();
                         if (embedObject != null) {
-                            sendMessage(channel, null, embedObject);
+                            sendMessage(channel, null, embedObject).get();
                         }
                     } else {
-                        sendMessage(channel, content, embedObject);
+                        sendMessage(channel, content, embedObject).get();
                     }
-                } else {
-                    log.warn("Did not found a channel with id {} in bot {}", channelId, clientId);
-                }
-            });
+                    return null;
+                });
+            })
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
     }
 
     private boolean matchesClient(String clientId, Map.Entry<Bot, IDiscordClient> entry) {
@@ -200,24 +230,17 @@ public class SubscriberService {
             || clientId.equalsIgnoreCase(entry.getValue().getOurUser().getName());
     }
 
-    public void publish(String outputChannel, String id, DatadogEvent message) {
+    public CompletableFuture<Void> publish(String outputChannel, String id, DatadogEvent message) {
         log.debug("Publishing an event message ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DatadogEvent").stream()
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String apiKey = (String) sub.getVariables().get("api_key");
-                if (apiKey == null) {
-                    log.warn("Subscriber did not define a Datadog API Key: {}", sub);
-                } else {
-                    try {
-                        ResponseEntity<Map<String, ?>> responseEntity = publishEvent(message, apiKey);
-                        log.debug("[{}] Response: {}", outputChannel, responseEntity);
-                    } catch (RestClientException e) {
-                        log.warn("Could not publish event", e);
-                    }
-                }
-            });
+        return fanOut(outputChannel, "DatadogEvent", id, false, sub -> {
+            String apiKey = (String) sub.getVariables().get("api_key");
+            if (apiKey == null) {
+                log.warn("Subscriber did not define a Datadog API Key: {}", sub);
+                return CompletableFuture.completedFuture(null);
+            }
+            return deliveryExecutor.submit(DATADOG, apiKey, () -> publishEvent(message, apiKey))
+                .thenAccept(responseEntity -> log.debug("[{}] Response: {}", outputChannel, responseEntity));
+        });
     }
 
     private ResponseEntity<Map<String, ?>> publishEvent(DatadogEvent event, String apiKey) {
@@ -231,25 +254,18 @@ public class SubscriberService {
             }, "api_key", apiKey);
     }
 
-    public void publish(String outputChannel, String id, DatadogDowntime message) {
+    public CompletableFuture<Void> publish(String outputChannel, String id, DatadogDowntime message) {
         log.debug("Publishing a downtime message ({}) to output channel : {}", id, outputChannel);
-        subscriberRepository.findByChannelAndType(outputChannel, "DatadogDowntime").stream()
-            .filter(sub -> timeFrameService.included(sub.getId()))
-            .filter(sub -> checkDuplicate(sub, id))
-            .forEach(sub -> {
-                String apiKey = (String) sub.getVariables().get("api_key");
-                String appKey = (String) sub.getVariables().get("app_key");
-                if (apiKey == null || appKey == null) {
-                    log.warn("Subscriber did not define a Datadog API and/or APP Key: {}", sub);
-                } else {
-                    try {
-                        ResponseEntity<Map<String, ?>> responseEntity = publishDowntime(message, apiKey, appKey);
-                        log.debug("[{}] Response: {}", outputChannel, responseEntity);
-                    } catch (RestClientException e) {
-                        log.warn("Could not publish downtime", e);
-                    }
-                }
-            });
+        return fanOut(outputChannel, "DatadogDowntime", id, false, sub -> {
+            String apiKey = (String) sub.getVariables().get("api_key");
+            String appKey = (String) sub.getVariables().get("app_key");
+            if (apiKey == null || appKey == null) {
+                log.warn("Subscriber did not define a Datadog API and/or APP Key: {}", sub);
+                return CompletableFuture.completedFuture(null);
+            }
+            return deliveryExecutor.submit(DATADOG, apiKey, () -> publishDowntime(message, apiKey, appKey))
+                .thenAccept(responseEntity -> log.debug("[{}] Response: {}", outputChannel, responseEntity));
+        });
     }
 
     private ResponseEntity<Map<String, ?>> publishDowntime(DatadogDowntime event, String apiKey, String appKey) {
@@ -1,16 +1,19 @@
 package top.quantic.sentry.service;
 
-import com.codahale.metrics.MetricRegistry;
-import org.apache.commons.lang3.tuple.Pair;
+import com.codahale.metrics.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import top.quantic.sentry.config.SentryProperties;
 import top.quantic.sentry.domain.UserCount;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+import top.quantic.sentry.event.UserCountsStoredEvent;
 import top.quantic.sentry.repository.UserCountRepository;
-import top.quantic.sentry.service.util.Adder;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
 import top.quantic.sentry.web.rest.vm.Series;
 
 import javax.inject.Inject;
@@ -18,11 +21,11 @@ import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.time.temporal.ChronoUnit.MINUTES;
+import static top.quantic.sentry.service.RetentionService.selectRollup;
 import static top.quantic.sentry.service.util.ChartUtil.*;
 
 /**
@@ -34,49 +37,59 @@ public class UserCountService {
     private static final Logger log = LoggerFactory.getLogger(UserCountService.class);
 
     private final UserCountRepository userCountRepository;
-    private final MetricRegistry metricRegistry;
+    private final TaggedMetricRegistry taggedMetricRegistry;
+    private final SentryProperties sentryProperties;
+    private final ApplicationEventPublisher publisher;
 
     private final Function<UserCount, String> seriesMapper = UserCount::getStatus;
     private final Function<UserCount, ZonedDateTime> timeMapper = UserCount::getTimestamp;
     private final Function<UserCount, Long> valueMapper = UserCount::getValue;
-    private final Function<Map.Entry<Pair<ZonedDateTime, String>, Adder>, UserCount> objectMapper =
-        entry -> new UserCount()
-            .status(entry.getKey().getRight())
-            .timestamp(entry.getKey().getLeft())
-            .value(entry.getValue().average());
 
     @Inject
-    public UserCountService(UserCountRepository userCountRepository, MetricRegistry metricRegistry) {
+    public UserCountService(UserCountRepository userCountRepository, TaggedMetricRegistry taggedMetricRegistry,
+                            SentryProperties sentryProperties, ApplicationEventPublisher publisher) {
         this.userCountRepository = userCountRepository;
-        this.metricRegistry = metricRegistry;
+        this.taggedMetricRegistry = taggedMetricRegistry;
+        this.sentryProperties = sentryProperties;
+        this.publisher = publisher;
     }
 
     @Scheduled(cron = "10 * * * * ?")
     void storeUserCountMetrics() {
         ZonedDateTime timestamp = ZonedDateTime.now().truncatedTo(MINUTES);
 
-        userCountRepository.save(
-            metricRegistry.getHistograms((name, metric) -> name.startsWith("discord.ws.users"))
+        List<UserCount> samples = userCountRepository.save(
+            taggedMetricRegistry.getMetrics("discord.ws.users", Histogram.class)
                 .entrySet().stream()
-                .map(entry -> Pair.of(extractTags(entry.getKey()), (long) entry.getValue().getSnapshot().getMean()))
-                .map(pair -> new UserCount()
-                    .bot(pair.getKey()[0])
-                    .guild(pair.getKey()[1])
-                    .status(pair.getKey()[2])
-                    .value(pair.getValue())
+                .map(entry -> new UserCount()
+                    .bot(entry.getKey().getTag("bot"))
+                    .guild(entry.getKey().getTag("guild"))
+                    .status(entry.getKey().getTag("status"))
+                    .value((long) entry.getValue().getSnapshot().getMean())
                     .timestamp(timestamp))
                 .collect(Collectors.toList())
         );
-    }
-
-    private String[] extractTags(String key) {
-        return key.replaceAll("^.*\\[bot:(\\w+),guild:(\\w+),status:(\\w+)]$", "$1;$2;$3").split(";");
+        userCountRepository.saveRollups(samples);
+        if (!samples.isEmpty()) {
+            publisher.publishEvent(new UserCountsStoredEvent(samples));
+        }
     }
 
     public List<Series> getGroupedPointsBetween(String bot, String guild,
                                                 ZonedDateTime from, ZonedDateTime to) {
-        List<Series> list = getAggregatedSeriesFromData(userCountRepository.findByBotAndGuildAndTimestampBetween(bot, guild, from, to),
-            getResolution(Duration.between(from, to).toHours()), seriesMapper, timeMapper, valueMapper, objectMapper);
+        int resolution = getResolution(Duration.between(from, to).toHours());
+        SentryProperties.Retention retention = sentryProperties.getRetention();
+        RollupResolution rollup = selectRollup(retention, retention.getUserCount(), resolution, from);
+        List<Series> list;
+        if (rollup == null) {
+            list = getAggregatedSeriesFromData(
+                userCountRepository.findByBotAndGuildAndTimestampBetween(bot, guild, from, to), resolution,
+                seriesMapper, timeMapper, valueMapper);
+        } else {
+            // read pre-aggregated buckets instead of every minute sample
+            list = getAggregatedSeriesFromRollups(
+                userCountRepository.findRollupsBetween(rollup, bot, guild, from, to), resolution);
+        }
         // enrich data
         for (Series series : list) {
             if ("online".equals(series.getKey())) {
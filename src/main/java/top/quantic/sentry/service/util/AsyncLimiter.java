@@ -0,0 +1,165 @@
+package top.quantic.sentry.service.util;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dispatches asynchronous operations keeping at most a fixed number of them in flight, without blocking the caller.
+ * Each operation is given a deadline after which its future completes exceptionally with a {@link TimeoutException},
+ * freeing its slot even if the underlying request is still pending.
+ */
+public class AsyncLimiter {
+
+    private final String name;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger peakInFlight = new AtomicInteger(0);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile int maxConcurrency;
+    private volatile long timeoutMillis;
+
+    public AsyncLimiter(String name, int maxConcurrency, long timeoutMillis) {
+        this.name = name;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue an asynchronous operation. The supplier is only invoked once a slot is available.
+     *
+     * @param operation supplier of the operation to run
+     * @param <T>       the result type
+     * @return a future completed with the result of the operation, or exceptionally if it fails or times out
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.offer(() -> start(operation, result));
+        drain();
+        return result;
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> operation, CompletableFuture<T> result) {
+        peakInFlight.accumulateAndGet(inFlight.get(), Math::max);
+        CompletableFuture<T> source;
+        try {
+            source = operation.get();
+        } catch (Exception e) {
+            source = new CompletableFuture<>();
+            source.completeExceptionally(e);
+        }
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() ->
+                result.completeExceptionally(new TimeoutException(name + " operation timed out after " + timeoutMillis + "ms")),
+            timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> {
+            timeout.cancel(false);
+            inFlight.decrementAndGet();
+            drain();
+        });
+        source.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void drain() {
+        // an operation completing synchronously calls back into drain from within start, so only one caller runs the
+        // loop at a time and the others leave their work to it instead of recursing once per queued operation
+        do {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Runnable task;
+                while ((task = reserve()) != null) {
+                    task.run();
+                }
+            } finally {
+                draining.set(false);
+            }
+            // work may have been queued or a slot freed after the last reserve and before the flag was cleared
+        } while (!pending.isEmpty() && inFlight.get() < maxConcurrency);
+    }
+
+    private Runnable reserve() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxConcurrency) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        Runnable task = pending.poll();
+        if (task == null) {
+            inFlight.decrementAndGet();
+        }
+        return task;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return pending.size();
+    }
+
+    /**
+     * Return the highest number of concurrent operations observed since the last call, and reset it.
+     *
+     * @return the peak concurrency since the last reset
+     */
+    public int resetPeakInFlight() {
+        return peakInFlight.getAndSet(inFlight.get());
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        drain();
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLimiter{" +
+            "name='" + name + '\'' +
+            ", inFlight=" + inFlight.get() +
+            ", queued=" + pending.size() +
+            ", maxConcurrency=" + maxConcurrency +
+            ", timeoutMillis=" + timeoutMillis +
+            '}';
+    }
+}
@@ -1,68 +1,60 @@
 package top.quantic.sentry.service.util;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import top.quantic.sentry.domain.CountRollup;
 import top.quantic.sentry.web.rest.vm.Series;
 
 import java.time.ZonedDateTime;
-import java.util.*;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.google.common.collect.Multimaps.flatteningToMultimap;
-import static com.google.common.collect.Multimaps.toMultimap;
 import static top.quantic.sentry.service.util.MiscUtil.inflect;
 
 public class ChartUtil {
 
     private static final Logger log = LoggerFactory.getLogger(ChartUtil.class);
 
+    /**
+     * Aggregate samples into series of averages with buckets of the given resolution.
+     *
+     * @param stream       the samples, closed after use
+     * @param resolution   the bucket size in minutes
+     * @param seriesMapper gets the series key of a sample
+     * @param timeMapper   gets the timestamp of a sample
+     * @param valueMapper  gets the value of a sample
+     * @param <T>          the type of the samples
+     * @return a list of series sorted by key, with points sorted by time
+     */
     public static <T> List<Series> getAggregatedSeriesFromData(Stream<T> stream,
                                                                int resolution,
                                                                Function<T, String> seriesMapper,
                                                                Function<T, ZonedDateTime> timeMapper,
-                                                               Function<T, Long> valueMapper,
-                                                               Function<Map.Entry<Pair<ZonedDateTime, String>, Adder>, T> objectMapper) {
+                                                               Function<T, Long> valueMapper) {
+        SeriesBuilder builder = new SeriesBuilder(resolution, SeriesBuilder.Aggregation.AVERAGE);
         try (Stream<T> _stream = stream) {
-            return getSeriesFromData(
-                aggregate(_stream, resolution, seriesMapper, timeMapper, valueMapper, objectMapper),
-                seriesMapper, timeMapper, valueMapper);
+            _stream.forEach(count -> builder.add(seriesMapper.apply(count), timeMapper.apply(count), valueMapper.apply(count)));
         }
+        return build(builder);
     }
 
-    private static <T> List<T> aggregate(Stream<T> stream,
-                                         int resolution,
-                                         Function<T, String> seriesMapper,
-                                         Function<T, ZonedDateTime> timeMapper,
-                                         Function<T, Long> valueMapper,
-                                         Function<Map.Entry<Pair<ZonedDateTime, String>, Adder>, T> objectMapper) {
-        return stream
-            .map(count -> {
-                // hackish way to map to intermediate aggregation object
-                ZonedDateTime key = timeMapper.apply(count);
-                int dayResolution = resolution / 1440;
-                int hourResolution = resolution / 60;
-                if (dayResolution > 0) {
-                    int yearModulo = dayResolution % 365;
-                    key = key.withMinute(0)
-                        .withHour(0)
-                        .withDayOfYear(((key.getDayOfYear() - 1) / yearModulo * yearModulo) + 1);
-                } else if (hourResolution > 0) {
-                    key = key.withMinute(0)
-                        .withHour(key.getHour() / hourResolution * hourResolution);
-                } else {
-                    key = key.withMinute(key.getMinute() / resolution * resolution);
-                }
-                return Pair.of(Pair.of(key, seriesMapper.apply(count)), new Adder(valueMapper.apply(count)));
-            })
-            .collect(Collectors.toMap(Pair::getKey, Pair::getValue, Adder::sum))
-            .entrySet().stream()
-            .map(objectMapper)
-            .collect(Collectors.toList());
+    /**
+     * Aggregate rollup buckets into series of the given resolution, weighing each bucket by its number of samples so
+     * the result matches the average of the raw samples.
+     *
+     * @param stream     the rollup buckets
+     * @param resolution the bucket size in minutes
+     * @return the aggregated series
+     */
+    public static List<Series> getAggregatedSeriesFromRollups(Stream<CountRollup> stream, int resolution) {
+        SeriesBuilder builder = new SeriesBuilder(resolution, SeriesBuilder.Aggregation.AVERAGE);
+        try (Stream<CountRollup> _stream = stream) {
+            _stream.forEach(rollup -> builder.addWeighted(rollup.getSeries(), rollup.getTimestamp(),
+                rollup.getSum(), rollup.getCount().intValue()));
+        }
+        return build(builder);
     }
 
     public static <T> List<Series> getSeriesFromData(T count,
@@ -76,32 +68,20 @@ public class ChartUtil {
                                                      Function<T, String> seriesMapper,
                                                      Function<T, ZonedDateTime> timeMapper,
                                                      Function<T, Long> valueMapper) {
-        // create a map of categories to x-y pairs
-        Multimap<String, Point> byRegion = counts.stream()
-            .collect(toMultimap(
-                seriesMapper,
-                count -> new Point(timeMapper.apply(count).toEpochSecond() * 1000, valueMapper.apply(count)),
-                MultimapBuilder.treeKeys().hashSetValues()::build));
-        // build a list of default values x-0 for each category
-        Set<Long> timestamps = counts.stream()
-            .map(count -> timeMapper.apply(count).toEpochSecond())
-            .collect(Collectors.toSet());
-        Multimap<String, Point> defaults = byRegion.keySet().stream()
-            .collect(flatteningToMultimap(
-                region -> region,
-                region -> timestamps.stream().map(timestamp -> new Point(timestamp * 1000, 0)),
-                MultimapBuilder.treeKeys().hashSetValues()::build));
-        byRegion.putAll(defaults);
+        // keep the first value seen for each series and second
+        SeriesBuilder builder = new SeriesBuilder(0, SeriesBuilder.Aggregation.FIRST);
+        for (T count : counts) {
+            builder.add(seriesMapper.apply(count), timeMapper.apply(count), valueMapper.apply(count));
+        }
+        return build(builder);
+    }
+
+    private static List<Series> build(SeriesBuilder builder) {
+        List<Series> result = builder.build();
+        int timestamps = result.isEmpty() ? 0 : result.get(0).getValues().size();
         log.debug("{} across {} found",
-            inflect(byRegion.size(), "data point"), inflect(timestamps.size(), "timestamp"));
-        // convert to expected structure
-        return byRegion.asMap().entrySet().stream()
-            .map(entry -> new Series(entry.getKey()).values(
-                entry.getValue().stream()
-                    .map(pair -> Arrays.asList(pair.getX(), pair.getY()))
-                    .sorted(Comparator.comparingInt(o -> o.get(0).intValue()))
-                    .collect(Collectors.toList())))
-            .collect(Collectors.toList());
+            inflect(result.size() * timestamps, "data point"), inflect(timestamps, "timestamp"));
+        return result;
     }
 
     public static int getResolution(long hours) {
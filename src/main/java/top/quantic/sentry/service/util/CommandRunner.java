@@ -0,0 +1,29 @@
+package top.quantic.sentry.service.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Starts external processes, so callers can be given a fake process in tests.
+ */
+@FunctionalInterface
+public interface CommandRunner {
+
+    /**
+     * Start a process.
+     *
+     * @param command   the program and its arguments
+     * @param directory the working directory of the process
+     * @return the started process
+     * @throws IOException if the process could not be started
+     */
+    Process start(List<String> command, File directory) throws IOException;
+
+    /**
+     * @return a runner starting local processes through a {@link ProcessBuilder}
+     */
+    static CommandRunner local() {
+        return (command, directory) -> new ProcessBuilder(command).directory(directory).start();
+    }
+}
@@ -0,0 +1,76 @@
+package top.quantic.sentry.service.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Runs a blocking action over a list of targets, with at most a fixed number of actions in flight and a deadline for
+ * each of them. Results are reported as each action completes and collected in the original order of the targets.
+ * <p>
+ * An action that goes over its deadline keeps its thread until it returns, but no longer holds a slot, so a stuck
+ * target never holds back the rest.
+ */
+public class FanOut {
+
+    private final AsyncLimiter limiter;
+    private final ExecutorService executor;
+
+    public FanOut(String name, int maxConcurrency, long timeoutMillis) {
+        this.limiter = new AsyncLimiter(name, maxConcurrency, timeoutMillis);
+        AtomicInteger count = new AtomicInteger(0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run an action for each target.
+     *
+     * @param targets  the targets, in the order results should be collected
+     * @param action   the blocking action to run for each target
+     * @param onError  maps a target and the failure or timeout of its action to a result
+     * @param onResult called with the index of the target and its result as soon as it's available
+     * @param <T>      the target type
+     * @param <R>      the result type
+     * @return a future completed with the results in the order of the targets
+     */
+    public <T, R> CompletableFuture<List<R>> run(List<T> targets, Function<T, R> action,
+                                                 BiFunction<T, Throwable, R> onError, BiConsumer<Integer, R> onResult) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<R>[] futures = new CompletableFuture[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            int index = i;
+            T target = targets.get(i);
+            futures[i] = limiter.submit(() -> CompletableFuture.supplyAsync(() -> action.apply(target), executor))
+                .handle((result, error) -> error == null ? result :
+                    onError.apply(target, error instanceof CompletionException ? error.getCause() : error))
+                .whenComplete((result, error) -> onResult.accept(index, result));
+        }
+        return CompletableFuture.allOf(futures)
+            .thenApply(v -> {
+                List<R> results = new ArrayList<>(futures.length);
+                Arrays.stream(futures).forEach(future -> results.add(future.join()));
+                return results;
+            });
+    }
+
+    public int getInFlight() {
+        return limiter.getInFlight();
+    }
+
+    public void shutdown() {
+        limiter.shutdown();
+        executor.shutdownNow();
+    }
+}
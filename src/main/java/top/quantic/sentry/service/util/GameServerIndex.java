@@ -0,0 +1,222 @@
+package top.quantic.sentry.service.util;
+
+import top.quantic.sentry.domain.GameServer;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The GameServer entities the service works on, by id, with the ids of each server also grouped by short name, short
+ * region, address and expiration date. Region listings, address lookups and claimed or unclaimed searches only visit
+ * the matching servers. Since the entities are modified in place between saves, each put remembers the attributes it
+ * was filed under so the stale entries can still be removed.
+ */
+public class GameServerIndex {
+
+    private static final Comparator<GameServer> BY_NAME =
+        Comparator.comparing(GameServer::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+
+    private final Map<String, GameServer> byId = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byShortName = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byShortRegion = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<String>> byAddress = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Set<String>> byExpiration = new ConcurrentSkipListMap<>();
+
+    /**
+     * Replace the contents of this index with the given servers.
+     *
+     * @param servers the complete list of servers
+     */
+    public synchronized void load(Collection<GameServer> servers) {
+        byId.clear();
+        entries.clear();
+        byShortName.clear();
+        byShortRegion.clear();
+        byAddress.clear();
+        byExpiration.clear();
+        servers.forEach(this::put);
+    }
+
+    /**
+     * Add or replace a server in this index, refreshing its secondary index entries.
+     *
+     * @param server the server to index
+     * @return the same server, for chaining
+     */
+    public synchronized GameServer put(GameServer server) {
+        if (server == null || server.getId() == null) {
+            return server;
+        }
+        unlink(server.getId());
+        Entry entry = new Entry(server);
+        byId.put(entry.id, server);
+        entries.put(entry.id, entry);
+        link(byShortName, entry.shortName, entry.id);
+        link(byShortRegion, entry.shortRegion, entry.id);
+        link(byAddress, entry.address, entry.id);
+        link(byExpiration, entry.expiration, entry.id);
+        return server;
+    }
+
+    /**
+     * Remove a server from this index.
+     *
+     * @param id the id of the server to remove
+     */
+    public synchronized void remove(String id) {
+        if (id != null) {
+            unlink(id);
+            byId.remove(id);
+        }
+    }
+
+    private void unlink(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            unlink(byShortName, previous.shortName, id);
+            unlink(byShortRegion, previous.shortRegion, id);
+            unlink(byAddress, previous.address, id);
+            unlink(byExpiration, previous.expiration, id);
+        }
+    }
+
+    private static <K> void link(Map<K, Set<String>> index, K key, String id) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private static <K> void unlink(Map<K, Set<String>> index, K key, String id) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    public Optional<GameServer> get(String id) {
+        return Optional.ofNullable(id).map(byId::get);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public List<GameServer> findAll() {
+        return sorted(byId.values().stream());
+    }
+
+    public List<GameServer> findByIds(Collection<String> ids) {
+        return resolve(ids);
+    }
+
+    public Optional<GameServer> findByAddress(String address) {
+        return Optional.ofNullable(byAddress.get(address))
+            .flatMap(ids -> ids.stream().findFirst())
+            .map(byId::get);
+    }
+
+    public List<GameServer> findByAddressStartingWith(String prefix) {
+        return resolve(addressIdsStartingWith(prefix));
+    }
+
+    public List<GameServer> findByShortName(String shortName) {
+        return resolve(byShortName.getOrDefault(shortName, Collections.emptySet()));
+    }
+
+    public List<GameServer> findByShortRegion(String shortRegion) {
+        return resolve(byShortRegion.getOrDefault(shortRegion, Collections.emptySet()));
+    }
+
+    /**
+     * Find all servers whose expiration date is after the given instant.
+     *
+     * @param now the reference date
+     * @return a list of claimed servers
+     */
+    public List<GameServer> findClaimed(ZonedDateTime now) {
+        return resolve(flatten(byExpiration.tailMap(now.toInstant().toEpochMilli(), false).values()));
+    }
+
+    /**
+     * Find all servers whose expiration date is before the given instant.
+     *
+     * @param now the reference date
+     * @return a list of unclaimed servers
+     */
+    public List<GameServer> findUnclaimed(ZonedDateTime now) {
+        return resolve(flatten(byExpiration.headMap(now.toInstant().toEpochMilli(), false).values()));
+    }
+
+    /**
+     * Find servers matching any of the given lowercase search keys. A key matches a server if it is "claimed" or
+     * "unclaimed" and the server is in that state, if it is contained within the server name, if it is equal to the
+     * server's short name or if the server address starts with it.
+     *
+     * @param keys a list of trimmed lowercase search keys
+     * @return the list of matching servers, ordered by name
+     */
+    public List<GameServer> search(Collection<String> keys) {
+        long now = System.currentTimeMillis();
+        Set<String> ids = new HashSet<>();
+        for (String key : keys) {
+            if ("claimed".equals(key)) {
+                ids.addAll(flatten(byExpiration.tailMap(now, false).values()));
+            } else if ("unclaimed".equals(key)) {
+                ids.addAll(flatten(byExpiration.headMap(now, false).values()));
+            }
+            ids.addAll(byShortName.getOrDefault(key, Collections.emptySet()));
+            ids.addAll(addressIdsStartingWith(key));
+            entries.values().stream()
+                .filter(entry -> entry.name.contains(key))
+                .forEach(entry -> ids.add(entry.id));
+        }
+        return resolve(ids);
+    }
+
+    private Set<String> addressIdsStartingWith(String prefix) {
+        return flatten(byAddress.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+    }
+
+    private static Set<String> flatten(Collection<Set<String>> sets) {
+        Set<String> result = new HashSet<>();
+        sets.forEach(result::addAll);
+        return result;
+    }
+
+    private List<GameServer> resolve(Collection<String> ids) {
+        return sorted(ids.stream().map(byId::get).filter(Objects::nonNull));
+    }
+
+    private static List<GameServer> sorted(Stream<GameServer> servers) {
+        return servers.sorted(BY_NAME).collect(Collectors.toList());
+    }
+
+    /**
+     * Snapshot of the indexed attributes of a server at the time it was put, used to unlink it later even if the
+     * entity was modified in place.
+     */
+    private static class Entry {
+        private final String id;
+        private final String name;
+        private final String shortName;
+        private final String shortRegion;
+        private final String address;
+        private final Long expiration;
+
+        private Entry(GameServer server) {
+            this.id = server.getId();
+            this.name = server.getName() == null ? "" : server.getName().trim().toLowerCase();
+            this.shortName = server.getShortName();
+            this.shortRegion = server.getShortRegion();
+            this.address = server.getAddress();
+            this.expiration = server.getExpirationDate() == null ? null : server.getExpirationDate().toInstant().toEpochMilli();
+        }
+    }
+}
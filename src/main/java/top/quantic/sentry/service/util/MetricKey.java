@@ -0,0 +1,136 @@
+package top.quantic.sentry.service.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The identity of a tagged metric: a name and a set of tags. Two keys are equal when they have the same name and tags,
+ * regardless of the order the tags were given in. Keys are interned while their metric is registered, so repeated
+ * lookups of the same metric reuse one instance and its rendered name; {@link TaggedMetricRegistry} releases a key once
+ * its metric is removed, so tags like user or guild ids don't pile up.
+ * <p>
+ * The rendered name keeps the legacy <code>name[key:value,key:value]</code> format that JMX, Graphite and the Datadog
+ * reporter expect. Tags are always rendered in the same order, whatever order they were given in, so a key released
+ * and looked up again still names the same metric: the tags of the legacy names first, in their legacy order, and any
+ * other tags after them, alphabetically.
+ */
+public final class MetricKey {
+
+    private static final List<String> LEGACY_TAG_ORDER = Arrays.asList("region", "game", "bot", "guild", "shard", "status");
+    private static final Comparator<String> TAG_ORDER = Comparator
+        .comparingInt((String tag) -> {
+            int index = LEGACY_TAG_ORDER.indexOf(tag);
+            return index < 0 ? LEGACY_TAG_ORDER.size() : index;
+        })
+        .thenComparing(Comparator.naturalOrder());
+
+    private static final ConcurrentMap<MetricKey, MetricKey> interned = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final SortedMap<String, String> tags;
+    private final String legacyName;
+    private final int hash;
+
+    private MetricKey(String name, Map<String, String> tags) {
+        this.name = name;
+        SortedMap<String, String> sorted = new TreeMap<>(TAG_ORDER);
+        sorted.putAll(tags);
+        this.tags = Collections.unmodifiableSortedMap(sorted);
+        this.legacyName = render(name, this.tags);
+        this.hash = 31 * name.hashCode() + this.tags.hashCode();
+    }
+
+    /**
+     * Get the key of a metric.
+     *
+     * @param name the metric name, like <code>UGC.GameServer.player_count</code>
+     * @param tags alternating tag keys and values, like <code>"region", "EU", "game", "tf2"</code>
+     * @return the interned key
+     */
+    public static MetricKey of(String name, String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be given as key and value pairs");
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < tags.length; i += 2) {
+            map.put(tags[i], tags[i + 1]);
+        }
+        MetricKey key = new MetricKey(name, map);
+        MetricKey existing = interned.putIfAbsent(key, key);
+        return existing == null ? key : existing;
+    }
+
+    /**
+     * Stop interning a key, once no metric is registered under it anymore.
+     *
+     * @param key the key to release
+     */
+    static void release(MetricKey key) {
+        interned.remove(key, key);
+    }
+
+    static int getInternedCount() {
+        return interned.size();
+    }
+
+    private static String render(String name, Map<String, String> tags) {
+        if (tags.isEmpty()) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name).append('[');
+        boolean first = true;
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return builder.append(']').toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SortedMap<String, String> getTags() {
+        return tags;
+    }
+
+    public String getTag(String key) {
+        return tags.get(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MetricKey other = (MetricKey) o;
+        return hash == other.hash && name.equals(other.name) && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the name under which this metric is registered
+     */
+    @Override
+    public String toString() {
+        return legacyName;
+    }
+}
@@ -0,0 +1,200 @@
+package top.quantic.sentry.service.util;
+
+import com.codahale.metrics.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link MetricFilter} that includes metrics whose names match any of the include expressions, or all of them if
+ * there are none, except those matching any exclude expression. Expressions either match when contained in the name,
+ * compiled once into a trie that finds every contained expression in a single pass over the name, or when the whole
+ * name matches them as regular expressions.
+ * <p>
+ * Decisions are cached by name, so after the first report each metric only costs a lookup. Register this filter as a
+ * listener of the registry to drop the decision of a metric once it's added again or removed, keeping the cache as
+ * large as the registry at most.
+ */
+public class MetricNameFilter extends MetricRegistryListener.Base implements MetricFilter {
+
+    private final Matcher includes;
+    private final Matcher excludes;
+    private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    public MetricNameFilter(Collection<String> includes, Collection<String> excludes, boolean regex) {
+        this.includes = includes.isEmpty() ? null : compile(includes, regex);
+        this.excludes = excludes.isEmpty() ? null : compile(excludes, regex);
+    }
+
+    private static Matcher compile(Collection<String> expressions, boolean regex) {
+        if (regex) {
+            return new RegexMatcher(expressions);
+        } else {
+            return new ContainsMatcher(expressions);
+        }
+    }
+
+    @Override
+    public boolean matches(String name, Metric metric) {
+        Boolean decision = decisions.get(name);
+        if (decision == null) {
+            decision = decide(name);
+            decisions.put(name, decision);
+        }
+        return decision;
+    }
+
+    private boolean decide(String name) {
+        return (excludes == null || !excludes.matches(name)) && (includes == null || includes.matches(name));
+    }
+
+    @Override
+    public void onGaugeAdded(String name, Gauge<?> gauge) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onGaugeRemoved(String name) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onCounterAdded(String name, Counter counter) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onHistogramAdded(String name, Histogram histogram) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onMeterAdded(String name, Meter meter) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onTimerAdded(String name, Timer timer) {
+        decisions.remove(name);
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+        decisions.remove(name);
+    }
+
+    int getCacheSize() {
+        return decisions.size();
+    }
+
+    private interface Matcher {
+        boolean matches(String name);
+    }
+
+    private static class RegexMatcher implements Matcher {
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        private RegexMatcher(Collection<String> expressions) {
+            for (String expression : expressions) {
+                patterns.add(Pattern.compile(expression));
+            }
+        }
+
+        @Override
+        public boolean matches(String name) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(name).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton: a trie of the expressions where each node also links to the node of its longest proper
+     * suffix, so the name is scanned once no matter how many expressions there are.
+     */
+    private static class ContainsMatcher implements Matcher {
+        private final Node root = new Node();
+
+        private ContainsMatcher(Collection<String> expressions) {
+            for (String expression : expressions) {
+                Node node = root;
+                for (int i = 0; i < expression.length(); i++) {
+                    node = node.children.computeIfAbsent(expression.charAt(i), k -> new Node());
+                }
+                node.terminal = true;
+            }
+            // link the nodes breadth first, so the links of shorter prefixes are known
+            Deque<Node> queue = new ArrayDeque<>();
+            root.fail = root;
+            for (Node child : root.children.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                    Node child = entry.getValue();
+                    Node fail = node.fail;
+                    while (fail != root && !fail.children.containsKey(entry.getKey())) {
+                        fail = fail.fail;
+                    }
+                    Node next = fail.children.get(entry.getKey());
+                    child.fail = next != null && next != child ? next : root;
+                    child.terminal |= child.fail.terminal;
+                    queue.add(child);
+                }
+            }
+        }
+
+        @Override
+        public boolean matches(String name) {
+            if (root.terminal) {
+                // an empty expression is contained in every name
+                return true;
+            }
+            Node node = root;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                while (node != root && !node.children.containsKey(c)) {
+                    node = node.fail;
+                }
+                node = node.children.getOrDefault(c, root);
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private Node fail;
+        private boolean terminal;
+    }
+}
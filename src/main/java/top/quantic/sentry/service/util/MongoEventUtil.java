@@ -0,0 +1,24 @@
+package top.quantic.sentry.service.util;
+
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+
+public class MongoEventUtil {
+
+    /**
+     * Get the id of the document removed by a delete event, so caches and indexes can drop only that entry.
+     *
+     * @param query the query of the delete, as given by the event source
+     * @return the id of the deleted document, or <code>null</code> if the query was not a delete by id, like deleteAll
+     */
+    public static String getDeletedId(DBObject query) {
+        if (query == null || query.keySet().size() != 1) {
+            return null;
+        }
+        Object id = query.containsField("_id") ? query.get("_id") : query.get("id");
+        return id instanceof String || id instanceof ObjectId ? id.toString() : null;
+    }
+
+    private MongoEventUtil() {
+    }
+}
@@ -2,71 +2,81 @@ package top.quantic.sentry.service.util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
-public class Monitor<T> {
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongPredicate;
+
+/**
+ * Tracks the health of a stream of numeric samples, like response times, switching to a BAD state after a number of
+ * consecutive unhealthy samples, to RECOVERY after a number of consecutive healthy ones, and back to GOOD once the
+ * ratio of healthy samples in the recent history exceeds the nominal ratio.
+ * <p>
+ * Samples are kept in a primitive ring buffer together with their health, and the consecutive success and failure
+ * counters are maintained as each sample arrives, so checking a sample takes constant time and does not allocate.
+ * Readers of the state and health percentage never take the lock held by {@link #check(long)}.
+ */
+public class Monitor {
 
     private final String name;
     private final int failuresToTrigger;
     private final int successesToRecover;
-    private final ArrayBlockingQueue<T> states;
-    private final List<Listener> listenerList = new ArrayList<>();
-
-    private volatile Function<T, Boolean> healthCheck;
+    private final long[] values;
+    private final boolean[] healthy;
+    private final List<Listener> listenerList = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private int next = 0;
+    private int size = 0;
+    private int healthyCount = 0;
+    private int consecutiveSuccesses = 0;
+    private int consecutiveFailures = 0;
+
+    private volatile LongPredicate healthCheck;
     private volatile State state = State.GOOD;
     private volatile double nominalRatio = 0.90;
+    private volatile double ratio = 0;
 
-    public Monitor(String name, int failuresToTrigger, int successesToRecover, Function<T, Boolean> healthCheck) {
+    public Monitor(String name, int failuresToTrigger, int successesToRecover, LongPredicate healthCheck) {
         this.name = name;
         this.failuresToTrigger = failuresToTrigger;
         this.successesToRecover = successesToRecover;
         this.healthCheck = healthCheck;
-        int capacity = 4 * Math.max(failuresToTrigger, successesToRecover);
-        this.states = new ArrayBlockingQueue<>(capacity, true);
+        int capacity = Math.max(1, 4 * Math.max(failuresToTrigger, successesToRecover));
+        this.values = new long[capacity];
+        this.healthy = new boolean[capacity];
     }
 
-    public synchronized State check(T value) {
-        if (!states.offer(value)) {
-            states.poll();
-            states.offer(value);
+    public synchronized State check(long value) {
+        boolean ok = healthCheck.test(value);
+        if (size == values.length) {
+            if (healthy[next]) {
+                healthyCount--;
+            }
+        } else {
+            size++;
         }
-
-        List<T> snapshot = states.stream().collect(Collectors.toList());
+        values[next] = value;
+        healthy[next] = ok;
+        next = (next + 1) % values.length;
+        if (ok) {
+            healthyCount++;
+            consecutiveSuccesses = Math.min(consecutiveSuccesses + 1, values.length);
+            consecutiveFailures = 0;
+        } else {
+            consecutiveFailures = Math.min(consecutiveFailures + 1, values.length);
+            consecutiveSuccesses = 0;
+        }
+        ratio = (double) healthyCount / size;
 
         if (state == State.GOOD) {
-            int consecutive = 0;
-            int index = snapshot.size() - 1;
-            while (consecutive < failuresToTrigger && index >= 0) {
-                if (!healthCheck.apply(snapshot.get(index))) {
-                    consecutive++;
-                    index--;
-                } else {
-                    break;
-                }
-            }
-
-            if (consecutive == failuresToTrigger) {
+            if (consecutiveFailures >= failuresToTrigger) {
                 toBadState();
             }
         } else if (state == State.BAD) {
-            int consecutive = 0;
-            int index = snapshot.size() - 1;
-            while (consecutive < successesToRecover || index >= 0) {
-                if (healthCheck.apply(snapshot.get(index))) {
-                    consecutive++;
-                    index--;
-                } else {
-                    break;
-                }
-            }
-
-            if (consecutive == successesToRecover) {
+            if (consecutiveSuccesses >= successesToRecover) {
                 toRecoveryState();
             }
         } else {
-            if (determineRatio() > nominalRatio) {
+            if (ratio > nominalRatio) {
                 toGoodState();
             }
         }
@@ -108,12 +118,41 @@ public class Monitor<T> {
         return successesToRecover;
     }
 
-    public Function<T, Boolean> getHealthCheck() {
+    public LongPredicate getHealthCheck() {
         return healthCheck;
     }
 
-    public void setHealthCheck(Function<T, Boolean> healthCheck) {
+    /**
+     * Replace the health check, re-evaluating the samples currently held by this monitor. The state is not changed
+     * until the next sample is checked.
+     *
+     * @param healthCheck the new health check
+     */
+    public synchronized void setHealthCheck(LongPredicate healthCheck) {
         this.healthCheck = healthCheck;
+        healthyCount = 0;
+        consecutiveSuccesses = 0;
+        consecutiveFailures = 0;
+        boolean trailing = true;
+        // walk from the newest sample to the oldest to rebuild the trailing counters
+        for (int i = 1; i <= size; i++) {
+            int index = (next - i + values.length) % values.length;
+            boolean ok = healthCheck.test(values[index]);
+            healthy[index] = ok;
+            if (ok) {
+                healthyCount++;
+            }
+            if (trailing) {
+                if (ok && consecutiveFailures == 0) {
+                    consecutiveSuccesses++;
+                } else if (!ok && consecutiveSuccesses == 0) {
+                    consecutiveFailures++;
+                } else {
+                    trailing = false;
+                }
+            }
+        }
+        ratio = size == 0 ? 0 : (double) healthyCount / size;
     }
 
     public double getNominalRatio() {
@@ -137,25 +176,29 @@ public class Monitor<T> {
     }
 
     public int getHealthPercent() {
-        return (int) (determineRatio() * 100);
-    }
-
-    private double determineRatio() {
-        return ((double) states.stream().mapToInt(s -> healthCheck.apply(s) ? 1 : 0).sum()) / states.size();
+        return (int) (ratio * 100);
     }
 
     private void notifyChange(State previousState) {
-        Snapshot snapshot = new Snapshot(name, previousState, state, determineRatio());
+        Snapshot snapshot = new Snapshot(name, previousState, state, ratio);
         listenerList.forEach(listener -> listener.onStateChange(snapshot));
     }
 
+    private synchronized List<Long> getValues() {
+        List<Long> list = new ArrayList<>(size);
+        for (int i = size; i > 0; i--) {
+            list.add(values[(next - i + values.length) % values.length]);
+        }
+        return list;
+    }
+
     @Override
     public String toString() {
         return "Monitor{" +
             "name='" + name + '\'' +
             ", failuresToTrigger=" + failuresToTrigger +
             ", successesToRecover=" + successesToRecover +
-            ", states=" + states +
+            ", states=" + getValues() +
             ", state=" + state +
             '}';
     }
@@ -0,0 +1,169 @@
+package top.quantic.sentry.service.util;
+
+import top.quantic.sentry.domain.Permission;
+import top.quantic.sentry.domain.Privilege;
+import top.quantic.sentry.domain.enumeration.PermissionType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copy of the Permission and Privilege collections laid out for command checks. Permissions are nested by operation,
+ * resource and role, and privileges are grouped by key so a role can be translated to the privileges it holds before
+ * the lookup, so a check only walks a few maps for the roles of the caller.
+ */
+public class PermissionIndex {
+
+    private final Map<String, PermissionEntry> permissions = new ConcurrentHashMap<>();
+    private final Map<String, PrivilegeEntry> privileges = new ConcurrentHashMap<>();
+    // operation -> resource -> role -> permission id -> type
+    private final Map<String, Map<String, Map<String, Map<String, PermissionType>>>> byOperation = new ConcurrentHashMap<>();
+    // key -> privilege id -> role
+    private final Map<String, Map<String, String>> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * Replace the contents of this index with the given entities.
+     *
+     * @param permissionList the complete list of permissions
+     * @param privilegeList  the complete list of privileges
+     */
+    public synchronized void load(Collection<Permission> permissionList, Collection<Privilege> privilegeList) {
+        permissions.clear();
+        privileges.clear();
+        byOperation.clear();
+        byKey.clear();
+        permissionList.forEach(this::put);
+        privilegeList.forEach(this::put);
+    }
+
+    public synchronized void put(Permission permission) {
+        if (permission == null || permission.getId() == null) {
+            return;
+        }
+        removePermission(permission.getId());
+        PermissionEntry entry = new PermissionEntry(permission);
+        if (entry.operation == null || entry.resource == null || entry.role == null || entry.type == null) {
+            return;
+        }
+        permissions.put(entry.id, entry);
+        byOperation.computeIfAbsent(entry.operation, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(entry.resource, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(entry.role, k -> new ConcurrentHashMap<>())
+            .put(entry.id, entry.type);
+    }
+
+    public synchronized void put(Privilege privilege) {
+        if (privilege == null || privilege.getId() == null) {
+            return;
+        }
+        removePrivilege(privilege.getId());
+        PrivilegeEntry entry = new PrivilegeEntry(privilege);
+        if (entry.key == null || entry.role == null) {
+            return;
+        }
+        privileges.put(entry.id, entry);
+        byKey.computeIfAbsent(entry.key, k -> new ConcurrentHashMap<>()).put(entry.id, entry.role);
+    }
+
+    public synchronized void removePermission(String id) {
+        PermissionEntry previous = id == null ? null : permissions.remove(id);
+        if (previous != null) {
+            byOperation.computeIfPresent(previous.operation, (operation, byResource) -> {
+                byResource.computeIfPresent(previous.resource, (resource, byRole) -> {
+                    byRole.computeIfPresent(previous.role, (role, types) -> {
+                        types.remove(id);
+                        return types.isEmpty() ? null : types;
+                    });
+                    return byRole.isEmpty() ? null : byRole;
+                });
+                return byResource.isEmpty() ? null : byResource;
+            });
+        }
+    }
+
+    public synchronized void removePrivilege(String id) {
+        PrivilegeEntry previous = id == null ? null : privileges.remove(id);
+        if (previous != null) {
+            byKey.computeIfPresent(previous.key, (key, roles) -> {
+                roles.remove(id);
+                return roles.isEmpty() ? null : roles;
+            });
+        }
+    }
+
+    /**
+     * Get the types of permissions assigned to the given roles, operation and resources. Roles are first expanded
+     * with the roles granted to them through privileges.
+     *
+     * @param roles     the roles to check
+     * @param operation the permissible operation
+     * @param resources the resources to check
+     * @return a Set of types of Permission, like ALLOW or DENY. Can also contain both or none.
+     */
+    public Set<PermissionType> check(Set<String> roles, String operation, Set<String> resources) {
+        Map<String, Map<String, Map<String, PermissionType>>> byResource = byOperation.get(operation);
+        if (byResource == null || resources.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> expanded = new HashSet<>(roles);
+        for (String role : roles) {
+            Map<String, String> granted = byKey.get(role);
+            if (granted != null) {
+                expanded.addAll(granted.values());
+            }
+        }
+        Set<PermissionType> result = EnumSet.noneOf(PermissionType.class);
+        for (String resource : resources) {
+            Map<String, Map<String, PermissionType>> byRole = byResource.get(resource);
+            if (byRole != null) {
+                for (String role : expanded) {
+                    Map<String, PermissionType> types = byRole.get(role);
+                    if (types != null) {
+                        result.addAll(types.values());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getPermissionCount() {
+        return permissions.size();
+    }
+
+    public int getPrivilegeCount() {
+        return privileges.size();
+    }
+
+    /**
+     * Snapshot of the indexed attributes of a permission at the time it was put, used to unlink it later even if the
+     * entity was modified in place.
+     */
+    private static class PermissionEntry {
+        private final String id;
+        private final String role;
+        private final String operation;
+        private final String resource;
+        private final PermissionType type;
+
+        private PermissionEntry(Permission permission) {
+            this.id = permission.getId();
+            this.role = permission.getRole();
+            this.operation = permission.getOperation();
+            this.resource = permission.getResource();
+            this.type = permission.getType();
+        }
+    }
+
+    private static class PrivilegeEntry {
+        private final String id;
+        private final String key;
+        private final String role;
+
+        private PrivilegeEntry(Privilege privilege) {
+            this.id = privilege.getId();
+            this.key = privilege.getKey();
+            this.role = privilege.getRole();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package top.quantic.sentry.service.util;
+
+import java.util.*;
+
+/**
+ * Keeps the next poll time of each item in a min-heap and hands out the items that are due, most overdue first,
+ * without going over a budget of polls per minute. Items left out by the budget stay due, so they are the first to
+ * go once the budget allows it.
+ * <p>
+ * The interval an item was last scheduled with is remembered while the item is being polled, so the next interval can
+ * be derived from it, like when backing off. An item being polled is never handed out again until it is scheduled
+ * once its poll is done; asking for it to be polled sooner in the meantime only flags it as expedited.
+ *
+ * @param <T> the type of the polled items
+ */
+public class PollScheduler<T> {
+
+    private static final long WINDOW = 60000;
+
+    private final PriorityQueue<Entry<T>> heap = new PriorityQueue<>();
+    private final Map<T, Entry<T>> queued = new HashMap<>();
+    private final Map<T, Long> intervals = new HashMap<>();
+    private final Set<T> polling = new HashSet<>();
+    private final Set<T> expedited = new HashSet<>();
+    private final Deque<Long> dispatched = new ArrayDeque<>();
+
+    private volatile int budgetPerMinute;
+    private long sequence = 0;
+
+    public PollScheduler(int budgetPerMinute) {
+        this.budgetPerMinute = budgetPerMinute;
+    }
+
+    /**
+     * Schedule the next poll of an item, replacing its previous schedule if any. Scheduling an item that is being
+     * polled marks its poll as done.
+     *
+     * @param item     the item to poll
+     * @param now      the current time in milliseconds
+     * @param interval the time until the next poll in milliseconds
+     */
+    public synchronized void schedule(T item, long now, long interval) {
+        Entry<T> entry = new Entry<>(item, now + interval, sequence++);
+        // a replaced entry is left in the heap and skipped once it reaches the top
+        queued.put(item, entry);
+        intervals.put(item, interval);
+        heap.add(entry);
+        polling.remove(item);
+        expedited.remove(item);
+    }
+
+    /**
+     * Bring the next poll of a scheduled item forward. An item being polled right now is flagged as expedited instead,
+     * so it can be scheduled sooner once its poll is done.
+     *
+     * @param item     the item to poll
+     * @param now      the current time in milliseconds
+     * @param interval the time until the next poll in milliseconds
+     */
+    public synchronized void expedite(T item, long now, long interval) {
+        if (queued.containsKey(item)) {
+            schedule(item, now, interval);
+        } else if (polling.contains(item)) {
+            expedited.add(item);
+        }
+    }
+
+    /**
+     * Make every scheduled item due now, keeping their intervals. Items being polled are flagged as expedited.
+     *
+     * @param now the current time in milliseconds
+     */
+    public synchronized void scheduleAllNow(long now) {
+        for (T item : new ArrayList<>(queued.keySet())) {
+            Entry<T> entry = new Entry<>(item, now, sequence++);
+            queued.put(item, entry);
+            heap.add(entry);
+        }
+        expedited.addAll(polling);
+    }
+
+    public synchronized void remove(T item) {
+        queued.remove(item);
+        intervals.remove(item);
+        polling.remove(item);
+        expedited.remove(item);
+    }
+
+    /**
+     * @param item an item
+     * @return whether the item is scheduled or being polled
+     */
+    public synchronized boolean contains(T item) {
+        return intervals.containsKey(item);
+    }
+
+    public synchronized Set<T> getItems() {
+        return new HashSet<>(intervals.keySet());
+    }
+
+    /**
+     * @param item an item
+     * @return whether the item was asked to be polled sooner while it was being polled
+     */
+    public synchronized boolean isExpedited(T item) {
+        return expedited.contains(item);
+    }
+
+    /**
+     * @param item an item
+     * @return the interval the item was last scheduled with, or <code>0</code> if it's unknown
+     */
+    public synchronized long getInterval(T item) {
+        return intervals.getOrDefault(item, 0L);
+    }
+
+    /**
+     * Take the items that are due, most overdue first, up to what's left of the budget for the last minute. Taken
+     * items are no longer scheduled until {@link #schedule(Object, long, long)} is called for them again.
+     *
+     * @param now the current time in milliseconds
+     * @return the items to poll now
+     */
+    public synchronized List<T> takeDue(long now) {
+        while (!dispatched.isEmpty() && dispatched.peekFirst() <= now - WINDOW) {
+            dispatched.pollFirst();
+        }
+        List<T> due = new ArrayList<>();
+        while (!heap.isEmpty() && heap.peek().due <= now && dispatched.size() < budgetPerMinute) {
+            Entry<T> entry = heap.poll();
+            if (queued.get(entry.item) == entry) {
+                queued.remove(entry.item);
+                polling.add(entry.item);
+                dispatched.addLast(now);
+                due.add(entry.item);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return the number of items that are due but not taken yet
+     */
+    public synchronized int getOverdue(long now) {
+        int count = 0;
+        for (Entry<T> entry : queued.values()) {
+            if (entry.due <= now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return intervals.size();
+    }
+
+    public int getBudgetPerMinute() {
+        return budgetPerMinute;
+    }
+
+    public void setBudgetPerMinute(int budgetPerMinute) {
+        this.budgetPerMinute = budgetPerMinute;
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        private final T item;
+        private final long due;
+        private final long sequence;
+
+        private Entry(T item, long due, long sequence) {
+            this.item = item;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            int result = Long.compare(due, other.due);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
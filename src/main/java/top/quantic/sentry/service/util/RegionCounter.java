@@ -0,0 +1,65 @@
+package top.quantic.sentry.service.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a running total per region of values reported by individual sources, like the player count of each server.
+ * Each update only adds the difference with the previous value of its source, so reading the totals costs one sum per
+ * region regardless of the number of sources.
+ */
+public class RegionCounter {
+
+    private final Map<String, LongAdder> totals = new ConcurrentHashMap<>();
+    private final Map<Object, Contribution> contributions = new ConcurrentHashMap<>();
+
+    /**
+     * Set the current value of a source, moving its previous value out of its previous region if it changed.
+     *
+     * @param source the source of the value
+     * @param region the region the source belongs to
+     * @param value  the current value
+     */
+    public void set(Object source, String region, long value) {
+        Contribution previous = contributions.put(source, new Contribution(region, value));
+        if (previous != null) {
+            totals.get(previous.region).add(-previous.value);
+        }
+        totals.computeIfAbsent(region, k -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Stop counting a source.
+     *
+     * @param source the source to remove
+     */
+    public void remove(Object source) {
+        Contribution previous = contributions.remove(source);
+        if (previous != null) {
+            totals.get(previous.region).add(-previous.value);
+        }
+    }
+
+    /**
+     * Get the current total of every region that has ever been reported, including those back at zero.
+     *
+     * @return a map of regions to totals, sorted by region
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> result = new TreeMap<>();
+        totals.forEach((region, total) -> result.put(region, total.sum()));
+        return result;
+    }
+
+    private static class Contribution {
+        private final String region;
+        private final long value;
+
+        private Contribution(String region, long value) {
+            this.region = region;
+            this.value = value;
+        }
+    }
+}
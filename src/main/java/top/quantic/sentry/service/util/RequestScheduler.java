@@ -0,0 +1,227 @@
+package top.quantic.sentry.service.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs requests from a fixed number of worker threads, picking the oldest request of the most urgent priority first,
+ * so bulk background work never holds an interactive request back by more than the requests in flight.
+ * Requests with the same key that are queued or in flight are merged, and a merged request is moved to the most
+ * urgent priority among its callers.
+ */
+public class RequestScheduler {
+
+    public enum Priority {
+        INTERACTIVE, UPDATE, BACKGROUND
+    }
+
+    private final Object lock = new Object();
+    private final Map<Priority, Deque<Request<?>>> queues = new EnumMap<>(Priority.class);
+    private final Map<String, Request<?>> requests = new HashMap<>();
+    private final Set<Request<?>> running = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean shutdown = false;
+
+    public RequestScheduler(String name) {
+        this(name, 1);
+    }
+
+    public RequestScheduler(String name, int workers) {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            Thread worker = new Thread(this::work, name + "-scheduler-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+    }
+
+    /**
+     * Queue a request, or join the queued or running request with the same key.
+     *
+     * @param priority the priority of the caller
+     * @param key      identifies requests that are equivalent to each other
+     * @param task     the request to run
+     * @param <T>      the result type
+     * @return a ticket to track the position and result of the request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Ticket<T> submit(Priority priority, String key, Callable<T> task) {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new IllegalStateException("Scheduler is shut down");
+            }
+            Request<T> request = (Request<T>) requests.get(key);
+            if (request == null) {
+                request = new Request<>(key, priority, task);
+                requests.put(key, request);
+                queues.get(priority).add(request);
+                lock.notifyAll();
+            } else if (!running.contains(request) && priority.compareTo(request.priority) < 0) {
+                queues.get(request.priority).remove(request);
+                request.priority = priority;
+                queues.get(priority).add(request);
+            }
+            return request.ticket;
+        }
+    }
+
+    /**
+     * Get the number of requests a new request of the given priority would have to wait for, including the ones
+     * in flight.
+     *
+     * @param priority the priority of the new request
+     * @return the number of requests ahead
+     */
+    public int getAhead(Priority priority) {
+        synchronized (lock) {
+            int ahead = running.size();
+            for (Priority other : Priority.values()) {
+                if (other.compareTo(priority) <= 0) {
+                    ahead += queues.get(other).size();
+                }
+            }
+            return ahead;
+        }
+    }
+
+    public int getQueued(Priority priority) {
+        synchronized (lock) {
+            return queues.get(priority).size();
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (!shutdown) {
+            Request<?> request;
+            synchronized (lock) {
+                request = poll();
+                while (request == null && !shutdown) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    request = poll();
+                }
+                if (request == null) {
+                    return;
+                }
+                running.add(request);
+            }
+            request.run();
+        }
+    }
+
+    private void finish(Request<?> request) {
+        // done before completing the ticket, so later requests with the same key are never merged into this one
+        synchronized (lock) {
+            running.remove(request);
+            requests.remove(request.key);
+        }
+    }
+
+    private Request<?> poll() {
+        for (Deque<Request<?>> queue : queues.values()) {
+            Request<?> request = queue.poll();
+            if (request != null) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private int positionOf(Request<?> request) {
+        synchronized (lock) {
+            if (running.contains(request)) {
+                return 0;
+            }
+            int position = running.size();
+            for (Map.Entry<Priority, Deque<Request<?>>> entry : queues.entrySet()) {
+                if (entry.getKey() == request.priority) {
+                    for (Request<?> queued : entry.getValue()) {
+                        if (queued == request) {
+                            return position;
+                        }
+                        position++;
+                    }
+                    return -1;
+                }
+                position += entry.getValue().size();
+            }
+            return -1;
+        }
+    }
+
+    private class Request<T> {
+        private final String key;
+        private final Callable<T> task;
+        private final Ticket<T> ticket;
+        private Priority priority;
+
+        private Request(String key, Priority priority, Callable<T> task) {
+            this.key = key;
+            this.priority = priority;
+            this.task = task;
+            this.ticket = new Ticket<>(this);
+        }
+
+        private void run() {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = task.call();
+            } catch (Throwable t) {
+                error = t;
+            }
+            finish(this);
+            if (error != null) {
+                ticket.future.completeExceptionally(error);
+            } else {
+                ticket.future.complete(result);
+            }
+        }
+    }
+
+    public final class Ticket<T> {
+        private final Request<T> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Ticket(Request<T> request) {
+            this.request = request;
+        }
+
+        /**
+         * @return the number of requests ahead of this one, including those in flight, <code>0</code> if it's running, or
+         * <code>-1</code> if it's done
+         */
+        public int getPosition() {
+            return future.isDone() ? -1 : positionOf(request);
+        }
+
+        public CompletableFuture<T> getFuture() {
+            return future;
+        }
+    }
+}
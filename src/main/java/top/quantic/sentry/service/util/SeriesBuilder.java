@@ -0,0 +1,290 @@
+package top.quantic.sentry.service.util;
+
+import top.quantic.sentry.web.rest.vm.Series;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneRules;
+import java.util.*;
+
+/**
+ * Builds chart series from samples using primitive columns per series, aggregating samples into time buckets as they
+ * are added. When samples arrive in time order, each bucket is aggregated in place with a single pass and no
+ * sorting; otherwise the columns are sorted and merged once when building. Buckets are computed like the legacy
+ * <code>ZonedDateTime</code> truncation, keeping the seconds of each sample, and every series is given a zero for the
+ * buckets where only other series have samples.
+ */
+public class SeriesBuilder {
+
+    public enum Aggregation {
+        AVERAGE, MIN, MAX, FIRST, LAST
+    }
+
+    private static final Number ZERO = 0;
+
+    private final int resolution;
+    private final Aggregation aggregation;
+    private final Map<String, Column> columns = new TreeMap<>();
+    private String lastKey;
+    private Column lastColumn;
+
+    // local time window of the last computed bucket, valid while samples keep the same offset
+    private long windowStart = 0;
+    private long windowEnd = 0;
+    private int windowOffset = Integer.MIN_VALUE;
+    private ZoneId windowZone;
+
+    /**
+     * Create a builder.
+     *
+     * @param resolution  the bucket size in minutes, as given by {@link ChartUtil#getResolution(long)}, or 0 to keep
+     *                    one bucket per second
+     * @param aggregation how the samples of each bucket are combined
+     */
+    public SeriesBuilder(int resolution, Aggregation aggregation) {
+        this.resolution = resolution;
+        this.aggregation = aggregation;
+    }
+
+    public SeriesBuilder add(String series, ZonedDateTime timestamp, long value) {
+        return add(series, timestamp, value, 1);
+    }
+
+    /**
+     * Add a pre-aggregated sample, weighing it by the number of samples it was built from, so that averaging buckets
+     * of different sizes gives the same result as averaging their samples.
+     *
+     * @param series    the series key
+     * @param timestamp the sample time
+     * @param sum       the sum of the aggregated samples
+     * @param count     the number of aggregated samples
+     * @return this builder
+     */
+    public SeriesBuilder addWeighted(String series, ZonedDateTime timestamp, long sum, int count) {
+        if (aggregation != Aggregation.AVERAGE) {
+            throw new IllegalStateException("Weighted samples can only be averaged");
+        }
+        return add(series, timestamp, sum, count);
+    }
+
+    private SeriesBuilder add(String series, ZonedDateTime timestamp, long value, int count) {
+        Column column;
+        if (series.equals(lastKey)) {
+            column = lastColumn;
+        } else {
+            column = columns.computeIfAbsent(series, k -> new Column());
+            lastKey = series;
+            lastColumn = column;
+        }
+        column.add(bucket(timestamp), value, count, aggregation);
+        return this;
+    }
+
+    private long bucket(ZonedDateTime timestamp) {
+        long epoch = timestamp.toEpochSecond();
+        if (resolution <= 0) {
+            return epoch;
+        }
+        int offset = timestamp.getOffset().getTotalSeconds();
+        long local = epoch + offset;
+        if (offset != windowOffset || local < windowStart || local >= windowEnd
+            || (timestamp.getZone() != windowZone && !timestamp.getZone().equals(windowZone))) {
+            if (!computeWindow(timestamp, local, offset)) {
+                return legacyBucket(timestamp);
+            }
+        }
+        // the window starts at a local minute boundary and the seconds of the sample are kept
+        return windowStart + Math.floorMod(local, 60) - offset;
+    }
+
+    private boolean computeWindow(ZonedDateTime timestamp, long local, int offset) {
+        long minuteOfHour = Math.floorMod(Math.floorDiv(local, 60), 60);
+        long hourOfDay = Math.floorMod(Math.floorDiv(local, 3600), 24);
+        long minuteStart = local - Math.floorMod(local, 60);
+        long hourStart = minuteStart - minuteOfHour * 60;
+        long dayStart = hourStart - hourOfDay * 3600;
+        int dayResolution = resolution / 1440;
+        int hourResolution = resolution / 60;
+        long start;
+        long end;
+        if (dayResolution > 0) {
+            if (dayResolution % 365 != 1) {
+                return false;
+            }
+            start = dayStart;
+            end = dayStart + 86400;
+        } else if (hourResolution > 0) {
+            start = hourStart - (hourOfDay % hourResolution) * 3600;
+            end = Math.min(start + hourResolution * 3600L, dayStart + 86400);
+        } else {
+            start = minuteStart - (minuteOfHour % resolution) * 60;
+            end = Math.min(start + resolution * 60L, hourStart + 3600);
+        }
+        // the truncated local time keeps its offset only if the offset is still in effect at that instant
+        ZoneRules rules = timestamp.getZone().getRules();
+        if (!rules.isFixedOffset() && rules.getOffset(Instant.ofEpochSecond(start - offset)).getTotalSeconds() != offset) {
+            return false;
+        }
+        windowStart = start;
+        windowEnd = end;
+        windowOffset = offset;
+        windowZone = timestamp.getZone();
+        return true;
+    }
+
+    private long legacyBucket(ZonedDateTime key) {
+        int dayResolution = resolution / 1440;
+        int hourResolution = resolution / 60;
+        if (dayResolution > 0) {
+            int yearModulo = dayResolution % 365;
+            key = key.withMinute(0)
+                .withHour(0)
+                .withDayOfYear(((key.getDayOfYear() - 1) / yearModulo * yearModulo) + 1);
+        } else if (hourResolution > 0) {
+            key = key.withMinute(0)
+                .withHour(key.getHour() / hourResolution * hourResolution);
+        } else {
+            key = key.withMinute(key.getMinute() / resolution * resolution);
+        }
+        return key.toEpochSecond();
+    }
+
+    /**
+     * Build the series, sorted by key and with their points sorted by time.
+     *
+     * @return a list of series sharing the same timestamps
+     */
+    public List<Series> build() {
+        for (Column column : columns.values()) {
+            column.sort(aggregation);
+        }
+        long[] timestamps = union();
+        List<Series> result = new ArrayList<>(columns.size());
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            Column column = entry.getValue();
+            List<List<Number>> values = new ArrayList<>(timestamps.length);
+            int j = 0;
+            for (long timestamp : timestamps) {
+                Number value;
+                if (j < column.size && column.buckets[j] == timestamp) {
+                    value = column.result(j++, aggregation);
+                } else {
+                    value = ZERO;
+                }
+                values.add(Arrays.asList(timestamp * 1000, value));
+            }
+            result.add(new Series(entry.getKey()).values(values));
+        }
+        return result;
+    }
+
+    private long[] union() {
+        if (columns.isEmpty()) {
+            return new long[0];
+        }
+        Iterator<Column> iterator = columns.values().iterator();
+        Column first = iterator.next();
+        long[] union = Arrays.copyOf(first.buckets, first.size);
+        while (iterator.hasNext()) {
+            Column column = iterator.next();
+            long[] merged = new long[union.length + column.size];
+            int i = 0, j = 0, k = 0;
+            while (i < union.length || j < column.size) {
+                if (j >= column.size || (i < union.length && union[i] < column.buckets[j])) {
+                    merged[k++] = union[i++];
+                } else if (i >= union.length || column.buckets[j] < union[i]) {
+                    merged[k++] = column.buckets[j++];
+                } else {
+                    merged[k++] = union[i++];
+                    j++;
+                }
+            }
+            union = k == merged.length ? merged : Arrays.copyOf(merged, k);
+        }
+        return union;
+    }
+
+    private static class Column {
+        private long[] buckets = new long[16];
+        private long[] values = new long[16];
+        private int[] counts = new int[16];
+        private int size = 0;
+        private boolean ordered = true;
+
+        private void add(long bucket, long value, int count, Aggregation aggregation) {
+            if (size > 0 && buckets[size - 1] == bucket) {
+                values[size - 1] = combine(values[size - 1], value, aggregation);
+                counts[size - 1] += count;
+                return;
+            }
+            if (size > 0 && bucket < buckets[size - 1]) {
+                ordered = false;
+            }
+            if (size == buckets.length) {
+                int capacity = size * 2;
+                buckets = Arrays.copyOf(buckets, capacity);
+                values = Arrays.copyOf(values, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            buckets[size] = bucket;
+            values[size] = value;
+            counts[size] = count;
+            size++;
+        }
+
+        private static long combine(long current, long value, Aggregation aggregation) {
+            switch (aggregation) {
+                case AVERAGE:
+                    return current + value;
+                case MIN:
+                    return Math.min(current, value);
+                case MAX:
+                    return Math.max(current, value);
+                case LAST:
+                    return value;
+                default:
+                    return current;
+            }
+        }
+
+        private void sort(Aggregation aggregation) {
+            if (ordered) {
+                return;
+            }
+            // stable sort by bucket, so that FIRST and LAST still follow the order samples were added
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> buckets[i]));
+            long[] sortedBuckets = new long[size];
+            long[] sortedValues = new long[size];
+            int[] sortedCounts = new int[size];
+            int n = 0;
+            for (int i : order) {
+                if (n > 0 && sortedBuckets[n - 1] == buckets[i]) {
+                    sortedValues[n - 1] = combine(sortedValues[n - 1], values[i], aggregation);
+                    sortedCounts[n - 1] += counts[i];
+                } else {
+                    sortedBuckets[n] = buckets[i];
+                    sortedValues[n] = values[i];
+                    sortedCounts[n] = counts[i];
+                    n++;
+                }
+            }
+            buckets = sortedBuckets;
+            values = sortedValues;
+            counts = sortedCounts;
+            size = n;
+            ordered = true;
+        }
+
+        private Number result(int index, Aggregation aggregation) {
+            if (aggregation == Aggregation.AVERAGE) {
+                return counts[index] == 0 ? 0 : values[index] / counts[index];
+            }
+            return values[index];
+        }
+    }
+}
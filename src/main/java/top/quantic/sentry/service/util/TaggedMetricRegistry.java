@@ -0,0 +1,224 @@
+package top.quantic.sentry.service.util;
+
+import com.codahale.metrics.*;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Registers metrics by {@link MetricKey} instead of by concatenated names, keeping an index of the registered keys by
+ * name and by tag so tagged metrics can be found without parsing names back. Metrics are still held by the underlying
+ * {@link MetricRegistry} under their legacy names, so every reporter keeps working unchanged. Metrics removed directly
+ * from the registry are also removed from the index.
+ */
+public class TaggedMetricRegistry extends MetricRegistryListener.Base {
+
+    private final MetricRegistry registry;
+    private final Map<String, MetricKey> keysByLegacyName = new ConcurrentHashMap<>();
+    private final Map<String, Set<MetricKey>> keysByName = new ConcurrentHashMap<>();
+    private final Map<String, Set<MetricKey>> keysByTag = new ConcurrentHashMap<>();
+
+    public TaggedMetricRegistry(MetricRegistry registry) {
+        this.registry = registry;
+        registry.addListener(this);
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public Counter counter(MetricKey key) {
+        Counter counter = registry.counter(key.toString());
+        index(key);
+        return counter;
+    }
+
+    public Histogram histogram(MetricKey key) {
+        Histogram histogram = registry.histogram(key.toString());
+        index(key);
+        return histogram;
+    }
+
+    public Meter meter(MetricKey key) {
+        Meter meter = registry.meter(key.toString());
+        index(key);
+        return meter;
+    }
+
+    public Timer timer(MetricKey key) {
+        Timer timer = registry.timer(key.toString());
+        index(key);
+        return timer;
+    }
+
+    /**
+     * Register a metric, replacing any metric previously registered with the same key.
+     *
+     * @param key    the key of the metric
+     * @param metric the metric
+     * @param <T>    the type of the metric
+     * @return the metric
+     */
+    public <T extends Metric> T register(MetricKey key, T metric) {
+        registry.remove(key.toString());
+        registry.register(key.toString(), metric);
+        index(key);
+        return metric;
+    }
+
+    public boolean remove(MetricKey key) {
+        boolean removed = registry.remove(key.toString());
+        if (!removed && !keysByLegacyName.containsKey(key.toString())) {
+            // never registered here, so it was only interned by the lookup
+            MetricKey.release(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the metrics with a name whose keys match a predicate.
+     *
+     * @param name      the metric name
+     * @param predicate the condition to remove a key
+     */
+    public void removeMatching(String name, Predicate<MetricKey> predicate) {
+        for (MetricKey key : getKeys(name)) {
+            if (predicate.test(key)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Get the keys of every registered metric with the given name.
+     *
+     * @param name the metric name
+     * @return an unmodifiable view of the keys
+     */
+    public Set<MetricKey> getKeys(String name) {
+        return Collections.unmodifiableSet(keysByName.getOrDefault(name, Collections.emptySet()));
+    }
+
+    /**
+     * Get the keys of every registered metric with the given name and tag.
+     *
+     * @param name     the metric name
+     * @param tagKey   the tag key
+     * @param tagValue the tag value
+     * @return an unmodifiable view of the keys
+     */
+    public Set<MetricKey> getKeys(String name, String tagKey, String tagValue) {
+        Set<MetricKey> named = keysByName.getOrDefault(name, Collections.emptySet());
+        Set<MetricKey> tagged = keysByTag.getOrDefault(tag(tagKey, tagValue), Collections.emptySet());
+        Set<MetricKey> result = Collections.newSetFromMap(new LinkedHashMap<>());
+        if (named.size() <= tagged.size()) {
+            named.stream().filter(tagged::contains).forEach(result::add);
+        } else {
+            tagged.stream().filter(named::contains).forEach(result::add);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Get the registered metrics of a type with the given name.
+     *
+     * @param name the metric name
+     * @param type the metric type
+     * @param <T>  the type of the metric
+     * @return a map of keys to metrics
+     */
+    public <T extends Metric> Map<MetricKey, T> getMetrics(String name, Class<T> type) {
+        return getMetrics(getKeys(name), type);
+    }
+
+    /**
+     * Get the registered metrics of a type with the given name and tag.
+     *
+     * @param name     the metric name
+     * @param tagKey   the tag key
+     * @param tagValue the tag value
+     * @param type     the metric type
+     * @param <T>      the type of the metric
+     * @return a map of keys to metrics
+     */
+    public <T extends Metric> Map<MetricKey, T> getMetrics(String name, String tagKey, String tagValue, Class<T> type) {
+        return getMetrics(getKeys(name, tagKey, tagValue), type);
+    }
+
+    private <T extends Metric> Map<MetricKey, T> getMetrics(Set<MetricKey> keys, Class<T> type) {
+        Map<String, Metric> metrics = registry.getMetrics();
+        Map<MetricKey, T> result = new LinkedHashMap<>();
+        for (MetricKey key : keys) {
+            Metric metric = metrics.get(key.toString());
+            if (type.isInstance(metric)) {
+                result.put(key, type.cast(metric));
+            }
+        }
+        return result;
+    }
+
+    private void index(MetricKey key) {
+        if (keysByLegacyName.putIfAbsent(key.toString(), key) == null) {
+            addTo(keysByName, key.getName(), key);
+            key.getTags().forEach((tagKey, tagValue) -> addTo(keysByTag, tag(tagKey, tagValue), key));
+        }
+    }
+
+    private void unindex(String legacyName) {
+        MetricKey key = keysByLegacyName.remove(legacyName);
+        if (key != null) {
+            removeFrom(keysByName, key.getName(), key);
+            key.getTags().forEach((tagKey, tagValue) -> removeFrom(keysByTag, tag(tagKey, tagValue), key));
+            MetricKey.release(key);
+        }
+    }
+
+    private static void addTo(Map<String, Set<MetricKey>> index, String indexKey, MetricKey key) {
+        // updated within compute so a set is never dropped while a key is being added to it
+        index.compute(indexKey, (k, set) -> {
+            Set<MetricKey> result = set == null ? ConcurrentHashMap.newKeySet() : set;
+            result.add(key);
+            return result;
+        });
+    }
+
+    private static void removeFrom(Map<String, Set<MetricKey>> index, String indexKey, MetricKey key) {
+        index.computeIfPresent(indexKey, (k, set) -> {
+            set.remove(key);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static String tag(String key, String value) {
+        return key + ":" + value;
+    }
+
+    @Override
+    public void onGaugeRemoved(String name) {
+        unindex(name);
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+        unindex(name);
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+        unindex(name);
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+        unindex(name);
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+        unindex(name);
+    }
+}
@@ -0,0 +1,204 @@
+package top.quantic.sentry.service.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hashed hierarchical timer wheel. Each level has 64 slots, and a slot of each level spans a full rotation of the
+ * level below it. A timer is placed in the lowest level whose rotation covers its deadline, and moved down a level each
+ * time the wheel reaches its slot, until it fires from the lowest one. Timers past the range of the highest level wait
+ * in its farthest slot and are placed again once the wheel gets there.
+ * <p>
+ * Scheduling and cancelling a timer are constant time, and advancing the wheel only visits the slots it goes through,
+ * so the cost doesn't depend on the number of timers that are not due yet. Timers fire at tick granularity, never
+ * before their deadline.
+ *
+ * @param <K> the type of the keys identifying each timer
+ */
+public class TimerWheel<K> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private final long tickMillis;
+    private final int levels;
+    private final long maxTicks;
+    private final Node<K>[][] wheel;
+    private final Map<K, Node<K>> timers = new HashMap<>();
+
+    private long currentTick;
+
+    /**
+     * @param tickMillis the resolution of the wheel in milliseconds
+     * @param levels     the number of levels, the wheel covering <code>tickMillis * 64^levels</code> milliseconds
+     * @param now        the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int levels, long now) {
+        if (tickMillis <= 0 || levels <= 0 || levels * SLOT_BITS >= 63) {
+            throw new IllegalArgumentException("Invalid wheel dimensions: " + tickMillis + " ms x " + levels + " levels");
+        }
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.maxTicks = 1L << (levels * SLOT_BITS);
+        this.wheel = new Node[levels][SLOTS];
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Schedule a timer, replacing the previous timer with the same key if any. A deadline that has already passed fires
+     * on the next tick.
+     *
+     * @param key      the timer key
+     * @param deadline the time the timer fires at in milliseconds
+     */
+    public synchronized void schedule(K key, long deadline) {
+        Node<K> node = timers.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            timers.put(key, node);
+        } else {
+            unlink(node);
+        }
+        node.deadline = deadline;
+        // round up so a timer never fires before its deadline
+        node.tick = Math.max(currentTick + 1, (deadline + tickMillis - 1) / tickMillis);
+        link(node);
+    }
+
+    /**
+     * @param key the timer key
+     * @return <code>true</code> if the timer was scheduled
+     */
+    public synchronized boolean cancel(K key) {
+        Node<K> node = timers.remove(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Remove every timer.
+     */
+    public synchronized void clear() {
+        for (Node<K>[] level : wheel) {
+            Arrays.fill(level, null);
+        }
+        timers.clear();
+    }
+
+    /**
+     * @param key the timer key
+     * @return the deadline of the timer in milliseconds, or <code>null</code> if it isn't scheduled
+     */
+    public synchronized Long getDeadline(K key) {
+        Node<K> node = timers.get(key);
+        return node == null ? null : node.deadline;
+    }
+
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    /**
+     * Move the wheel forward to the given time, removing the timers that are due.
+     *
+     * @param now the current time in milliseconds
+     * @return the keys of the due timers, in the order of their ticks
+     */
+    public synchronized List<K> advance(long now) {
+        long target = now / tickMillis;
+        List<K> due = new ArrayList<>();
+        while (currentTick < target) {
+            currentTick++;
+            cascade(1);
+            Node<K> node = detach(0, (int) (currentTick & MASK));
+            while (node != null) {
+                Node<K> next = node.next;
+                timers.remove(node.key);
+                node.next = node.prev = null;
+                due.add(node.key);
+                node = next;
+            }
+        }
+        return due;
+    }
+
+    private void cascade(int level) {
+        if (level >= levels || (currentTick & ((1L << (level * SLOT_BITS)) - 1)) != 0) {
+            return;
+        }
+        // the higher levels reach their next slot first, so their timers can land in this one
+        cascade(level + 1);
+        Node<K> node = detach(level, (int) ((currentTick >>> (level * SLOT_BITS)) & MASK));
+        while (node != null) {
+            Node<K> next = node.next;
+            node.next = node.prev = null;
+            link(node);
+            node = next;
+        }
+    }
+
+    private void link(Node<K> node) {
+        long delta = node.tick - currentTick;
+        long tick = node.tick;
+        int level = 0;
+        if (delta >= maxTicks) {
+            // beyond the range of the wheel, wait in the farthest slot of the highest level
+            tick = currentTick + maxTicks - 1;
+            level = levels - 1;
+        } else {
+            while (delta >= 1L << ((level + 1) * SLOT_BITS)) {
+                level++;
+            }
+        }
+        int slot = (int) ((tick >>> (level * SLOT_BITS)) & MASK);
+        node.level = level;
+        node.slot = slot;
+        Node<K> head = wheel[level][slot];
+        node.next = head;
+        node.prev = null;
+        if (head != null) {
+            head.prev = node;
+        }
+        wheel[level][slot] = node;
+    }
+
+    private void unlink(Node<K> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else if (wheel[node.level][node.slot] == node) {
+            wheel[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.next = node.prev = null;
+    }
+
+    private Node<K> detach(int level, int slot) {
+        Node<K> head = wheel[level][slot];
+        wheel[level][slot] = null;
+        return head;
+    }
+
+    private static class Node<K> {
+        private final K key;
+        private long deadline;
+        private long tick;
+        private int level;
+        private int slot;
+        private Node<K> prev;
+        private Node<K> next;
+
+        private Node(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package top.quantic.sentry.service.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that never blocks: callers reserve a token and receive the time they must wait before using it. Tokens
+ * refill at a fixed rate up to the bucket capacity, and reservations made while the bucket is empty are queued by
+ * letting the balance go negative, so concurrent callers are spaced out instead of being released together.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a full bucket.
+     *
+     * @param permitsPerSecond the rate at which tokens are refilled
+     * @param capacity         the maximum number of tokens that can be used in a burst
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Reserve a token.
+     *
+     * @return the number of nanoseconds to wait before the reserved token can be used, 0 if it can be used now
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
@@ -0,0 +1,99 @@
+package top.quantic.sentry.web.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Controller;
+import top.quantic.sentry.domain.PlayerCount;
+import top.quantic.sentry.domain.UserCount;
+import top.quantic.sentry.event.PlayerCountsStoredEvent;
+import top.quantic.sentry.event.UserCountsStoredEvent;
+import top.quantic.sentry.service.PlayerCountService;
+import top.quantic.sentry.service.UserCountService;
+import top.quantic.sentry.web.rest.vm.Series;
+import top.quantic.sentry.web.websocket.dto.SeriesUpdateDTO;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static top.quantic.sentry.service.util.ChartUtil.getSeriesFromData;
+
+/**
+ * Streams player and user count charts to STOMP subscribers. Subscribing replies once with a snapshot of the range
+ * starting at the <code>from</code> header (epoch millis, an hour ago by default) and the broker then delivers only
+ * the points added by each minute job, so clients never need to poll or reload the whole range.
+ */
+@Controller
+public class CountFeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(CountFeedService.class);
+
+    public static final String PLAYER_COUNTS = "/topic/player-counts";
+    public static final String USER_COUNTS = "/topic/user-counts";
+
+    @Inject
+    SimpMessageSendingOperations messagingTemplate;
+
+    @Inject
+    PlayerCountService playerCountService;
+
+    @Inject
+    UserCountService userCountService;
+
+    @SubscribeMapping(PLAYER_COUNTS)
+    public SeriesUpdateDTO subscribePlayerCounts(StompHeaderAccessor stompHeaderAccessor) {
+        ZonedDateTime from = getFrom(stompHeaderAccessor);
+        log.debug("Sending player count snapshot since {} to {}", from, stompHeaderAccessor.getSessionId());
+        return new SeriesUpdateDTO(SeriesUpdateDTO.SNAPSHOT,
+            playerCountService.getGroupedPointsBetween(from, ZonedDateTime.now()));
+    }
+
+    @SubscribeMapping(USER_COUNTS + "/{bot}/{guild}")
+    public SeriesUpdateDTO subscribeUserCounts(@DestinationVariable String bot, @DestinationVariable String guild,
+                                               StompHeaderAccessor stompHeaderAccessor) {
+        ZonedDateTime from = getFrom(stompHeaderAccessor);
+        log.debug("Sending user count snapshot of {}/{} since {} to {}", bot, guild, from,
+            stompHeaderAccessor.getSessionId());
+        return new SeriesUpdateDTO(SeriesUpdateDTO.SNAPSHOT,
+            userCountService.getGroupedPointsBetween(bot, guild, from, ZonedDateTime.now()));
+    }
+
+    @EventListener
+    public void onPlayerCountsStored(PlayerCountsStoredEvent event) {
+        List<Series> series = getSeriesFromData(event.getSource(),
+            PlayerCount::getRegion, PlayerCount::getTimestamp, PlayerCount::getValue);
+        messagingTemplate.convertAndSend(PLAYER_COUNTS, new SeriesUpdateDTO(SeriesUpdateDTO.DELTA, series));
+    }
+
+    @EventListener
+    public void onUserCountsStored(UserCountsStoredEvent event) {
+        Map<String, List<UserCount>> byDestination = event.getSource().stream()
+            .collect(Collectors.groupingBy(count -> USER_COUNTS + "/" + count.getBot() + "/" + count.getGuild()));
+        byDestination.forEach((destination, samples) -> {
+            List<Series> series = getSeriesFromData(samples,
+                UserCount::getStatus, UserCount::getTimestamp, UserCount::getValue);
+            messagingTemplate.convertAndSend(destination, new SeriesUpdateDTO(SeriesUpdateDTO.DELTA, series));
+        });
+    }
+
+    private ZonedDateTime getFrom(StompHeaderAccessor stompHeaderAccessor) {
+        String from = stompHeaderAccessor.getFirstNativeHeader("from");
+        if (from != null) {
+            try {
+                return Instant.ofEpochMilli(Long.parseLong(from)).atZone(ZoneId.systemDefault());
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring invalid from header: {}", from);
+            }
+        }
+        return ZonedDateTime.now().minusHours(1);
+    }
+}
@@ -0,0 +1,51 @@
+package top.quantic.sentry.web.websocket.dto;
+
+import top.quantic.sentry.web.rest.vm.Series;
+
+import java.util.List;
+
+/**
+ * DTO for the chart data sent to live count subscribers: either a snapshot of a whole range, sent once when
+ * subscribing, or the points added since.
+ */
+public class SeriesUpdateDTO {
+
+    public static final String SNAPSHOT = "snapshot";
+    public static final String DELTA = "delta";
+
+    private String type;
+
+    private List<Series> series;
+
+    public SeriesUpdateDTO() {
+    }
+
+    public SeriesUpdateDTO(String type, List<Series> series) {
+        this.type = type;
+        this.series = series;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public List<Series> getSeries() {
+        return series;
+    }
+
+    public void setSeries(List<Series> series) {
+        this.series = series;
+    }
+
+    @Override
+    public String toString() {
+        return "SeriesUpdateDTO{" +
+            "type='" + type + '\'' +
+            ", series=" + (series == null ? 0 : series.size()) +
+            '}';
+    }
+}
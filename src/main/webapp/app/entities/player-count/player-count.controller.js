@@ -5,10 +5,11 @@
         .module('sentryApp')
         .controller('PlayerCountController', PlayerCountController);
 
-    PlayerCountController.$inject = ['$scope', '$state', '$interval', '$timeout', '$cookies', 'PlayerCount', 'ParseLinks', 'AlertService'];
+    PlayerCountController.$inject = ['$scope', '$state', '$interval', '$timeout', '$cookies', 'PlayerCount', 'CountFeed', 'ParseLinks', 'AlertService'];
 
-    function PlayerCountController($scope, $state, $interval, $timeout, $cookies, PlayerCount, ParseLinks, AlertService) {
+    function PlayerCountController($scope, $state, $interval, $timeout, $cookies, PlayerCount, CountFeed, ParseLinks, AlertService) {
         var vm = this;
+        var unsubscribe = null;
 
         vm.refresher = $interval(updateTime, 1000);
         vm.nextRefresh = 60;
@@ -147,6 +148,8 @@
             if (vm.live) {
                 if (!isPresent() || (vm.mode !== '1h' && vm.mode !== '4h')) {
                     now();
+                } else if (unsubscribe === null) {
+                    loadAll();
                 }
             }
         }
@@ -176,15 +179,22 @@
 
         $scope.$on('$destroy', function () {
             $interval.cancel(vm.refresher);
+            stopFeed();
             clearTooltip();
         });
 
         function updateTime() {
-            if (vm.nextRefresh === 0) {
-                vm.nextRefresh = 60;
-                loadLast();
+            // new points are pushed by the server, this only tracks when the next one is due
+            if (vm.nextRefresh > 0) {
+                vm.nextRefresh--;
+            }
+        }
+
+        function stopFeed() {
+            if (unsubscribe !== null) {
+                unsubscribe();
+                unsubscribe = null;
             }
-            vm.nextRefresh--;
         }
 
         loadAll();
@@ -198,6 +208,13 @@
             $cookies.put('playerCountTo', toTs);
             $cookies.put('playerCountMode', vm.mode);
 
+            stopFeed();
+            if (vm.live) {
+                // load the range once and then receive only the new points
+                unsubscribe = CountFeed.subscribe('/topic/player-counts', vm.fromTime, onSuccess, onDelta);
+                return;
+            }
+
             PlayerCount.points({
                 from: fromTs,
                 to: toTs
@@ -281,37 +298,33 @@
             console.log('[' + chartName + '] Pushed ' + xy[1] + ' @ ' + xy[0] + ' to new series #' + series + ': ' + chartData[series].key);
         }
 
-        function loadLast() {
+        function onDelta(data) {
+            vm.nextRefresh = 60;
             if (!vm.live) {
                 console.log("Paused: not updating");
                 return;
             }
 
-            PlayerCount.last({}, onSuccess, onError);
+            // for each series this new data includes
+            for (var newSeries in data) {
+                // filter out useless fields
+                if (data.hasOwnProperty(newSeries)) {
+                    var series = data[newSeries]; // series = { key: ..., values: [...] }
 
-            function onSuccess(data) {
-                // for each series this new data includes
-                for (var newSeries in data) {
-                    // filter out useless fields
-                    if (data.hasOwnProperty(newSeries)) {
-                        var point = data[newSeries]; // point = { key: ..., values: [...] }
-
-                        if (point == null || point.values == null) {
-                            continue; // Discarding invalid or empty series
-                        }
+                    if (series == null || series.values == null) {
+                        continue; // Discarding invalid or empty series
+                    }
 
+                    for (var i = 0; i < series.values.length; i++) {
+                        var point = {key: series.key, values: [series.values[i]]};
                         console.log("New data from '" + point.key + "' series: (" + point.values[0][0] + ", " + point.values[0][1] + ")");
                         pushPoint($scope.data, point, 'PlayerCount');
                     }
                 }
-
-                console.log('Refreshing chart');
-                clearTooltip();
             }
 
-            function onError(error) {
-                AlertService.error(error.data.message);
-            }
+            console.log('Refreshing chart');
+            clearTooltip();
         }
 
         $scope.options = {
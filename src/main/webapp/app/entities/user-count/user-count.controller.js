@@ -5,10 +5,11 @@
         .module('sentryApp')
         .controller('UserCountController', UserCountController);
 
-    UserCountController.$inject = ['$scope', '$state', '$interval', '$timeout', '$cookies', 'UserCount', 'Setting', 'ParseLinks', 'AlertService', 'paginationConstants', 'pagingParams'];
+    UserCountController.$inject = ['$scope', '$state', '$interval', '$timeout', '$cookies', 'UserCount', 'Setting', 'CountFeed', 'ParseLinks', 'AlertService', 'paginationConstants', 'pagingParams'];
 
-    function UserCountController($scope, $state, $interval, $timeout, $cookies, UserCount, Setting, ParseLinks, AlertService, paginationConstants, pagingParams) {
+    function UserCountController($scope, $state, $interval, $timeout, $cookies, UserCount, Setting, CountFeed, ParseLinks, AlertService, paginationConstants, pagingParams) {
         var vm = this;
+        var unsubscribe = null;
 
         vm.refresher = $interval(updateTime, 1000);
         vm.nextRefresh = 60;
@@ -150,6 +151,8 @@
             if (vm.live) {
                 if (!isPresent() || (vm.mode !== '1h' && vm.mode !== '4h')) {
                     now();
+                } else if (unsubscribe === null) {
+                    loadAll();
                 }
             }
         }
@@ -179,15 +182,22 @@
 
         $scope.$on('$destroy', function () {
             $interval.cancel(vm.refresher);
+            stopFeed();
             clearTooltip();
         });
 
         function updateTime() {
-            if (vm.nextRefresh === 0) {
-                vm.nextRefresh = 60;
-                loadLast();
+            // new points are pushed by the server, this only tracks when the next one is due
+            if (vm.nextRefresh > 0) {
+                vm.nextRefresh--;
+            }
+        }
+
+        function stopFeed() {
+            if (unsubscribe !== null) {
+                unsubscribe();
+                unsubscribe = null;
             }
-            vm.nextRefresh--;
         }
 
         loadAll();
@@ -207,6 +217,14 @@
                     $cookies.put('userCountTo', toTs);
                     $cookies.put('userCountMode', vm.mode);
 
+                    stopFeed();
+                    if (vm.live) {
+                        // load the range once and then receive only the new points
+                        unsubscribe = CountFeed.subscribe('/topic/user-counts/' + vm.bot + '/' + vm.guild,
+                            vm.fromTime, onSuccess, onDelta);
+                        return;
+                    }
+
                     UserCount.points({
                         bot: botData.value,
                         guild: guildData.value,
@@ -298,52 +316,33 @@
             console.log('[' + chartName + '] Pushed ' + xy[1] + ' @ ' + xy[0] + ' to new series #' + series + ': ' + chartData[series].key);
         }
 
-        function loadLast() {
+        function onDelta(data) {
+            vm.nextRefresh = 60;
             if (!vm.live) {
                 console.log("Paused: not updating");
                 return;
             }
 
-            Setting.find({guild: 'userCount', key: 'defaultBot'}, onBotFound, onNotFound);
+            // for each series this new data includes
+            for (var newSeries in data) {
+                // filter out useless fields
+                if (data.hasOwnProperty(newSeries)) {
+                    var series = data[newSeries]; // series = { key: ..., values: [...] }
 
-            function onBotFound(botData) {
-                Setting.find({guild: 'userCount', key: 'defaultGuild'}, function (guildData) {
-                    vm.bot = botData.value;
-                    vm.guild = guildData.value;
-                    UserCount.last({
-                        bot: botData.value,
-                        guild: guildData.value
-                    }, onSuccess, onError);
-                }, onNotFound);
-            }
-
-            function onNotFound(error) {
-                AlertService.error('Settings userCount:defaultBot and/or userCount:defaultGuild not found, create them!');
-            }
-
-            function onSuccess(data) {
-                // for each series this new data includes
-                for (var newSeries in data) {
-                    // filter out useless fields
-                    if (data.hasOwnProperty(newSeries)) {
-                        var point = data[newSeries]; // point = { key: ..., values: [...] }
-
-                        if (point == null || point.values == null) {
-                            continue; // Discarding invalid or empty series
-                        }
+                    if (series == null || series.values == null) {
+                        continue; // Discarding invalid or empty series
+                    }
 
+                    for (var i = 0; i < series.values.length; i++) {
+                        var point = {key: series.key, values: [series.values[i]]};
                         console.log("New data from '" + point.key + "' series: (" + point.values[0][0] + ", " + point.values[0][1] + ")");
                         pushPoint($scope.data, point, 'UserCount');
                     }
                 }
-
-                console.log('Refreshing chart');
-                clearTooltip();
             }
 
-            function onError(error) {
-                AlertService.error(error.data.message);
-            }
+            console.log('Refreshing chart');
+            clearTooltip();
         }
 
         $scope.options = {
@@ -0,0 +1,128 @@
+(function() {
+    'use strict';
+    /* globals SockJS, Stomp */
+
+    angular
+        .module('sentryApp')
+        .factory('CountFeed', CountFeed);
+
+    CountFeed.$inject = ['$rootScope', '$window', '$cookies', '$http', '$q', '$timeout'];
+
+    function CountFeed ($rootScope, $window, $cookies, $http, $q, $timeout) {
+        var MAX_RECONNECT_DELAY = 30000;
+
+        var stompClient = null;
+        var connected = null;
+        var reconnect = null;
+        var attempts = 0;
+        var subscriptions = [];
+
+        var service = {
+            subscribe: subscribe
+        };
+
+        return service;
+
+        function connect () {
+            if (connected !== null) {
+                return connected.promise;
+            }
+            connected = $q.defer();
+            //building absolute path so that websocket doesnt fail when deploying with a context path
+            var loc = $window.location;
+            var url = '//' + loc.host + loc.pathname + 'websocket/tracker';
+            var socket = new SockJS(url);
+            var client = Stomp.over(socket);
+            client.debug = null;
+            stompClient = client;
+            var headers = {};
+            headers[$http.defaults.xsrfHeaderName] = $cookies.get($http.defaults.xsrfCookieName);
+            client.connect(headers, function () {
+                attempts = 0;
+                connected.resolve('success');
+                subscriptions.forEach(bind);
+            }, function () {
+                if (stompClient !== client) {
+                    return;
+                }
+                connected.reject('disconnected');
+                connected = null;
+                stompClient = null;
+                // the subscriptions died with the socket, so bind them again once reconnected
+                subscriptions.forEach(function (subscription) {
+                    subscription.subscriber = null;
+                });
+                scheduleReconnect();
+            });
+            return connected.promise;
+        }
+
+        function scheduleReconnect () {
+            if (reconnect !== null || subscriptions.length === 0) {
+                return;
+            }
+            var delay = Math.min(MAX_RECONNECT_DELAY, 1000 * Math.pow(2, attempts));
+            attempts++;
+            reconnect = $timeout(function () {
+                reconnect = null;
+                if (subscriptions.length > 0) {
+                    connect();
+                }
+            }, delay, false);
+        }
+
+        function bind (subscription) {
+            if (stompClient === null || subscription.subscriber !== null) {
+                return;
+            }
+            // every subscription starts with a snapshot, so a chart bound again catches up on what it missed
+            subscription.subscriber = stompClient.subscribe(subscription.destination, function (message) {
+                var update = angular.fromJson(message.body);
+                $rootScope.$applyAsync(function () {
+                    if (update.type === 'snapshot') {
+                        subscription.onSnapshot(update.series);
+                    } else {
+                        subscription.onDelta(update.series);
+                    }
+                });
+            }, {from: subscription.from.format('x')});
+        }
+
+        /**
+         * Subscribe to a count chart. The first message is a snapshot of the range starting at the given time,
+         * followed by a message with the new points after every sample. If the connection drops, it is opened again
+         * and the subscription renewed, starting over with a new snapshot.
+         *
+         * @param destination the topic, like /topic/player-counts or /topic/user-counts/{bot}/{guild}
+         * @param from        the start of the snapshot, as a moment
+         * @param onSnapshot  called with the series of the whole range
+         * @param onDelta     called with the series holding only the new points
+         * @returns a function that ends the subscription
+         */
+        function subscribe (destination, from, onSnapshot, onDelta) {
+            var subscription = {
+                destination: destination,
+                from: from,
+                onSnapshot: onSnapshot,
+                onDelta: onDelta,
+                subscriber: null
+            };
+            subscriptions.push(subscription);
+            connect().then(function () {
+                if (subscriptions.indexOf(subscription) >= 0) {
+                    bind(subscription);
+                }
+            });
+            return function () {
+                var index = subscriptions.indexOf(subscription);
+                if (index >= 0) {
+                    subscriptions.splice(index, 1);
+                }
+                if (subscription.subscriber !== null) {
+                    subscription.subscriber.unsubscribe();
+                    subscription.subscriber = null;
+                }
+            };
+        }
+    }
+})();
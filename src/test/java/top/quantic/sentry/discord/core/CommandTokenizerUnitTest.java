@@ -0,0 +1,98 @@
+package top.quantic.sentry.discord.core;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandTokenizerUnitTest {
+
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("[^ \\t\"']+|\"([^\"]*)\"|'([^']*)'");
+    private static final Pattern KEY_VALUE_PATTERN = Pattern.compile("^[\\w]+=[\\w]+$");
+
+    private static final List<String> INPUTS = Arrays.asList(
+        "",
+        "   ",
+        "status",
+        "status chi1 chi2",
+        "  leading and trailing  ",
+        "tabs\tare\tdelimiters",
+        "delete after \"1 hour ago\" last 10",
+        "like 'human' from beepboop",
+        "\"it's quoted\" 'say \"hi\"'",
+        "unmatched \"quote here",
+        "unmatched 'single quote",
+        "adjacent\"quoted\"tokens",
+        "empty \"\" quotes ''",
+        "new\nline stays in token",
+        "key=value other=thing --flag",
+        "not=a=pair name= =value",
+        "rcon chi1 say \"hello there\" everyone",
+        "'",
+        "\""
+    );
+
+    private static final Map<String, String> ALIASES = new HashMap<>();
+
+    static {
+        ALIASES.put("key", "--key");
+        ALIASES.put("last", "--last");
+        ALIASES.put("from", "--from");
+    }
+
+    @Test
+    public void splitMatchesRegexImplementation() {
+        for (String input : INPUTS) {
+            for (int limit : new int[]{0, 1, 2, 3}) {
+                for (boolean unquote : new boolean[]{true, false}) {
+                    for (Map<String, String> aliases : Arrays.asList(null, Collections.<String, String>emptyMap(), ALIASES)) {
+                        assertThat(CommandTokenizer.split(input, limit, unquote, aliases))
+                            .as("split(\"%s\", %d, %s, %s)", input, limit, unquote, aliases)
+                            .containsExactly(regexSplit(input, limit, unquote, aliases));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prefixTrieMatchesLongestPrefix() {
+        PrefixTrie trie = new PrefixTrie(Arrays.asList("!", "!!", ".s "));
+        assertThat(trie.match("!help")).isEqualTo("!");
+        assertThat(trie.match("!!help")).isEqualTo("!!");
+        assertThat(trie.match(".s status")).isEqualTo(".s ");
+        assertThat(trie.match(".status")).isNull();
+        assertThat(trie.match("")).isNull();
+    }
+
+    private static String[] regexSplit(String args, int limit, boolean unquote, Map<String, String> parameterAliases) {
+        Matcher matcher = QUOTE_PATTERN.matcher(args);
+        List<String> matches = new ArrayList<>();
+        int count = 1;
+        while (matcher.find()) {
+            if (limit > 0 && ++count > limit) {
+                matches.add(args.substring(matcher.start()));
+                break;
+            } else {
+                String group = matcher.group();
+                matches.add(unquote ? group.replaceAll("\"|'", "") : group);
+            }
+        }
+        if (parameterAliases != null && !parameterAliases.isEmpty()) {
+            return matches.stream().map(s -> {
+                if (KEY_VALUE_PATTERN.matcher(s).matches()
+                    && parameterAliases.keySet().stream().anyMatch(s::startsWith)) {
+                    return "--" + s;
+                } else {
+                    return parameterAliases.getOrDefault(s, s);
+                }
+            }).collect(Collectors.toList()).toArray(new String[matches.size()]);
+        } else {
+            return matches.toArray(new String[matches.size()]);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package top.quantic.sentry.domain;
+
+import org.junit.Test;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.lang.reflect.Method;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class GameServerUnitTest {
+
+    @Test
+    public void settersRecordTheDocumentFieldName() throws Exception {
+        int fields = 0;
+        for (java.lang.reflect.Field field : GameServer.class.getDeclaredFields()) {
+            Field mapping = field.getAnnotation(Field.class);
+            if (mapping == null) {
+                continue;
+            }
+            GameServer server = new GameServer();
+            field.setAccessible(true);
+            Object value = differentValue(field.getType(), field.get(server));
+            String setter = "set" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            Method method = GameServer.class.getMethod(setter, field.getType());
+
+            method.invoke(server, value);
+            assertThat(server.pollChanges()).as(setter).containsExactly(entry(mapping.value(), value));
+
+            // setting the same value again is not a change
+            method.invoke(server, value);
+            assertThat(server.hasChanges()).as(setter).isFalse();
+            fields++;
+        }
+        assertThat(fields).isEqualTo(21);
+    }
+
+    @Test
+    public void restoredChangesNeverOverwriteNewerOnes() {
+        GameServer server = new GameServer();
+        server.setPlayers(5);
+        server.setMap("cp_badlands");
+        Map<String, Object> polled = server.pollChanges();
+        assertThat(server.hasChanges()).isFalse();
+
+        server.setPlayers(7);
+        server.restoreChanges(polled);
+
+        assertThat(server.pollChanges()).containsExactly(entry("players", 7), entry("map", "cp_badlands"));
+        server.restoreChanges(Collections.emptyMap());
+        assertThat(server.hasChanges()).isFalse();
+    }
+
+    private static Object differentValue(Class<?> type, Object current) {
+        if (type == String.class) {
+            return "changed";
+        } else if (type == Integer.class) {
+            return current == null ? 1 : (Integer) current + 1;
+        } else if (type == Boolean.class) {
+            return current == null || !(Boolean) current;
+        } else if (type == ZonedDateTime.class) {
+            return ZonedDateTime.now();
+        }
+        throw new IllegalArgumentException("Unexpected field type " + type);
+    }
+}
@@ -0,0 +1,93 @@
+package top.quantic.sentry.repository;
+
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import top.quantic.sentry.domain.GameServer;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class GameServerRepositoryImplUnitTest {
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulk;
+    private GameServerRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GameServer.class)).thenReturn(bulk);
+        repository = new GameServerRepositoryImpl(mongoTemplate);
+    }
+
+    @Test
+    public void setsOnlyTheChangedFieldsWithMongoValues() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(bulk.execute()).thenReturn(result);
+        ZonedDateTime checked = ZonedDateTime.now().minusMinutes(1);
+        GameServer server = server("1");
+        server.setPlayers(12);
+        server.setStatusCheckDate(checked);
+        GameServer unchanged = server("2");
+        GameServer transientServer = new GameServer();
+        transientServer.setPlayers(3);
+
+        assertThat(repository.saveChanges(Arrays.asList(server, unchanged, transientServer))).isEqualTo(1);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, times(1)).updateOne(query.capture(), update.capture());
+        assertThat(query.getValue().getQueryObject().toMap()).containsExactly(entry("_id", "1"));
+        DBObject set = (DBObject) update.getValue().getUpdateObject().get("$set");
+        assertThat(set.keySet()).containsExactly("players", "status_check_date", "last_modified_date");
+        assertThat(set.get("players")).isEqualTo(12);
+        assertThat(set.get("status_check_date")).isEqualTo(Date.from(checked.toInstant()));
+        assertThat(set.get("last_modified_date")).isInstanceOf(Date.class);
+        assertThat(server.hasChanges()).isFalse();
+    }
+
+    @Test
+    public void requeuesChangesWhenTheBulkWriteFails() {
+        when(bulk.execute()).thenThrow(new IllegalStateException("Write failed"));
+        GameServer server = server("1");
+        server.setPlayers(12);
+        server.setMap("koth_product");
+
+        try {
+            repository.saveChanges(Collections.singletonList(server));
+            fail("The bulk write should have failed");
+        } catch (IllegalStateException e) {
+            assertThat(server.pollChanges()).containsExactly(entry("players", 12), entry("map", "koth_product"));
+        }
+    }
+
+    @Test
+    public void skipsTheWriteWhenNothingChanged() {
+        assertThat(repository.saveChanges(Collections.singletonList(server("1")))).isZero();
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), any(Class.class));
+    }
+
+    private static GameServer server(String id) {
+        GameServer server = new GameServer();
+        server.setId(id);
+        server.pollChanges();
+        return server;
+    }
+}
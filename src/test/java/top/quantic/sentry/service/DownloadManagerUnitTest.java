@@ -0,0 +1,276 @@
+package top.quantic.sentry.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.service.DownloadManager.State;
+import top.quantic.sentry.service.util.CommandRunner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs download jobs over fake processes that print scripted <code>lftp</code> output, selected by the address given
+ * as the last argument of each command.
+ */
+public class DownloadManagerUnitTest {
+
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+    private final AtomicInteger alive = new AtomicInteger();
+    private final AtomicInteger peakAlive = new AtomicInteger();
+    private DownloadManager manager;
+
+    @Before
+    public void setUp() {
+        SentryProperties properties = new SentryProperties();
+        properties.getGameAdmin().setUsername("sentry");
+        properties.getGameAdmin().setPassword("hunter2");
+        properties.getGameAdmin().setDownloadConcurrency(2);
+        properties.getGameAdmin().setDownloadTimeout(1000);
+        properties.getGameAdmin().setDownloadProgressInterval(100);
+        CommandRunner runner = (command, directory) -> {
+            Script script = scripts.get(command.get(command.size() - 1));
+            if (script == null) {
+                throw new IOException("No such server");
+            }
+            return new FakeProcess(script);
+        };
+        manager = new DownloadManager(runner, properties);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.destroy();
+    }
+
+    private Map<String, List<String>> commands(String... addresses) {
+        Map<String, List<String>> commands = new LinkedHashMap<>();
+        for (String address : addresses) {
+            commands.put("server-" + address, Arrays.asList("lftp", "-e", "mirror", address));
+        }
+        return commands;
+    }
+
+    @Test
+    public void mirrorsServersInParallelWithinThePoolBound() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            scripts.put("10.0.0." + i, new Script(0, 50, "Transferring file `a" + i + ".log'", "Transferring file `b" + i + ".log'"));
+        }
+        List<String> progress = new CopyOnWriteArrayList<>();
+        DownloadManager.Job job = manager.submit("job1", Paths.get("."),
+            commands("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4", "10.0.0.5"),
+            update -> progress.add(summarize(update)));
+
+        job.getFuture().get(10, TimeUnit.SECONDS);
+        assertThat(peakAlive.get()).isEqualTo(2);
+        assertThat(job.getFailed()).isZero();
+        assertThat(job.getTargets()).extracting(DownloadManager.Target::getState).containsOnly(State.DONE);
+        assertThat(job.getTargets().get(2).getFiles()).containsExactly("a3.log", "b3.log");
+        // progress is published while running, and once more at the end
+        assertThat(progress.size()).isGreaterThan(1);
+        assertThat(progress.get(progress.size() - 1)).isEqualTo("DONE:2,DONE:2,DONE:2,DONE:2,DONE:2");
+        assertThat(manager.getJob("job1")).isEmpty();
+    }
+
+    @Test
+    public void killsProcessesThatTakeTooLong() throws Exception {
+        scripts.put("10.0.0.1", new Script(0, 0, "Transferring file `a.dem'").hang());
+        scripts.put("10.0.0.2", new Script(0, 0, "Transferring file `b.dem'"));
+
+        DownloadManager.Job job = manager.submit("job2", Paths.get("."), commands("10.0.0.1", "10.0.0.2"), update -> {
+        });
+        job.getFuture().get(10, TimeUnit.SECONDS);
+        assertThat(job.getTargets()).extracting(DownloadManager.Target::getState)
+            .containsExactly(State.TIMED_OUT, State.DONE);
+        assertThat(job.getTargets().get(0).getFiles()).containsExactly("a.dem");
+        assertThat(job.getFailed()).isEqualTo(1);
+        assertThat(alive.get()).isZero();
+    }
+
+    @Test
+    public void cancelsRunningAndQueuedTargets() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            scripts.put("10.0.0." + i, new Script(0, 0).hang());
+        }
+        DownloadManager.Job job = manager.submit("job3", Paths.get("."),
+            commands("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4"), update -> {
+            });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (alive.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(manager.cancel("job3")).isTrue();
+        job.getFuture().get(5, TimeUnit.SECONDS);
+        assertThat(job.isCancelled()).isTrue();
+        assertThat(job.getTargets()).extracting(DownloadManager.Target::getState).containsOnly(State.CANCELLED);
+        assertThat(alive.get()).isZero();
+        assertThat(manager.cancel("job3")).isFalse();
+    }
+
+    @Test
+    public void reportsFailuresWithoutLeakingCredentials() throws Exception {
+        scripts.put("10.0.0.1", new Script(1, 0).error("mirror: Login failed: 530 sentry/hunter2 rejected"));
+
+        DownloadManager.Job job = manager.submit("job4", Paths.get("."), commands("10.0.0.1", "10.0.0.9"), update -> {
+        });
+        job.getFuture().get(5, TimeUnit.SECONDS);
+        DownloadManager.Target failed = job.getTargets().get(0);
+        assertThat(failed.getState()).isEqualTo(State.FAILED);
+        assertThat(failed.getExitCode()).isEqualTo(1);
+        assertThat(failed.getError()).isEqualTo("mirror: Login failed: 530 ****/**** rejected");
+        // a process that could not be started fails on its own
+        assertThat(job.getTargets().get(1).getState()).isEqualTo(State.FAILED);
+    }
+
+    private static String summarize(DownloadManager.Job job) {
+        return job.getTargets().stream()
+            .map(target -> target.getState() + ":" + target.getFiles().size())
+            .collect(Collectors.joining(","));
+    }
+
+    private static class Script {
+        private final int exitCode;
+        private final long lineDelay;
+        private final List<String> lines;
+        private String error;
+        private boolean hang = false;
+
+        Script(int exitCode, long lineDelay, String... lines) {
+            this.exitCode = exitCode;
+            this.lineDelay = lineDelay;
+            this.lines = Arrays.asList(lines);
+        }
+
+        Script hang() {
+            this.hang = true;
+            return this;
+        }
+
+        Script error(String error) {
+            this.error = error;
+            return this;
+        }
+    }
+
+    /**
+     * Prints the lines of a script from its own thread, then exits unless the script hangs, in which case it waits to
+     * be destroyed.
+     */
+    private class FakeProcess extends Process {
+        private final PipedInputStream stdout = new PipedInputStream();
+        private final PipedInputStream stderr = new PipedInputStream();
+        private final PipedOutputStream stdoutWriter;
+        private final PipedOutputStream stderrWriter;
+        private final CountDownLatch exited = new CountDownLatch(1);
+        private volatile int exitValue;
+
+        FakeProcess(Script script) throws IOException {
+            stdoutWriter = new PipedOutputStream(stdout);
+            stderrWriter = new PipedOutputStream(stderr);
+            peakAlive.accumulateAndGet(alive.incrementAndGet(), Math::max);
+            Thread thread = new Thread(() -> play(script), "fake-process");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void play(Script script) {
+            try {
+                if (script.error != null) {
+                    stderrWriter.write((script.error + "\n").getBytes(StandardCharsets.UTF_8));
+                    stderrWriter.flush();
+                }
+                for (String line : script.lines) {
+                    Thread.sleep(script.lineDelay);
+                    stdoutWriter.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                    stdoutWriter.flush();
+                }
+                if (script.hang) {
+                    exited.await();
+                } else {
+                    // a real process only exits after flushing its output
+                    Thread.sleep(script.lineDelay);
+                    exit(script.exitCode);
+                }
+            } catch (IOException | InterruptedException e) {
+                exit(1);
+            }
+        }
+
+        private synchronized void exit(int code) {
+            if (exited.getCount() > 0) {
+                exitValue = code;
+                alive.decrementAndGet();
+                closeQuietly(stdoutWriter);
+                closeQuietly(stderrWriter);
+                exited.countDown();
+            }
+        }
+
+        private void closeQuietly(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return stdout;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return stderr;
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            exited.await();
+            return exitValue;
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            return exited.await(timeout, unit);
+        }
+
+        @Override
+        public int exitValue() {
+            if (exited.getCount() > 0) {
+                throw new IllegalThreadStateException("Process has not exited");
+            }
+            return exitValue;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return exited.getCount() > 0;
+        }
+
+        @Override
+        public void destroy() {
+            exit(137);
+        }
+
+        @Override
+        public Process destroyForcibly() {
+            destroy();
+            return this;
+        }
+    }
+}
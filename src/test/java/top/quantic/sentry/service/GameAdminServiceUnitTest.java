@@ -0,0 +1,331 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.service.util.RequestScheduler;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the panel scraper against recorded panel pages served from a local HTTP server.
+ */
+public class GameAdminServiceUnitTest {
+
+    private PanelServer panel;
+    private GameAdminService service;
+
+    @Before
+    public void setUp() throws Exception {
+        panel = new PanelServer();
+        service = newService(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.destroy();
+        panel.stop();
+    }
+
+    private GameAdminService newService(int sessions) throws Exception {
+        SentryProperties properties = new SentryProperties();
+        SentryProperties.GameAdmin gameAdmin = properties.getGameAdmin();
+        gameAdmin.setUsername("sentry");
+        gameAdmin.setPassword("hunter2");
+        gameAdmin.setUrl(panel.getUrl());
+        gameAdmin.setPermitsPerSecond(1000);
+        gameAdmin.setSessions(sessions);
+        GameAdminService gameAdminService = new GameAdminService(properties,
+            new TaggedMetricRegistry(new MetricRegistry()));
+        gameAdminService.afterPropertiesSet();
+        return gameAdminService;
+    }
+
+    @Test
+    public void readsPanelPagesAfterLoggingIn() throws Exception {
+        Map<String, Map<String, String>> details = service.getServerDetails();
+        assertThat(details).containsOnlyKeys("192.0.2.10:27015", "192.0.2.20:27015");
+        assertThat(details.get("192.0.2.10:27015"))
+            .containsEntry("name", "UGC TF2 Chicago 1")
+            .containsEntry("SUBID", "1001");
+
+        assertThat(service.getServerConfig("1001"))
+            .containsEntry("rcon_password", "rcon-secret")
+            .containsEntry("sv_password", "sv-secret")
+            .doesNotContainKey("error");
+        assertThat(service.getServerMods("1001"))
+            .containsEntry("latest-update", "2017-03-01 12:00:00")
+            .containsEntry("last-mod-by", "ugc");
+        assertThat(panel.logins.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void logsInAgainWhenSessionExpires() throws Exception {
+        GameAdminService single = newService(1);
+        try {
+            single.getServerConfig("1001");
+            assertThat(panel.pageRequests.get()).isEqualTo(1);
+
+            panel.expireSessions();
+            assertThat(single.restart("1001")).isEqualTo(GameAdminService.Result.RESTARTED);
+            assertThat(panel.logins.get()).isEqualTo(2);
+
+            // restarting drops the cached configuration of the server
+            single.getServerConfig("1001");
+            assertThat(panel.pageRequests.get()).isEqualTo(2);
+        } finally {
+            single.destroy();
+        }
+    }
+
+    @Test
+    public void refreshesConfigurationPastTheCacheAndSkipsCachingErrors() throws Exception {
+        service.getServerConfig("1001");
+        service.getServerConfig("1001");
+        assertThat(panel.pageRequests.get()).isEqualTo(1);
+
+        // a rejected RCON password must not be read back from the cache
+        service.refreshServerConfig("1001", RequestScheduler.Priority.INTERACTIVE);
+        assertThat(panel.pageRequests.get()).isEqualTo(2);
+
+        panel.configPage = "server_offline.html";
+        assertThat(service.refreshServerConfig("1001", RequestScheduler.Priority.INTERACTIVE))
+            .containsEntry("error", "SERVER_OFFLINE");
+        panel.configPage = "server_configuration.html";
+        assertThat(service.getServerConfig("1001")).doesNotContainKey("error");
+        assertThat(panel.pageRequests.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void runsRequestsConcurrentlyOverIndependentSessions() throws Exception {
+        panel.barrier = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<String, String>> first = executor.submit(() -> service.getServerConfig("1001"));
+            Future<Map<String, String>> second = executor.submit(() -> service.getServerConfig("1002"));
+            assertThat(first.get(10, TimeUnit.SECONDS)).containsEntry("rcon_password", "rcon-secret");
+            assertThat(second.get(10, TimeUnit.SECONDS)).containsEntry("rcon_password", "rcon-secret");
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(panel.barrierReached).isTrue();
+        assertThat(panel.logins.get()).isEqualTo(2);
+        assertThat(panel.sessionsUsed).hasSize(2);
+    }
+
+    @Test
+    public void mergesConcurrentRequestsForTheSamePage() throws Exception {
+        GameAdminService single = newService(1);
+        panel.gate = new CountDownLatch(1);
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                Future<?>[] futures = new Future<?>[4];
+                for (int i = 0; i < futures.length; i++) {
+                    futures[i] = executor.submit(() -> single.getServerConfig("1001"));
+                }
+                // hold the first request until the others had time to join it
+                Thread.sleep(500);
+                panel.gate.countDown();
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(panel.pageRequests.get()).isEqualTo(1);
+        } finally {
+            single.destroy();
+        }
+    }
+
+    @Test
+    public void sessionLifetimeEstimateRecoversFromEarlyLogouts() {
+        long estimate = GameAdminService.shortenLifetime(0, 3600000);
+        assertThat(estimate).isEqualTo(3600000);
+        // an early logout only moves the estimate halfway, and never below the floor
+        estimate = GameAdminService.shortenLifetime(estimate, 5000);
+        assertThat(estimate).isEqualTo((3600000 + 600000) / 2);
+        assertThat(GameAdminService.shortenLifetime(600000, 5000)).isEqualTo(600000);
+        // sessions renewed without being logged out grow it back
+        for (int i = 0; i < 5; i++) {
+            estimate = GameAdminService.extendLifetime(estimate);
+        }
+        assertThat(estimate).isGreaterThan(3600000);
+        assertThat(GameAdminService.extendLifetime(0)).isZero();
+    }
+
+    @Test
+    public void poolSizeIsBoundedByTheRateLimit() {
+        assertThat(GameAdminService.getPoolSize(4, 0.4)).isEqualTo(2);
+        assertThat(GameAdminService.getPoolSize(3, 10)).isEqualTo(3);
+        assertThat(GameAdminService.getPoolSize(0, 10)).isEqualTo(1);
+    }
+
+    /**
+     * Serves the recorded pages under src/test/resources/panel, tracking sessions the way the panel does: a cookie
+     * is handed out with the login form and becomes valid once the credentials are posted along with it.
+     */
+    private static class PanelServer {
+
+        private final HttpServer server;
+        private final AtomicInteger nextSession = new AtomicInteger();
+        private final Set<String> validSessions = ConcurrentHashMap.newKeySet();
+        private final Set<String> sessionsUsed = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger logins = new AtomicInteger();
+        private final AtomicInteger pageRequests = new AtomicInteger();
+        private volatile CountDownLatch barrier;
+        private volatile CountDownLatch gate;
+        private volatile boolean barrierReached;
+        private volatile String configPage = "server_configuration.html";
+
+        PanelServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", this::handle);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void expireSessions() {
+            validSessions.clear();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String session = getSession(exchange);
+            if ("/".equals(path)) {
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    Map<String, String> form = parse(read(exchange.getRequestBody()));
+                    if (session != null && "sentry".equals(form.get("username"))
+                        && "hunter2".equals(form.get("password"))) {
+                        validSessions.add(session);
+                        logins.incrementAndGet();
+                        respond(exchange, "home.html");
+                    } else {
+                        respond(exchange, "login.html");
+                    }
+                } else {
+                    exchange.getResponseHeaders().add("Set-Cookie", "PHPSESSID=" + nextSession.incrementAndGet());
+                    respond(exchange, "login.html");
+                }
+                return;
+            }
+            if (session == null || !validSessions.contains(session)) {
+                respond(exchange, "login.html");
+                return;
+            }
+            sessionsUsed.add(session);
+            Map<String, String> query = parse(exchange.getRequestURI().getRawQuery());
+            if ("/home".equals(path)) {
+                respond(exchange, "home.html");
+            } else if ("restart".equals(query.get("function"))) {
+                respond(exchange, "restart.html");
+            } else if ("server_configuration".equals(query.get("view"))) {
+                pageRequests.incrementAndGet();
+                awaitBarrier();
+                respond(exchange, configPage);
+            } else if ("server_mods".equals(query.get("view"))) {
+                pageRequests.incrementAndGet();
+                respond(exchange, "server_mods.html");
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        }
+
+        private void awaitBarrier() {
+            CountDownLatch held = gate;
+            if (held != null) {
+                try {
+                    held.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            CountDownLatch latch = barrier;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    if (latch.await(5, TimeUnit.SECONDS)) {
+                        barrierReached = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private String getSession(HttpExchange exchange) {
+            String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+            if (cookie == null) {
+                return null;
+            }
+            for (String part : cookie.split(";\\s*")) {
+                if (part.startsWith("PHPSESSID=")) {
+                    return part.substring("PHPSESSID=".length());
+                }
+            }
+            return null;
+        }
+
+        private void respond(HttpExchange exchange, String page) throws IOException {
+            byte[] body;
+            try (InputStream input = getClass().getResourceAsStream("/panel/" + page)) {
+                body = read(input).getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+
+        private static String read(InputStream input) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                builder.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+            return builder.toString();
+        }
+
+        private static Map<String, String> parse(String encoded) throws IOException {
+            Map<String, String> map = new HashMap<>();
+            if (encoded == null || encoded.isEmpty()) {
+                return map;
+            }
+            for (String pair : encoded.split("&")) {
+                String[] parts = pair.split("=", 2);
+                map.put(URLDecoder.decode(parts[0], "UTF-8"),
+                    parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "");
+            }
+            return map;
+        }
+    }
+}
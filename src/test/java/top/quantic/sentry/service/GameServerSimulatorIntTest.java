@@ -0,0 +1,170 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ibasco.agql.protocols.valve.source.query.pojos.SourcePlayer;
+import com.ibasco.agql.protocols.valve.source.query.pojos.SourceServer;
+import com.ibasco.agql.protocols.valve.steam.webapi.SteamWebApiClient;
+import org.junit.*;
+import org.springframework.context.ApplicationEventPublisher;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.domain.GameServer;
+import top.quantic.sentry.repository.GameServerRepository;
+import top.quantic.sentry.service.mapper.GameServerMapper;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+import top.quantic.sentry.simulator.SourceServerSimulator;
+import top.quantic.sentry.simulator.VirtualServer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the query, sweep and RCON paths against virtual servers hosted by a {@link SourceServerSimulator}, with the
+ * repository and the admin panel mocked out.
+ */
+public class GameServerSimulatorIntTest {
+
+    private static final long SWEEP_TIMEOUT = 1500;
+
+    // shared across tests since closing the query clients takes a few seconds
+    private static SourceServerSimulator simulator;
+    private static GameQueryService gameQueryService;
+
+    private GameServerService gameServerService;
+    private List<GameServer> servers;
+
+    @BeforeClass
+    public static void startSimulator() throws Exception {
+        simulator = new SourceServerSimulator();
+        gameQueryService = new GameQueryService(new SteamWebApiClient(), mock(SettingService.class), null);
+    }
+
+    @AfterClass
+    public static void stopSimulator() throws Exception {
+        gameQueryService.destroy();
+        simulator.close();
+    }
+
+    @Before
+    public void setUp() {
+        servers = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (gameServerService != null) {
+            gameServerService.destroy();
+        }
+    }
+
+    private GameServerService startService() throws Exception {
+        GameServerRepository repository = mock(GameServerRepository.class);
+        when(repository.findAll()).thenReturn(servers);
+        SentryProperties properties = new SentryProperties();
+        properties.getGameQuery().setSweepTimeout(SWEEP_TIMEOUT);
+        // polls are dispatched explicitly by the tests
+        properties.getGameQuery().setPollTick(TimeUnit.HOURS.toMillis(1));
+        gameServerService = new GameServerService(repository, mock(GameServerMapper.class),
+            mock(GameAdminService.class), gameQueryService, mock(ApplicationEventPublisher.class),
+            new TaggedMetricRegistry(new MetricRegistry()), mock(SettingService.class), properties);
+        gameServerService.afterPropertiesSet();
+        return gameServerService;
+    }
+
+    @Test
+    public void queriesInfoPlayersAndRules() throws Exception {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("mp_timelimit", "30");
+        rules.put("sv_tags", "ugc,6v6");
+        VirtualServer virtual = simulator.add("Chicago 1")
+            .map("koth_product_rc8")
+            .players(5)
+            .maxPlayers(24)
+            .tvPort(27020)
+            .version("3811296")
+            .rules(rules)
+            .latency(20, 10);
+
+        SourceServer info = gameQueryService.getServerInfo(virtual.getAddress()).get(5, TimeUnit.SECONDS);
+        assertThat(info.getName()).isEqualTo("Chicago 1");
+        assertThat(info.getMapName()).isEqualTo("koth_product_rc8");
+        assertThat(info.getNumOfPlayers()).isEqualTo((byte) 5);
+        assertThat(info.getMaxPlayers()).isEqualTo((byte) 24);
+        assertThat(info.getTvPort()).isEqualTo((short) 27020);
+        assertThat(info.getGameVersion()).isEqualTo("3811296");
+
+        List<SourcePlayer> players = gameQueryService.getPlayersInfo(virtual.getAddress()).get(5, TimeUnit.SECONDS);
+        assertThat(players.stream().map(SourcePlayer::getName).collect(Collectors.toList()))
+            .containsExactly("Player 1", "Player 2", "Player 3", "Player 4", "Player 5");
+
+        assertThat(gameQueryService.getServerRules(virtual.getAddress()).get(5, TimeUnit.SECONDS))
+            .containsEntry("mp_timelimit", "30")
+            .containsEntry("sv_tags", "ugc,6v6");
+        assertThat(virtual.getChallenges()).isGreaterThanOrEqualTo(1);
+        assertThat(virtual.getPlayerRequests()).isEqualTo(1);
+        assertThat(virtual.getRulesRequests()).isEqualTo(1);
+    }
+
+    @Test
+    public void followsRotatingChallenges() throws Exception {
+        VirtualServer virtual = simulator.add("Dallas 1")
+            .players(3)
+            .challenge(VirtualServer.Challenge.ROTATING);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(gameQueryService.getPlayersInfo(virtual.getAddress()).get(5, TimeUnit.SECONDS)).hasSize(3);
+        }
+        assertThat(virtual.getChallenges()).isEqualTo(3);
+    }
+
+    @Test
+    public void sweepsHundredsOfServersWithinTheTimeout() throws Exception {
+        List<VirtualServer> virtuals = simulator.addAll("Chicago", 200);
+        for (int i = 0; i < virtuals.size(); i++) {
+            VirtualServer virtual = virtuals.get(i).players(i % 25).latency(5, 45);
+            if (i % 50 == 0) {
+                // unreachable servers must not hold back the rest of the sweep
+                virtual.loss(1.0);
+            }
+            servers.add(virtual.toGameServer(String.valueOf(1000 + i)));
+        }
+        GameServerService service = startService();
+
+        List<GameServer> refreshed = service.refreshStatus(servers).get(30, TimeUnit.SECONDS);
+        assertThat(refreshed).hasSize(200);
+        for (int i = 0; i < virtuals.size(); i++) {
+            GameServer server = refreshed.get(i);
+            if (i % 50 == 0) {
+                assertThat(server.getMap()).isEmpty();
+                assertThat(virtuals.get(i).getDropped()).isGreaterThanOrEqualTo(1);
+            } else {
+                assertThat(server.getMap()).isEqualTo("cp_badlands");
+                assertThat(server.getPlayers()).isEqualTo(i % 25);
+                assertThat(server.getPing()).isLessThan((int) SWEEP_TIMEOUT);
+            }
+        }
+    }
+
+    @Test
+    public void executesRconCommands() throws Exception {
+        VirtualServer virtual = simulator.add("Miami 1")
+            .rconPassword("rcon-secret")
+            .players(2)
+            .latency(10, 0)
+            .command("sm", line -> "[SM] " + line.substring(3) + "\n");
+        servers.add(virtual.toGameServer("1000"));
+        GameServerService service = startService();
+
+        assertThat(service.rcon(servers.get(0), "status"))
+            .contains("hostname: Miami 1")
+            .contains("\"Player 2\"");
+        assertThat(service.rcon(servers.get(0), "sm version")).isEqualTo("[SM] version\n");
+        // the session is reused for later commands
+        assertThat(virtual.getAuthentications()).isEqualTo(1);
+        assertThat(virtual.getExecuted()).containsExactly("status", "sm version");
+    }
+}
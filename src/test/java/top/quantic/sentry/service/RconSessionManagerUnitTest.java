@@ -0,0 +1,103 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ibasco.agql.protocols.valve.source.query.SourceRconAuthStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.domain.GameServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class RconSessionManagerUnitTest {
+
+    private GameQueryService gameQueryService;
+    private GameServer server;
+    private RconSessionManager rconSessionManager;
+
+    @Before
+    public void setUp() {
+        gameQueryService = mock(GameQueryService.class);
+        when(gameQueryService.isAuthenticated(any(InetSocketAddress.class))).thenReturn(true);
+        when(gameQueryService.authenticate(any(InetSocketAddress.class), anyString()))
+            .thenReturn(CompletableFuture.completedFuture(new SourceRconAuthStatus(true, null)));
+        server = new GameServer();
+        server.setName("Chicago 1");
+        server.setAddress("10.0.0.1:27015");
+    }
+
+    @After
+    public void tearDown() {
+        if (rconSessionManager != null) {
+            rconSessionManager.shutdown();
+        }
+    }
+
+    @Test
+    public void drainsCommandsCompletingSynchronouslyWithoutRecursing() throws Exception {
+        rconSessionManager = newSessionManager(60000);
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        when(gameQueryService.execute(any(InetSocketAddress.class), anyString()))
+            .thenReturn(blocker, CompletableFuture.completedFuture("ok"));
+        CompletableFuture<String> first = rconSessionManager.execute(server, "status");
+        verify(gameQueryService, timeout(5000)).execute(any(InetSocketAddress.class), anyString());
+        List<CompletableFuture<String>> queued = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            queued.add(rconSessionManager.execute(server, "status"));
+        }
+        assertThat(rconSessionManager.getQueuedCount()).isEqualTo(5_000);
+
+        blocker.complete("ok");
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        for (CompletableFuture<String> future : queued) {
+            assertThat(future.getNow(null)).isEqualTo("ok");
+        }
+        assertThat(rconSessionManager.getQueuedCount()).isZero();
+    }
+
+    @Test
+    public void authenticatesAgainAfterACommandTimesOut() throws Exception {
+        rconSessionManager = newSessionManager(100);
+        when(gameQueryService.execute(any(InetSocketAddress.class), anyString()))
+            .thenReturn(new CompletableFuture<>(), CompletableFuture.completedFuture("ok"));
+
+        try {
+            rconSessionManager.execute(server, "status").get(5, TimeUnit.SECONDS);
+            fail("The command should have timed out");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+        assertThat(rconSessionManager.execute(server, "status").get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+
+        verify(gameQueryService, times(2)).authenticate(any(InetSocketAddress.class), anyString());
+        assertThat(rconSessionManager.getSessionCount()).isEqualTo(1);
+    }
+
+    private RconSessionManager newSessionManager(long commandTimeoutMillis) {
+        return new RconSessionManager(gameQueryService, new MetricRegistry(),
+            new RconSessionManager.CredentialProvider() {
+                @Override
+                public String getPassword(GameServer server, boolean refresh) {
+                    return "secret";
+                }
+
+                @Override
+                public boolean isExpired(GameServer server) {
+                    return false;
+                }
+            }, 600000, commandTimeoutMillis);
+    }
+}
@@ -0,0 +1,108 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.domain.enumeration.RollupResolution;
+import top.quantic.sentry.repository.RetentionOperations;
+import top.quantic.sentry.service.util.TaggedMetricRegistry;
+
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class RetentionServiceUnitTest {
+
+    private SentryProperties sentryProperties;
+    private RetentionService retentionService;
+
+    @Before
+    public void setUp() {
+        sentryProperties = new SentryProperties();
+        sentryProperties.getRetention().setBatchSize(10);
+        retentionService = new RetentionService(sentryProperties, null, null, null,
+            new TaggedMetricRegistry(new MetricRegistry())) {
+            @Override
+            void awaitQuietPeriod() {
+            }
+        };
+    }
+
+    @Test
+    public void rerunAfterAnInterruptedDeleteKeepsTheRollups() throws Exception {
+        SentryProperties.Retention.Policy policy = sentryProperties.getRetention().getPlayerCount();
+        policy.setRaw(30);
+        policy.setTenMinutes(0);
+        policy.setHourly(0);
+        policy.setDaily(0);
+        InMemorySeries series = new InMemorySeries();
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int hours = 0; hours < 40 * 24; hours++) {
+            series.add(now.minusHours(hours));
+        }
+        ZonedDateTime cutoff = RollupResolution.DAILY.truncate(now.minusDays(30));
+        int retained = series.samples.tailSet(cutoff, true).size();
+        Map<RollupResolution, Long> rollups = new EnumMap<>(series.rollups);
+
+        series.failOnBatch = 3;
+        try {
+            retentionService.enforce(series, policy);
+            fail("The delete should have been interrupted");
+        } catch (IllegalStateException e) {
+            assertThat(series.samples.first()).isBefore(cutoff);
+        }
+        series.failOnBatch = -1;
+        retentionService.enforce(series, policy);
+
+        assertThat(series.samples.first()).isAfterOrEqualTo(cutoff);
+        assertThat(series.samples).hasSize(retained);
+        assertThat(series.rollups).isEqualTo(rollups);
+    }
+
+    private static class InMemorySeries implements RetentionOperations {
+
+        private final NavigableSet<ZonedDateTime> samples = new TreeSet<>();
+        private final Map<RollupResolution, Long> rollups = new EnumMap<>(RollupResolution.class);
+        private int batches = 0;
+        private int failOnBatch = -1;
+
+        private void add(ZonedDateTime timestamp) {
+            samples.add(timestamp);
+            for (RollupResolution resolution : RollupResolution.values()) {
+                rollups.merge(resolution, 1L, Long::sum);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "player_count";
+        }
+
+        @Override
+        public int deleteSamplesBefore(ZonedDateTime before, int limit) {
+            if (++batches == failOnBatch) {
+                throw new IllegalStateException("Connection reset");
+            }
+            int deleted = 0;
+            Iterator<ZonedDateTime> iterator = samples.headSet(before, false).iterator();
+            while (iterator.hasNext() && deleted < limit) {
+                iterator.next();
+                iterator.remove();
+                deleted++;
+            }
+            return deleted;
+        }
+
+        @Override
+        public int deleteRollupsBefore(RollupResolution resolution, ZonedDateTime before, int limit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
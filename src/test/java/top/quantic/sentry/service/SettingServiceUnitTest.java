@@ -0,0 +1,49 @@
+package top.quantic.sentry.service;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.config.SentryProperties;
+import top.quantic.sentry.domain.Setting;
+import top.quantic.sentry.repository.SettingRepository;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class SettingServiceUnitTest {
+
+    private SettingRepository settingRepository;
+    private SettingService settingService;
+
+    @Before
+    public void setUp() {
+        settingRepository = mock(SettingRepository.class);
+        settingService = new SettingService(settingRepository, null, new SentryProperties(), new MetricRegistry());
+        Setting setting = new Setting();
+        setting.setId("1");
+        setting.setGuild("guild");
+        setting.setKey("lastFrom:sub");
+        setting.setValue("first");
+        when(settingRepository.findByGuildAndKey("guild", "lastFrom:sub")).thenReturn(Collections.singletonList(setting));
+    }
+
+    @Test
+    public void unsavedChangesAreNotVisibleToOtherReaders() {
+        Setting mostRecent = settingService.findByGuildAndKey("guild", "lastFrom:sub").get(0);
+        when(settingRepository.save(mostRecent)).thenThrow(new IllegalStateException("Write failed"));
+        try {
+            settingService.updateValue(mostRecent, "second");
+        } catch (IllegalStateException e) {
+            // the save failed, so the cached value must be the stored one
+        }
+
+        assertThat(mostRecent.getValue()).isEqualTo("second");
+        assertThat(settingService.findOneByGuildAndKey("guild", "lastFrom:sub"))
+            .hasValueSatisfying(setting -> assertThat(setting.getValue()).isEqualTo("first"));
+        assertThat(settingService.findMostRecentByGuildAndKey("guild", "lastFrom:sub").get())
+            .isNotSameAs(mostRecent);
+        verify(settingRepository, times(1)).findByGuildAndKey("guild", "lastFrom:sub");
+    }
+}
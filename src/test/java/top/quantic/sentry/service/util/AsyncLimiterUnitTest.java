@@ -0,0 +1,73 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncLimiterUnitTest {
+
+    private AsyncLimiter limiter;
+
+    @After
+    public void tearDown() {
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
+    @Test
+    public void keepsOperationsWithinTheBound() throws Exception {
+        limiter = new AsyncLimiter("test", 2, 5000);
+        List<CompletableFuture<Integer>> sources = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> source = new CompletableFuture<>();
+            sources.add(source);
+            results.add(limiter.submit(() -> source));
+        }
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.getQueued()).isEqualTo(3);
+
+        for (int i = 0; i < sources.size(); i++) {
+            sources.get(i).complete(i);
+            assertThat(limiter.getInFlight()).isLessThanOrEqualTo(2);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(limiter.resetPeakInFlight()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void drainsOperationsCompletingSynchronouslyWithoutRecursing() {
+        limiter = new AsyncLimiter("test", 1, 60000);
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        limiter.submit(() -> blocker);
+        AtomicInteger started = new AtomicInteger();
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            results.add(limiter.submit(() -> {
+                started.incrementAndGet();
+                CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("unavailable"));
+                return failed;
+            }));
+        }
+        assertThat(limiter.getQueued()).isEqualTo(100_000);
+
+        blocker.complete(null);
+
+        assertThat(started.get()).isEqualTo(100_000);
+        assertThat(results).allMatch(CompletableFuture::isCompletedExceptionally);
+        assertThat(limiter.getQueued()).isZero();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+}
@@ -0,0 +1,74 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FanOutUnitTest {
+
+    private FanOut fanOut;
+
+    @After
+    public void tearDown() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    public void runsWithinTheBoundAndKeepsTargetOrder() throws Exception {
+        fanOut = new FanOut("test", 3, 5000);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Map<Integer, String> reported = new ConcurrentHashMap<>();
+        List<Integer> targets = Arrays.asList(50, 10, 40, 20, 30, 0, 60, 5);
+
+        List<String> results = fanOut.run(targets, delay -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return "t" + delay;
+        }, (delay, error) -> "error", reported::put).get(5, TimeUnit.SECONDS);
+
+        assertThat(peak.get()).isEqualTo(3);
+        assertThat(results).containsExactly("t50", "t10", "t40", "t20", "t30", "t0", "t60", "t5");
+        assertThat(reported).hasSize(targets.size()).containsEntry(0, "t50").containsEntry(7, "t5");
+    }
+
+    @Test
+    public void mapsFailuresAndTimeoutsWithoutHoldingBackOthers() throws Exception {
+        fanOut = new FanOut("test", 1, 200);
+        CountDownLatch stuck = new CountDownLatch(1);
+
+        List<String> results = fanOut.run(Arrays.asList("stuck", "fail", "ok"), target -> {
+            if ("stuck".equals(target)) {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if ("fail".equals(target)) {
+                throw new IllegalStateException("broken");
+            }
+            return target;
+        }, (target, error) -> error instanceof TimeoutException ? "timeout" : error.getMessage(), (index, result) -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        stuck.countDown();
+        assertThat(results).containsExactly("timeout", "broken", "ok");
+    }
+}
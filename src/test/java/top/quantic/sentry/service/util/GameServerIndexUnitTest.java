@@ -0,0 +1,95 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import top.quantic.sentry.domain.GameServer;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameServerIndexUnitTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    private GameServerIndex index;
+    private GameServer chicago;
+    private GameServer dallas;
+    private GameServer amsterdam;
+
+    @Before
+    public void setUp() {
+        chicago = server("1", "Chicago 1", "10.0.0.1:27015", now.plusDays(3));
+        dallas = server("2", "Dallas 2", "10.0.0.2:27015", now.minusDays(1));
+        amsterdam = server("3", "Amsterdam 3", "10.1.0.3:27015", now.plusHours(2));
+        index = new GameServerIndex();
+        index.load(Arrays.asList(dallas, chicago, amsterdam));
+    }
+
+    @Test
+    public void looksUpServersByEachAttribute() {
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.get("2")).contains(dallas);
+        assertThat(index.findAll()).containsExactly(amsterdam, chicago, dallas);
+        assertThat(index.findByAddress("10.0.0.1:27015")).contains(chicago);
+        assertThat(index.findByAddressStartingWith("10.0.")).containsExactly(chicago, dallas);
+        assertThat(index.findByShortName("chi1")).containsExactly(chicago);
+        assertThat(index.findByShortRegion("ams")).containsExactly(amsterdam);
+        assertThat(index.findClaimed(now)).containsExactly(amsterdam, chicago);
+        assertThat(index.findUnclaimed(now)).containsExactly(dallas);
+        assertThat(index.findByIds(Arrays.asList("3", "2", "missing"))).containsExactly(amsterdam, dallas);
+    }
+
+    @Test
+    public void searchesByStateNameShortNameAndAddress() {
+        assertThat(index.search(Arrays.asList("unclaimed"))).containsExactly(dallas);
+        assertThat(index.search(Arrays.asList("claimed"))).containsExactly(amsterdam, chicago);
+        assertThat(index.search(Arrays.asList("dam"))).containsExactly(amsterdam);
+        assertThat(index.search(Arrays.asList("chi1", "10.0.0.2"))).containsExactly(chicago, dallas);
+    }
+
+    @Test
+    public void refilesServersModifiedInPlace() {
+        chicago.setName("Dallas 5");
+        chicago.setAddress("10.0.0.5:27015");
+        chicago.setExpirationDate(now.minusHours(1));
+        index.put(chicago);
+
+        assertThat(index.findByAddress("10.0.0.1:27015")).isEmpty();
+        assertThat(index.findByAddress("10.0.0.5:27015")).contains(chicago);
+        assertThat(index.findByShortName("chi1")).isEmpty();
+        assertThat(index.findByShortRegion("dal")).containsExactly(dallas, chicago);
+        assertThat(index.findUnclaimed(now)).containsExactly(dallas, chicago);
+        assertThat(index.search(Arrays.asList("chicago"))).isEmpty();
+    }
+
+    @Test
+    public void removesEveryEntryOfAServer() {
+        index.remove("1");
+        index.remove("missing");
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.get("1")).isEmpty();
+        assertThat(index.findByAddress("10.0.0.1:27015")).isEmpty();
+        assertThat(index.findByShortRegion("chi")).isEmpty();
+        assertThat(index.findClaimed(now)).containsExactly(amsterdam);
+    }
+
+    @Test
+    public void ignoresServersWithoutId() {
+        GameServer transientServer = server(null, "Chicago 9", "10.0.0.9:27015", now);
+        assertThat(index.put(transientServer)).isSameAs(transientServer);
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.findByAddress("10.0.0.9:27015")).isEmpty();
+    }
+
+    private static GameServer server(String id, String name, String address, ZonedDateTime expirationDate) {
+        GameServer server = new GameServer();
+        server.setId(id);
+        server.setName(name);
+        server.setAddress(address);
+        server.setExpirationDate(expirationDate);
+        return server;
+    }
+}
@@ -0,0 +1,77 @@
+package top.quantic.sentry.service.util;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricNameFilterUnitTest {
+
+    private static final String ALPHABET = "abc.";
+
+    @Test
+    public void containsMatchesNaiveImplementation() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> includes = randomStrings(random, random.nextInt(4), 4);
+            List<String> excludes = randomStrings(random, random.nextInt(4), 4);
+            MetricNameFilter filter = new MetricNameFilter(includes, excludes, false);
+            for (String name : randomStrings(random, 50, 12)) {
+                boolean expected = excludes.stream().noneMatch(name::contains) &&
+                    (includes.isEmpty() || includes.stream().anyMatch(name::contains));
+                assertThat(filter.matches(name, null))
+                    .as("includes %s excludes %s name %s", includes, excludes, name)
+                    .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void overlappingExpressionsAreFound() {
+        MetricNameFilter filter = new MetricNameFilter(asList("player_count", "ayer_c", "discord.ws"),
+            asList("ws.users[bot:test"), false);
+        assertThat(filter.matches("UGC.GameServer.player_count[region:EU]", null)).isTrue();
+        assertThat(filter.matches("UGC.GameServer.playe_count", null)).isFalse();
+        assertThat(filter.matches("discord.ws.users[bot:main,guild:1]", null)).isTrue();
+        assertThat(filter.matches("discord.ws.users[bot:test,guild:1]", null)).isFalse();
+    }
+
+    @Test
+    public void regexMatchesWholeName() {
+        MetricNameFilter filter = new MetricNameFilter(asList("UGC\\..*", "jvm\\.memory\\..*"), emptyList(), true);
+        assertThat(filter.matches("UGC.GameServer.player_count", null)).isTrue();
+        assertThat(filter.matches("sentry.UGC.player_count", null)).isFalse();
+        assertThat(filter.matches("jvm.memory.heap.used", null)).isTrue();
+    }
+
+    @Test
+    public void decisionsAreDroppedWithTheirMetrics() {
+        MetricRegistry registry = new MetricRegistry();
+        MetricNameFilter filter = new MetricNameFilter(emptyList(), asList("excluded"), false);
+        registry.addListener(filter);
+        registry.counter("kept");
+        registry.counter("excluded.counter");
+        assertThat(filter.matches("kept", registry.counter("kept"))).isTrue();
+        assertThat(filter.matches("excluded.counter", registry.counter("excluded.counter"))).isFalse();
+        assertThat(filter.getCacheSize()).isEqualTo(2);
+        registry.remove("kept");
+        assertThat(filter.getCacheSize()).isEqualTo(1);
+    }
+
+    private static List<String> randomStrings(Random random, int count, int maxLength) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = 1 + random.nextInt(maxLength);
+            for (int j = 0; j < length; j++) {
+                builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            result.add(builder.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PollSchedulerUnitTest {
+
+    @Test
+    public void takesDueItemsMostOverdueFirst() {
+        PollScheduler<String> scheduler = new PollScheduler<>(100);
+        scheduler.schedule("idle", 0, 600000);
+        scheduler.schedule("busy", 0, 60000);
+        scheduler.schedule("flapping", 0, 30000);
+
+        assertThat(scheduler.takeDue(10000)).isEmpty();
+        assertThat(scheduler.takeDue(60000)).containsExactly("flapping", "busy");
+        assertThat(scheduler.getInterval("busy")).isEqualTo(60000);
+        assertThat(scheduler.contains("busy")).isTrue();
+
+        // rescheduling replaces the previous poll time
+        scheduler.schedule("idle", 60000, 1000);
+        assertThat(scheduler.takeDue(61000)).containsExactly("idle");
+        assertThat(scheduler.takeDue(600000)).isEmpty();
+    }
+
+    @Test
+    public void keepsWithinTheBudgetPerMinute() {
+        PollScheduler<Integer> scheduler = new PollScheduler<>(3);
+        for (int i = 0; i < 5; i++) {
+            scheduler.schedule(i, 0, i);
+        }
+
+        assertThat(scheduler.takeDue(10)).containsExactly(0, 1, 2);
+        assertThat(scheduler.getOverdue(10)).isEqualTo(2);
+        assertThat(scheduler.takeDue(30000)).isEmpty();
+        // the items left out go first once the window moves on
+        assertThat(scheduler.takeDue(60010)).containsExactly(3, 4);
+    }
+
+    @Test
+    public void schedulesEveryKnownItemNow() {
+        PollScheduler<String> scheduler = new PollScheduler<>(100);
+        scheduler.schedule("a", 0, 600000);
+        scheduler.schedule("b", 0, 300000);
+        scheduler.remove("b");
+
+        scheduler.scheduleAllNow(1000);
+        assertThat(scheduler.takeDue(1000)).containsExactly("a");
+        assertThat(scheduler.getInterval("a")).isEqualTo(600000);
+        assertThat(scheduler.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void neverHandsOutAnItemWhileItIsBeingPolled() {
+        PollScheduler<String> scheduler = new PollScheduler<>(100);
+        scheduler.schedule("polling", 0, 0);
+        scheduler.schedule("restarted", 0, 600000);
+        scheduler.schedule("waiting", 0, 600000);
+        assertThat(scheduler.takeDue(0)).containsExactly("polling");
+
+        scheduler.scheduleAllNow(1000);
+        scheduler.expedite("polling", 1000, 5000);
+        scheduler.expedite("restarted", 1000, 5000);
+        assertThat(scheduler.takeDue(1000)).containsExactly("waiting");
+        assertThat(scheduler.isExpedited("polling")).isTrue();
+        assertThat(scheduler.isExpedited("restarted")).isFalse();
+        assertThat(scheduler.takeDue(6000)).containsExactly("restarted");
+
+        // the poll is done, so the item can be handed out again and is no longer expedited
+        scheduler.schedule("polling", 7000, 5000);
+        assertThat(scheduler.isExpedited("polling")).isFalse();
+        assertThat(scheduler.takeDue(11999)).isEmpty();
+        assertThat(scheduler.takeDue(12000)).containsExactly("polling");
+    }
+}
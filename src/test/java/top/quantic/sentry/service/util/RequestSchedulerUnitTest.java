@@ -0,0 +1,82 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+import top.quantic.sentry.service.util.RequestScheduler.Priority;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestSchedulerUnitTest {
+
+    private final RequestScheduler scheduler = new RequestScheduler("test");
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void runsMoreUrgentRequestsFirstAndInOrderWithinPriority() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        scheduler.submit(Priority.BACKGROUND, "blocker", () -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        scheduler.submit(Priority.BACKGROUND, "bg-1", () -> order.add("bg-1"));
+        scheduler.submit(Priority.UPDATE, "update", () -> order.add("update"));
+        scheduler.submit(Priority.INTERACTIVE, "restart-1", () -> order.add("restart-1"));
+        RequestScheduler.Ticket<Boolean> last = scheduler.submit(Priority.INTERACTIVE, "restart-2",
+            () -> order.add("restart-2"));
+
+        assertThat(last.getPosition()).isEqualTo(2);
+        assertThat(scheduler.getAhead(Priority.INTERACTIVE)).isEqualTo(3);
+        assertThat(scheduler.getAhead(Priority.BACKGROUND)).isEqualTo(5);
+
+        release.countDown();
+        scheduler.submit(Priority.BACKGROUND, "bg-2", () -> order.add("bg-2")).getFuture().get(5, TimeUnit.SECONDS);
+        assertThat(order).containsExactly("restart-1", "restart-2", "update", "bg-1", "bg-2");
+        assertThat(last.getPosition()).isEqualTo(-1);
+    }
+
+    @Test
+    public void mergesRequestsWithTheSameKeyAndPromotesThem() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        scheduler.submit(Priority.BACKGROUND, "blocker", () -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        scheduler.submit(Priority.BACKGROUND, "other", () -> 0);
+        RequestScheduler.Ticket<Integer> first = scheduler.submit(Priority.BACKGROUND, "config:1",
+            calls::incrementAndGet);
+        assertThat(first.getPosition()).isEqualTo(2);
+
+        RequestScheduler.Ticket<Integer> second = scheduler.submit(Priority.INTERACTIVE, "config:1",
+            calls::incrementAndGet);
+        assertThat(second).isSameAs(first);
+        assertThat(first.getPosition()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.getFuture().get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(calls.get()).isEqualTo(1);
+
+        // once done, a new request with the same key runs again
+        assertThat(scheduler.submit(Priority.BACKGROUND, "config:1", calls::incrementAndGet)
+            .getFuture().get(5, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+}
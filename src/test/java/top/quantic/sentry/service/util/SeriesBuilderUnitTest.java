@@ -0,0 +1,214 @@
+package top.quantic.sentry.service.util;
+
+import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import top.quantic.sentry.domain.CountRollup;
+import top.quantic.sentry.web.rest.vm.Series;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.google.common.collect.Multimaps.flatteningToMultimap;
+import static com.google.common.collect.Multimaps.toMultimap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SeriesBuilderUnitTest {
+
+    private static final List<String> ZONES = Arrays.asList(
+        "UTC", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe", "Europe/London");
+
+    private static final int[] RESOLUTIONS = {1, 2, 5, 10, 45, 60, 90, 120, 300, 1440};
+
+    private static final Function<Sample, String> seriesMapper = Sample::getSeries;
+    private static final Function<Sample, ZonedDateTime> timeMapper = Sample::getTimestamp;
+    private static final Function<Sample, Long> valueMapper = Sample::getValue;
+
+    @Test
+    public void aggregationMatchesMultimapImplementation() {
+        Random random = new Random(42);
+        for (String zone : ZONES) {
+            // spans the March daylight saving transitions of the zones above
+            ZonedDateTime start = ZonedDateTime.of(2017, 3, 8, 21, 17, 0, 0, ZoneId.of(zone));
+            List<Sample> samples = generate(random, start, 60 * 24 * 10);
+            List<Sample> shuffled = new ArrayList<>(samples);
+            Collections.shuffle(shuffled, random);
+            for (int resolution : RESOLUTIONS) {
+                List<Series> expected = legacyAggregate(samples, resolution);
+                assertSameSeries(ChartUtil.getAggregatedSeriesFromData(samples.stream(), resolution,
+                    seriesMapper, timeMapper, valueMapper), expected, zone + " ordered " + resolution);
+                assertSameSeries(ChartUtil.getAggregatedSeriesFromData(shuffled.stream(), resolution,
+                    seriesMapper, timeMapper, valueMapper), expected, zone + " shuffled " + resolution);
+            }
+        }
+    }
+
+    @Test
+    public void seriesKeepFirstValueOfEachSecond() {
+        Random random = new Random(7);
+        ZonedDateTime start = ZonedDateTime.of(2017, 5, 1, 0, 0, 30, 0, ZoneId.of("UTC"));
+        List<Sample> samples = generate(random, start, 300);
+        // duplicate some timestamps with different values
+        samples.add(new Sample("EU", start.plusMinutes(3), 999L));
+        samples.add(new Sample("US", start.plusMinutes(5), 999L));
+        assertSameSeries(ChartUtil.getSeriesFromData(samples, seriesMapper, timeMapper, valueMapper),
+            legacySeries(samples), "raw");
+    }
+
+    @Test
+    public void minMaxFirstLastAggregations() {
+        ZonedDateTime start = ZonedDateTime.of(2017, 5, 1, 10, 0, 0, 0, ZoneId.of("UTC"));
+        long[] values = {5, 2, 9, 4};
+        Map<SeriesBuilder.Aggregation, Long> expected = new EnumMap<>(SeriesBuilder.Aggregation.class);
+        expected.put(SeriesBuilder.Aggregation.AVERAGE, 5L);
+        expected.put(SeriesBuilder.Aggregation.MIN, 2L);
+        expected.put(SeriesBuilder.Aggregation.MAX, 9L);
+        expected.put(SeriesBuilder.Aggregation.FIRST, 5L);
+        expected.put(SeriesBuilder.Aggregation.LAST, 4L);
+        for (SeriesBuilder.Aggregation aggregation : SeriesBuilder.Aggregation.values()) {
+            SeriesBuilder builder = new SeriesBuilder(10, aggregation);
+            for (int i = 0; i < values.length; i++) {
+                builder.add("EU", start.plusMinutes(i), values[i]);
+            }
+            List<Series> result = builder.build();
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).getValues())
+                .as(aggregation.name())
+                .containsExactly(Arrays.asList(start.toEpochSecond() * 1000, expected.get(aggregation)));
+        }
+    }
+
+    @Test
+    public void rollupsAverageLikeTheirSamples() {
+        Random random = new Random(11);
+        ZonedDateTime start = ZonedDateTime.of(2017, 5, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+        List<Sample> samples = generate(random, start, 60 * 24 * 3);
+        // a region that stops reporting leaves hourly buckets with fewer samples
+        samples.removeIf(sample -> "AU".equals(sample.getSeries()) && sample.getTimestamp().getMinute() >= 20);
+        Map<List<Object>, CountRollup> hourly = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            ZonedDateTime bucket = sample.getTimestamp().truncatedTo(ChronoUnit.HOURS);
+            CountRollup rollup = hourly.computeIfAbsent(Arrays.asList(sample.getSeries(), bucket), k -> {
+                CountRollup created = new CountRollup();
+                created.setSeries(sample.getSeries());
+                created.setTimestamp(bucket);
+                created.setSum(0L);
+                created.setCount(0L);
+                return created;
+            });
+            rollup.setSum(rollup.getSum() + sample.getValue());
+            rollup.setCount(rollup.getCount() + 1);
+        }
+        for (int resolution : new int[]{60, 120, 1440}) {
+            assertSameSeries(ChartUtil.getAggregatedSeriesFromRollups(hourly.values().stream(), resolution),
+                ChartUtil.getAggregatedSeriesFromData(samples.stream(), resolution, seriesMapper, timeMapper, valueMapper),
+                "rollups " + resolution);
+        }
+    }
+
+    private static List<Sample> generate(Random random, ZonedDateTime start, int minutes) {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < minutes; i++) {
+            ZonedDateTime timestamp = start.plusMinutes(i);
+            for (String series : new String[]{"EU", "US", "AU"}) {
+                // leave gaps so that missing points are filled
+                if (random.nextInt(10) > 0) {
+                    samples.add(new Sample(series, timestamp, (long) random.nextInt(500)));
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static void assertSameSeries(List<Series> actual, List<Series> expected, String description) {
+        assertThat(actual.stream().map(Series::getKey).collect(Collectors.toList()))
+            .as(description)
+            .containsExactlyElementsOf(expected.stream().map(Series::getKey).collect(Collectors.toList()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getValues())
+                .as(description + " " + expected.get(i).getKey())
+                .isEqualTo(expected.get(i).getValues());
+        }
+    }
+
+    // reference implementation, as ChartUtil did it before SeriesBuilder
+
+    private static List<Series> legacyAggregate(List<Sample> samples, int resolution) {
+        List<Sample> aggregated = samples.stream()
+            .map(count -> {
+                ZonedDateTime key = timeMapper.apply(count);
+                int dayResolution = resolution / 1440;
+                int hourResolution = resolution / 60;
+                if (dayResolution > 0) {
+                    int yearModulo = dayResolution % 365;
+                    key = key.withMinute(0)
+                        .withHour(0)
+                        .withDayOfYear(((key.getDayOfYear() - 1) / yearModulo * yearModulo) + 1);
+                } else if (hourResolution > 0) {
+                    key = key.withMinute(0)
+                        .withHour(key.getHour() / hourResolution * hourResolution);
+                } else {
+                    key = key.withMinute(key.getMinute() / resolution * resolution);
+                }
+                return Pair.of(Pair.of(key, seriesMapper.apply(count)), new Adder(valueMapper.apply(count)));
+            })
+            .collect(Collectors.toMap(Pair::getKey, Pair::getValue, Adder::sum))
+            .entrySet().stream()
+            .map(entry -> new Sample(entry.getKey().getRight(), entry.getKey().getLeft(), entry.getValue().average()))
+            .collect(Collectors.toList());
+        return legacySeries(aggregated);
+    }
+
+    private static List<Series> legacySeries(List<Sample> counts) {
+        Multimap<String, Point> byRegion = counts.stream()
+            .collect(toMultimap(
+                seriesMapper,
+                count -> new Point(timeMapper.apply(count).toEpochSecond() * 1000, valueMapper.apply(count)),
+                MultimapBuilder.treeKeys().linkedHashSetValues()::build));
+        Set<Long> timestamps = counts.stream()
+            .map(count -> timeMapper.apply(count).toEpochSecond())
+            .collect(Collectors.toSet());
+        Multimap<String, Point> defaults = byRegion.keySet().stream()
+            .collect(flatteningToMultimap(
+                region -> region,
+                region -> timestamps.stream().map(timestamp -> new Point(timestamp * 1000, 0)),
+                MultimapBuilder.treeKeys().hashSetValues()::build));
+        byRegion.putAll(defaults);
+        return byRegion.asMap().entrySet().stream()
+            .map(entry -> new Series(entry.getKey()).values(
+                entry.getValue().stream()
+                    .map(pair -> Arrays.asList(pair.getX(), pair.getY()))
+                    .sorted(Comparator.comparingLong(o -> o.get(0).longValue()))
+                    .collect(Collectors.toList())))
+            .collect(Collectors.toList());
+    }
+
+    private static class Sample {
+        private final String series;
+        private final ZonedDateTime timestamp;
+        private final Long value;
+
+        private Sample(String series, ZonedDateTime timestamp, Long value) {
+            this.series = series;
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        private String getSeries() {
+            return series;
+        }
+
+        private ZonedDateTime getTimestamp() {
+            return timestamp;
+        }
+
+        private Long getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package top.quantic.sentry.service.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaggedMetricRegistryUnitTest {
+
+    @Test
+    public void keysKeepLegacyNamesAndIgnoreTagOrder() {
+        MetricKey key = MetricKey.of("UGC.GameServer.player_count", "region", "EU", "game", "tf2");
+        assertThat(key.toString()).isEqualTo("UGC.GameServer.player_count[region:EU,game:tf2]");
+        assertThat(MetricKey.of("UGC.GameServer.player_count", "game", "tf2", "region", "EU")).isSameAs(key);
+        assertThat(MetricKey.of("discord.ws.users", "status", "online", "guild", "1", "bot", "main").toString())
+            .isEqualTo("discord.ws.users[bot:main,guild:1,status:online]");
+        assertThat(MetricKey.of("sentry.retention.batch").toString()).isEqualTo("sentry.retention.batch");
+    }
+
+    @Test
+    public void metricsAreIndexedByNameAndTag() {
+        MetricRegistry registry = new MetricRegistry();
+        TaggedMetricRegistry tagged = new TaggedMetricRegistry(registry);
+        tagged.register(MetricKey.of("UGC.GameServer.player_count", "region", "EU", "game", "tf2"), (Gauge<Integer>) () -> 5);
+        tagged.register(MetricKey.of("UGC.GameServer.player_count", "region", "US", "game", "tf2"), (Gauge<Integer>) () -> 7);
+        tagged.register(MetricKey.of("UGC.GameServer.status", "region", "EU", "game", "tf2"), (Gauge<Integer>) () -> 100);
+        tagged.histogram(MetricKey.of("discord.ws.users", "bot", "main", "guild", "1", "status", "online")).update(3);
+
+        assertThat(registry.getGauges()).containsKey("UGC.GameServer.player_count[region:EU,game:tf2]");
+        assertThat(tagged.getKeys("UGC.GameServer.player_count")).hasSize(2);
+        assertThat(tagged.getMetrics("UGC.GameServer.player_count", "region", "EU", Gauge.class))
+            .containsOnlyKeys(MetricKey.of("UGC.GameServer.player_count", "region", "EU", "game", "tf2"));
+        assertThat(tagged.getMetrics("discord.ws.users", Histogram.class).keySet())
+            .extracting(key -> key.getTag("status"))
+            .containsExactly("online");
+    }
+
+    @Test
+    public void removalsFromTheRegistryAreUnindexed() {
+        MetricRegistry registry = new MetricRegistry();
+        TaggedMetricRegistry tagged = new TaggedMetricRegistry(registry);
+        MetricKey first = MetricKey.of("steam.profile.status", "steamId", "1");
+        MetricKey second = MetricKey.of("steam.profile.status", "steamId", "2");
+        tagged.register(first, (Gauge<Integer>) () -> 1);
+        tagged.register(second, (Gauge<Integer>) () -> 1);
+
+        registry.remove(first.toString());
+        assertThat(tagged.getKeys("steam.profile.status")).containsOnly(second);
+        assertThat(tagged.getKeys("steam.profile.status", "steamId", "1")).isEmpty();
+
+        tagged.removeMatching("steam.profile.status", key -> "2".equals(key.getTag("steamId")));
+        assertThat(tagged.getKeys("steam.profile.status")).isEmpty();
+        assertThat(registry.getGauges()).isEmpty();
+    }
+
+    @Test
+    public void removedKeysAreNoLongerInterned() {
+        TaggedMetricRegistry tagged = new TaggedMetricRegistry(new MetricRegistry());
+        MetricKey key = MetricKey.of("discord.command.latency", "guild", "42", "command", "ping");
+        tagged.timer(key);
+        assertThat(MetricKey.of("discord.command.latency", "command", "ping", "guild", "42")).isSameAs(key);
+
+        tagged.removeMatching("discord.command.latency", k -> "42".equals(k.getTag("guild")));
+        MetricKey recreated = MetricKey.of("discord.command.latency", "command", "ping", "guild", "42");
+        assertThat(recreated).isNotSameAs(key).isEqualTo(key);
+        assertThat(recreated.toString()).isEqualTo(key.toString()).isEqualTo("discord.command.latency[guild:42,command:ping]");
+
+        // a key only looked up to be removed is released as well
+        int interned = MetricKey.getInternedCount();
+        tagged.remove(recreated);
+        assertThat(MetricKey.getInternedCount()).isEqualTo(interned - 1);
+    }
+
+    @Test
+    public void replacedGaugesKeepTheirNameWhateverTheTagOrder() {
+        MetricRegistry registry = new MetricRegistry();
+        TaggedMetricRegistry tagged = new TaggedMetricRegistry(registry);
+        tagged.register(MetricKey.of("UGC.GameServer.player_count", "region", "EU", "game", "tf2"), (Gauge<Integer>) () -> 5);
+        tagged.register(MetricKey.of("UGC.GameServer.player_count", "region", "EU", "game", "tf2"), (Gauge<Integer>) () -> 6);
+        tagged.register(MetricKey.of("UGC.GameServer.player_count", "game", "tf2", "region", "EU"), (Gauge<Integer>) () -> 7);
+
+        assertThat(registry.getGauges()).containsOnlyKeys("UGC.GameServer.player_count[region:EU,game:tf2]");
+        assertThat(registry.getGauges().get("UGC.GameServer.player_count[region:EU,game:tf2]").getValue()).isEqualTo(7);
+        assertThat(tagged.remove(MetricKey.of("UGC.GameServer.player_count", "game", "tf2", "region", "EU"))).isTrue();
+        assertThat(registry.getGauges()).isEmpty();
+    }
+}
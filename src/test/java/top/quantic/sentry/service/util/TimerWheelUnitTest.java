@@ -0,0 +1,84 @@
+package top.quantic.sentry.service.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelUnitTest {
+
+    private static final long START = 1_000_000_000L;
+
+    @Test
+    public void firesTimersOnTheirTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(1000, 4, START);
+        wheel.schedule("soon", START + 2500);
+        wheel.schedule("later", START + 2 * 3600 * 1000);
+
+        assertThat(wheel.advance(START + 2999)).isEmpty();
+        assertThat(wheel.advance(START + 3000)).containsExactly("soon");
+        assertThat(wheel.advance(START + 2 * 3600 * 1000 - 1)).isEmpty();
+        assertThat(wheel.advance(START + 2 * 3600 * 1000)).containsExactly("later");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void replacesAndCancelsTimers() {
+        TimerWheel<String> wheel = new TimerWheel<>(1000, 4, START);
+        wheel.schedule("moved", START + 5000);
+        wheel.schedule("cancelled", START + 5000);
+        wheel.schedule("moved", START + 600_000);
+        assertThat(wheel.cancel("cancelled")).isTrue();
+        assertThat(wheel.cancel("cancelled")).isFalse();
+        assertThat(wheel.getDeadline("moved")).isEqualTo(START + 600_000);
+
+        assertThat(wheel.advance(START + 10_000)).isEmpty();
+        assertThat(wheel.advance(START + 600_000)).containsExactly("moved");
+    }
+
+    @Test
+    public void firesPastDeadlinesOnTheNextTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(1000, 4, START);
+        wheel.schedule("late", START - 60_000);
+        assertThat(wheel.advance(START + 1000)).containsExactly("late");
+    }
+
+    @Test
+    public void holdsTimersBeyondTheRangeOfTheWheel() {
+        // two levels of 64 slots cover 4096 ticks
+        TimerWheel<String> wheel = new TimerWheel<>(1000, 2, START);
+        long deadline = START + 10_000 * 1000L;
+        wheel.schedule("far", deadline);
+        assertThat(wheel.advance(deadline - 1000)).isEmpty();
+        assertThat(wheel.advance(deadline)).containsExactly("far");
+    }
+
+    @Test
+    public void neverFiresEarlyOrLate() {
+        TimerWheel<Integer> wheel = new TimerWheel<>(100, 3, START);
+        Random random = new Random(42);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = START + (long) (random.nextDouble() * 30_000_000);
+            deadlines.put(i, deadline);
+            wheel.schedule(i, deadline);
+        }
+        Map<Integer, Long> pending = new HashMap<>(deadlines);
+        List<Integer> fired = new ArrayList<>();
+        for (long now = START; now <= START + 30_100_000; now += 100 + random.nextInt(5000)) {
+            for (Integer key : wheel.advance(now)) {
+                assertThat(pending.remove(key)).isLessThanOrEqualTo(now);
+                fired.add(key);
+            }
+            // anything still pending is due after the current tick
+            long tickStart = now - now % 100;
+            assertThat(pending.values().stream().allMatch(deadline -> deadline > tickStart)).isTrue();
+        }
+        assertThat(fired).hasSize(2000).doesNotHaveDuplicates();
+    }
+}
@@ -0,0 +1,517 @@
+package top.quantic.sentry.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hosts any number of virtual Source servers on the loopback interface, answering A2S_INFO, A2S_PLAYER and A2S_RULES
+ * over UDP and RCON over TCP on the same port, like a real server does. A single selector thread serves every socket,
+ * so hundreds of servers are cheap, while scripted latency is applied by delaying the responses on a scheduler.
+ * <p>
+ * Responses always fit in a single packet; split A2S responses are not simulated.
+ */
+public class SourceServerSimulator implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SourceServerSimulator.class);
+
+    private static final int MAX_PACKET_SIZE = 1400;
+    private static final int MAX_RCON_BODY = 4096;
+
+    private static final byte A2S_INFO = 0x54;
+    private static final byte A2S_PLAYER = 0x55;
+    private static final byte A2S_RULES = 0x56;
+    private static final byte A2S_GETCHALLENGE = 0x57;
+    private static final byte S2A_INFO = 0x49;
+    private static final byte S2A_PLAYER = 0x44;
+    private static final byte S2A_RULES = 0x45;
+    private static final byte S2C_CHALLENGE = 0x41;
+
+    private static final int SERVERDATA_RESPONSE_VALUE = 0;
+    private static final int SERVERDATA_AUTH_RESPONSE = 2;
+    private static final int SERVERDATA_EXECCOMMAND = 2;
+    private static final int SERVERDATA_AUTH = 3;
+
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final ScheduledExecutorService delayer;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final List<VirtualServer> servers = new CopyOnWriteArrayList<>();
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private final Map<InetAddress, Integer> rotatingChallenges = new ConcurrentHashMap<>();
+    private final int secret = new Random().nextInt();
+    private final ByteBuffer datagram = ByteBuffer.allocate(MAX_PACKET_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private volatile boolean closed = false;
+
+    public SourceServerSimulator() throws IOException {
+        this.selector = Selector.open();
+        this.delayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simulator-delayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::select, "simulator-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Start a new virtual server, listening on a free loopback port for both queries and RCON.
+     *
+     * @param name the host name of the server
+     * @return the scripted state of the new server
+     * @throws IOException if no port could be bound
+     */
+    public VirtualServer add(String name) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        for (int attempt = 0; attempt < 10; attempt++) {
+            DatagramChannel udp = DatagramChannel.open();
+            udp.bind(new InetSocketAddress(loopback, 0));
+            InetSocketAddress address = (InetSocketAddress) udp.getLocalAddress();
+            ServerSocketChannel tcp = ServerSocketChannel.open();
+            try {
+                tcp.bind(address);
+            } catch (BindException e) {
+                // the port is taken for TCP, try another one
+                udp.close();
+                tcp.close();
+                continue;
+            }
+            udp.configureBlocking(false);
+            tcp.configureBlocking(false);
+            VirtualServer server = new VirtualServer(name, address);
+            channels.add(udp);
+            channels.add(tcp);
+            servers.add(server);
+            CompletableFuture<Void> registered = new CompletableFuture<>();
+            pending.add(() -> {
+                try {
+                    udp.register(selector, SelectionKey.OP_READ, server);
+                    tcp.register(selector, SelectionKey.OP_ACCEPT, server);
+                    registered.complete(null);
+                } catch (ClosedChannelException e) {
+                    registered.completeExceptionally(e);
+                }
+            });
+            selector.wakeup();
+            try {
+                registered.get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while registering " + server, e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("Could not register " + server, e);
+            }
+            return server;
+        }
+        throw new IOException("Could not find a free port for both UDP and TCP");
+    }
+
+    /**
+     * Start a number of virtual servers named with a common prefix.
+     *
+     * @param prefix the prefix of the host names
+     * @param count  the number of servers to start
+     * @return the new servers
+     * @throws IOException if a port could not be bound
+     */
+    public List<VirtualServer> addAll(String prefix, int count) throws IOException {
+        List<VirtualServer> added = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            added.add(add(prefix + " " + i));
+        }
+        return added;
+    }
+
+    public List<VirtualServer> getServers() {
+        return Collections.unmodifiableList(servers);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delayer.shutdownNow();
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void select() {
+        while (!closed) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = pending.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handle(key);
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (!closed) {
+                    log.warn("Simulator selector failed", e);
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept(key);
+            } else if (key.channel() instanceof DatagramChannel) {
+                receiveQuery((DatagramChannel) key.channel(), (VirtualServer) key.attachment());
+            } else if (key.isReadable()) {
+                receiveRcon(key);
+            }
+        } catch (IOException e) {
+            log.debug("Closing simulator channel after error: {}", e.toString());
+            closeQuietly(key.channel());
+            key.cancel();
+        }
+    }
+
+    // A2S queries
+
+    private void receiveQuery(DatagramChannel channel, VirtualServer server) throws IOException {
+        SocketAddress client;
+        while ((client = channel.receive(clear(datagram))) != null) {
+            datagram.flip();
+            if (datagram.remaining() < 5 || datagram.getInt() != -1) {
+                continue;
+            }
+            if (server.getLossRate() > 0 && ThreadLocalRandom.current().nextDouble() < server.getLossRate()) {
+                server.countDropped();
+                continue;
+            }
+            ByteBuffer response = respondToQuery(server, client, datagram.get(), datagram);
+            if (response != null) {
+                SocketAddress target = client;
+                later(server, () -> {
+                    try {
+                        channel.send(response, target);
+                    } catch (IOException e) {
+                        log.debug("Could not send query response to {}: {}", target, e.toString());
+                    }
+                });
+            }
+        }
+    }
+
+    private ByteBuffer respondToQuery(VirtualServer server, SocketAddress client, byte header, ByteBuffer request) {
+        switch (header) {
+            case A2S_INFO:
+                server.countInfo();
+                return info(server);
+            case A2S_PLAYER:
+            case A2S_RULES:
+                int challenge = request.remaining() >= 4 ? request.getInt() : -1;
+                if (!isValidChallenge(server, client, challenge)) {
+                    return challenge(server, client);
+                }
+                if (header == A2S_PLAYER) {
+                    server.countPlayers();
+                    return players(server);
+                } else {
+                    server.countRules();
+                    return rules(server);
+                }
+            case A2S_GETCHALLENGE:
+                return challenge(server, client);
+            default:
+                return null;
+        }
+    }
+
+    private boolean isValidChallenge(VirtualServer server, SocketAddress client, int challenge) {
+        switch (server.getChallenge()) {
+            case STANDARD:
+                return challenge == standardChallenge(client);
+            case ROTATING:
+                Integer current = rotatingChallenges.get(host(client));
+                return current != null && current == challenge;
+            default:
+                return false;
+        }
+    }
+
+    private ByteBuffer challenge(VirtualServer server, SocketAddress client) {
+        int number;
+        switch (server.getChallenge()) {
+            case STANDARD:
+                number = standardChallenge(client);
+                break;
+            case ROTATING:
+                number = ThreadLocalRandom.current().nextInt() & 0x7fffffff;
+                rotatingChallenges.put(host(client), number);
+                break;
+            default:
+                return null;
+        }
+        server.countChallenge();
+        return flip(packet().put(S2C_CHALLENGE).putInt(number));
+    }
+
+    private int standardChallenge(SocketAddress client) {
+        // never -1, which is how clients ask for a challenge
+        return (host(client).hashCode() ^ secret) & 0x7fffffff;
+    }
+
+    /**
+     * Challenges are bound to the client host only, since clients may ask from one port and query from another.
+     */
+    private static InetAddress host(SocketAddress client) {
+        return ((InetSocketAddress) client).getAddress();
+    }
+
+    private ByteBuffer info(VirtualServer server) {
+        ByteBuffer buffer = packet().put(S2A_INFO).put((byte) 17);
+        putString(buffer, server.getName());
+        putString(buffer, server.getMap());
+        putString(buffer, "tf");
+        putString(buffer, "Team Fortress");
+        buffer.putShort((short) 440)
+            .put((byte) Math.min(127, server.getPlayers().size()))
+            .put((byte) Math.min(127, server.getMaxPlayers()))
+            .put((byte) Math.min(127, server.getBots()))
+            .put((byte) 'd')
+            .put((byte) 'l')
+            .put((byte) 0)
+            .put((byte) 1);
+        putString(buffer, server.getVersion());
+        int flags = 0x80 | (server.getTvPort() > 0 ? 0x40 : 0) | (server.getTags().isEmpty() ? 0 : 0x20);
+        buffer.put((byte) flags).putShort((short) server.getAddress().getPort());
+        if (server.getTvPort() > 0) {
+            buffer.putShort((short) server.getTvPort());
+            putString(buffer, server.getName() + " TV");
+        }
+        if (!server.getTags().isEmpty()) {
+            putString(buffer, server.getTags());
+        }
+        return flip(buffer);
+    }
+
+    private ByteBuffer players(VirtualServer server) {
+        List<VirtualServer.Player> players = server.getPlayers();
+        ByteBuffer buffer = packet().put(S2A_PLAYER).put((byte) players.size());
+        int index = 0;
+        for (VirtualServer.Player player : players) {
+            buffer.put((byte) index++);
+            putString(buffer, player.getName());
+            buffer.putInt(player.getScore()).putFloat(player.getDuration());
+        }
+        return flip(buffer);
+    }
+
+    private ByteBuffer rules(VirtualServer server) {
+        Map<String, String> rules = server.getRules();
+        ByteBuffer buffer = packet().put(S2A_RULES).putShort((short) rules.size());
+        rules.forEach((name, value) -> {
+            putString(buffer, name);
+            putString(buffer, value);
+        });
+        return flip(buffer);
+    }
+
+    private static ByteBuffer packet() {
+        return ByteBuffer.allocate(MAX_PACKET_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(-1);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length + 1) {
+            throw new IllegalStateException("Response does not fit in a single packet");
+        }
+        buffer.put(bytes).put((byte) 0);
+    }
+
+    // RCON
+
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel socket = ((ServerSocketChannel) key.channel()).accept();
+        if (socket == null) {
+            return;
+        }
+        socket.configureBlocking(false);
+        socket.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        channels.add(socket);
+        socket.register(selector, SelectionKey.OP_READ, new RconConnection((VirtualServer) key.attachment(), socket));
+    }
+
+    private void receiveRcon(SelectionKey key) throws IOException {
+        RconConnection connection = (RconConnection) key.attachment();
+        if (connection.socket.read(connection.input) < 0) {
+            closeQuietly(connection.socket);
+            key.cancel();
+            return;
+        }
+        ByteBuffer input = connection.input;
+        input.flip();
+        while (input.remaining() >= 4) {
+            int size = input.getInt(input.position());
+            if (size < 10 || size > MAX_RCON_BODY + 10) {
+                throw new IOException("Invalid RCON packet size " + size);
+            }
+            if (input.remaining() < size + 4) {
+                break;
+            }
+            input.getInt();
+            int id = input.getInt();
+            int type = input.getInt();
+            byte[] body = new byte[size - 10];
+            input.get(body);
+            input.get();
+            input.get();
+            respondToRcon(connection, id, type, new String(body, StandardCharsets.UTF_8));
+        }
+        input.compact();
+    }
+
+    private void respondToRcon(RconConnection connection, int id, int type, String body) {
+        VirtualServer server = connection.server;
+        List<ByteBuffer> packets = new ArrayList<>();
+        boolean close = false;
+        if (type == SERVERDATA_AUTH) {
+            server.countAuthentication();
+            connection.authenticated = server.getRconPassword().equals(body);
+            packets.add(rconPacket(id, SERVERDATA_RESPONSE_VALUE, ""));
+            packets.add(rconPacket(connection.authenticated ? id : -1, SERVERDATA_AUTH_RESPONSE, ""));
+        } else if (!connection.authenticated) {
+            // a real server drops unauthenticated connections
+            close = true;
+        } else if (type == SERVERDATA_EXECCOMMAND) {
+            String response = server.execute(body);
+            for (int start = 0; start < response.length(); start += MAX_RCON_BODY) {
+                packets.add(rconPacket(id, SERVERDATA_RESPONSE_VALUE,
+                    response.substring(start, Math.min(response.length(), start + MAX_RCON_BODY))));
+            }
+            if (response.isEmpty()) {
+                packets.add(rconPacket(id, SERVERDATA_RESPONSE_VALUE, ""));
+            }
+        } else if (type == SERVERDATA_RESPONSE_VALUE) {
+            // mirrored back so the client knows the response to the previous command is complete
+            packets.add(rconPacket(id, SERVERDATA_RESPONSE_VALUE, ""));
+        }
+        boolean closeAfter = close;
+        connection.later(delay(server), () -> connection.send(packets, closeAfter));
+    }
+
+    private static ByteBuffer rconPacket(int id, int type, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 14).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(bytes.length + 10).putInt(id).putInt(type).put(bytes).put((byte) 0).put((byte) 0);
+        return flip(buffer);
+    }
+
+    // Support
+
+    private void later(VirtualServer server, Runnable response) {
+        later(delay(server), response);
+    }
+
+    private void later(long delay, Runnable response) {
+        if (delay <= 0) {
+            response.run();
+        } else if (!delayer.isShutdown()) {
+            delayer.schedule(response, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long delay(VirtualServer server) {
+        long delay = server.getLatencyMillis();
+        if (server.getJitterMillis() > 0) {
+            delay += ThreadLocalRandom.current().nextLong(server.getJitterMillis() + 1);
+        }
+        return delay;
+    }
+
+    private static ByteBuffer clear(ByteBuffer buffer) {
+        buffer.clear();
+        return buffer;
+    }
+
+    private static ByteBuffer flip(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Could not close simulator channel: {}", e.toString());
+        }
+    }
+
+    private class RconConnection {
+        private final VirtualServer server;
+        private final SocketChannel socket;
+        private final ByteBuffer input = ByteBuffer.allocate(2 * (MAX_RCON_BODY + 14)).order(ByteOrder.LITTLE_ENDIAN);
+        private volatile boolean authenticated = false;
+        private long notBefore = 0;
+
+        /**
+         * Delay a response without letting it overtake an earlier one, since TCP never reorders.
+         */
+        private void later(long delay, Runnable response) {
+            long now = System.currentTimeMillis();
+            long at;
+            synchronized (this) {
+                at = Math.max(now + delay, notBefore);
+                notBefore = at;
+            }
+            SourceServerSimulator.this.later(at - now, response);
+        }
+
+        private RconConnection(VirtualServer server, SocketChannel socket) {
+            this.server = server;
+            this.socket = socket;
+        }
+
+        private synchronized void send(List<ByteBuffer> packets, boolean close) {
+            try {
+                for (ByteBuffer packet : packets) {
+                    while (packet.hasRemaining()) {
+                        if (socket.write(packet) == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }
+                if (close) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                log.debug("Could not send RCON response to {}: {}", server, e.toString());
+                closeQuietly(socket);
+            }
+        }
+    }
+}
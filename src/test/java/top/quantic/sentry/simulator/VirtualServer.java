@@ -0,0 +1,386 @@
+package top.quantic.sentry.simulator;
+
+import top.quantic.sentry.domain.GameServer;
+
+import java.net.InetSocketAddress;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Scripted state of a single server hosted by a {@link SourceServerSimulator}. Every setter can be called while the
+ * simulator is running, and takes effect from the next request on.
+ */
+public class VirtualServer {
+
+    /**
+     * How the server answers the challenge that precedes A2S_PLAYER and A2S_RULES requests.
+     */
+    public enum Challenge {
+        /**
+         * A fixed challenge number per client host, like a regular server.
+         */
+        STANDARD,
+        /**
+         * A new challenge number each time one is issued, invalidating the previous one.
+         */
+        ROTATING,
+        /**
+         * Never answers challenge requests, so player and rule queries always time out.
+         */
+        UNANSWERED
+    }
+
+    private static final int HISTORY_SIZE = 100;
+
+    private final String name;
+    private final InetSocketAddress address;
+    private final Map<String, Function<String, String>> commands = new ConcurrentHashMap<>();
+    private final Deque<String> executed = new ArrayDeque<>();
+
+    private final AtomicInteger infoRequests = new AtomicInteger();
+    private final AtomicInteger playerRequests = new AtomicInteger();
+    private final AtomicInteger rulesRequests = new AtomicInteger();
+    private final AtomicInteger challenges = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger authentications = new AtomicInteger();
+
+    private volatile String map = "cp_badlands";
+    private volatile int maxPlayers = 24;
+    private volatile int bots = 0;
+    private volatile String version = "3811296";
+    private volatile int tvPort = 0;
+    private volatile String tags = "";
+    private volatile List<Player> players = Collections.emptyList();
+    private volatile Map<String, String> rules = Collections.emptyMap();
+    private volatile String rconPassword = "rcon";
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+    private volatile double lossRate;
+    private volatile Challenge challenge = Challenge.STANDARD;
+
+    VirtualServer(String name, InetSocketAddress address) {
+        this.name = name;
+        this.address = address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the address as stored in a GameServer, like <code>127.0.0.1:27015</code>
+     */
+    public String getAddressString() {
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    public String getMap() {
+        return map;
+    }
+
+    public VirtualServer map(String map) {
+        this.map = map;
+        return this;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public VirtualServer maxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+        return this;
+    }
+
+    public int getBots() {
+        return bots;
+    }
+
+    public VirtualServer bots(int bots) {
+        this.bots = bots;
+        return this;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public VirtualServer version(String version) {
+        this.version = version;
+        return this;
+    }
+
+    public int getTvPort() {
+        return tvPort;
+    }
+
+    public VirtualServer tvPort(int tvPort) {
+        this.tvPort = tvPort;
+        return this;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public VirtualServer tags(String tags) {
+        this.tags = tags;
+        return this;
+    }
+
+    public List<Player> getPlayers() {
+        return players;
+    }
+
+    public VirtualServer players(List<Player> players) {
+        this.players = Collections.unmodifiableList(new ArrayList<>(players));
+        return this;
+    }
+
+    /**
+     * Fill the server with generated players.
+     *
+     * @param count the number of players
+     * @return this server
+     */
+    public VirtualServer players(int count) {
+        List<Player> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new Player("Player " + (i + 1), i * 3, 60f * (i + 1)));
+        }
+        return players(list);
+    }
+
+    public Map<String, String> getRules() {
+        return rules;
+    }
+
+    public VirtualServer rules(Map<String, String> rules) {
+        this.rules = Collections.unmodifiableMap(new LinkedHashMap<>(rules));
+        return this;
+    }
+
+    public String getRconPassword() {
+        return rconPassword;
+    }
+
+    public VirtualServer rconPassword(String rconPassword) {
+        this.rconPassword = rconPassword;
+        return this;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    /**
+     * Delay every response of this server.
+     *
+     * @param latencyMillis the base delay in milliseconds
+     * @param jitterMillis  the maximum random delay added to the base one
+     * @return this server
+     */
+    public VirtualServer latency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @param lossRate the probability of an incoming query packet being dropped, from <code>0</code> to <code>1</code>
+     * @return this server
+     */
+    public VirtualServer loss(double lossRate) {
+        this.lossRate = lossRate;
+        return this;
+    }
+
+    public Challenge getChallenge() {
+        return challenge;
+    }
+
+    public VirtualServer challenge(Challenge challenge) {
+        this.challenge = challenge;
+        return this;
+    }
+
+    /**
+     * Script the response to a console command, matched by its first word.
+     *
+     * @param command the command name, like <code>status</code>
+     * @param handler maps the full command line to the response
+     * @return this server
+     */
+    public VirtualServer command(String command, Function<String, String> handler) {
+        commands.put(command.toLowerCase(), handler);
+        return this;
+    }
+
+    public VirtualServer command(String command, String response) {
+        return command(command, line -> response);
+    }
+
+    /**
+     * @return the most recent commands executed over RCON, oldest first
+     */
+    public List<String> getExecuted() {
+        synchronized (executed) {
+            return new ArrayList<>(executed);
+        }
+    }
+
+    public int getInfoRequests() {
+        return infoRequests.get();
+    }
+
+    public int getPlayerRequests() {
+        return playerRequests.get();
+    }
+
+    public int getRulesRequests() {
+        return rulesRequests.get();
+    }
+
+    public int getChallenges() {
+        return challenges.get();
+    }
+
+    public int getDropped() {
+        return dropped.get();
+    }
+
+    public int getAuthentications() {
+        return authentications.get();
+    }
+
+    /**
+     * Build a GameServer pointing at this server, with a valid RCON password and every date set to now, like a server
+     * that was recently checked.
+     *
+     * @param id the panel id of the server
+     * @return a new GameServer
+     */
+    public GameServer toGameServer(String id) {
+        ZonedDateTime now = ZonedDateTime.now();
+        GameServer server = new GameServer();
+        server.setId(id);
+        server.setName(name);
+        server.setAddress(getAddressString());
+        server.setRconPassword(rconPassword);
+        server.setLastRconDate(now);
+        server.setExpirationDate(now.plusDays(1));
+        server.setExpirationCheckDate(now);
+        server.setStatusCheckDate(now);
+        server.setLastValidPing(now);
+        server.setLastGameUpdate(now);
+        server.setLastUpdateStart(now);
+        server.setLastRconAnnounce(now);
+        server.setVersion(0);
+        server.setMap("");
+        return server;
+    }
+
+    String execute(String line) {
+        synchronized (executed) {
+            executed.addLast(line);
+            if (executed.size() > HISTORY_SIZE) {
+                executed.removeFirst();
+            }
+        }
+        String trimmed = line.trim();
+        String command = trimmed.split("\\s+", 2)[0].toLowerCase();
+        Function<String, String> handler = commands.get(command);
+        if (handler != null) {
+            return handler.apply(trimmed);
+        } else if ("status".equals(command)) {
+            return status();
+        }
+        return "Unknown command \"" + command + "\"\n";
+    }
+
+    private String status() {
+        StringBuilder builder = new StringBuilder()
+            .append("hostname: ").append(name).append('\n')
+            .append("version : ").append(version).append(" secure\n")
+            .append("udp/ip  : ").append(getAddressString()).append('\n')
+            .append("map     : ").append(map).append('\n')
+            .append("players : ").append(players.size()).append(" humans, ").append(bots).append(" bots (")
+            .append(maxPlayers).append(" max)\n")
+            .append("# userid name uniqueid connected ping loss state adr\n");
+        int userId = 1;
+        for (Player player : players) {
+            builder.append(String.format("# %d \"%s\" [U:1:%d] %02d:%02d 50 0 active 192.0.2.1:27005\n",
+                userId, player.getName(), 1000 + userId, (int) player.getDuration() / 60, (int) player.getDuration() % 60));
+            userId++;
+        }
+        return builder.toString();
+    }
+
+    void countInfo() {
+        infoRequests.incrementAndGet();
+    }
+
+    void countPlayers() {
+        playerRequests.incrementAndGet();
+    }
+
+    void countRules() {
+        rulesRequests.incrementAndGet();
+    }
+
+    void countChallenge() {
+        challenges.incrementAndGet();
+    }
+
+    void countDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void countAuthentication() {
+        authentications.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + getAddressString() + ")";
+    }
+
+    public static class Player {
+        private final String name;
+        private final int score;
+        private final float duration;
+
+        public Player(String name, int score, float duration) {
+            this.name = name;
+            this.score = score;
+            this.duration = duration;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public float getDuration() {
+            return duration;
+        }
+    }
+}